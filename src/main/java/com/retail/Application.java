@@ -1,13 +1,30 @@
 package com.retail;
 
+import com.retail.api.ApiServer;
+import com.retail.barcode.BarcodeIndex;
 import com.retail.cli.ConsoleFormatter;
 import com.retail.cli.ConsoleInput;
 import com.retail.cli.SessionContext;
 import com.retail.cli.handler.AdminMenuHandler;
 import com.retail.cli.handler.EmployeeMenuHandler;
 import com.retail.cli.handler.ManagerMenuHandler;
+import com.retail.dao.ProductStockView;
+import com.retail.dao.SecurityLogWriter;
+import com.retail.db.CatalogChangeFeed;
 import com.retail.db.DatabaseManager;
+import com.retail.db.LeaderElection;
 import com.retail.exception.AuthenticationException;
+import com.retail.events.OutboxRelay;
+import com.retail.journal.SyncEngine;
+import com.retail.metrics.MetricsExporter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.promo.PromotionIndex;
+import com.retail.server.TerminalServer;
+import com.retail.service.CommitEventBus;
+import com.retail.service.InventorySnapshotJob;
+import com.retail.service.PriceIndex;
+import com.retail.service.ReportJobManager;
+import com.retail.util.AppConfig;
 import com.retail.model.User;
 import com.retail.model.enums.UserRole;
 import org.slf4j.Logger;
@@ -15,6 +32,8 @@ import org.slf4j.LoggerFactory;
 import com.retail.cli.handler.BaseMenuHandler;
 import com.retail.cli.handler.MenuHandlerFactory;
 
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 
@@ -22,25 +41,102 @@ public class Application {
 
     private static final Logger logger = LoggerFactory.getLogger(Application.class);
 
-    private final Scanner scanner;
     private final ConsoleInput input;
     private final SessionContext context;
 
     public Application() {
-        this.scanner = new Scanner(System.in);
-        this.input = new ConsoleInput(scanner);
-        this.context = new SessionContext();
+        this(new ConsoleInput(new Scanner(System.in)), new SessionContext());
+    }
+
+    public Application(ConsoleInput input, SessionContext context) {
+        this.input = input;
+        this.context = context;
     }
 
     public static void main(String[] args) {
-        Application app = new Application();
+        boolean serverMode = Arrays.asList(args).contains("--server")
+                || AppConfig.getBoolean("server.enabled", false);
+        TerminalServer server = serverMode
+                ? new TerminalServer(new SessionContext(), (input, context) -> new Application(input, context).runSession())
+                : null;
+
+        MetricsExporter metricsExporter = new MetricsExporter(MetricsRegistry.getInstance());
+        metricsExporter.start();
+        ApiServer apiServer = startApi();
+        LeaderElection.getInstance().start();
+        startCatalogView();
+        SyncEngine.getInstance().start();
+        OutboxRelay.getInstance().start();
+        InventorySnapshotJob.getInstance().start();
+        PriceIndex.getInstance().start();
+        PromotionIndex.getInstance().start();
+        BarcodeIndex.getInstance().start();
+        // Подписчики уже зарегистрированы: после подключения каждый догоняет пропущенное
+        CatalogChangeFeed.getInstance().start();
         
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             ConsoleFormatter.printInfo("Завершение работы...");
-            DatabaseManager.getInstance().shutdown();
+            if (server != null) {
+                server.stop();
+            }
+            if (apiServer != null) {
+                apiServer.stop();
+            }
+            metricsExporter.stop();
+            shutdownServices();
         }));
 
-        app.run();
+        if (server != null) {
+            runServer(server);
+        } else {
+            new Application().run();
+        }
+    }
+
+    private static ApiServer startApi() {
+        if (!AppConfig.getBoolean("api.enabled", false)) {
+            return null;
+        }
+        try {
+            ApiServer apiServer = new ApiServer(new SessionContext());
+            apiServer.start();
+            return apiServer;
+        } catch (Exception e) {
+            logger.error("Не удалось запустить HTTP API", e);
+            return null;
+        }
+    }
+
+    private static void startCatalogView() {
+        // Изменения этого узла помечают витрину сразу, не дожидаясь уведомления catalog_changes
+        ProductStockView view = ProductStockView.getInstance();
+        CommitEventBus.getInstance().subscribe(event -> view.markChanged());
+        view.start();
+    }
+
+    private static void runServer(TerminalServer server) {
+        try {
+            DatabaseManager.getInstance().testConnection();
+            server.start();
+            server.serve();
+        } catch (Exception e) {
+            logger.error("Не удалось запустить терминальный сервер", e);
+            ConsoleFormatter.printError("Не удалось запустить терминальный сервер: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Сессия удаленного терминала: пул соединений общий и закрывается только при остановке сервера.
+     */
+    public void runSession() {
+        showWelcome();
+        try {
+            mainLoop();
+        } finally {
+            if (context.isAuthenticated()) {
+                context.logout();
+            }
+        }
     }
 
     public void run() {
@@ -49,6 +145,12 @@ public class Application {
         try {
             
             if (!testDatabaseConnection()) {
+                if (SyncEngine.getInstance().canStartOffline()) {
+                    ConsoleFormatter.printWarning("Нет связи с базой данных. Автономный режим: продажи сохраняются "
+                            + "локально и будут выгружены после восстановления связи");
+                    mainLoop();
+                    return;
+                }
                 ConsoleFormatter.printError("Не удалось подключиться к базе данных!");
                 ConsoleFormatter.printInfo("Проверьте настройки в application.properties");
                 return;
@@ -74,6 +176,10 @@ public class Application {
                 } else {
                     showRoleBasedMenu();
                 }
+            } catch (NoSuchElementException | IllegalStateException e) {
+                // Ввод закрыт: конец stdin или разрыв соединения терминала
+                logger.debug("Ввод завершен: {}", e.getMessage());
+                return;
             } catch (Exception e) {
                 logger.error("Ошибка в главном цикле", e);
                 ConsoleFormatter.printError("Ошибка: " + e.getMessage());
@@ -162,7 +268,9 @@ public class Application {
     private boolean testDatabaseConnection() {
         try {
             ConsoleFormatter.printInfo("Проверка подключения к базе данных...");
-            DatabaseManager.getInstance().testConnection();
+            if (!DatabaseManager.getInstance().testConnection()) {
+                return false;
+            }
             ConsoleFormatter.printSuccess("Подключение установлено");
             return true;
         } catch (Exception e) {
@@ -175,10 +283,29 @@ public class Application {
         if (context.isAuthenticated()) {
             context.logout();
         }
-        DatabaseManager.getInstance().shutdown();
+        shutdownServices();
         ConsoleFormatter.printInfo("Приложение завершено. До свидания!");
     }
 
+    /**
+     * Останавливает фоновые задачи, затем дописывает журнал безопасности и закрывает пулы:
+     * последние такты задач не должны идти в закрытый пул. Повторный вызов ничего не делает.
+     */
+    private static void shutdownServices() {
+        CatalogChangeFeed.shutdown();
+        ReportJobManager.shutdown();
+        InventorySnapshotJob.shutdown();
+        PriceIndex.shutdown();
+        PromotionIndex.shutdown();
+        BarcodeIndex.shutdown();
+        ProductStockView.shutdown();
+        SyncEngine.shutdown();
+        OutboxRelay.shutdown();
+        LeaderElection.shutdown();
+        SecurityLogWriter.shutdown();
+        DatabaseManager.getInstance().shutdown();
+    }
+
     private void clearScreen() {
         
         System.out.print("\033[H\033[2J");
@@ -0,0 +1,450 @@
+package com.retail.api;
+
+import com.retail.cli.SessionContext;
+import com.retail.dao.SaleDao;
+import com.retail.exception.AuthenticationException;
+import com.retail.exception.DatabaseException;
+import com.retail.exception.InsufficientStockException;
+import com.retail.exception.ValidationException;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.retail.model.Product;
+import com.retail.model.Sale;
+import com.retail.model.SaleItem;
+import com.retail.model.User;
+import com.retail.util.AppConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * HTTP/JSON API для сканеров и касс самообслуживания поверх существующих сервисов.
+ * Обращения к БД проходят через ограничитель параллелизма: если он занят дольше
+ * api.limiter.wait.ms, запрос получает 503 вместо ожидания соединения из пула.
+ */
+public class ApiServer {
+    private static final Logger logger = LoggerFactory.getLogger(ApiServer.class);
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private static final class ApiResponse {
+        private final int status;
+        private final BodyWriter body;
+
+        private ApiResponse(int status, BodyWriter body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static final class ApiError extends RuntimeException {
+        private final int status;
+
+        private ApiError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final SessionContext context;
+    private final byte[] apiKey;
+    private final Semaphore limiter;
+    private final long limiterWaitMillis;
+    private final Timer requestTimer;
+    private final Counter throttledCounter;
+
+    private HttpServer httpServer;
+    private ThreadPoolExecutor executor;
+    private User apiUser;
+
+    public ApiServer(SessionContext context) {
+        this.context = context;
+        this.apiKey = AppConfig.get("api.key", "").getBytes(StandardCharsets.UTF_8);
+        // По умолчанию на два соединения меньше пула кассы: кассам всегда остается запас
+        this.limiter = new Semaphore(AppConfig.getInt("api.max.concurrent.db",
+                Math.max(1, AppConfig.getInt("db.pool.checkout.size", 6) - 2)), true);
+        this.limiterWaitMillis = AppConfig.getLong("api.limiter.wait.ms", 200);
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.requestTimer = registry.timer("retail_api_seconds");
+        this.throttledCounter = registry.counter("retail_api_throttled_total");
+        registry.gauge("retail_api_limiter_available", limiter::availablePermits);
+    }
+
+
+    public synchronized void start() throws IOException {
+        if (apiKey.length == 0) {
+            throw new IllegalStateException("Не задан api.key");
+        }
+        String login = AppConfig.get("api.user.login", "");
+        apiUser = context.getUserService().findByLogin(login)
+                .orElseThrow(() -> new IllegalStateException("Пользователь API не найден: " + login));
+
+        // Java 17: ограниченный пул потоков платформы; при переполнении очереди запрос
+        // обрабатывается в потоке диспетчера, что притормаживает прием новых соединений
+        int threads = AppConfig.getInt("api.threads", 32);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(AppConfig.getInt("api.queue.size", 256)), r -> {
+                    Thread t = new Thread(r, "api-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        httpServer = HttpServer.create(new InetSocketAddress(
+                AppConfig.get("api.http.host", "0.0.0.0"), AppConfig.getInt("api.http.port", 8081)), 100);
+        httpServer.createContext("/api/", this::handle);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        logger.info("HTTP API запущено на порту {}", httpServer.getAddress().getPort());
+    }
+
+
+    public synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(1);
+            httpServer = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        long waitNanos = 0;
+        long appNanos = 0;
+        ApiResponse response;
+
+        try {
+            authenticate(exchange);
+            long waitStart = System.nanoTime();
+            if (!limiter.tryAcquire(limiterWaitMillis, TimeUnit.MILLISECONDS)) {
+                throttledCounter.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                throw new ApiError(503, "Сервис перегружен, повторите запрос позже");
+            }
+            long appStart = System.nanoTime();
+            waitNanos = appStart - waitStart;
+            try {
+                response = route(exchange);
+            } finally {
+                limiter.release();
+                appNanos = System.nanoTime() - appStart;
+            }
+        } catch (ApiError e) {
+            response = error(e.status, e.getMessage());
+        } catch (InsufficientStockException e) {
+            response = error(409, e.getMessage());
+        } catch (ValidationException e) {
+            response = error(400, e.getMessage());
+        } catch (AuthenticationException e) {
+            response = error(401, e.getMessage());
+        } catch (DatabaseException e) {
+            response = error(500, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response = error(503, "Запрос прерван");
+        } catch (RuntimeException e) {
+            logger.error("Ошибка обработки {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            response = error(500, "Внутренняя ошибка");
+        }
+
+        try {
+            send(exchange, response, start, waitNanos, appNanos);
+        } finally {
+            exchange.close();
+            requestTimer.recordSince(start);
+        }
+    }
+
+    private void send(HttpExchange exchange, ApiResponse response,
+                      long start, long waitNanos, long appNanos) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Server-Timing", String.format(Locale.ROOT,
+                "queue;dur=%.2f, app;dur=%.2f, total;dur=%.2f",
+                waitNanos / 1e6, appNanos / 1e6, (System.nanoTime() - start) / 1e6));
+
+        if (response.body == null) {
+            exchange.sendResponseHeaders(response.status, -1);
+            return;
+        }
+        // Длина заранее неизвестна: тело пишется потоком (chunked)
+        exchange.sendResponseHeaders(response.status, 0);
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192)) {
+            JsonWriter json = new JsonWriter(writer);
+            response.body.write(json);
+            json.flush();
+        }
+    }
+
+    private void authenticate(HttpExchange exchange) {
+        String key = exchange.getRequestHeaders().getFirst("X-Api-Key");
+        if (key == null || !MessageDigest.isEqual(apiKey, key.getBytes(StandardCharsets.UTF_8))) {
+            throw new ApiError(401, "Неверный ключ API");
+        }
+    }
+
+
+    private ApiResponse route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+
+        if (path.length == 1 && path[0].equals("products") && method.equals("GET")) {
+            return searchProducts(queryParam(exchange, "q"));
+        }
+        if (path.length == 2 && path[0].equals("products") && method.equals("GET")) {
+            return productBySku(path[1]);
+        }
+        if (path.length == 2 && path[0].equals("stock") && method.equals("GET")) {
+            return stock(parseId(path[1]), queryParam(exchange, "required"));
+        }
+        if (path.length == 1 && path[0].equals("sales") && method.equals("POST")) {
+            return createSale(readBody(exchange));
+        }
+        if (path.length == 3 && path[0].equals("sales") && path[2].equals("returns") && method.equals("POST")) {
+            return processReturn(parseId(path[1]), readBody(exchange));
+        }
+        if (path.length == 3 && path[0].equals("sales") && path[2].equals("receipt") && method.equals("GET")) {
+            return receipt(parseId(path[1]));
+        }
+        throw new ApiError(404, "Ресурс не найден");
+    }
+
+    private ApiResponse productBySku(String sku) {
+        Product product = context.getProductService().findBySku(sku)
+                .orElseThrow(() -> new ApiError(404, "Товар не найден: " + sku));
+        return new ApiResponse(200, json -> writeProduct(json, product));
+    }
+
+    private ApiResponse searchProducts(String query) {
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Не задан параметр q");
+        }
+        List<Product> products = context.getProductService().searchByName(query);
+        return new ApiResponse(200, json -> {
+            json.beginArray();
+            for (Product product : products) {
+                writeProduct(json, product);
+            }
+            json.endArray();
+        });
+    }
+
+    private ApiResponse stock(int productId, String required) {
+        int quantity = context.getInventoryService().getStock(productId);
+        Integer requiredQty = required != null ? parseId(required) : null;
+        return new ApiResponse(200, json -> {
+            json.beginObject()
+                    .field("productId", productId)
+                    .field("quantity", quantity);
+            if (requiredQty != null) {
+                json.field("available", quantity >= requiredQty);
+            }
+            json.endObject();
+        });
+    }
+
+    private ApiResponse createSale(String body) {
+        Sale sale = new Sale(apiUser.getId());
+        JsonReader reader = new JsonReader(body);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "discount" -> sale.setDiscount(reader.nextNull() ? BigDecimal.ZERO : reader.nextDecimal());
+                case "items" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        sale.getItems().add(readSaleItem(reader));
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (sale.getItems().isEmpty()) {
+            throw new ValidationException("Продажа должна содержать хотя бы одну позицию");
+        }
+        Sale saved = context.getSaleService().createSale(sale, apiUser.getId());
+        if (saved.getId() == null) {
+            // Продажа записана в локальный журнал и будет выгружена в БД после восстановления связи
+            return new ApiResponse(202, json -> json.beginObject()
+                    .field("saleNumber", saved.getSaleNumber())
+                    .field("finalAmount", saved.getFinalAmount())
+                    .field("offline", true)
+                    .endObject());
+        }
+        SaleDao.SaleFullDescription description = context.getSaleService()
+                .getFullSaleDescription(saved.getId())
+                .orElseThrow(() -> new ApiError(500, "Продажа не найдена после создания"));
+        return new ApiResponse(201, json -> writeReceipt(json, description));
+    }
+
+    private SaleItem readSaleItem(JsonReader reader) {
+        Integer productId = null;
+        String sku = null;
+        int quantity = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "productId" -> productId = reader.nextInt();
+                case "sku" -> sku = reader.nextString();
+                case "quantity" -> quantity = reader.nextInt();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (productId == null && sku != null) {
+            String skuValue = sku;
+            productId = context.getProductService().findBySku(sku)
+                    .map(Product::getId)
+                    .orElseThrow(() -> new ValidationException("Товар не найден: " + skuValue));
+        }
+        if (productId == null) {
+            throw new ValidationException("Не указан товар (productId или sku)");
+        }
+        if (quantity <= 0) {
+            throw new ValidationException("Количество должно быть положительным");
+        }
+        // Цена фиксируется в SaleService.createSale по текущей цене товара
+        SaleItem item = new SaleItem();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    private ApiResponse processReturn(int saleId, String body) {
+        Integer itemId = null;
+        int quantity = 0;
+        JsonReader reader = new JsonReader(body);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "itemId" -> itemId = reader.nextInt();
+                case "quantity" -> quantity = reader.nextInt();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (itemId == null || quantity <= 0) {
+            throw new ValidationException("Нужно указать itemId и положительное quantity");
+        }
+
+        context.getSaleService().processReturn(saleId, itemId, quantity, apiUser.getId());
+        return receipt(saleId);
+    }
+
+    private ApiResponse receipt(int saleId) {
+        SaleDao.SaleFullDescription description = context.getSaleService().getFullSaleDescription(saleId)
+                .orElseThrow(() -> new ApiError(404, "Продажа не найдена"));
+        return new ApiResponse(200, json -> writeReceipt(json, description));
+    }
+
+
+    private static void writeProduct(JsonWriter json, Product product) throws IOException {
+        json.beginObject()
+                .field("id", product.getId())
+                .field("sku", product.getSku())
+                .field("name", product.getName())
+                .field("category", product.getCategoryName())
+                .field("unit", product.getUnitName())
+                .field("price", product.getSellingPrice())
+                .field("stock", product.getStockQuantity())
+                .field("active", product.isActive())
+                .endObject();
+    }
+
+    private static void writeReceipt(JsonWriter json, SaleDao.SaleFullDescription sale) throws IOException {
+        json.beginObject()
+                .field("saleId", sale.getSaleId())
+                .field("saleNumber", sale.getSaleNumber())
+                .field("saleDate", sale.getSaleDate())
+                .field("employee", sale.getEmployeeName())
+                .field("total", sale.getTotalAmount())
+                .field("discount", sale.getDiscount())
+                .field("final", sale.getFinalAmount())
+                .field("returned", sale.isReturned());
+        json.name("items").beginArray();
+        for (SaleDao.SaleFullDescription.SaleItemDetail item : sale.getItems()) {
+            json.beginObject()
+                    .field("itemId", item.getItemId())
+                    .field("productId", item.getProductId())
+                    .field("sku", item.getProductSku())
+                    .field("name", item.getProductName())
+                    .field("quantity", item.getQuantity())
+                    .field("price", item.getPriceAtSale())
+                    .field("lineTotal", item.getLineTotal())
+                    .field("returnedQty", item.getReturnedQty())
+                    .endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    private static ApiResponse error(int status, String message) {
+        return new ApiResponse(status, json -> json.beginObject().field("error", message).endObject());
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new ApiError(413, "Слишком большой запрос");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            if (key.equals(name)) {
+                return eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            }
+        }
+        return null;
+    }
+
+    private static int parseId(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ApiError(400, "Некорректный идентификатор: " + value);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.retail.api;
+
+import com.retail.exception.ValidationException;
+
+import java.math.BigDecimal;
+
+
+/**
+ * Минимальный потоковый разбор JSON тела запроса: значения читаются по мере
+ * обхода, без построения дерева.
+ */
+public class JsonReader {
+    private final String json;
+    private int pos;
+
+    public JsonReader(String json) {
+        this.json = json;
+    }
+
+    public void beginObject() {
+        expect('{');
+    }
+
+    public void endObject() {
+        expect('}');
+    }
+
+    public void beginArray() {
+        expect('[');
+    }
+
+    public void endArray() {
+        expect(']');
+    }
+
+    /**
+     * Есть ли еще элементы в текущем объекте или массиве; пропускает запятую.
+     */
+    public boolean hasNext() {
+        char c = peek();
+        if (c == ',') {
+            pos++;
+            return true;
+        }
+        return c != '}' && c != ']';
+    }
+
+    public String nextName() {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    public String nextString() {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (pos < json.length()) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\') {
+                char e = json.charAt(pos++);
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> sb.append(e);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        throw error("незавершенная строка");
+    }
+
+    public BigDecimal nextDecimal() {
+        char c = peek();
+        if (c == '"') {
+            return parseDecimal(nextString());
+        }
+        int start = pos;
+        while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) {
+            pos++;
+        }
+        return parseDecimal(json.substring(start, pos));
+    }
+
+    public int nextInt() {
+        try {
+            return nextDecimal().intValueExact();
+        } catch (ArithmeticException e) {
+            throw error("ожидалось целое число");
+        }
+    }
+
+    public boolean nextNull() {
+        if (json.startsWith("null", skipWhitespace())) {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Пропускает значение неизвестного поля.
+     */
+    public void skipValue() {
+        char c = peek();
+        switch (c) {
+            case '"' -> nextString();
+            case '{', '[' -> {
+                int level = 0;
+                do {
+                    char ch = json.charAt(pos);
+                    if (ch == '"') {
+                        nextString();
+                        continue;
+                    }
+                    if (ch == '{' || ch == '[') level++;
+                    if (ch == '}' || ch == ']') level--;
+                    pos++;
+                } while (level > 0 && pos < json.length());
+            }
+            default -> {
+                while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                    pos++;
+                }
+            }
+        }
+    }
+
+    private BigDecimal parseDecimal(String s) {
+        try {
+            return new BigDecimal(s);
+        } catch (NumberFormatException e) {
+            throw error("ожидалось число");
+        }
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("ожидался символ '" + c + "'");
+        }
+        pos++;
+    }
+
+    private char peek() {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            throw error("неожиданный конец данных");
+        }
+        return json.charAt(pos);
+    }
+
+    private int skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private ValidationException error(String message) {
+        return new ValidationException("Некорректный JSON (позиция " + pos + "): " + message);
+    }
+}
@@ -0,0 +1,197 @@
+package com.retail.barcode;
+
+import com.retail.dao.ProductBarcodeDao;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.model.ProductBarcode;
+import com.retail.model.enums.BarcodeKind;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Штрихкоды товаров в памяти: код -> товар открытой адресацией по числовому значению кода,
+ * сканирование не обращается к БД. Загружается при старте; изменения этого узла применяются
+ * сразу через {@link #reload()}, изменения других узлов - проверкой отпечатка таблицы
+ * каждые barcode.index.refresh.seconds. Индекс заменяется целиком, чтение идет без блокировок.
+ */
+@DbWorkload(Workload.BACKOFFICE)
+public final class BarcodeIndex {
+    private static final Logger logger = LoggerFactory.getLogger(BarcodeIndex.class);
+    private static final BarcodeKind[] KINDS = BarcodeKind.values();
+    private static volatile BarcodeIndex instance;
+
+    private final ProductBarcodeDao barcodeDao = new ProductBarcodeDao();
+    private final long refreshSeconds;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile boolean loaded;
+    private ScheduledExecutorService scheduler;
+    private long[] signature;
+
+    private BarcodeIndex() {
+        this.refreshSeconds = Math.max(1, AppConfig.getLong("barcode.index.refresh.seconds", 30));
+        MetricsRegistry.getInstance().gauge("retail_barcode_index_codes", () -> snapshot.index.size());
+    }
+
+    public static BarcodeIndex getInstance() {
+        BarcodeIndex index = instance;
+        if (index == null) {
+            synchronized (BarcodeIndex.class) {
+                index = instance;
+                if (index == null) {
+                    index = new BarcodeIndex();
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || !AppConfig.getBoolean("barcode.index.enabled", true)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "barcode-index");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, 0, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    public static void shutdown() {
+        BarcodeIndex index = instance;
+        if (index != null) {
+            synchronized (index) {
+                if (index.scheduler != null) {
+                    index.scheduler.shutdownNow();
+                    index.scheduler = null;
+                }
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return snapshot.index.size();
+    }
+
+    
+    /**
+     * Товар по отсканированному коду или null, если код не распознан, не сходится контрольная
+     * цифра или кода нет в индексе. Для внутренних кодов 2... сначала ищется весовой префикс.
+     */
+    public ScanResult lookup(String scanned) {
+        int length = scanned.length();
+        if (!Barcodes.isValidLength(length) || !Barcodes.isDigits(scanned) || !Barcodes.hasValidCheckDigit(scanned)) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        if (length == Barcodes.EMBEDDED_LENGTH && scanned.charAt(0) == '2') {
+            int entry = current.index.get(prefixKey(Barcodes.parse(scanned, 0, Barcodes.PREFIX_LENGTH)));
+            if (entry != LongIntHashIndex.MISSING) {
+                int value = (int) Barcodes.parse(scanned, Barcodes.PREFIX_LENGTH, length - 1);
+                return current.result(entry, value);
+            }
+        }
+        int entry = current.index.get(Barcodes.parse(scanned, 0, length));
+        return entry != LongIntHashIndex.MISSING ? current.result(entry, 0) : null;
+    }
+
+    
+    /**
+     * Перечитывает штрихкоды из БД и заменяет индекс.
+     */
+    public synchronized void reload() throws SQLException {
+        long[] point = barcodeDao.findSignature();
+        List<ProductBarcode> barcodes = barcodeDao.findAll();
+        snapshot = Snapshot.of(barcodes);
+        signature = point;
+        loaded = true;
+        logger.info("Индекс штрихкодов загружен: {} кодов", snapshot.index.size());
+    }
+
+    private void poll() {
+        try {
+            long[] current = barcodeDao.findSignature();
+            boolean changed;
+            synchronized (this) {
+                changed = !Arrays.equals(current, signature);
+            }
+            if (changed) {
+                reload();
+            }
+        } catch (SQLException e) {
+            logger.warn("Не удалось обновить индекс штрихкодов: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Ошибка обновления индекса штрихкодов", e);
+        }
+    }
+
+    private static long key(ProductBarcode barcode) {
+        long value = Barcodes.parse(barcode.getCode(), 0, barcode.getCode().length());
+        return barcode.getKind() == BarcodeKind.UNIT ? value : prefixKey(value);
+    }
+
+    /**
+     * Префиксы весовых кодов лежат в том же индексе с отрицательными ключами и не пересекаются с полными кодами.
+     */
+    private static long prefixKey(long prefix) {
+        return -1 - prefix;
+    }
+
+    
+    /**
+     * Неизменяемый снимок: ключ кода -> номер записи, данные записей в параллельных массивах.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new LongIntHashIndex(0), new int[0], new int[0], new byte[0]);
+
+        private final LongIntHashIndex index;
+        private final int[] productIds;
+        private final int[] packQuantities;
+        private final byte[] kinds;
+
+        private Snapshot(LongIntHashIndex index, int[] productIds, int[] packQuantities, byte[] kinds) {
+            this.index = index;
+            this.productIds = productIds;
+            this.packQuantities = packQuantities;
+            this.kinds = kinds;
+        }
+
+        static Snapshot of(List<ProductBarcode> barcodes) {
+            int n = barcodes.size();
+            LongIntHashIndex index = new LongIntHashIndex(n);
+            int[] productIds = new int[n];
+            int[] packQuantities = new int[n];
+            byte[] kinds = new byte[n];
+            for (int i = 0; i < n; i++) {
+                ProductBarcode barcode = barcodes.get(i);
+                productIds[i] = barcode.getProductId();
+                packQuantities[i] = barcode.getPackQuantity();
+                kinds[i] = (byte) barcode.getKind().ordinal();
+                if (index.put(key(barcode), i) != LongIntHashIndex.MISSING) {
+                    // Один код в разных записях (например, UPC-A и EAN-13 с нулем): действует последняя
+                    logger.warn("Штрихкод {} задан несколько раз", barcode.getCode());
+                }
+            }
+            return new Snapshot(index, productIds, packQuantities, kinds);
+        }
+
+        ScanResult result(int entry, int embeddedValue) {
+            return new ScanResult(productIds[entry], KINDS[kinds[entry]], packQuantities[entry], embeddedValue);
+        }
+    }
+}
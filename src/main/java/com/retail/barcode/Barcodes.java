@@ -0,0 +1,89 @@
+package com.retail.barcode;
+
+
+/**
+ * Разбор кодов EAN-8, UPC-A, EAN-13 и GTIN-14. Коды сравниваются как числа: UPC-A и тот же
+ * код в виде EAN-13 с ведущим нулем - один и тот же товар. Коды EAN-13 с первой цифрой 2
+ * (внутренние коды магазина) могут нести вес или цену: 2 T IIIII VVVVV C, где первые
+ * 7 цифр - префикс товара, VVVVV - вес в граммах или цена в копейках.
+ */
+public final class Barcodes {
+    public static final int PREFIX_LENGTH = 7;
+    static final int EMBEDDED_LENGTH = 13;
+
+    private Barcodes() {
+    }
+
+    
+    /**
+     * Каноническая запись штучного кода: EAN-8, EAN-13 или GTIN-14 без лишнего ведущего нуля.
+     * Возвращает null, если это не код или не сходится контрольная цифра.
+     */
+    public static String normalize(String code) {
+        String digits = code != null ? code.strip() : "";
+        if (!isDigits(digits) || !isValidLength(digits.length()) || !hasValidCheckDigit(digits)) {
+            return null;
+        }
+        if (digits.length() == 12) {
+            return "0" + digits;
+        }
+        if (digits.length() == 14 && digits.charAt(0) == '0') {
+            return digits.substring(1);
+        }
+        return digits;
+    }
+
+    
+    /**
+     * Префикс весового кода или кода с ценой: 7 цифр, начинается с 2. Иначе null.
+     */
+    public static String normalizePrefix(String prefix) {
+        String digits = prefix != null ? prefix.strip() : "";
+        return digits.length() == PREFIX_LENGTH && isDigits(digits) && digits.charAt(0) == '2' ? digits : null;
+    }
+
+    
+    /**
+     * Похоже ли введенное значение на штрихкод, а не на ID товара.
+     */
+    public static boolean looksLikeBarcode(String value) {
+        return value.length() >= 8 && isDigits(value);
+    }
+
+    static boolean isValidLength(int length) {
+        return length == 8 || length == 12 || length == 13 || length == 14;
+    }
+
+    static boolean isDigits(CharSequence value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Контрольная цифра GS1: веса 3 и 1 чередуются справа налево, начиная с предпоследней цифры.
+     */
+    static boolean hasValidCheckDigit(CharSequence digits) {
+        int n = digits.length();
+        int sum = 0;
+        for (int i = n - 2, weight = 3; i >= 0; i--, weight = 4 - weight) {
+            sum += (digits.charAt(i) - '0') * weight;
+        }
+        return (10 - sum % 10) % 10 == digits.charAt(n - 1) - '0';
+    }
+
+    static long parse(CharSequence digits, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (digits.charAt(i) - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,72 @@
+package com.retail.barcode;
+
+import java.util.Arrays;
+
+
+/**
+ * Неизменяемое после заполнения отображение long -> int с открытой адресацией и линейным
+ * пробированием. Поиск не создает объектов. Ключ Long.MIN_VALUE зарезервирован.
+ */
+final class LongIntHashIndex {
+    static final int MISSING = -1;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    LongIntHashIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Возвращает прежнее значение ключа или MISSING.
+     */
+    int put(long key, int value) {
+        int i = slot(key);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            if (size + 1 > (keys.length >> 1)) {
+                throw new IllegalStateException("Индекс заполнен: " + size);
+            }
+            size++;
+            keys[i] = key;
+            values[i] = value;
+            return MISSING;
+        }
+        int previous = values[i];
+        values[i] = value;
+        return previous;
+    }
+
+    int get(long key) {
+        int i = slot(key);
+        while (true) {
+            long k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == EMPTY) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        // Коды одного производителя отличаются младшими разрядами: перемешиваем все биты
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
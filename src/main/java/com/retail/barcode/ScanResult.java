@@ -0,0 +1,69 @@
+package com.retail.barcode;
+
+import com.retail.exception.ValidationException;
+import com.retail.model.enums.BarcodeKind;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+
+/**
+ * Товар, найденный по отсканированному коду, и количество, которое код означает.
+ */
+public final class ScanResult {
+    private final int productId;
+    private final BarcodeKind kind;
+    private final int packQuantity;
+    private final int embeddedValue;
+
+    ScanResult(int productId, BarcodeKind kind, int packQuantity, int embeddedValue) {
+        this.productId = productId;
+        this.kind = kind;
+        this.packQuantity = packQuantity;
+        this.embeddedValue = embeddedValue;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public BarcodeKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Вес в граммах или цена в копейках из кода; для штучных кодов 0.
+     */
+    public int getEmbeddedValue() {
+        return embeddedValue;
+    }
+
+    
+    /**
+     * Количество в единицах учета товара: для упаковки - число единиц в ней, для весового
+     * кода - вес, деленный на граммы в единице учета, для кода с ценой - цена этикетки,
+     * деленная на цену единицы. Этикетка, которая не дает целого числа единиц, отклоняется:
+     * иначе покупатель заплатил бы не ту сумму, что на ней указана.
+     */
+    public int getQuantity(BigDecimal unitPrice) {
+        return switch (kind) {
+            case UNIT -> packQuantity;
+            case WEIGHT -> {
+                if (embeddedValue <= 0 || embeddedValue % packQuantity != 0) {
+                    throw new ValidationException(String.format(
+                            "Вес на этикетке (%d г) не равен целому числу единиц учета по %d г", embeddedValue, packQuantity));
+                }
+                yield embeddedValue / packQuantity;
+            }
+            case PRICE -> {
+                BigDecimal labelPrice = BigDecimal.valueOf(embeddedValue, 2);
+                if (unitPrice == null || unitPrice.signum() <= 0 || labelPrice.signum() <= 0
+                        || labelPrice.remainder(unitPrice).signum() != 0) {
+                    throw new ValidationException("Цена на этикетке " + labelPrice
+                            + " не равна целому числу единиц по текущей цене " + unitPrice);
+                }
+                yield labelPrice.divide(unitPrice, 0, RoundingMode.UNNECESSARY).intValueExact();
+            }
+        };
+    }
+}
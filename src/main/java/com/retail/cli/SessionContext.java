@@ -13,6 +13,9 @@ public class SessionContext {
     private final InventoryService inventoryService;
     private final SaleService saleService;
     private final ReportService reportService;
+    private final StockReconciliationService reconciliationService;
+    private final StocktakeService stocktakeService;
+    private final PromotionService promotionService;
 
     public SessionContext() {
         this.authService = new AuthService();
@@ -21,6 +24,29 @@ public class SessionContext {
         this.inventoryService = new InventoryService();
         this.saleService = new SaleService();
         this.reportService = new ReportService();
+        this.reconciliationService = new StockReconciliationService();
+        this.stocktakeService = new StocktakeService();
+        this.promotionService = new PromotionService();
+    }
+
+    private SessionContext(SessionContext shared) {
+        this.authService = shared.authService;
+        this.userService = shared.userService;
+        this.productService = shared.productService;
+        this.inventoryService = shared.inventoryService;
+        this.saleService = shared.saleService;
+        this.reportService = shared.reportService;
+        this.reconciliationService = shared.reconciliationService;
+        this.stocktakeService = shared.stocktakeService;
+        this.promotionService = shared.promotionService;
+    }
+
+    /**
+     * Новая сессия с теми же сервисами: сервисы не хранят состояния пользователя,
+     * поэтому в серверном режиме один набор обслуживает все терминалы.
+     */
+    public SessionContext newSession() {
+        return new SessionContext(this);
     }
 
     public User getCurrentUser() {
@@ -55,6 +81,18 @@ public class SessionContext {
         return reportService;
     }
 
+    public StockReconciliationService getReconciliationService() {
+        return reconciliationService;
+    }
+
+    public StocktakeService getStocktakeService() {
+        return stocktakeService;
+    }
+
+    public PromotionService getPromotionService() {
+        return promotionService;
+    }
+
     public boolean isAuthenticated() {
         return currentUser != null;
     }
@@ -65,7 +103,7 @@ public class SessionContext {
 
     public void logout() {
         if (currentUser != null) {
-            authService.logout();
+            authService.logout(currentUser);
             currentUser = null;
         }
     }
@@ -3,17 +3,20 @@ package com.retail.cli.handler;
 import com.retail.cli.ConsoleFormatter;
 import com.retail.cli.ConsoleInput;
 import com.retail.cli.SessionContext;
+import com.retail.db.StatementProfiler.StatementStats;
 import com.retail.model.Category;
 import com.retail.model.SecurityLog;
 import com.retail.model.User;
 import com.retail.model.enums.UserRole;
 import com.retail.model.enums.UserStatus;
+import com.retail.service.ReportCache;
 
 import java.util.ArrayList;
 import java.util.List;
 
 
 public class AdminMenuHandler extends BaseMenuHandler {
+    private static final int SQL_PROFILE_LIMIT = 20;
 
     public AdminMenuHandler(SessionContext context, ConsoleInput input) {
         super(context, input);
@@ -41,6 +44,8 @@ public class AdminMenuHandler extends BaseMenuHandler {
                 "Категории товаров",
                 "Единицы измерения",
                 "Журнал безопасности",
+                "Профилирование SQL",
+                "Кэш отчетов",
                 "Выйти в главное меню"
         };
     }
@@ -52,7 +57,9 @@ public class AdminMenuHandler extends BaseMenuHandler {
             case 2 -> handleCategoryManagement();
             case 3 -> handleUnitManagement();
             case 4 -> handleSecurityLog();
-            case 5 -> { return true; }
+            case 5 -> handleSqlProfile();
+            case 6 -> handleReportCache();
+            case 7 -> { return true; }
         }
         return false;
     }
@@ -377,6 +384,126 @@ public class AdminMenuHandler extends BaseMenuHandler {
         }
     }
 
+    private void handleSqlProfile() {
+        while (true) {
+            ConsoleFormatter.printHeader("ПРОФИЛИРОВАНИЕ SQL");
+            System.out.println("  1. Топ запросов по суммарному времени");
+            System.out.println("  2. План выполнения запроса");
+            System.out.println("  3. Сбросить статистику");
+            System.out.println("  4. Назад");
+            System.out.println();
+
+            int choice = input.readIntInRange("Выберите пункт", 1, 4);
+
+            switch (choice) {
+                case 1 -> showTopStatements();
+                case 2 -> showStatementPlan();
+                case 3 -> resetStatementStats();
+                case 4 -> { return; }
+            }
+        }
+    }
+
+    private List<StatementStats> printTopStatements() {
+        List<StatementStats> statements = context.getReportService().getTopStatements(SQL_PROFILE_LIMIT);
+
+        if (statements.isEmpty()) {
+            ConsoleFormatter.printInfo("Статистика пуста");
+            return statements;
+        }
+
+        String[] headers = {"#", "DAO", "Метод", "Вызовов", "Всего, мс", "Сред., мс", "Макс., мс",
+                "Строк", "КБ", "Медл.", "Таймаут", "План"};
+        List<String[]> rows = new ArrayList<>();
+
+        int n = 1;
+        for (StatementStats s : statements) {
+            rows.add(new String[]{
+                    String.valueOf(n++),
+                    truncate(s.getDao(), 28),
+                    truncate(s.getMethod(), 24),
+                    String.valueOf(s.getCalls()),
+                    String.format("%.1f", s.getTotalMillis()),
+                    String.format("%.2f", s.getMeanMillis()),
+                    String.format("%.1f", s.getMaxMillis()),
+                    String.valueOf(s.getRows()),
+                    String.valueOf(s.getBytes() / 1024),
+                    String.valueOf(s.getSlowCount()),
+                    String.valueOf(s.getCanceledCount()),
+                    s.getLastPlan() != null ? "Да" : "-"
+            });
+        }
+
+        ConsoleFormatter.printTable(headers, rows);
+        return statements;
+    }
+
+    private void showTopStatements() {
+        try {
+            printTopStatements();
+            pressEnterToContinue();
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void showStatementPlan() {
+        try {
+            List<StatementStats> statements = printTopStatements();
+            if (statements.isEmpty()) {
+                pressEnterToContinue();
+                return;
+            }
+
+            int index = input.readIntInRange("Номер запроса", 1, statements.size());
+            StatementStats s = statements.get(index - 1);
+
+            System.out.println();
+            System.out.println(s.getCompactSql());
+            System.out.println();
+            if (s.getLastPlan() != null) {
+                ConsoleFormatter.printInfo("План получен: " + ConsoleFormatter.formatDateTime(s.getLastPlanAt()));
+                System.out.println(s.getLastPlan());
+            } else if (s.isExplainable()) {
+                ConsoleFormatter.printInfo("План появится после выполнения дольше порога медленных запросов");
+            } else {
+                ConsoleFormatter.printInfo("Для изменяющих запросов план не собирается");
+            }
+            pressEnterToContinue();
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void resetStatementStats() {
+        if (input.readYesNo("Сбросить статистику SQL-запросов?")) {
+            context.getReportService().resetStatementStats();
+            showSuccessAndWait("Статистика сброшена");
+        }
+    }
+
+    
+
+    private void handleReportCache() {
+        ConsoleFormatter.printHeader("КЭШ ОТЧЕТОВ");
+        ReportCache.Stats stats = context.getReportService().getReportCacheStats();
+
+        System.out.println("Записей: " + stats.getSize() + " из " + stats.getMaxEntries()
+                + " (закрытые периоды: " + stats.getClosedPeriods() + ")");
+        System.out.println("Попаданий: " + stats.getHits());
+        System.out.println("Промахов: " + stats.getMisses());
+        System.out.printf("Доля попаданий: %.1f%%%n", stats.getHitRatio() * 100);
+        System.out.println("Сброшено по событиям: " + stats.getInvalidations());
+        System.out.println("Вытеснено: " + stats.getEvictions());
+        System.out.println();
+
+        if (input.readYesNo("Очистить кэш отчетов?")) {
+            context.getReportService().clearReportCache();
+            showSuccessAndWait("Кэш очищен");
+        }
+    }
+
     private String truncate(String s, int maxLen) {
         if (s == null) return "-";
         if (s.length() <= maxLen) return s;
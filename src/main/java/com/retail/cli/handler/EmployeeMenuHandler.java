@@ -1,9 +1,12 @@
 package com.retail.cli.handler;
 
+import com.retail.barcode.Barcodes;
+import com.retail.barcode.ScanResult;
 import com.retail.cli.ConsoleFormatter;
 import com.retail.cli.ConsoleInput;
 import com.retail.cli.SessionContext;
 import com.retail.exception.InsufficientStockException;
+import com.retail.exception.ValidationException;
 import com.retail.model.Product;
 import com.retail.model.Sale;
 import com.retail.model.SaleItem;
@@ -75,7 +78,7 @@ public class EmployeeMenuHandler extends BaseMenuHandler {
                     showCart(cart);
                 }
 
-                System.out.println("\nКоманды: [ID товара] - добавить, [0] - оплата, [У] - удалить последний");
+                System.out.println("\nКоманды: [штрихкод или ID товара] - добавить, [0] - оплата, [У] - удалить последний");
                 String input_str = input.readString("Действие");
 
                 if (input_str.equalsIgnoreCase("У") || input_str.equalsIgnoreCase("D")) {
@@ -86,12 +89,22 @@ public class EmployeeMenuHandler extends BaseMenuHandler {
                     continue;
                 }
 
+                ScanResult scan = null;
                 int productId;
-                try {
-                    productId = Integer.parseInt(input_str);
-                } catch (NumberFormatException e) {
-                    ConsoleFormatter.printError("Введите ID товара или команду");
-                    continue;
+                if (Barcodes.looksLikeBarcode(input_str)) {
+                    scan = context.getProductService().scanBarcode(input_str).orElse(null);
+                    if (scan == null) {
+                        ConsoleFormatter.printError("Штрихкод не найден");
+                        continue;
+                    }
+                    productId = scan.getProductId();
+                } else {
+                    try {
+                        productId = Integer.parseInt(input_str);
+                    } catch (NumberFormatException e) {
+                        ConsoleFormatter.printError("Введите штрихкод, ID товара или команду");
+                        continue;
+                    }
                 }
 
                 if (productId == 0) {
@@ -99,7 +112,7 @@ public class EmployeeMenuHandler extends BaseMenuHandler {
                 }
 
                 
-                Optional<Product> productOpt = context.getProductService().findById(productId);
+                Optional<Product> productOpt = context.getProductService().findForSale(productId);
                 if (productOpt.isEmpty()) {
                     ConsoleFormatter.printError("Товар не найден");
                     continue;
@@ -117,7 +130,19 @@ public class EmployeeMenuHandler extends BaseMenuHandler {
                     continue;
                 }
 
-                int quantity = input.readPositiveInt("Количество");
+                int quantity;
+                if (scan != null) {
+                    // Количество задано кодом: упаковка, вес или цена на этикетке
+                    try {
+                        quantity = scan.getQuantity(product.getSellingPrice());
+                    } catch (ValidationException e) {
+                        ConsoleFormatter.printError(e.getMessage());
+                        continue;
+                    }
+                    System.out.println("  Количество по коду: " + quantity);
+                } else {
+                    quantity = input.readPositiveInt("Количество");
+                }
 
                 if (quantity > stock) {
                     ConsoleFormatter.printError("Недостаточно товара! Доступно: " + stock);
@@ -170,6 +195,9 @@ public class EmployeeMenuHandler extends BaseMenuHandler {
                 System.out.println();
                 ConsoleFormatter.printSuccess("ПРОДАЖА ПРОВЕДЕНА!");
                 System.out.println("Чек №: " + completedSale.getSaleNumber());
+                if (completedSale.getPromotionDiscount().signum() > 0) {
+                    System.out.println("Скидка по акциям: " + ConsoleFormatter.formatMoney(completedSale.getPromotionDiscount()));
+                }
                 System.out.println("Сумма: " + ConsoleFormatter.formatMoney(completedSale.getFinalAmount()));
                 
             } catch (InsufficientStockException e) {
@@ -223,7 +251,7 @@ public class EmployeeMenuHandler extends BaseMenuHandler {
             
             if (choice == 1) {
                 int id = input.readPositiveInt("ID товара");
-                Optional<Product> productOpt = context.getProductService().findById(id);
+                Optional<Product> productOpt = context.getProductService().findForSale(id);
                 products = productOpt.map(List::of).orElse(List.of());
             } else {
                 String query = input.readNonEmptyString("Название (часть)");
@@ -4,16 +4,34 @@ import com.retail.cli.ConsoleFormatter;
 import com.retail.cli.ConsoleInput;
 import com.retail.cli.SessionContext;
 import com.retail.model.*;
+import com.retail.model.enums.BarcodeKind;
+import com.retail.model.enums.PriceChangeMode;
+import com.retail.model.enums.PriceRounding;
+import com.retail.model.enums.PromotionType;
+import com.retail.service.LowStockTracker;
+import com.retail.service.ReportJob;
 import com.retail.service.ReportService;
+import com.retail.service.StockReconciliationService;
+import com.retail.service.StocktakeService;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 
 public class ManagerMenuHandler extends BaseMenuHandler {
+    private static final int RECONCILIATION_ROWS = 50;
+    private static final int STOCKTAKE_ROWS = 50;
+    private static final int PRICE_CHANGE_ROWS = 50;
+    private static final int COUNT_BUFFER_SIZE = 100;
+
+    private long lastSeenAlert;
 
     public ManagerMenuHandler(SessionContext context, ConsoleInput input) {
         super(context, input);
@@ -21,7 +39,10 @@ public class ManagerMenuHandler extends BaseMenuHandler {
 
     @Override
     public boolean handle() {
+        // Показываем только оповещения, появившиеся после входа; текущий список - в меню склада
+        lastSeenAlert = context.getInventoryService().getLastLowStockAlertSequence();
         while (true) {
+            printLowStockAlerts();
             int choice = showMenu();
             if (processChoice(choice)) {
                 return true;
@@ -42,6 +63,7 @@ public class ManagerMenuHandler extends BaseMenuHandler {
                 "Приемка товара",
                 "Инвентаризация",
                 "Отчеты",
+                "Акции",
                 "Выйти в главное меню"
         };
     }
@@ -52,15 +74,25 @@ public class ManagerMenuHandler extends BaseMenuHandler {
             case 1 -> handleStockView();
             case 2 -> handleProductManagement();
             case 3 -> handleReceiptGoods();
-            case 4 -> handleInventoryAdjustment();
+            case 4 -> handleInventory();
             case 5 -> handleReports();
-            case 6 -> { return true; }
+            case 6 -> handlePromotions();
+            case 7 -> { return true; }
         }
         return false;
     }
 
     
 
+    private void printLowStockAlerts() {
+        List<LowStockTracker.Alert> alerts = context.getInventoryService().getLowStockAlertsAfter(lastSeenAlert);
+        for (LowStockTracker.Alert alert : alerts) {
+            ConsoleFormatter.printWarning(String.format("Низкий остаток: %s (%s) - %d при минимуме %d",
+                    alert.getProductName(), alert.getSku(), alert.getQuantity(), alert.getMinStockLevel()));
+            lastSeenAlert = alert.getSequence();
+        }
+    }
+
     private void handleStockView() {
         while (true) {
             ConsoleFormatter.printHeader("СКЛАД");
@@ -163,16 +195,26 @@ public class ManagerMenuHandler extends BaseMenuHandler {
             System.out.println("  1. Создать новый товар");
             System.out.println("  2. Изменить цену товара");
             System.out.println("  3. Просмотр товара");
-            System.out.println("  4. Назад");
+            System.out.println("  4. Массовое изменение цен");
+            System.out.println("  5. История цен товара");
+            System.out.println("  6. Запланировать цену");
+            System.out.println("  7. Запланированные цены");
+            System.out.println("  8. Штрихкоды товара");
+            System.out.println("  9. Назад");
             System.out.println();
 
-            int choice = input.readIntInRange("Выберите пункт", 1, 4);
+            int choice = input.readIntInRange("Выберите пункт", 1, 9);
 
             switch (choice) {
                 case 1 -> createProduct();
                 case 2 -> changePrice();
                 case 3 -> viewProduct();
-                case 4 -> { return; }
+                case 4 -> bulkChangePrices();
+                case 5 -> showPriceHistory();
+                case 6 -> schedulePrice();
+                case 7 -> showScheduledPrices();
+                case 8 -> manageBarcodes();
+                case 9 -> { return; }
             }
         }
     }
@@ -250,7 +292,7 @@ public class ManagerMenuHandler extends BaseMenuHandler {
             BigDecimal newPrice = input.readPositiveDecimal("Новая цена");
             
             if (input.readYesNo("Изменить цену?")) {
-                context.getProductService().updatePrice(productId, newPrice);
+                context.getProductService().updatePrice(productId, newPrice, context.getCurrentUserId());
                 showSuccessAndWait("Цена изменена");
             }
 
@@ -259,6 +301,263 @@ public class ManagerMenuHandler extends BaseMenuHandler {
         }
     }
 
+    private void bulkChangePrices() {
+        try {
+            ConsoleFormatter.printHeader("МАССОВОЕ ИЗМЕНЕНИЕ ЦЕН");
+            BulkPriceChange change = new BulkPriceChange();
+
+            List<Category> categories = context.getProductService().findAllCategories();
+            System.out.println("Категории:");
+            for (int i = 0; i < categories.size(); i++) {
+                System.out.println("  " + (i + 1) + ". " + categories.get(i).getName());
+            }
+            System.out.println("  0. Любая категория");
+            int catChoice = input.readIntInRange("Категория", 0, categories.size());
+            if (catChoice > 0) {
+                change.setCategoryId(categories.get(catChoice - 1).getId());
+            }
+            String skuFile = input.readOptionalString("Файл со списком артикулов");
+            if (!skuFile.isEmpty()) {
+                change.setSkus(context.getProductService().readSkuFile(Path.of(skuFile)));
+                System.out.println("Артикулов в файле: " + change.getSkus().size());
+            }
+
+            PriceChangeMode[] modes = PriceChangeMode.values();
+            System.out.println("\nСпособ изменения:");
+            for (int i = 0; i < modes.length; i++) {
+                System.out.println("  " + (i + 1) + ". " + modes[i].getDisplayName());
+            }
+            change.setMode(modes[input.readIntInRange("Способ", 1, modes.length) - 1]);
+            if (change.getMode() == PriceChangeMode.MARGIN) {
+                change.setValue(input.readDecimal("Маржа, %"));
+            } else {
+                boolean decrease = input.readYesNo("Снизить цены (иначе повысить)?");
+                BigDecimal value = input.readDecimal(change.getMode() == PriceChangeMode.ABSOLUTE ? "Сумма" : "Процент");
+                change.setValue(decrease ? value.negate() : value);
+            }
+
+            PriceRounding[] roundings = PriceRounding.values();
+            System.out.println("\nОкругление:");
+            for (int i = 0; i < roundings.length; i++) {
+                System.out.println("  " + (i + 1) + ". " + roundings[i].getDisplayName());
+            }
+            change.setRounding(roundings[input.readIntInRange("Округление", 1, roundings.length) - 1]);
+            change.setReason(input.readNonEmptyString("Причина изменения"));
+
+            List<PriceChange> preview = context.getProductService().previewBulkPriceChange(change);
+            if (preview.isEmpty()) {
+                showErrorAndWait("Цены выбранных товаров не изменятся");
+                return;
+            }
+
+            String[] headers = {"Артикул", "Товар", "Закупка", "Было", "Станет"};
+            List<String[]> rows = new ArrayList<>();
+            int invalid = 0;
+            for (PriceChange pc : preview) {
+                if (!pc.isValid()) {
+                    invalid++;
+                }
+                if (rows.size() < PRICE_CHANGE_ROWS) {
+                    rows.add(new String[]{
+                            pc.getProductSku(),
+                            truncate(pc.getProductName(), 25),
+                            ConsoleFormatter.formatMoney(pc.getPurchasePrice()),
+                            ConsoleFormatter.formatMoney(pc.getOldPrice()),
+                            pc.isValid() ? ConsoleFormatter.formatMoney(pc.getNewPrice()) : "пропуск"
+                    });
+                }
+            }
+            ConsoleFormatter.printTable(headers, rows);
+            if (preview.size() > PRICE_CHANGE_ROWS) {
+                ConsoleFormatter.printInfo("Показаны первые " + PRICE_CHANGE_ROWS + " из " + preview.size());
+            }
+            if (invalid > 0) {
+                ConsoleFormatter.printWarning("Товаров с неположительной новой ценой (будут пропущены): " + invalid);
+            }
+
+            if (input.readYesNo("Изменить цены " + (preview.size() - invalid) + " товаров?")) {
+                int changed = context.getProductService().applyBulkPriceChange(change, context.getCurrentUserId());
+                showSuccessAndWait("Цены изменены: " + changed + " товаров");
+            }
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void showPriceHistory() {
+        try {
+            int productId = input.readPositiveInt("ID товара");
+            List<PriceChange> history = context.getProductService().getPriceHistory(productId);
+            if (history.isEmpty()) {
+                showErrorAndWait("Цена товара не менялась");
+                return;
+            }
+
+            ConsoleFormatter.printHeader("ИСТОРИЯ ЦЕН: " + history.get(0).getProductName());
+            String[] headers = {"Действует с", "Было", "Стало", "Причина"};
+            List<String[]> rows = new ArrayList<>();
+            for (PriceChange pc : history) {
+                rows.add(new String[]{
+                        ConsoleFormatter.formatDateTime(pc.getEffectiveFrom()) + (pc.isPending() ? " (план)" : ""),
+                        pc.getOldPrice() != null ? ConsoleFormatter.formatMoney(pc.getOldPrice()) : "-",
+                        ConsoleFormatter.formatMoney(pc.getNewPrice()),
+                        truncate(pc.getReason(), 30)
+                });
+            }
+            ConsoleFormatter.printTable(headers, rows);
+
+            if (input.readYesNo("Показать цену на дату?")) {
+                LocalDate date = input.readDate("Дата");
+                context.getProductService().getPriceAt(productId, date.atStartOfDay()).ifPresentOrElse(
+                        price -> System.out.println("Цена на начало " + date + ": " + ConsoleFormatter.formatMoney(price)),
+                        () -> ConsoleFormatter.printWarning("Цена на эту дату неизвестна"));
+            }
+            pressEnterToContinue();
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void schedulePrice() {
+        try {
+            ConsoleFormatter.printHeader("ЗАПЛАНИРОВАТЬ ЦЕНУ");
+            int productId = input.readPositiveInt("ID товара");
+
+            var productOpt = context.getProductService().findById(productId);
+            if (productOpt.isEmpty()) {
+                showErrorAndWait("Товар не найден");
+                return;
+            }
+            Product product = productOpt.get();
+            System.out.println("Товар: " + product.getName());
+            System.out.println("Текущая цена: " + ConsoleFormatter.formatMoney(product.getSellingPrice()));
+
+            BigDecimal price = input.readPositiveDecimal("Новая цена");
+            LocalDate date = input.readDate("Действует с даты");
+            int hour = input.readIntInRange("Час начала действия", 0, 23);
+            String reason = input.readOptionalString("Причина");
+
+            LocalDateTime effectiveFrom = date.atTime(hour, 0);
+            if (input.readYesNo("Запланировать цену " + ConsoleFormatter.formatMoney(price) + " с "
+                    + ConsoleFormatter.formatDateTime(effectiveFrom) + "?")) {
+                context.getProductService().schedulePrice(productId, price, effectiveFrom,
+                        reason.isEmpty() ? null : reason, context.getCurrentUserId());
+                showSuccessAndWait("Цена запланирована");
+            }
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void showScheduledPrices() {
+        try {
+            List<PriceChange> scheduled = context.getProductService().getScheduledPrices();
+            ConsoleFormatter.printHeader("ЗАПЛАНИРОВАННЫЕ ЦЕНЫ");
+            if (scheduled.isEmpty()) {
+                ConsoleFormatter.printInfo("Запланированных цен нет");
+                pressEnterToContinue();
+                return;
+            }
+
+            String[] headers = {"№", "Артикул", "Товар", "Цена", "Действует с"};
+            List<String[]> rows = new ArrayList<>();
+            for (PriceChange pc : scheduled) {
+                rows.add(new String[]{
+                        String.valueOf(pc.getId()),
+                        pc.getProductSku(),
+                        truncate(pc.getProductName(), 25),
+                        ConsoleFormatter.formatMoney(pc.getNewPrice()),
+                        ConsoleFormatter.formatDateTime(pc.getEffectiveFrom())
+                });
+            }
+            ConsoleFormatter.printTable(headers, rows);
+
+            if (input.readYesNo("Отменить одну из запланированных цен?")) {
+                long id = input.readPositiveInt("Номер");
+                context.getProductService().cancelScheduledPrice(id);
+                showSuccessAndWait("Запланированная цена отменена");
+            } else {
+                pressEnterToContinue();
+            }
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void manageBarcodes() {
+        try {
+            int productId = input.readPositiveInt("ID товара");
+            var productOpt = context.getProductService().findById(productId);
+            if (productOpt.isEmpty()) {
+                showErrorAndWait("Товар не найден");
+                return;
+            }
+
+            while (true) {
+                List<ProductBarcode> barcodes = context.getProductService().getBarcodes(productId);
+                ConsoleFormatter.printHeader("ШТРИХКОДЫ: " + productOpt.get().getName());
+                if (barcodes.isEmpty()) {
+                    ConsoleFormatter.printInfo("Штрихкодов нет");
+                } else {
+                    String[] headers = {"Код", "Вид", "Кол-во"};
+                    List<String[]> rows = new ArrayList<>();
+                    for (ProductBarcode b : barcodes) {
+                        rows.add(new String[]{
+                                b.getCode(),
+                                b.getKind().getDisplayName(),
+                                b.getKind() == BarcodeKind.PRICE ? "-" : String.valueOf(b.getPackQuantity())
+                        });
+                    }
+                    ConsoleFormatter.printTable(headers, rows);
+                }
+                System.out.println("  1. Добавить штрихкод");
+                System.out.println("  2. Удалить штрихкод");
+                System.out.println("  3. Назад");
+
+                switch (input.readIntInRange("Выберите пункт", 1, 3)) {
+                    case 1 -> addBarcode(productId);
+                    case 2 -> {
+                        context.getProductService().removeBarcode(input.readNonEmptyString("Штрихкод"));
+                        ConsoleFormatter.printSuccess("Штрихкод удален");
+                    }
+                    case 3 -> { return; }
+                }
+            }
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void addBarcode(int productId) {
+        BarcodeKind[] kinds = BarcodeKind.values();
+        for (int i = 0; i < kinds.length; i++) {
+            System.out.println("  " + (i + 1) + ". " + kinds[i].getDisplayName());
+        }
+        BarcodeKind kind = kinds[input.readIntInRange("Вид штрихкода", 1, kinds.length) - 1];
+
+        String code;
+        int packQuantity = 1;
+        switch (kind) {
+            case UNIT -> {
+                code = input.readNonEmptyString("Штрихкод (EAN-8, UPC-A, EAN-13, GTIN-14)");
+                packQuantity = input.readPositiveInt("Единиц в упаковке");
+            }
+            case WEIGHT -> {
+                code = input.readNonEmptyString("Префикс весового кода (7 цифр, 2...)");
+                packQuantity = input.readPositiveInt("Граммов в единице учета");
+            }
+            default -> code = input.readNonEmptyString("Префикс кода с ценой (7 цифр, 2...)");
+        }
+
+        ProductBarcode barcode = context.getProductService().addBarcode(productId, code, kind, packQuantity);
+        ConsoleFormatter.printSuccess("Штрихкод " + barcode.getCode() + " добавлен");
+    }
+
     private void viewProduct() {
         try {
             int productId = input.readPositiveInt("ID товара");
@@ -292,6 +591,145 @@ public class ManagerMenuHandler extends BaseMenuHandler {
 
     
 
+    private void handlePromotions() {
+        while (true) {
+            ConsoleFormatter.printHeader("АКЦИИ");
+            System.out.println("  1. Действующие акции");
+            System.out.println("  2. Новая акция \"N по цене M\"");
+            System.out.println("  3. Новая скидка на категорию");
+            System.out.println("  4. Новый комплект по цене");
+            System.out.println("  5. Отключить акцию");
+            System.out.println("  6. Назад");
+            System.out.println();
+
+            int choice = input.readIntInRange("Выберите пункт", 1, 6);
+
+            switch (choice) {
+                case 1 -> showPromotions();
+                case 2 -> createPromotion(PromotionType.MULTI_BUY);
+                case 3 -> createPromotion(PromotionType.CATEGORY_PERCENT);
+                case 4 -> createPromotion(PromotionType.BUNDLE);
+                case 5 -> deactivatePromotion();
+                case 6 -> { return; }
+            }
+        }
+    }
+
+    private void showPromotions() {
+        try {
+            List<Promotion> promotions = context.getPromotionService().getActive();
+            ConsoleFormatter.printHeader("ДЕЙСТВУЮЩИЕ АКЦИИ");
+            if (promotions.isEmpty()) {
+                ConsoleFormatter.printInfo("Действующих акций нет");
+                pressEnterToContinue();
+                return;
+            }
+
+            String[] headers = {"№", "Название", "Тип", "Условие", "С", "По"};
+            List<String[]> rows = new ArrayList<>();
+            for (Promotion p : promotions) {
+                rows.add(new String[]{
+                        String.valueOf(p.getId()),
+                        truncate(p.getName(), 25),
+                        p.getType().getDisplayName(),
+                        truncate(describeTerms(p), 30),
+                        ConsoleFormatter.formatDateTime(p.getValidFrom()),
+                        p.getValidTo() != null ? ConsoleFormatter.formatDateTime(p.getValidTo()) : "-"
+                });
+            }
+            ConsoleFormatter.printTable(headers, rows);
+            pressEnterToContinue();
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private static String describeTerms(Promotion p) {
+        return switch (p.getType()) {
+            case MULTI_BUY -> "товар " + p.getProductId() + ": " + p.getBuyQuantity() + " по цене " + p.getPayQuantity();
+            case CATEGORY_PERCENT -> "категория " + p.getCategoryId() + ": -" + p.getDiscountPercent() + "%";
+            case BUNDLE -> p.getBundleItems() + " за " + ConsoleFormatter.formatMoney(p.getBundlePrice());
+        };
+    }
+
+    private void createPromotion(PromotionType type) {
+        try {
+            ConsoleFormatter.printHeader(type.getDisplayName().toUpperCase());
+            Promotion promotion = new Promotion();
+            promotion.setType(type);
+            promotion.setName(input.readNonEmptyString("Название акции"));
+
+            switch (type) {
+                case MULTI_BUY -> {
+                    promotion.setProductId(input.readPositiveInt("ID товара"));
+                    promotion.setBuyQuantity(input.readPositiveInt("Сколько покупается (N)"));
+                    promotion.setPayQuantity(input.readPositiveInt("Сколько оплачивается (M)"));
+                }
+                case CATEGORY_PERCENT -> {
+                    List<Category> categories = context.getProductService().findAllCategories();
+                    if (categories.isEmpty()) {
+                        showErrorAndWait("Категорий нет");
+                        return;
+                    }
+                    for (int i = 0; i < categories.size(); i++) {
+                        System.out.println("  " + (i + 1) + ". " + categories.get(i).getName());
+                    }
+                    int catChoice = input.readIntInRange("Категория", 1, categories.size());
+                    promotion.setCategoryId(categories.get(catChoice - 1).getId());
+                    promotion.setDiscountPercent(input.readPositiveDecimal("Скидка, %"));
+                }
+                case BUNDLE -> {
+                    System.out.println("Состав комплекта (пустой ID - конец ввода):");
+                    while (true) {
+                        String id = input.readOptionalString("ID товара");
+                        if (id.isEmpty()) {
+                            break;
+                        }
+                        int productId;
+                        try {
+                            productId = Integer.parseInt(id);
+                        } catch (NumberFormatException e) {
+                            ConsoleFormatter.printError("Введите число");
+                            continue;
+                        }
+                        int quantity = input.readPositiveInt("Количество");
+                        promotion.getBundleItems().merge(productId, quantity, Integer::sum);
+                    }
+                    promotion.setBundlePrice(input.readPositiveDecimal("Цена комплекта"));
+                }
+            }
+
+            LocalDate from = input.readDate("Действует с даты");
+            promotion.setValidFrom(from.atStartOfDay());
+            if (input.readYesNo("Ограничить срок действия?")) {
+                promotion.setValidTo(input.readDate("Действует по дату включительно").plusDays(1).atStartOfDay());
+            }
+
+            if (input.readYesNo("Создать акцию?")) {
+                promotion = context.getPromotionService().create(promotion, context.getCurrentUserId());
+                showSuccessAndWait("Акция создана (№" + promotion.getId() + ")");
+            }
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void deactivatePromotion() {
+        try {
+            int promotionId = input.readPositiveInt("Номер акции");
+            if (input.readYesNo("Отключить акцию №" + promotionId + "?")) {
+                context.getPromotionService().deactivate(promotionId);
+                showSuccessAndWait("Акция отключена");
+            }
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+    
+
     private void handleReceiptGoods() {
         try {
             ConsoleFormatter.printHeader("ПРИЕМКА ТОВАРА");
@@ -348,6 +786,194 @@ public class ManagerMenuHandler extends BaseMenuHandler {
 
     
 
+    private void handleInventory() {
+        while (true) {
+            ConsoleFormatter.printHeader("ИНВЕНТАРИЗАЦИЯ");
+            Optional<Stocktake> open = Optional.empty();
+            try {
+                open = context.getStocktakeService().getOpen();
+            } catch (Exception e) {
+                ConsoleFormatter.printError(e.getMessage());
+            }
+            open.ifPresentOrElse(
+                    st -> System.out.println("Открыта инвентаризация №" + st.getId() + " от "
+                            + ConsoleFormatter.formatDateTime(st.getStartedAt()) + ", подсчитано товаров: "
+                            + st.getCountedCount() + " из " + st.getItemCount()),
+                    () -> System.out.println("Открытой инвентаризации нет"));
+            System.out.println();
+            System.out.println("  1. Корректировка остатка товара");
+            System.out.println("  2. Открыть инвентаризацию");
+            System.out.println("  3. Ввод подсчетов");
+            System.out.println("  4. Загрузить файл сканера");
+            System.out.println("  5. Расхождения");
+            System.out.println("  6. Провести инвентаризацию");
+            System.out.println("  7. Отменить инвентаризацию");
+            System.out.println("  8. Назад");
+            System.out.println();
+
+            int choice = input.readIntInRange("Выберите пункт", 1, 8);
+            if (choice == 1) {
+                handleInventoryAdjustment();
+            } else if (choice == 2) {
+                startStocktake();
+            } else if (choice == 8) {
+                return;
+            } else if (open.isEmpty()) {
+                showErrorAndWait("Сначала откройте инвентаризацию");
+            } else {
+                Stocktake stocktake = open.get();
+                switch (choice) {
+                    case 3 -> enterCounts(stocktake);
+                    case 4 -> importScannerFile(stocktake);
+                    case 5 -> showStocktakeDiscrepancies(stocktake);
+                    case 6 -> applyStocktake(stocktake);
+                    case 7 -> cancelStocktake(stocktake);
+                }
+            }
+        }
+    }
+
+    private void startStocktake() {
+        try {
+            String notes = input.readOptionalString("Комментарий");
+            Stocktake stocktake = context.getStocktakeService()
+                    .start(context.getCurrentUserId(), notes.isEmpty() ? null : notes);
+            showSuccessAndWait("Открыта инвентаризация №" + stocktake.getId()
+                    + ", зафиксировано остатков: " + stocktake.getItemCount());
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    /**
+     * Ввод подсчетов копится локально и отправляется пачками по COUNT_BUFFER_SIZE артикулов.
+     */
+    private void enterCounts(Stocktake stocktake) {
+        try {
+            ConsoleFormatter.printHeader("ВВОД ПОДСЧЕТОВ");
+            boolean add = input.readYesNo("Прибавлять к ранее подсчитанному (иначе заменять)?");
+            ConsoleFormatter.printInfo("Пустой артикул - завершить ввод");
+
+            StocktakeService stocktakes = context.getStocktakeService();
+            Map<String, Integer> buffer = new LinkedHashMap<>();
+            int recorded = 0;
+            List<String> unknown = new ArrayList<>();
+            while (true) {
+                String sku = input.readString("Артикул");
+                if (sku.isEmpty()) {
+                    break;
+                }
+                int quantity = input.readIntInRange("Количество", 0, Integer.MAX_VALUE);
+                buffer.merge(sku, quantity, add ? Integer::sum : (oldValue, newValue) -> newValue);
+                if (buffer.size() >= COUNT_BUFFER_SIZE) {
+                    StocktakeService.CountResult result = stocktakes.recordCounts(stocktake.getId(), buffer, add);
+                    recorded += result.getRecorded();
+                    unknown.addAll(result.getUnknownSkus());
+                    buffer.clear();
+                }
+            }
+            StocktakeService.CountResult result = stocktakes.recordCounts(stocktake.getId(), buffer, add);
+            recorded += result.getRecorded();
+            unknown.addAll(result.getUnknownSkus());
+
+            printUnknownSkus(unknown);
+            showSuccessAndWait("Записано подсчетов: " + recorded);
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void importScannerFile(Stocktake stocktake) {
+        try {
+            String file = input.readNonEmptyString("Путь к файлу сканера");
+            StocktakeService.CountResult result = context.getStocktakeService()
+                    .importScannerFile(stocktake.getId(), Path.of(file));
+
+            System.out.println("Строк: " + result.getLines() + ", товаров: " + result.getRecorded());
+            if (result.getInvalidLines() > 0) {
+                ConsoleFormatter.printWarning("Пропущено некорректных строк: " + result.getInvalidLines());
+            }
+            printUnknownSkus(result.getUnknownSkus());
+            showSuccessAndWait("Файл загружен");
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void printUnknownSkus(List<String> unknown) {
+        if (!unknown.isEmpty()) {
+            ConsoleFormatter.printWarning("Неизвестные артикулы (" + unknown.size() + "): "
+                    + truncate(String.join(", ", unknown), 200));
+        }
+    }
+
+    private void showStocktakeDiscrepancies(Stocktake stocktake) {
+        try {
+            boolean uncountedAsZero = input.readYesNo("Считать неподсчитанные товары отсутствующими?");
+            List<StocktakeLine> lines = context.getStocktakeService()
+                    .getDiscrepancies(stocktake.getId(), uncountedAsZero);
+            printStocktakeLines(lines);
+            pressEnterToContinue();
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void printStocktakeLines(List<StocktakeLine> lines) {
+        ConsoleFormatter.printHeader("РАСХОЖДЕНИЯ ИНВЕНТАРИЗАЦИИ");
+        if (lines.isEmpty()) {
+            ConsoleFormatter.printSuccess("Расхождений нет");
+            return;
+        }
+        String[] headers = {"Артикул", "Товар", "Зафикс.", "Движение", "Подсчет", "Остаток", "Разница"};
+        List<String[]> rows = new ArrayList<>();
+        for (StocktakeLine line : lines) {
+            if (rows.size() == STOCKTAKE_ROWS) {
+                break;
+            }
+            rows.add(new String[]{
+                    line.getProductSku(),
+                    truncate(line.getProductName(), 20),
+                    String.valueOf(line.getFrozenQuantity()),
+                    String.valueOf(line.getMovedDuringCount()),
+                    line.isCounted() ? String.valueOf(line.getCountedQuantity()) : "-",
+                    String.valueOf(line.getCurrentQuantity()),
+                    (line.getDelta() > 0 ? "+" : "") + line.getDelta()
+            });
+        }
+        ConsoleFormatter.printTable(headers, rows);
+        if (lines.size() > STOCKTAKE_ROWS) {
+            ConsoleFormatter.printInfo("Показаны первые " + STOCKTAKE_ROWS + " из " + lines.size());
+        }
+    }
+
+    private void applyStocktake(Stocktake stocktake) {
+        try {
+            boolean uncountedAsZero = input.readYesNo("Списать неподсчитанные товары как отсутствующие?");
+            StocktakeService stocktakes = context.getStocktakeService();
+            List<StocktakeLine> lines = stocktakes.getDiscrepancies(stocktake.getId(), uncountedAsZero);
+            printStocktakeLines(lines);
+
+            if (input.readYesNo("Провести инвентаризацию №" + stocktake.getId() + "?")) {
+                int changed = stocktakes.apply(stocktake.getId(), context.getCurrentUserId(), uncountedAsZero);
+                showSuccessAndWait("Инвентаризация проведена, скорректировано остатков: " + changed);
+            }
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void cancelStocktake(Stocktake stocktake) {
+        try {
+            if (input.readYesNo("Отменить инвентаризацию №" + stocktake.getId() + " без изменения остатков?")) {
+                context.getStocktakeService().cancel(stocktake.getId());
+                showSuccessAndWait("Инвентаризация отменена");
+            }
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
     private void handleInventoryAdjustment() {
         try {
             ConsoleFormatter.printHeader("КОРРЕКТИРОВКА ОСТАТКА (ИНВЕНТАРИЗАЦИЯ)");
@@ -393,10 +1019,14 @@ public class ManagerMenuHandler extends BaseMenuHandler {
             System.out.println("  4. Топ продаваемых товаров");
             System.out.println("  5. Отчет по остаткам");
             System.out.println("  6. Журнал корректировок");
-            System.out.println("  7. Назад");
+            System.out.println("  7. Сводка");
+            System.out.println("  8. Выручка по категориям за период");
+            System.out.println("  9. Фоновые отчеты");
+            System.out.println("  10. Сверка остатков с журналом движений");
+            System.out.println("  11. Назад");
             System.out.println();
 
-            int choice = input.readIntInRange("Выберите пункт", 1, 7);
+            int choice = input.readIntInRange("Выберите пункт", 1, 11);
 
             switch (choice) {
                 case 1 -> showTodayRevenue();
@@ -405,7 +1035,11 @@ public class ManagerMenuHandler extends BaseMenuHandler {
                 case 4 -> showTopProducts();
                 case 5 -> showStockReport();
                 case 6 -> showAdjustmentLog();
-                case 7 -> { return; }
+                case 7 -> showDashboard();
+                case 8 -> showCategoryRevenue();
+                case 9 -> handleBackgroundReports();
+                case 10 -> showReconciliation();
+                case 11 -> { return; }
             }
         }
     }
@@ -493,6 +1127,60 @@ public class ManagerMenuHandler extends BaseMenuHandler {
         showAllStock();
     }
 
+    private void showDashboard() {
+        try {
+            ReportService.DashboardStats stats = context.getReportService().getDashboardStats();
+            ConsoleFormatter.printHeader("СВОДКА");
+            System.out.println("Дата: " + ConsoleFormatter.formatDate(LocalDate.now()));
+            System.out.println("Выручка за сегодня: " + ConsoleFormatter.formatMoney(stats.getTodayRevenue()));
+            System.out.println("Продаж за сегодня: " + stats.getTodaySales());
+            System.out.println("Выручка за месяц: " + ConsoleFormatter.formatMoney(stats.getMonthRevenue()));
+            System.out.println("Товаров: " + stats.getTotalProducts());
+            System.out.println("С низким остатком: " + stats.getLowStockProducts());
+            pressEnterToContinue();
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void showCategoryRevenue() {
+        try {
+            LocalDate startDate = input.readDate("Дата начала");
+            LocalDate endDate = input.readDate("Дата окончания");
+
+            List<Object[]> categories = context.getReportService().getRevenueByCategory(
+                    startDate.atStartOfDay(),
+                    endDate.plusDays(1).atStartOfDay());
+
+            if (categories.isEmpty()) {
+                ConsoleFormatter.printInfo("Нет данных о продажах");
+                pressEnterToContinue();
+                return;
+            }
+
+            ConsoleFormatter.printHeader("ВЫРУЧКА ПО КАТЕГОРИЯМ");
+            System.out.println("Период: " + ConsoleFormatter.formatDate(startDate) +
+                    " - " + ConsoleFormatter.formatDate(endDate));
+
+            String[] headers = {"Категория", "Продано", "Выручка"};
+            List<String[]> rows = new ArrayList<>();
+
+            for (Object[] row : categories) {
+                rows.add(new String[]{
+                        truncate((String) row[0], 30),
+                        String.valueOf(row[1]),
+                        ConsoleFormatter.formatMoney((BigDecimal) row[2])
+                });
+            }
+
+            ConsoleFormatter.printTable(headers, rows);
+            pressEnterToContinue();
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
     private void showAdjustmentLog() {
         try {
             List<StockLog> logs = context.getReportService().getAdjustmentLog();
@@ -528,6 +1216,193 @@ public class ManagerMenuHandler extends BaseMenuHandler {
         }
     }
 
+    private void showReconciliation() {
+        try {
+            ConsoleFormatter.printInfo("Сверка остатков с журналом движений...");
+            StockReconciliationService.ReconciliationReport report =
+                    context.getReconciliationService().reconcile();
+
+            ConsoleFormatter.printHeader("СВЕРКА ОСТАТКОВ");
+            System.out.println("Начало: " + ConsoleFormatter.formatDateTime(report.getStartedAt()));
+            System.out.println("Диапазонов товаров: " + report.getRangeCount() + ", время: " + report.getDurationMs() + " мс");
+            if (report.isClean()) {
+                ConsoleFormatter.printSuccess("Расхождений не найдено");
+                pressEnterToContinue();
+                return;
+            }
+            report.getCountsByType().forEach((type, count) ->
+                    System.out.println("  " + type.getDisplayName() + ": " + count));
+
+            String[] headers = {"Артикул", "Товар", "Расхождение", "Запись", "Ожид.", "Факт"};
+            List<String[]> rows = new ArrayList<>();
+            for (StockDiscrepancy d : report.getDiscrepancies()) {
+                if (rows.size() == RECONCILIATION_ROWS) {
+                    break;
+                }
+                rows.add(new String[]{
+                        d.getProductSku(),
+                        truncate(d.getProductName(), 20),
+                        truncate(d.getType().getDisplayName(), 30),
+                        d.getStockLogId() != null ? String.valueOf(d.getStockLogId()) : "-",
+                        String.valueOf(d.getExpected()),
+                        String.valueOf(d.getActual())
+                });
+            }
+            ConsoleFormatter.printTable(headers, rows);
+            if (report.getDiscrepancies().size() > RECONCILIATION_ROWS) {
+                ConsoleFormatter.printInfo("Показаны первые " + RECONCILIATION_ROWS + " из "
+                        + report.getDiscrepancies().size() + ", полный список - в журнале приложения");
+            }
+            pressEnterToContinue();
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void handleBackgroundReports() {
+        while (true) {
+            ConsoleFormatter.printHeader("ФОНОВЫЕ ОТЧЕТЫ");
+            System.out.println("  1. Журнал продаж за период");
+            System.out.println("  2. Позиции продаж за период");
+            System.out.println("  3. Движение товаров за период");
+            System.out.println("  4. Мои задания");
+            System.out.println("  5. Просмотр результата");
+            System.out.println("  6. Отменить задание");
+            System.out.println("  7. Назад");
+            System.out.println();
+
+            int choice = input.readIntInRange("Выберите пункт", 1, 7);
+
+            switch (choice) {
+                case 1, 2, 3 -> submitBackgroundReport(choice);
+                case 4 -> showReportJobs();
+                case 5 -> viewReportJob();
+                case 6 -> cancelReportJob();
+                case 7 -> { return; }
+            }
+        }
+    }
+
+    private void submitBackgroundReport(int type) {
+        try {
+            LocalDate startDate = input.readDate("Дата начала");
+            LocalDate endDate = input.readDate("Дата окончания");
+            LocalDateTime start = startDate.atStartOfDay();
+            LocalDateTime end = endDate.plusDays(1).atStartOfDay();
+            Integer ownerId = context.getCurrentUserId();
+
+            ReportService reports = context.getReportService();
+            ReportJob job = switch (type) {
+                case 1 -> reports.submitSalesJournal(start, end, ownerId);
+                case 2 -> reports.submitSaleLinesReport(start, end, ownerId);
+                default -> reports.submitStockMovementReport(start, end, ownerId);
+            };
+            showSuccessAndWait("Отчет поставлен в очередь, номер задания: " + job.getId());
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void showReportJobs() {
+        try {
+            List<ReportJob> jobs = context.getReportService().getReportJobs(context.getCurrentUserId());
+
+            if (jobs.isEmpty()) {
+                ConsoleFormatter.printInfo("Нет заданий");
+                pressEnterToContinue();
+                return;
+            }
+
+            ConsoleFormatter.printHeader("МОИ ЗАДАНИЯ");
+
+            String[] headers = {"№", "Отчет", "Статус", "Строк", "Страниц", "Время, с", "Поставлен"};
+            List<String[]> rows = new ArrayList<>();
+
+            for (ReportJob job : jobs) {
+                String status = job.getStatus().getDisplayName();
+                if (job.getError() != null) {
+                    status += ": " + truncate(job.getError(), 30);
+                }
+                rows.add(new String[]{
+                        String.valueOf(job.getId()),
+                        truncate(job.getTitle(), 40),
+                        status,
+                        String.valueOf(job.getRowCount()),
+                        String.valueOf(job.getPageCount()),
+                        String.format("%.1f", job.getElapsed().toMillis() / 1000.0),
+                        ConsoleFormatter.formatDateTime(job.getSubmittedAt())
+                });
+            }
+
+            ConsoleFormatter.printTable(headers, rows);
+            pressEnterToContinue();
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void viewReportJob() {
+        try {
+            int id = input.readPositiveInt("Номер задания");
+            ReportService reports = context.getReportService();
+            ReportJob job = reports.getReportJob(id);
+
+            int page = 0;
+            while (true) {
+                List<String[]> rows = reports.getReportJobPage(id, page);
+                int pages = job.getPageCount();
+
+                ConsoleFormatter.printHeader(job.getTitle());
+                System.out.println("Статус: " + job.getStatus().getDisplayName() +
+                        ", строк: " + job.getRowCount());
+                if (rows.isEmpty()) {
+                    ConsoleFormatter.printInfo("Нет данных");
+                    pressEnterToContinue();
+                    return;
+                }
+
+                List<String[]> display = new ArrayList<>(rows.size());
+                for (String[] row : rows) {
+                    String[] cells = new String[row.length];
+                    for (int i = 0; i < row.length; i++) {
+                        cells[i] = truncate(row[i], 25);
+                    }
+                    display.add(cells);
+                }
+                ConsoleFormatter.printTable(job.getHeaders(), display);
+                System.out.println("Страница " + (page + 1) + " из " + pages);
+
+                if (pages <= 1) {
+                    pressEnterToContinue();
+                    return;
+                }
+                int next = input.readIntInRange("Страница (0 - выход)", 0, pages);
+                if (next == 0) {
+                    return;
+                }
+                page = next - 1;
+            }
+
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
+    private void cancelReportJob() {
+        try {
+            int id = input.readPositiveInt("Номер задания");
+            if (context.getReportService().cancelReportJob(id)) {
+                showSuccessAndWait("Задание отменено");
+            } else {
+                showErrorAndWait("Задание уже завершено или не найдено");
+            }
+        } catch (Exception e) {
+            showErrorAndWait(e.getMessage());
+        }
+    }
+
     private String truncate(String s, int maxLen) {
         if (s == null) return "-";
         if (s.length() <= maxLen) return s;
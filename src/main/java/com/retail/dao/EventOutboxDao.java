@@ -0,0 +1,109 @@
+package com.retail.dao;
+
+import com.retail.model.DomainEvent;
+import com.retail.model.enums.EventType;
+import com.retail.util.AppConfig;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Таблица event_outbox: события пишутся в транзакции операции и удаляются
+ * после переноса в локальный журнал событий.
+ */
+public class EventOutboxDao extends AbstractDao<DomainEvent, Long> {
+    private static final boolean ENABLED = AppConfig.getBoolean("events.outbox.enabled", false);
+
+    /**
+     * Пишутся ли события в outbox на этом узле.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    protected String getTableName() {
+        return "event_outbox";
+    }
+
+    @Override
+    protected DomainEvent mapRow(ResultSet rs) throws SQLException {
+        DomainEvent event = new DomainEvent();
+        event.setId(rs.getLong("id"));
+        event.setEventType(EventType.fromString(rs.getString("event_type")));
+        event.setAggregateId(rs.getInt("aggregate_id"));
+        event.setPayload(rs.getString("payload"));
+        event.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        return event;
+    }
+
+    @Override
+    public DomainEvent save(DomainEvent event) throws SQLException {
+        throw new UnsupportedOperationException("Используйте save(Connection, DomainEvent) в транзакции операции");
+    }
+
+    
+    public DomainEvent save(Connection conn, DomainEvent event) throws SQLException {
+        String sql = """
+            INSERT INTO event_outbox (event_type, aggregate_id, payload, created_at)
+            VALUES (?, ?, ?, ?)
+            RETURNING id
+            """;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, event.getEventType().name());
+            stmt.setInt(2, event.getAggregateId());
+            stmt.setString(3, event.getPayload());
+            stmt.setTimestamp(4, Timestamp.valueOf(event.getCreatedAt()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                event.setId(rs.getLong(1));
+            }
+        }
+        return event;
+    }
+
+    @Override
+    public void update(DomainEvent event) throws SQLException {
+        throw new UnsupportedOperationException("События не изменяются");
+    }
+
+    @Override
+    public void delete(Long id) throws SQLException {
+        executeUpdate("DELETE FROM event_outbox WHERE id = ?", id);
+    }
+
+    
+    /**
+     * Старейшие события, ожидающие переноса.
+     */
+    public List<DomainEvent> findBatch(int limit) throws SQLException {
+        String sql = "SELECT * FROM event_outbox ORDER BY id LIMIT ?";
+
+        List<DomainEvent> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(mapRow(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    public void deleteAll(Collection<Long> ids) throws SQLException {
+        String sql = "DELETE FROM event_outbox WHERE id = ANY(?)";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("bigint", ids.toArray()));
+            stmt.executeUpdate();
+        }
+    }
+}
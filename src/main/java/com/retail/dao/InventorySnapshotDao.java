@@ -0,0 +1,201 @@
+package com.retail.dao;
+
+import com.retail.model.InventorySnapshot;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+
+/**
+ * Снимки остатков и восстановление остатков на момент времени: ближайший снимок
+ * (или текущая таблица inventory) плюс сумма изменений stock_log между снимком и моментом.
+ * В снимке хранятся только ненулевые остатки.
+ */
+public class InventorySnapshotDao extends AbstractDao<InventorySnapshot, Integer> {
+
+    @Override
+    protected String getTableName() {
+        return "inventory_snapshots";
+    }
+
+    @Override
+    protected InventorySnapshot mapRow(ResultSet rs) throws SQLException {
+        InventorySnapshot snapshot = new InventorySnapshot();
+        snapshot.setId(rs.getInt("id"));
+        snapshot.setTakenAt(rs.getTimestamp("taken_at").toLocalDateTime());
+        snapshot.setProductCount(rs.getInt("product_count"));
+        snapshot.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        return snapshot;
+    }
+
+    @Override
+    public InventorySnapshot save(InventorySnapshot snapshot) throws SQLException {
+        throw new UnsupportedOperationException("Снимок создается методом create");
+    }
+
+    @Override
+    public void update(InventorySnapshot snapshot) throws SQLException {
+        throw new UnsupportedOperationException("Снимки не изменяются");
+    }
+
+    @Override
+    public void delete(Integer id) throws SQLException {
+        executeUpdate("DELETE FROM inventory_snapshots WHERE id = ?", id);
+    }
+
+    
+    /**
+     * Снимает остатки на момент takenAt: текущий остаток минус изменения, записанные позже.
+     * Оба источника читаются одним запросом, то есть из одного снимка данных БД.
+     * Возвращает пустой результат, если снимок на этот момент уже есть.
+     */
+    public Optional<InventorySnapshot> create(Connection conn, LocalDateTime takenAt) throws SQLException {
+        String insertSnapshot = """
+            INSERT INTO inventory_snapshots (taken_at)
+            VALUES (?)
+            ON CONFLICT (taken_at) DO NOTHING
+            RETURNING id, taken_at, product_count, created_at
+            """;
+        String insertItems = """
+            INSERT INTO inventory_snapshot_items (snapshot_id, product_id, quantity)
+            SELECT ?, i.product_id, i.quantity - COALESCE(d.delta, 0)
+            FROM inventory i
+            LEFT JOIN (SELECT product_id, SUM(quantity_change) AS delta
+                       FROM stock_log
+                       WHERE created_at > ?
+                       GROUP BY product_id) d ON d.product_id = i.product_id
+            WHERE i.quantity - COALESCE(d.delta, 0) <> 0
+            """;
+
+        InventorySnapshot snapshot;
+        try (PreparedStatement stmt = conn.prepareStatement(insertSnapshot)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(takenAt));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                snapshot = mapRow(rs);
+            }
+        }
+
+        int count;
+        try (PreparedStatement stmt = conn.prepareStatement(insertItems)) {
+            stmt.setInt(1, snapshot.getId());
+            stmt.setTimestamp(2, Timestamp.valueOf(takenAt));
+            count = stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE inventory_snapshots SET product_count = ? WHERE id = ?")) {
+            stmt.setInt(1, count);
+            stmt.setInt(2, snapshot.getId());
+            stmt.executeUpdate();
+        }
+        snapshot.setProductCount(count);
+        return Optional.of(snapshot);
+    }
+
+    
+    public Optional<InventorySnapshot> findLatestAtOrBefore(LocalDateTime at) throws SQLException {
+        String sql = "SELECT * FROM inventory_snapshots WHERE taken_at <= ? ORDER BY taken_at DESC LIMIT 1";
+        return executeQuerySingle(sql, Timestamp.valueOf(at));
+    }
+
+    
+    public Optional<InventorySnapshot> findEarliestAfter(LocalDateTime at) throws SQLException {
+        String sql = "SELECT * FROM inventory_snapshots WHERE taken_at > ? ORDER BY taken_at LIMIT 1";
+        return executeQuerySingle(sql, Timestamp.valueOf(at));
+    }
+
+    
+    public boolean existsAt(LocalDateTime takenAt) throws SQLException {
+        String sql = "SELECT 1 FROM inventory_snapshots WHERE taken_at = ?";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(takenAt));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    
+    /**
+     * Удаляет снимки старше before. Даты до самого раннего снимка по-прежнему
+     * восстанавливаются, но обратным проходом от него.
+     */
+    public int deleteTakenBefore(LocalDateTime before) throws SQLException {
+        return executeUpdate("DELETE FROM inventory_snapshots WHERE taken_at < ?", Timestamp.valueOf(before));
+    }
+
+    
+    /**
+     * Остатки на момент at от снимка: вперед по изменениям после снимка,
+     * если снимок раньше at, иначе назад. productId = null - по всем товарам.
+     */
+    public Map<Integer, Integer> stockFromSnapshot(InventorySnapshot snapshot, LocalDateTime at,
+                                                   Integer productId) throws SQLException {
+        boolean forward = !snapshot.getTakenAt().isAfter(at);
+        LocalDateTime from = forward ? snapshot.getTakenAt() : at;
+        LocalDateTime to = forward ? at : snapshot.getTakenAt();
+        return replay("SELECT product_id, quantity FROM inventory_snapshot_items WHERE snapshot_id = ?",
+                snapshot.getId(), forward ? 1 : -1, from, to, productId);
+    }
+
+    
+    /**
+     * Остатки на момент at от текущей таблицы inventory: назад по всем изменениям после at.
+     */
+    public Map<Integer, Integer> stockFromInventory(LocalDateTime at, Integer productId) throws SQLException {
+        return replay("SELECT product_id, quantity FROM inventory WHERE TRUE", null, -1, at, null, productId);
+    }
+
+    private Map<Integer, Integer> replay(String base, Integer snapshotId, int sign, LocalDateTime from,
+                                         LocalDateTime to, Integer productId) throws SQLException {
+        String productFilter = productId != null ? " AND product_id = ?" : "";
+        String sql = """
+            SELECT COALESCE(s.product_id, d.product_id) AS product_id,
+                   COALESCE(s.quantity, 0) + ? * COALESCE(d.delta, 0) AS quantity
+            FROM (%s%s) s
+            FULL JOIN (SELECT product_id, SUM(quantity_change) AS delta
+                       FROM stock_log
+                       WHERE created_at > ?%s%s
+                       GROUP BY product_id) d ON d.product_id = s.product_id
+            """.formatted(base, productFilter, to != null ? " AND created_at <= ?" : "", productFilter);
+
+        List<Object> params = new ArrayList<>();
+        params.add(sign);
+        if (snapshotId != null) {
+            params.add(snapshotId);
+        }
+        if (productId != null) {
+            params.add(productId);
+        }
+        params.add(Timestamp.valueOf(from));
+        if (to != null) {
+            params.add(Timestamp.valueOf(to));
+        }
+        if (productId != null) {
+            params.add(productId);
+        }
+
+        Map<Integer, Integer> result = new HashMap<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setParameters(stmt, params.toArray());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int quantity = rs.getInt("quantity");
+                    if (quantity != 0) {
+                        result.put(rs.getInt("product_id"), quantity);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,408 @@
+package com.retail.dao;
+
+import com.retail.model.BulkPriceChange;
+import com.retail.model.PriceChange;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+
+/**
+ * История цен и массовое изменение цен. Массовое изменение выполняется одним запросом:
+ * новая цена считается в SQL по правилу, products и price_history меняются вместе.
+ * Запланированные цены хранятся в истории с activated_at = NULL до наступления effective_from.
+ */
+public class PriceHistoryDao extends AbstractDao<PriceChange, Long> {
+
+    @Override
+    protected String getTableName() {
+        return "price_history";
+    }
+
+    @Override
+    protected PriceChange mapRow(ResultSet rs) throws SQLException {
+        PriceChange change = new PriceChange();
+        change.setId(rs.getLong("id"));
+        change.setProductId(rs.getInt("product_id"));
+        change.setProductSku(rs.getString("sku"));
+        change.setProductName(rs.getString("name"));
+        change.setOldPrice(rs.getBigDecimal("old_price"));
+        change.setNewPrice(rs.getBigDecimal("new_price"));
+        change.setEffectiveFrom(rs.getTimestamp("effective_from").toLocalDateTime());
+        Timestamp activatedAt = rs.getTimestamp("activated_at");
+        if (activatedAt != null) {
+            change.setActivatedAt(activatedAt.toLocalDateTime());
+        }
+        change.setReason(rs.getString("reason"));
+
+        int changedBy = rs.getInt("changed_by");
+        if (!rs.wasNull()) {
+            change.setChangedBy(changedBy);
+        }
+        change.setChangedAt(rs.getTimestamp("changed_at").toLocalDateTime());
+        return change;
+    }
+
+    @Override
+    public PriceChange save(PriceChange change) throws SQLException {
+        throw new UnsupportedOperationException("История пишется вместе с изменением цены");
+    }
+
+    @Override
+    public void update(PriceChange change) throws SQLException {
+        throw new UnsupportedOperationException("История цен не изменяется");
+    }
+
+    @Override
+    public void delete(Long id) throws SQLException {
+        throw new UnsupportedOperationException("История цен не удаляется");
+    }
+
+    
+    public List<PriceChange> findByProduct(Integer productId) throws SQLException {
+        String sql = """
+            SELECT h.*, p.sku, p.name
+            FROM price_history h
+            JOIN products p ON p.id = h.product_id
+            WHERE h.product_id = ?
+            ORDER BY h.effective_from DESC, h.id DESC
+            """;
+        return executeQuery(sql, productId);
+    }
+
+    
+    public List<PriceChange> findScheduled() throws SQLException {
+        String sql = """
+            SELECT h.*, p.sku, p.name
+            FROM price_history h
+            JOIN products p ON p.id = h.product_id
+            WHERE h.activated_at IS NULL
+            ORDER BY h.effective_from, h.id
+            """;
+        return executeQuery(sql);
+    }
+
+    
+    /**
+     * Планирует цену товара с момента effectiveFrom.
+     */
+    public Long schedule(Integer productId, BigDecimal price, LocalDateTime effectiveFrom, String reason,
+                         Integer userId) throws SQLException {
+        String sql = """
+            INSERT INTO price_history (product_id, new_price, effective_from, activated_at, reason, changed_by)
+            VALUES (?, ?, ?, NULL, ?, ?)
+            RETURNING id
+            """;
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setParameters(stmt, productId, price, Timestamp.valueOf(effectiveFrom), reason, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    
+    /**
+     * Удаляет еще не примененную запланированную цену. Возвращает id товара.
+     */
+    public Optional<Integer> cancelScheduled(Long id) throws SQLException {
+        String sql = "DELETE FROM price_history WHERE id = ? AND activated_at IS NULL RETURNING product_id";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Optional.of(rs.getInt(1)) : Optional.empty();
+            }
+        }
+    }
+
+    
+    /**
+     * Применяет наступившие запланированные цены: последняя из них становится ценой товара,
+     * если после ее effective_from цена уже не менялась вручную; каждой записи проставляются
+     * activated_at и цена до нее. Записи, занятые другим узлом, пропускаются. Возвращает id
+     * товаров с измененной ценой.
+     */
+    public List<Integer> activateDue(Connection conn) throws SQLException {
+        String sql = """
+            WITH due AS (
+                SELECT id, product_id, new_price, effective_from
+                FROM price_history
+                WHERE activated_at IS NULL AND effective_from <= CURRENT_TIMESTAMP
+                FOR UPDATE SKIP LOCKED
+            ), chain AS (
+                SELECT d.id, d.product_id, d.new_price, d.effective_from,
+                       COALESCE(LAG(d.new_price) OVER w, p.selling_price) AS old_price,
+                       ROW_NUMBER() OVER (PARTITION BY d.product_id
+                                          ORDER BY d.effective_from DESC, d.id DESC) AS rn
+                FROM due d
+                JOIN products p ON p.id = d.product_id
+                WINDOW w AS (PARTITION BY d.product_id ORDER BY d.effective_from, d.id)
+            ), upd AS (
+                UPDATE products p
+                SET selling_price = c.new_price
+                FROM chain c
+                WHERE p.id = c.product_id AND c.rn = 1
+                  AND NOT EXISTS (SELECT 1 FROM price_history h2
+                                  WHERE h2.product_id = c.product_id AND h2.activated_at IS NOT NULL
+                                    AND h2.effective_from > c.effective_from)
+                RETURNING p.id
+            ), activated AS (
+                UPDATE price_history h
+                SET activated_at = CURRENT_TIMESTAMP, old_price = c.old_price
+                FROM chain c
+                WHERE h.id = c.id
+            )
+            SELECT id FROM upd ORDER BY id
+            """;
+
+        List<Integer> changed = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                changed.add(rs.getInt(1));
+            }
+        }
+        return changed;
+    }
+
+    
+    /**
+     * Текущие цены из карточек товаров; productIds = null - всех товаров.
+     */
+    public Map<Integer, BigDecimal> findCurrentPrices(Collection<Integer> productIds) throws SQLException {
+        String sql = "SELECT id, selling_price FROM products" + (productIds != null ? " WHERE id = ANY(?)" : "");
+
+        Map<Integer, BigDecimal> result = new HashMap<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (productIds != null) {
+                stmt.setArray(1, conn.createArrayOf("integer", productIds.toArray()));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getInt(1), rs.getBigDecimal(2));
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    /**
+     * История цен без описаний, по товарам и effective_from; productIds = null - всех товаров.
+     */
+    public List<PriceChange> findTimelines(Collection<Integer> productIds) throws SQLException {
+        String sql = """
+            SELECT product_id, old_price, new_price, effective_from, activated_at
+            FROM price_history
+            %s
+            ORDER BY product_id, effective_from, id
+            """.formatted(productIds != null ? "WHERE product_id = ANY(?)" : "");
+
+        List<PriceChange> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (productIds != null) {
+                stmt.setArray(1, conn.createArrayOf("integer", productIds.toArray()));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    PriceChange change = new PriceChange();
+                    change.setProductId(rs.getInt("product_id"));
+                    change.setOldPrice(rs.getBigDecimal("old_price"));
+                    change.setNewPrice(rs.getBigDecimal("new_price"));
+                    change.setEffectiveFrom(rs.getTimestamp("effective_from").toLocalDateTime());
+                    Timestamp activatedAt = rs.getTimestamp("activated_at");
+                    if (activatedAt != null) {
+                        change.setActivatedAt(activatedAt.toLocalDateTime());
+                    }
+                    result.add(change);
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    /**
+     * Время БД и последний id истории цен: точка, от которой ищутся следующие изменения.
+     */
+    public long[] findSyncPoint() throws SQLException {
+        String sql = "SELECT CURRENT_TIMESTAMP::timestamp, COALESCE(MAX(id), 0) FROM price_history";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return new long[]{rs.getTimestamp(1).getTime(), rs.getLong(2)};
+        }
+    }
+
+    
+    /**
+     * Товары, карточка которых менялась после since, или с записями истории после afterId.
+     */
+    public Set<Integer> findChangedProductIds(long since, long afterId) throws SQLException {
+        String sql = """
+            SELECT id FROM products WHERE updated_at > ?
+            UNION
+            SELECT product_id FROM price_history WHERE id > ?
+            """;
+
+        Set<Integer> result = new HashSet<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, new Timestamp(since));
+            stmt.setLong(2, afterId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getInt(1));
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    /**
+     * Меняет цену одного товара и пишет историю, если цена действительно изменилась.
+     */
+    public boolean updatePrice(Integer productId, BigDecimal newPrice, String reason,
+                               Integer userId) throws SQLException {
+        String sql = """
+            WITH old AS (
+                SELECT id, selling_price FROM products WHERE id = ? FOR UPDATE
+            ), upd AS (
+                UPDATE products p
+                SET selling_price = ?
+                FROM old
+                WHERE p.id = old.id AND old.selling_price <> ?
+                RETURNING p.id, old.selling_price AS old_price, p.selling_price AS new_price
+            )
+            INSERT INTO price_history (product_id, old_price, new_price, reason, changed_by)
+            SELECT id, old_price, new_price, ?, ? FROM upd
+            """;
+        return executeUpdate(sql, productId, newPrice, newPrice, reason, userId) > 0;
+    }
+
+    
+    /**
+     * Предпросмотр массового изменения: товары, цена которых изменится, со старой и новой ценой.
+     * Строки с неположительной новой ценой тоже возвращаются, но при применении пропускаются.
+     */
+    public List<PriceChange> preview(BulkPriceChange change) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = """
+            SELECT * FROM (
+                SELECT p.id AS product_id, p.sku, p.name, p.purchase_price,
+                       p.selling_price AS old_price, %s AS new_price
+                FROM products p
+                WHERE %s
+            ) c
+            WHERE c.new_price <> c.old_price
+            ORDER BY c.sku
+            """;
+
+        List<PriceChange> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.formatted(
+                     priceExpression(change, params), selection(conn, change, params)))) {
+            setParameters(stmt, params.toArray());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    PriceChange row = new PriceChange();
+                    row.setProductId(rs.getInt("product_id"));
+                    row.setProductSku(rs.getString("sku"));
+                    row.setProductName(rs.getString("name"));
+                    row.setPurchasePrice(rs.getBigDecimal("purchase_price"));
+                    row.setOldPrice(rs.getBigDecimal("old_price"));
+                    row.setNewPrice(rs.getBigDecimal("new_price"));
+                    result.add(row);
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    /**
+     * Применяет массовое изменение одним запросом: блокирует выбранные товары, меняет
+     * цены и пишет историю. Товары с неположительной или прежней ценой не меняются.
+     * Возвращает id измененных товаров.
+     */
+    public List<Integer> apply(Connection conn, BulkPriceChange change, Integer userId) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = """
+            WITH c AS (
+                SELECT p.id, p.selling_price AS old_price, %s AS new_price
+                FROM products p
+                WHERE %s
+                ORDER BY p.id
+                FOR UPDATE
+            ), upd AS (
+                UPDATE products p
+                SET selling_price = c.new_price
+                FROM c
+                WHERE p.id = c.id AND c.new_price > 0 AND c.new_price <> c.old_price
+                RETURNING p.id, c.old_price, c.new_price
+            ), hist AS (
+                INSERT INTO price_history (product_id, old_price, new_price, reason, changed_by)
+                SELECT id, old_price, new_price, ?, ? FROM upd
+            )
+            SELECT id FROM upd ORDER BY id
+            """.formatted(priceExpression(change, params), selection(conn, change, params));
+        params.add(change.getReason());
+        params.add(userId);
+
+        List<Integer> changed = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setParameters(stmt, params.toArray());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changed.add(rs.getInt(1));
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static String priceExpression(BulkPriceChange change, List<Object> params) {
+        String raw = switch (change.getMode()) {
+            case PERCENT -> "p.selling_price * (1 + ?::numeric / 100)";
+            case ABSOLUTE -> "p.selling_price + ?::numeric";
+            case MARGIN -> "p.purchase_price / (1 - ?::numeric / 100)";
+        };
+        params.add(change.getValue());
+        return switch (change.getRounding()) {
+            case KOPECKS -> "ROUND(" + raw + ", 2)";
+            case RUBLES -> "ROUND(" + raw + ")";
+            case TENS -> "ROUND(" + raw + ", -1)";
+            case ENDING_99 -> "(CEIL(" + raw + ") - 0.01)";
+        };
+    }
+
+    private static String selection(Connection conn, BulkPriceChange change,
+                                    List<Object> params) throws SQLException {
+        StringBuilder where = new StringBuilder("p.is_active = TRUE");
+        if (change.getCategoryId() != null) {
+            where.append(" AND p.category_id = ?");
+            params.add(change.getCategoryId());
+        }
+        if (change.getSkus() != null) {
+            where.append(" AND p.sku = ANY(?)");
+            params.add(conn.createArrayOf("text", change.getSkus().toArray()));
+        }
+        return where.toString();
+    }
+}
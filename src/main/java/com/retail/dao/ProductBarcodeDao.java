@@ -0,0 +1,81 @@
+package com.retail.dao;
+
+import com.retail.model.ProductBarcode;
+import com.retail.model.enums.BarcodeKind;
+
+import java.sql.*;
+import java.util.List;
+
+
+public class ProductBarcodeDao extends AbstractDao<ProductBarcode, String> {
+
+    @Override
+    protected String getTableName() {
+        return "product_barcodes";
+    }
+
+    @Override
+    protected String getIdColumnName() {
+        return "code";
+    }
+
+    @Override
+    protected ProductBarcode mapRow(ResultSet rs) throws SQLException {
+        ProductBarcode barcode = new ProductBarcode();
+        barcode.setCode(rs.getString("code"));
+        barcode.setProductId(rs.getInt("product_id"));
+        barcode.setKind(BarcodeKind.fromString(rs.getString("kind")));
+        barcode.setPackQuantity(rs.getInt("pack_quantity"));
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            barcode.setCreatedAt(createdAt.toLocalDateTime());
+        }
+        return barcode;
+    }
+
+    @Override
+    public ProductBarcode save(ProductBarcode barcode) throws SQLException {
+        String sql = """
+            INSERT INTO product_barcodes (code, product_id, kind, pack_quantity)
+            VALUES (?, ?, ?, ?)
+            """;
+        executeUpdate(sql, barcode.getCode(), barcode.getProductId(), barcode.getKind(), barcode.getPackQuantity());
+        return barcode;
+    }
+
+    @Override
+    public void update(ProductBarcode barcode) throws SQLException {
+        String sql = "UPDATE product_barcodes SET product_id = ?, kind = ?, pack_quantity = ? WHERE code = ?";
+        executeUpdate(sql, barcode.getProductId(), barcode.getKind(), barcode.getPackQuantity(), barcode.getCode());
+    }
+
+    @Override
+    public void delete(String code) throws SQLException {
+        executeUpdate("DELETE FROM product_barcodes WHERE code = ?", code);
+    }
+
+    
+    public List<ProductBarcode> findByProductId(Integer productId) throws SQLException {
+        return executeQuery("SELECT * FROM product_barcodes WHERE product_id = ? ORDER BY kind, pack_quantity, code",
+                productId);
+    }
+
+    
+    /**
+     * Отпечаток таблицы для проверки, менялись ли штрихкоды с прошлой загрузки: число строк
+     * и сумма хешей строк. Удаления и изменения видны так же, как добавления.
+     */
+    public long[] findSignature() throws SQLException {
+        String sql = """
+            SELECT COUNT(*),
+                   COALESCE(SUM(hashtext(code || ':' || product_id || ':' || kind || ':' || pack_quantity)::bigint), 0)
+            FROM product_barcodes
+            """;
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        }
+    }
+}
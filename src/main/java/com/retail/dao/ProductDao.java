@@ -3,11 +3,13 @@ package com.retail.dao;
 import com.retail.model.Product;
 
 import java.sql.*;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 
 public class ProductDao extends AbstractDao<Product, Integer> {
+    private final ProductStockView stockView = ProductStockView.getInstance();
 
     @Override
     protected String getTableName() {
@@ -158,15 +160,11 @@ public class ProductDao extends AbstractDao<Product, Integer> {
     
     public List<Product> searchByName(String namePattern) throws SQLException {
         String sql = """
-            SELECT p.*, c.name as category_name, u.short_name as unit_name,
-                   COALESCE(i.quantity, 0) as stock_quantity
-            FROM products p
-            LEFT JOIN categories c ON p.category_id = c.id
-            LEFT JOIN units u ON p.unit_id = u.id
-            LEFT JOIN inventory i ON p.id = i.product_id
-            WHERE p.is_active = TRUE AND LOWER(p.name) LIKE LOWER(?)
-            ORDER BY p.name
-            """;
+            SELECT ps.*
+            FROM %s
+            WHERE ps.is_active = TRUE AND LOWER(ps.name) LIKE LOWER(?)
+            ORDER BY ps.name
+            """.formatted(stockView.source());
         
         List<Product> result = new java.util.ArrayList<>();
         try (Connection conn = dbManager.getConnection();
@@ -184,15 +182,11 @@ public class ProductDao extends AbstractDao<Product, Integer> {
     
     public List<Product> findAllWithStock() throws SQLException {
         String sql = """
-            SELECT p.*, c.name as category_name, u.short_name as unit_name,
-                   COALESCE(i.quantity, 0) as stock_quantity
-            FROM products p
-            LEFT JOIN categories c ON p.category_id = c.id
-            LEFT JOIN units u ON p.unit_id = u.id
-            LEFT JOIN inventory i ON p.id = i.product_id
-            WHERE p.is_active = TRUE
-            ORDER BY p.name
-            """;
+            SELECT ps.*
+            FROM %s
+            WHERE ps.is_active = TRUE
+            ORDER BY ps.name
+            """.formatted(stockView.source());
         
         List<Product> result = new java.util.ArrayList<>();
         try (Connection conn = dbManager.getConnection();
@@ -205,8 +199,54 @@ public class ProductDao extends AbstractDao<Product, Integer> {
         return result;
     }
 
-    
+
+    /**
+     * Активные товары с точными остатками для снимка каталога касс.
+     */
+    public List<Product> exportCatalog() throws SQLException {
+        String sql = """
+            SELECT ps.*
+            FROM %s
+            WHERE ps.is_active = TRUE
+            """.formatted(stockView.exactSource());
+
+        List<Product> result = new java.util.ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.add(mapRowWithExtras(rs));
+            }
+        }
+        return result;
+    }
+
+
     public List<Product> findLowStock() throws SQLException {
+        // Список низких остатков ведется по событиям: ему нужны точные данные
+        String sql = """
+            SELECT ps.*
+            FROM %s
+            WHERE ps.is_active = TRUE AND ps.is_low_stock
+            ORDER BY ps.stock_quantity ASC
+            """.formatted(stockView.exactSource());
+        
+        List<Product> result = new java.util.ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.add(mapRowWithExtras(rs));
+            }
+        }
+        return result;
+    }
+
+    
+    /**
+     * Товары с остатками по списку id, включая неактивные: по ним проверяется выход из списка.
+     */
+    public List<Product> findWithStockByIds(Collection<Integer> ids) throws SQLException {
         String sql = """
             SELECT p.*, c.name as category_name, u.short_name as unit_name,
                    COALESCE(i.quantity, 0) as stock_quantity
@@ -214,23 +254,27 @@ public class ProductDao extends AbstractDao<Product, Integer> {
             LEFT JOIN categories c ON p.category_id = c.id
             LEFT JOIN units u ON p.unit_id = u.id
             LEFT JOIN inventory i ON p.id = i.product_id
-            WHERE p.is_active = TRUE AND COALESCE(i.quantity, 0) <= p.min_stock_level
-            ORDER BY i.quantity ASC
+            WHERE p.id = ANY(?)
             """;
         
         List<Product> result = new java.util.ArrayList<>();
         try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                result.add(mapRowWithExtras(rs));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(mapRowWithExtras(rs));
+                }
             }
         }
         return result;
     }
 
-    
-    public List<Product> findByCategory(Integer categoryId) throws SQLException {
+
+    /**
+     * Товары, у которых карточка или остаток менялись начиная с since, включая неактивные.
+     */
+    public List<Product> findChangedSince(java.time.LocalDateTime since) throws SQLException {
         String sql = """
             SELECT p.*, c.name as category_name, u.short_name as unit_name,
                    COALESCE(i.quantity, 0) as stock_quantity
@@ -238,10 +282,34 @@ public class ProductDao extends AbstractDao<Product, Integer> {
             LEFT JOIN categories c ON p.category_id = c.id
             LEFT JOIN units u ON p.unit_id = u.id
             LEFT JOIN inventory i ON p.id = i.product_id
-            WHERE p.is_active = TRUE AND p.category_id = ?
-            ORDER BY p.name
+            WHERE p.updated_at >= ? OR p.created_at >= ? OR i.updated_at >= ?
             """;
         
+        List<Product> result = new java.util.ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            Timestamp ts = Timestamp.valueOf(since);
+            stmt.setTimestamp(1, ts);
+            stmt.setTimestamp(2, ts);
+            stmt.setTimestamp(3, ts);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(mapRowWithExtras(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    public List<Product> findByCategory(Integer categoryId) throws SQLException {
+        String sql = """
+            SELECT ps.*
+            FROM %s
+            WHERE ps.is_active = TRUE AND ps.category_id = ?
+            ORDER BY ps.name
+            """.formatted(stockView.source());
+        
         List<Product> result = new java.util.ArrayList<>();
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -256,9 +324,21 @@ public class ProductDao extends AbstractDao<Product, Integer> {
     }
 
     
-    public void updateSellingPrice(Integer productId, java.math.BigDecimal newPrice) throws SQLException {
-        String sql = "UPDATE products SET selling_price = ? WHERE id = ?";
-        executeUpdate(sql, newPrice, productId);
+    /**
+     * Минимальный и максимальный id товаров или null, если товаров нет.
+     */
+    public int[] findIdRange() throws SQLException {
+        String sql = "SELECT MIN(id), MAX(id) FROM products";
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            int min = rs.getInt(1);
+            if (rs.wasNull()) {
+                return null;
+            }
+            return new int[]{min, rs.getInt(2)};
+        }
     }
 
     
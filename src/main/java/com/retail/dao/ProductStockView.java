@@ -0,0 +1,262 @@
+package com.retail.dao;
+
+import com.retail.db.CatalogChangeFeed;
+import com.retail.db.DatabaseManager;
+import com.retail.db.LeaderElection;
+import com.retail.db.Workload;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+
+/**
+ * Витрина товаров с остатками: материализованное представление mv_products_with_stock
+ * обновляется CONCURRENTLY по расписанию, если с прошлого обновления были изменения.
+ * Чтение идет из витрины, пока ее отставание не превышает catalog.view.max.staleness.ms,
+ * иначе - из исходных таблиц тем же запросом.
+ * <p>
+ * Об изменениях узел узнает из уведомлений catalog_changes ({@link CatalogChangeFeed}),
+ * то есть и о продажах на других кассах; без подписки витрина не читается. Обновляет витрину
+ * только узел-лидер ({@link LeaderElection}) и записывает время начала обновления
+ * в matview_refreshes; остальные узлы раз в catalog.view.refresh.interval.ms читают это время
+ * и считают актуальными изменения, уведомление о которых пришло до него.
+ */
+public final class ProductStockView {
+    private static final Logger logger = LoggerFactory.getLogger(ProductStockView.class);
+
+    static final String VIEW = "mv_products_with_stock ps";
+    private static final String VIEW_NAME = "mv_products_with_stock";
+    // Та же строка, что и в витрине: планировщик разворачивает подзапрос в обычные JOIN
+    static final String LIVE = """
+        (SELECT p.*, c.name AS category_name, u.short_name AS unit_name,
+                COALESCE(i.quantity, 0) AS stock_quantity,
+                COALESCE(i.quantity, 0) <= p.min_stock_level AS is_low_stock
+         FROM products p
+         LEFT JOIN categories c ON p.category_id = c.id
+         LEFT JOIN units u ON p.unit_id = u.id
+         LEFT JOIN inventory i ON p.id = i.product_id) ps""";
+
+    private static volatile ProductStockView instance;
+
+    private final DatabaseManager dbManager = DatabaseManager.getInstance();
+    private final CatalogChangeFeed changeFeed = CatalogChangeFeed.getInstance();
+    private final LeaderElection leaderElection = LeaderElection.getInstance();
+    private final Consumer<Set<Integer>> changeListener = ids -> markChanged();
+    private final long maxStalenessNanos;
+    private final long refreshIntervalMs;
+    private final Counter viewReads;
+    private final Counter liveReads;
+    private final Timer refreshTimer;
+    private ScheduledExecutorService scheduler;
+
+    private volatile boolean available;
+    // Время первого и последнего изменения, не попавших в витрину; 0 - витрина актуальна
+    private long dirtySince;
+    private long lastChange;
+
+    private ProductStockView() {
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("catalog.view.max.staleness.ms", 10_000));
+        this.refreshIntervalMs = AppConfig.getLong("catalog.view.refresh.interval.ms", 5_000);
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.viewReads = registry.counter("retail_catalog_reads_total", "source", "view");
+        this.liveReads = registry.counter("retail_catalog_reads_total", "source", "live");
+        this.refreshTimer = registry.timer("retail_catalog_view_refresh_seconds");
+        registry.gauge("retail_catalog_view_staleness_seconds", this::getStalenessSeconds);
+    }
+
+    public static ProductStockView getInstance() {
+        ProductStockView view = instance;
+        if (view == null) {
+            synchronized (ProductStockView.class) {
+                view = instance;
+                if (view == null) {
+                    view = new ProductStockView();
+                    instance = view;
+                }
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Запускает фоновое обновление. Без запуска все чтения идут из исходных таблиц.
+     */
+    public synchronized void start() {
+        if (scheduler != null || !AppConfig.getBoolean("catalog.view.enabled", true)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-view-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        // Содержимое витрины на момент запуска неизвестно, как и после разрыва подписки
+        markChanged();
+        changeFeed.subscribe(changeListener, this::markChanged);
+        scheduler.scheduleWithFixedDelay(this::tick, 0, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static void shutdown() {
+        ProductStockView view = instance;
+        if (view != null) {
+            synchronized (view) {
+                if (view.scheduler != null) {
+                    view.scheduler.shutdownNow();
+                    view.scheduler = null;
+                    view.changeFeed.unsubscribe(view.changeListener);
+                }
+                view.available = false;
+            }
+        }
+    }
+
+    /**
+     * Отмечает зафиксированное изменение товаров или остатков.
+     */
+    public synchronized void markChanged() {
+        long now = System.nanoTime();
+        if (dirtySince == 0) {
+            dirtySince = now;
+        }
+        lastChange = now;
+    }
+
+    /**
+     * Источник строк для FROM с псевдонимом ps: витрина или исходные таблицы.
+     */
+    String source() {
+        return choose(maxStalenessNanos);
+    }
+
+    /**
+     * Источник для чтений, которым нужны точные данные: витрина только без необновленных изменений.
+     */
+    String exactSource() {
+        return choose(0);
+    }
+
+    private String choose(long allowedStalenessNanos) {
+        if (available && changeFeed.isListening() && isFreshEnough(allowedStalenessNanos)) {
+            viewReads.increment();
+            return VIEW;
+        }
+        liveReads.increment();
+        return LIVE;
+    }
+
+    private synchronized boolean isFreshEnough(long allowedStalenessNanos) {
+        return dirtySince == 0 || System.nanoTime() - dirtySince <= allowedStalenessNanos;
+    }
+
+    private synchronized double getStalenessSeconds() {
+        return dirtySince == 0 ? 0 : (System.nanoTime() - dirtySince) / 1e9;
+    }
+
+    private void tick() {
+        if (leaderElection.isLeader()) {
+            refreshIfChanged();
+        } else {
+            followRefresh();
+        }
+    }
+
+    private void refreshIfChanged() {
+        synchronized (this) {
+            if (dirtySince == 0) {
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        try (Connection conn = dbManager.getConnection(Workload.BACKOFFICE);
+             Statement stmt = conn.createStatement()) {
+            if (!available && !exists(stmt)) {
+                return;
+            }
+            Timestamp startedAt;
+            try (ResultSet rs = stmt.executeQuery("SELECT clock_timestamp()::timestamp")) {
+                rs.next();
+                startedAt = rs.getTimestamp(1);
+            }
+            stmt.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY " + VIEW_NAME);
+            try (PreparedStatement upd = conn.prepareStatement("""
+                    INSERT INTO matview_refreshes (view_name, refreshed_at) VALUES (?, ?)
+                    ON CONFLICT (view_name) DO UPDATE SET refreshed_at = EXCLUDED.refreshed_at
+                    """)) {
+                upd.setString(1, VIEW_NAME);
+                upd.setTimestamp(2, startedAt);
+                upd.executeUpdate();
+            }
+            available = true;
+        } catch (SQLException e) {
+            logger.warn("Не удалось обновить витрину товаров: {}", e.getMessage());
+            return;
+        }
+        refreshTimer.recordSince(start);
+        applyRefresh(start);
+    }
+
+    /**
+     * Узел не обновляет витрину сам: время начала последнего обновления берется из БД
+     * и переводится в локальные часы с запасом на время запроса.
+     */
+    private void followRefresh() {
+        long before = System.nanoTime();
+        try (Connection conn = dbManager.getConnection(Workload.BACKOFFICE);
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT EXTRACT(EPOCH FROM clock_timestamp()::timestamp - refreshed_at) FROM matview_refreshes WHERE view_name = ?")) {
+            stmt.setString(1, VIEW_NAME);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                available = true;
+                applyRefresh(before - (long) (rs.getDouble(1) * 1e9));
+            }
+        } catch (SQLException e) {
+            logger.warn("Не удалось проверить обновление витрины товаров: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Снимок обновления, начатого в refreshStart, содержит изменения, уведомление о которых пришло раньше.
+     */
+    private synchronized void applyRefresh(long refreshStart) {
+        if (dirtySince == 0) {
+            return;
+        }
+        if (lastChange - refreshStart < 0) {
+            dirtySince = 0;
+        } else if (dirtySince - refreshStart < 0) {
+            // Изменения после начала обновления могли не попасть в снимок: отсчет от начала обновления
+            dirtySince = refreshStart;
+        }
+    }
+
+    private boolean exists(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT to_regclass('mv_products_with_stock') IS NOT NULL")) {
+            if (rs.next() && rs.getBoolean(1)) {
+                return true;
+            }
+        }
+        logger.warn("Витрина mv_products_with_stock не создана, товары читаются из исходных таблиц");
+        shutdown();
+        return false;
+    }
+}
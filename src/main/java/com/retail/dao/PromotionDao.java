@@ -0,0 +1,182 @@
+package com.retail.dao;
+
+import com.retail.model.Promotion;
+import com.retail.model.enums.PromotionType;
+import com.retail.promo.PromotionResult;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class PromotionDao extends AbstractDao<Promotion, Integer> {
+
+    @Override
+    protected String getTableName() {
+        return "promotions";
+    }
+
+    @Override
+    protected Promotion mapRow(ResultSet rs) throws SQLException {
+        Promotion promotion = new Promotion();
+        promotion.setId(rs.getInt("id"));
+        promotion.setName(rs.getString("name"));
+        promotion.setType(PromotionType.fromString(rs.getString("type")));
+
+        int productId = rs.getInt("product_id");
+        if (!rs.wasNull()) {
+            promotion.setProductId(productId);
+        }
+        int categoryId = rs.getInt("category_id");
+        if (!rs.wasNull()) {
+            promotion.setCategoryId(categoryId);
+        }
+        promotion.setBuyQuantity(rs.getInt("buy_quantity"));
+        promotion.setPayQuantity(rs.getInt("pay_quantity"));
+        promotion.setDiscountPercent(rs.getBigDecimal("discount_percent"));
+        promotion.setBundlePrice(rs.getBigDecimal("bundle_price"));
+        promotion.setValidFrom(rs.getTimestamp("valid_from").toLocalDateTime());
+        Timestamp validTo = rs.getTimestamp("valid_to");
+        if (validTo != null) {
+            promotion.setValidTo(validTo.toLocalDateTime());
+        }
+        promotion.setActive(rs.getBoolean("is_active"));
+        int createdBy = rs.getInt("created_by");
+        if (!rs.wasNull()) {
+            promotion.setCreatedBy(createdBy);
+        }
+        return promotion;
+    }
+
+    @Override
+    public Promotion save(Promotion promotion) throws SQLException {
+        throw new UnsupportedOperationException("Используйте save(Connection, Promotion) для транзакции");
+    }
+
+    
+    /**
+     * Сохраняет акцию вместе с составом комплекта.
+     */
+    public Promotion save(Connection conn, Promotion promotion) throws SQLException {
+        String sql = """
+            INSERT INTO promotions (name, type, product_id, category_id, buy_quantity, pay_quantity,
+                                    discount_percent, bundle_price, valid_from, valid_to, is_active, created_by)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+        boolean multiBuy = promotion.getType() == PromotionType.MULTI_BUY;
+        Integer id = executeInsertAndGetKey(conn, sql,
+                promotion.getName(),
+                promotion.getType(),
+                promotion.getProductId(),
+                promotion.getCategoryId(),
+                multiBuy ? promotion.getBuyQuantity() : null,
+                multiBuy ? promotion.getPayQuantity() : null,
+                promotion.getDiscountPercent(),
+                promotion.getBundlePrice(),
+                Timestamp.valueOf(promotion.getValidFrom()),
+                promotion.getValidTo() != null ? Timestamp.valueOf(promotion.getValidTo()) : null,
+                promotion.isActive(),
+                promotion.getCreatedBy());
+        promotion.setId(id);
+
+        if (!promotion.getBundleItems().isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO promotion_items (promotion_id, product_id, quantity) VALUES (?, ?, ?)")) {
+                for (Map.Entry<Integer, Integer> item : promotion.getBundleItems().entrySet()) {
+                    stmt.setInt(1, id);
+                    stmt.setInt(2, item.getKey());
+                    stmt.setInt(3, item.getValue());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+        return promotion;
+    }
+
+    @Override
+    public void update(Promotion promotion) throws SQLException {
+        throw new UnsupportedOperationException("Акции не изменяются: отключите и создайте новую");
+    }
+
+    @Override
+    public void delete(Integer id) throws SQLException {
+        executeUpdate("UPDATE promotions SET is_active = FALSE WHERE id = ?", id);
+    }
+
+    
+    /**
+     * Включенные акции, срок которых еще не истек, с составом комплектов.
+     */
+    public List<Promotion> findActive() throws SQLException {
+        String sql = """
+            SELECT * FROM promotions
+            WHERE is_active AND (valid_to IS NULL OR valid_to > CURRENT_TIMESTAMP)
+            ORDER BY id
+            """;
+        String itemsSql = """
+            SELECT pi.promotion_id, pi.product_id, pi.quantity
+            FROM promotion_items pi
+            JOIN promotions p ON p.id = pi.promotion_id
+            WHERE p.is_active AND (p.valid_to IS NULL OR p.valid_to > CURRENT_TIMESTAMP)
+            ORDER BY pi.promotion_id, pi.product_id
+            """;
+
+        List<Promotion> promotions = executeQuery(sql);
+        Map<Integer, Promotion> byId = new HashMap<>();
+        for (Promotion promotion : promotions) {
+            byId.put(promotion.getId(), promotion);
+        }
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(itemsSql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Promotion promotion = byId.get(rs.getInt("promotion_id"));
+                if (promotion != null) {
+                    promotion.getBundleItems().put(rs.getInt("product_id"), rs.getInt("quantity"));
+                }
+            }
+        }
+        return promotions;
+    }
+
+    
+    /**
+     * Категории товаров, на категорию которых есть действующая процентная акция.
+     */
+    public Map<Integer, Integer> findPromotedProductCategories() throws SQLException {
+        String sql = """
+            SELECT p.id, p.category_id
+            FROM products p
+            WHERE p.category_id IN (SELECT category_id FROM promotions
+                                    WHERE type = 'CATEGORY_PERCENT' AND is_active
+                                      AND (valid_to IS NULL OR valid_to > CURRENT_TIMESTAMP))
+            """;
+
+        Map<Integer, Integer> result = new HashMap<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return result;
+    }
+
+    
+    public void saveApplied(Connection conn, Integer saleId, PromotionResult result) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO sale_promotions (sale_id, promotion_id, discount) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < result.getAppliedCount(); i++) {
+                stmt.setInt(1, saleId);
+                stmt.setInt(2, result.getPromotionId(i));
+                stmt.setBigDecimal(3, result.getDiscount(i));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+}
@@ -68,6 +68,34 @@ public class SaleDao extends AbstractDao<Sale, Integer> {
         return sale;
     }
 
+    /**
+     * Сохраняет продажу, проведенную кассой без связи с БД. Повторная выгрузка той же
+     * записи журнала (offlineRef) ничего не вставляет и возвращает false.
+     */
+    public boolean saveOffline(Connection conn, Sale sale, String offlineRef) throws SQLException {
+        String sql = """
+            INSERT INTO sales (sale_number, employee_id, sale_date, total_amount, discount, final_amount, offline_ref)
+            VALUES ('S' || TO_CHAR(?::date, 'YYMMDD') || '-' || LPAD(NEXTVAL('sale_number_seq')::TEXT, 5, '0'),
+                    ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (offline_ref) DO NOTHING
+            RETURNING id, sale_number
+            """;
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            Timestamp saleDate = Timestamp.valueOf(sale.getSaleDate());
+            setParameters(stmt, saleDate, sale.getEmployeeId(), saleDate, sale.getTotalAmount(),
+                    sale.getDiscount(), sale.getFinalAmount(), offlineRef);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                sale.setId(rs.getInt("id"));
+                sale.setSaleNumber(rs.getString("sale_number"));
+                return true;
+            }
+        }
+    }
+
     private String generateSaleNumber(Connection conn) throws SQLException {
         String sql = "SELECT generate_sale_number()";
         try (PreparedStatement stmt = conn.prepareStatement(sql);
@@ -377,4 +405,24 @@ public class SaleDao extends AbstractDao<Sale, Integer> {
             public void setReturnedQty(Integer returnedQty) { this.returnedQty = returnedQty; }
         }
     }
+
+    
+    /**
+     * Журнал продаж за период для фоновой выгрузки: запрос только подготавливается.
+     */
+    public PreparedStatement prepareJournal(Connection conn, LocalDateTime startDate,
+                                            LocalDateTime endDate) throws SQLException {
+        String sql = """
+            SELECT s.sale_number, s.sale_date, u.full_name, s.total_amount,
+                   s.discount, s.final_amount, s.is_returned
+            FROM sales s
+            JOIN users u ON s.employee_id = u.id
+            WHERE s.sale_date BETWEEN ? AND ?
+            ORDER BY s.sale_date
+            """;
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setTimestamp(1, Timestamp.valueOf(startDate));
+        stmt.setTimestamp(2, Timestamp.valueOf(endDate));
+        return stmt;
+    }
 }
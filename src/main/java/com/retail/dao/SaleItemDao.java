@@ -3,6 +3,7 @@ package com.retail.dao;
 import com.retail.model.SaleItem;
 
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -174,4 +175,91 @@ public class SaleItemDao extends AbstractDao<SaleItem, Integer> {
         }
         return result;
     }
+
+    
+    public List<Object[]> getProductSalesByPeriod(LocalDateTime startDate, LocalDateTime endDate) throws SQLException {
+        String sql = """
+            SELECT p.id, p.sku, p.name,
+                   SUM(si.quantity - si.returned_qty) as total_sold,
+                   SUM(si.line_total) as total_revenue
+            FROM sale_items si
+            JOIN sales s ON si.sale_id = s.id
+            JOIN products p ON si.product_id = p.id
+            WHERE s.sale_date BETWEEN ? AND ? AND s.is_returned = FALSE
+            GROUP BY p.id, p.sku, p.name
+            """;
+        
+        List<Object[]> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(startDate));
+            stmt.setTimestamp(2, Timestamp.valueOf(endDate));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new Object[]{
+                            rs.getInt("id"),
+                            rs.getString("sku"),
+                            rs.getString("name"),
+                            rs.getLong("total_sold"),
+                            rs.getBigDecimal("total_revenue")
+                    });
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    public List<Object[]> getRevenueByCategory(LocalDateTime startDate, LocalDateTime endDate) throws SQLException {
+        String sql = """
+            SELECT COALESCE(c.name, 'Без категории') as category_name,
+                   SUM(si.quantity - si.returned_qty) as total_sold,
+                   SUM(si.line_total) as total_revenue
+            FROM sale_items si
+            JOIN sales s ON si.sale_id = s.id
+            JOIN products p ON si.product_id = p.id
+            LEFT JOIN categories c ON p.category_id = c.id
+            WHERE s.sale_date BETWEEN ? AND ? AND s.is_returned = FALSE
+            GROUP BY c.name
+            """;
+        
+        List<Object[]> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(startDate));
+            stmt.setTimestamp(2, Timestamp.valueOf(endDate));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new Object[]{
+                            rs.getString("category_name"),
+                            rs.getLong("total_sold"),
+                            rs.getBigDecimal("total_revenue")
+                    });
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    /**
+     * Построчный отчет по позициям продаж за период для фоновой выгрузки:
+     * запрос только подготавливается, читает его вызывающий.
+     */
+    public PreparedStatement prepareLineReport(Connection conn, LocalDateTime startDate,
+                                               LocalDateTime endDate) throws SQLException {
+        String sql = """
+            SELECT s.sale_number, s.sale_date, p.sku, p.name,
+                   si.quantity, si.returned_qty, si.price_at_sale, si.line_total
+            FROM sale_items si
+            JOIN sales s ON si.sale_id = s.id
+            JOIN products p ON si.product_id = p.id
+            WHERE s.sale_date BETWEEN ? AND ?
+            ORDER BY s.sale_date, si.id
+            """;
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setTimestamp(1, Timestamp.valueOf(startDate));
+        stmt.setTimestamp(2, Timestamp.valueOf(endDate));
+        return stmt;
+    }
 }
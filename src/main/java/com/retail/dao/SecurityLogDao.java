@@ -175,7 +175,7 @@ public class SecurityLogDao extends AbstractDao<SecurityLog, Integer> {
         log.setAction("LOGIN");
         log.setDetails("Попытка входа: " + login);
         log.setSuccess(success);
-        save(log);
+        write(log);
     }
 
     
@@ -185,7 +185,7 @@ public class SecurityLogDao extends AbstractDao<SecurityLog, Integer> {
         log.setAction("LOGOUT");
         log.setDetails("Выход из системы");
         log.setSuccess(true);
-        save(log);
+        write(log);
     }
 
     
@@ -195,6 +195,15 @@ public class SecurityLogDao extends AbstractDao<SecurityLog, Integer> {
         log.setAction(action);
         log.setDetails(details);
         log.setSuccess(true);
-        save(log);
+        write(log);
+    }
+
+    
+    private void write(SecurityLog log) throws SQLException {
+        if (SecurityLogWriter.isAsync()) {
+            SecurityLogWriter.getInstance().append(log);
+        } else {
+            save(log);
+        }
     }
 }
@@ -0,0 +1,514 @@
+package com.retail.dao;
+
+import com.retail.db.DatabaseManager;
+import com.retail.db.SessionProfile;
+import com.retail.db.Workload;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.model.SecurityLog;
+import com.retail.util.AppConfig;
+import com.retail.util.RingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Асинхронная запись журнала безопасности.
+ * События попадают в кольцевой буфер и сбрасываются фоновым потоком одним INSERT
+ * каждые N мс или по накоплении M событий. Вызывающий поток никогда не ждет БД или диск:
+ * если буфер переполнен, событие отбрасывается и учитывается в retail_security_log_dropped_total.
+ * <p>
+ * Если БД недоступна, пачка дописывается в локальный файл, и до следующей попытки новые пачки
+ * сразу уходят туда же. Перед загрузкой файл переименовывается, и новые события пишутся уже
+ * в новый файл. Загрузка идет пачками по одной транзакции, вместе с пачкой в security_log_replay
+ * записывается, сколько байт файла загружено, поэтому после сбоя загрузка продолжается
+ * с этого места и события не задваиваются.
+ */
+public final class SecurityLogWriter {
+    private static final Logger logger = LoggerFactory.getLogger(SecurityLogWriter.class);
+
+    private static final String INSERT_SQL = """
+        INSERT INTO security_log (user_id, action, details, ip_address, success, created_at)
+        SELECT * FROM unnest(?::integer[], ?::varchar[], ?::text[], ?::varchar[], ?::boolean[], ?::timestamp[])
+        """;
+
+    private static final String REPLAY_OFFSET_SQL = "SELECT replayed_bytes FROM security_log_replay WHERE file_name = ?";
+
+    private static final String SAVE_REPLAY_OFFSET_SQL = """
+        INSERT INTO security_log_replay (file_name, replayed_bytes) VALUES (?, ?)
+        ON CONFLICT (file_name) DO UPDATE SET replayed_bytes = EXCLUDED.replayed_bytes, updated_at = CURRENT_TIMESTAMP
+        """;
+
+    // Пачек файла за один цикл записи: остальные дождутся следующего, буфер не простаивает
+    private static final int REPLAY_BATCHES_PER_FLUSH = 8;
+
+    private static final String LAST_LOGIN_SQL = """
+        UPDATE users u SET last_login = v.ts
+        FROM unnest(?::integer[], ?::timestamp[]) AS v(id, ts)
+        WHERE u.id = v.id AND (u.last_login IS NULL OR u.last_login < v.ts)
+        """;
+
+    private static final boolean ASYNC = AppConfig.getBoolean("security.log.async", true);
+    private static volatile SecurityLogWriter instance;
+
+    private final DatabaseManager dbManager = DatabaseManager.getInstance();
+    private final SessionProfile profile;
+    private final RingBuffer<SecurityLog> buffer;
+    private final Map<Integer, LocalDateTime> pendingLastLogins = new ConcurrentHashMap<>();
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long retryIntervalNanos;
+    private final Path spillFile;
+    private final Object spillLock = new Object();
+    private final Object replayLock = new Object();
+    private final Thread drainThread;
+    private final Counter writtenCounter;
+    private final Counter spilledCounter;
+    private final Counter droppedCounter;
+
+    private volatile boolean running = true;
+    private volatile long nextReplayAttempt = System.nanoTime();
+    // Загружаемый файл и сколько байт из него уже в БД; -1 - перечитать из security_log_replay
+    private Path replayFile;
+    private long replayOffset = -1;
+    private long replayedCount;
+
+    private SecurityLogWriter() {
+        // Аудиту не нужно ждать сброса WAL: при сбое сервера теряется не больше доли секунды событий
+        this.profile = SessionProfile.forWorkload(Workload.BACKOFFICE)
+                .withSynchronousCommit(AppConfig.get("security.log.synchronous.commit", "off"));
+        this.buffer = new RingBuffer<>(AppConfig.getInt("security.log.buffer.size", 4096));
+        this.batchSize = AppConfig.getInt("security.log.batch.size", 256);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("security.log.flush.interval.ms", 200));
+        this.retryIntervalNanos = TimeUnit.SECONDS.toNanos(AppConfig.getLong("security.log.retry.interval.seconds", 10));
+        this.spillFile = Paths.get(AppConfig.get("security.log.spill.file", "logs/security-log.spill"));
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.writtenCounter = registry.counter("retail_security_log_written_total");
+        this.spilledCounter = registry.counter("retail_security_log_spilled_total");
+        this.droppedCounter = registry.counter("retail_security_log_dropped_total");
+        registry.gauge("retail_security_log_queue_size", buffer::size);
+
+        this.drainThread = new Thread(this::drainLoop, "security-log-writer");
+        this.drainThread.setDaemon(true);
+        this.drainThread.start();
+    }
+
+    public static boolean isAsync() {
+        return ASYNC;
+    }
+
+    public static SecurityLogWriter getInstance() {
+        SecurityLogWriter writer = instance;
+        if (writer == null) {
+            synchronized (SecurityLogWriter.class) {
+                writer = instance;
+                if (writer == null) {
+                    writer = new SecurityLogWriter();
+                    instance = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Останавливает фоновый поток и записывает все накопленные события.
+     * Вызывается из shutdown hook до закрытия пула соединений.
+     */
+    public static void shutdown() {
+        SecurityLogWriter writer = instance;
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+
+    public void append(SecurityLog log) {
+        if (log.getCreatedAt() == null) {
+            log.setCreatedAt(LocalDateTime.now());
+        }
+        if (!running || !buffer.offer(log)) {
+            // Буфер переполнен или запись остановлена: ждать фоновый поток нельзя, событие теряется
+            droppedCounter.increment();
+            if (droppedCounter.getCount() % 1000 == 1) {
+                logger.warn("Буфер журнала безопасности переполнен, отброшено событий: {}", droppedCounter.getCount());
+            }
+            return;
+        }
+        if (buffer.size() >= batchSize) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    public void touchLastLogin(Integer userId) {
+        pendingLastLogins.merge(userId, LocalDateTime.now(), (a, b) -> a.isAfter(b) ? a : b);
+    }
+
+    private void drainLoop() {
+        List<SecurityLog> batch = new ArrayList<>(batchSize);
+        while (running) {
+            if (buffer.size() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            flushOnce(batch);
+        }
+    }
+
+    private void flushOnce(List<SecurityLog> batch) {
+        try {
+            replaySpillIfDue();
+            while (buffer.drainTo(batch, batchSize) > 0) {
+                writeOrSpill(batch);
+                batch.clear();
+            }
+            flushLastLogins();
+        } catch (RuntimeException e) {
+            logger.error("Ошибка фоновой записи журнала безопасности", e);
+            batch.clear();
+        }
+    }
+
+    private void close() {
+        running = false;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushOnce(new ArrayList<>(batchSize));
+        logger.info("Журнал безопасности сброшен");
+    }
+
+    private void writeOrSpill(List<SecurityLog> batch) {
+        if (System.nanoTime() - nextReplayAttempt < 0) {
+            // БД недавно была недоступна: не ждем таймаут соединения на каждой пачке
+            spill(batch);
+            return;
+        }
+        try {
+            insert(batch);
+            writtenCounter.increment(batch.size());
+        } catch (SQLException e) {
+            logger.warn("БД недоступна, {} событий журнала безопасности сохранены в {}: {}",
+                    batch.size(), spillFile, e.getMessage());
+            spill(batch);
+            nextReplayAttempt = System.nanoTime() + retryIntervalNanos;
+        }
+    }
+
+    private void insert(List<SecurityLog> batch) throws SQLException {
+        dbManager.executeInTransaction(profile, conn -> insert(conn, batch));
+    }
+
+    private int insert(Connection conn, List<SecurityLog> batch) throws SQLException {
+        int n = batch.size();
+        Integer[] userIds = new Integer[n];
+        String[] actions = new String[n];
+        String[] details = new String[n];
+        String[] ips = new String[n];
+        Boolean[] success = new Boolean[n];
+        Timestamp[] createdAt = new Timestamp[n];
+        for (int i = 0; i < n; i++) {
+            SecurityLog log = batch.get(i);
+            userIds[i] = log.getUserId();
+            actions[i] = log.getAction();
+            details[i] = log.getDetails();
+            ips[i] = log.getIpAddress();
+            success[i] = log.isSuccess();
+            createdAt[i] = Timestamp.valueOf(log.getCreatedAt());
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            stmt.setArray(1, conn.createArrayOf("integer", userIds));
+            stmt.setArray(2, conn.createArrayOf("varchar", actions));
+            stmt.setArray(3, conn.createArrayOf("text", details));
+            stmt.setArray(4, conn.createArrayOf("varchar", ips));
+            stmt.setArray(5, conn.createArrayOf("boolean", success));
+            stmt.setArray(6, conn.createArrayOf("timestamp", createdAt));
+            return stmt.executeUpdate();
+        }
+    }
+
+    private void flushLastLogins() {
+        if (pendingLastLogins.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>();
+        List<Timestamp> times = new ArrayList<>();
+        for (Integer id : new ArrayList<>(pendingLastLogins.keySet())) {
+            LocalDateTime time = pendingLastLogins.remove(id);
+            if (time != null) {
+                ids.add(id);
+                times.add(Timestamp.valueOf(time));
+            }
+        }
+        try {
+            dbManager.executeInTransaction(profile, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(LAST_LOGIN_SQL)) {
+                    stmt.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+                    stmt.setArray(2, conn.createArrayOf("timestamp", times.toArray()));
+                    return stmt.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            // Время входа не критично: вернем в очередь до следующей попытки
+            for (int i = 0; i < ids.size(); i++) {
+                LocalDateTime time = times.get(i).toLocalDateTime();
+                pendingLastLogins.merge(ids.get(i), time, (a, b) -> a.isAfter(b) ? a : b);
+            }
+            logger.warn("Не удалось обновить время последнего входа: {}", e.getMessage());
+        }
+    }
+
+
+
+    private void spill(List<SecurityLog> batch) {
+        StringBuilder sb = new StringBuilder();
+        for (SecurityLog log : batch) {
+            sb.append(log.getUserId() == null ? "\\N" : log.getUserId().toString()).append('\t');
+            appendEscaped(sb, log.getAction()).append('\t');
+            appendEscaped(sb, log.getDetails()).append('\t');
+            appendEscaped(sb, log.getIpAddress()).append('\t');
+            sb.append(log.isSuccess()).append('\t');
+            sb.append(log.getCreatedAt()).append('\n');
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        synchronized (spillLock) {
+            try {
+                Path parent = spillFile.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try (FileChannel channel = FileChannel.open(spillFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                     OutputStream out = Channels.newOutputStream(channel)) {
+                    out.write(bytes);
+                    out.flush();
+                    channel.force(false);
+                }
+                spilledCounter.increment(batch.size());
+            } catch (IOException e) {
+                logger.error("Не удалось сохранить {} событий журнала безопасности в {}", batch.size(), spillFile, e);
+            }
+        }
+    }
+
+    private void replaySpillIfDue() {
+        if (System.nanoTime() - nextReplayAttempt < 0) {
+            return;
+        }
+        synchronized (replayLock) {
+            try {
+                for (int i = 0; i < REPLAY_BATCHES_PER_FLUSH; i++) {
+                    if (replayFile == null && (replayFile = nextReplayFile()) == null) {
+                        return;
+                    }
+                    if (!replayBatch()) {
+                        finishReplay();
+                    }
+                }
+            } catch (SQLException | IOException e) {
+                // Транзакция могла зафиксироваться: место в файле перечитаем из БД
+                replayOffset = -1;
+                nextReplayAttempt = System.nanoTime() + retryIntervalNanos;
+                logger.warn("Повторная загрузка журнала безопасности из {} не удалась: {}", replayFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Файл для загрузки: оставшийся от прошлого запуска или текущий файл отложенных событий,
+     * переименованный под блокировкой записи.
+     */
+    private Path nextReplayFile() throws IOException {
+        Path parent = spillFile.toAbsolutePath().getParent();
+        String prefix = spillFile.getFileName() + ".replay-";
+        if (parent != null && Files.isDirectory(parent)) {
+            TreeSet<Path> leftovers = new TreeSet<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(parent, prefix + "*")) {
+                files.forEach(leftovers::add);
+            }
+            if (!leftovers.isEmpty()) {
+                return leftovers.first();
+            }
+        }
+        synchronized (spillLock) {
+            if (!Files.exists(spillFile)) {
+                return null;
+            }
+            // Время в начале имени сохраняет порядок файлов, UUID делает имя уникальным в security_log_replay
+            Path target = spillFile.resolveSibling(String.format("%s%013d-%s",
+                    prefix, System.currentTimeMillis(), UUID.randomUUID()));
+            return Files.move(spillFile, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Загружает следующую пачку файла вместе с новым смещением. Возвращает false, если файл загружен целиком.
+     */
+    private boolean replayBatch() throws SQLException, IOException {
+        String name = replayFile.getFileName().toString();
+        if (replayOffset < 0) {
+            replayOffset = loadReplayOffset(name);
+        }
+        List<SecurityLog> batch = new ArrayList<>(batchSize);
+        long end = replayOffset;
+        try (FileChannel channel = FileChannel.open(replayFile, StandardOpenOption.READ);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(replayOffset)))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            int b;
+            while (batch.size() < batchSize && (b = in.read()) >= 0) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                end += line.size() + 1;
+                if (line.size() > 0) {
+                    String text = line.toString(StandardCharsets.UTF_8);
+                    try {
+                        batch.add(parseSpillLine(text));
+                    } catch (RuntimeException e) {
+                        logger.warn("Пропущена поврежденная строка {}: {}", replayFile, text);
+                    }
+                }
+                line.reset();
+            }
+            // Строка без перевода строки в конце - недописанная при сбое запись, она не загружается
+        }
+        if (end == replayOffset) {
+            return false;
+        }
+        long offset = end;
+        dbManager.executeInTransaction(profile, conn -> {
+            if (!batch.isEmpty()) {
+                insert(conn, batch);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(SAVE_REPLAY_OFFSET_SQL)) {
+                stmt.setString(1, name);
+                stmt.setLong(2, offset);
+                return stmt.executeUpdate();
+            }
+        });
+        replayOffset = end;
+        replayedCount += batch.size();
+        writtenCounter.increment(batch.size());
+        return true;
+    }
+
+    private long loadReplayOffset(String name) throws SQLException {
+        return dbManager.executeInTransaction(profile, conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(REPLAY_OFFSET_SQL)) {
+                stmt.setString(1, name);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            }
+        });
+    }
+
+    private void finishReplay() throws IOException {
+        String name = replayFile.getFileName().toString();
+        Files.delete(replayFile);
+        logger.info("Загружено {} событий журнала безопасности из {}", replayedCount, replayFile);
+        replayFile = null;
+        replayOffset = -1;
+        replayedCount = 0;
+        try {
+            dbManager.executeInTransaction(profile, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM security_log_replay WHERE file_name = ?")) {
+                    stmt.setString(1, name);
+                    return stmt.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            // Файла уже нет, оставшаяся строка ни на что не влияет
+            logger.debug("Не удалось удалить смещение загрузки {}: {}", name, e.getMessage());
+        }
+    }
+
+    private static SecurityLog parseSpillLine(String line) {
+        String[] fields = line.split("\t", -1);
+        SecurityLog log = new SecurityLog();
+        log.setUserId(fields[0].equals("\\N") ? null : Integer.valueOf(fields[0]));
+        log.setAction(unescape(fields[1]));
+        log.setDetails(unescape(fields[2]));
+        log.setIpAddress(unescape(fields[3]));
+        log.setSuccess(Boolean.parseBoolean(fields[4]));
+        log.setCreatedAt(LocalDateTime.parse(fields[5]));
+        return log;
+    }
+
+    private static StringBuilder appendEscaped(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb.append("\\N");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb;
+    }
+
+    private static String unescape(String value) {
+        if (value.equals("\\N")) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(switch (next) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> next;
+                });
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
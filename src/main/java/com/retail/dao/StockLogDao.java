@@ -1,6 +1,8 @@
 package com.retail.dao;
 
+import com.retail.model.StockDiscrepancy;
 import com.retail.model.StockLog;
+import com.retail.model.enums.DiscrepancyType;
 import com.retail.model.enums.StockOperationType;
 
 import java.sql.*;
@@ -212,4 +214,121 @@ public class StockLogDao extends AbstractDao<StockLog, Integer> {
         }
         return result;
     }
+
+    
+    /**
+     * Движение товаров за период для фоновой выгрузки: запрос только подготавливается.
+     */
+    public PreparedStatement prepareMovementReport(Connection conn, LocalDateTime startDate,
+                                                   LocalDateTime endDate) throws SQLException {
+        String sql = """
+            SELECT sl.created_at, sl.operation_type, p.sku, p.name,
+                   sl.quantity_change, sl.quantity_before, sl.quantity_after, u.full_name, sl.notes
+            FROM stock_log sl
+            JOIN products p ON sl.product_id = p.id
+            JOIN users u ON sl.user_id = u.id
+            WHERE sl.created_at BETWEEN ? AND ?
+            ORDER BY sl.created_at
+            """;
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setTimestamp(1, Timestamp.valueOf(startDate));
+        stmt.setTimestamp(2, Timestamp.valueOf(endDate));
+        return stmt;
+    }
+
+    
+    /**
+     * Товары с id в [fromId, toId], у которых остаток в inventory не равен сумме изменений в журнале.
+     */
+    public List<StockDiscrepancy> findLedgerMismatches(int fromId, int toId) throws SQLException {
+        String sql = """
+            SELECT p.id AS product_id, p.sku, p.name,
+                   COALESCE(i.quantity, 0) AS inventory_qty, COALESCE(l.total, 0) AS ledger_qty
+            FROM products p
+            LEFT JOIN inventory i ON i.product_id = p.id
+            LEFT JOIN (SELECT product_id, SUM(quantity_change) AS total
+                       FROM stock_log
+                       WHERE product_id BETWEEN ? AND ?
+                       GROUP BY product_id) l ON l.product_id = p.id
+            WHERE p.id BETWEEN ? AND ?
+              AND COALESCE(i.quantity, 0) <> COALESCE(l.total, 0)
+            ORDER BY p.id
+            """;
+
+        List<StockDiscrepancy> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setParameters(stmt, fromId, toId, fromId, toId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    StockDiscrepancy d = new StockDiscrepancy(DiscrepancyType.LEDGER_MISMATCH,
+                            rs.getInt("product_id"), rs.getLong("inventory_qty"), rs.getLong("ledger_qty"));
+                    d.setProductSku(rs.getString("sku"));
+                    d.setProductName(rs.getString("name"));
+                    result.add(d);
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    /**
+     * Нарушения цепочки записей товаров с id в [fromId, toId] в порядке записи:
+     * изменение не равно разнице было/стало, "было" не равно предыдущему "стало"
+     * (у первой записи - нулю), последнее "стало" не равно остатку в inventory.
+     */
+    public List<StockDiscrepancy> findChainBreaks(int fromId, int toId) throws SQLException {
+        String sql = """
+            SELECT c.*, p.sku, p.name
+            FROM (SELECT l.id, l.product_id, l.quantity_change, l.quantity_before, l.quantity_after,
+                         l.created_at, COALESCE(i.quantity, 0) AS inventory_qty,
+                         COALESCE(LAG(l.quantity_after) OVER w, 0) AS prev_after,
+                         LEAD(l.id) OVER w IS NULL AS is_last
+                  FROM stock_log l
+                  LEFT JOIN inventory i ON i.product_id = l.product_id
+                  WHERE l.product_id BETWEEN ? AND ?
+                  WINDOW w AS (PARTITION BY l.product_id ORDER BY l.id)) c
+            JOIN products p ON p.id = c.product_id
+            WHERE c.quantity_after - c.quantity_before <> c.quantity_change
+               OR c.quantity_before <> c.prev_after
+               OR (c.is_last AND c.quantity_after <> c.inventory_qty)
+            ORDER BY c.product_id, c.id
+            """;
+
+        List<StockDiscrepancy> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setParameters(stmt, fromId, toId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int before = rs.getInt("quantity_before");
+                    int after = rs.getInt("quantity_after");
+                    int change = rs.getInt("quantity_change");
+                    if (after - before != change) {
+                        result.add(chainDiscrepancy(rs, DiscrepancyType.CHANGE_MISMATCH, change, after - before));
+                    }
+                    int prevAfter = rs.getInt("prev_after");
+                    if (before != prevAfter) {
+                        result.add(chainDiscrepancy(rs, DiscrepancyType.CHAIN_BREAK, prevAfter, before));
+                    }
+                    int inventoryQty = rs.getInt("inventory_qty");
+                    if (rs.getBoolean("is_last") && after != inventoryQty) {
+                        result.add(chainDiscrepancy(rs, DiscrepancyType.LAST_AFTER_MISMATCH, inventoryQty, after));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private StockDiscrepancy chainDiscrepancy(ResultSet rs, DiscrepancyType type,
+                                              long expected, long actual) throws SQLException {
+        StockDiscrepancy d = new StockDiscrepancy(type, rs.getInt("product_id"), expected, actual);
+        d.setProductSku(rs.getString("sku"));
+        d.setProductName(rs.getString("name"));
+        d.setStockLogId(rs.getInt("id"));
+        d.setLogCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        return d;
+    }
 }
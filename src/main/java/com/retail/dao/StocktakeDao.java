@@ -0,0 +1,324 @@
+package com.retail.dao;
+
+import com.retail.model.Stocktake;
+import com.retail.model.StocktakeLine;
+import com.retail.model.enums.StocktakeStatus;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Инвентаризации и их строки. Все операции над строками выполняются одним запросом
+ * на всю инвентаризацию или пачку подсчетов.
+ */
+public class StocktakeDao extends AbstractDao<Stocktake, Integer> {
+
+    /**
+     * Строки инвентаризации с расхождением. Движения товара между фиксацией и его подсчетом
+     * вычитаются; неподсчитанный товар учитывается как отсутствующий на момент запроса,
+     * если второй параметр true, иначе пропускается.
+     */
+    private static final String LINES = """
+        SELECT s.product_id, p.sku, p.name, s.frozen_quantity,
+               s.counted_quantity IS NOT NULL AS is_counted,
+               COALESCE(s.counted_quantity, 0) AS counted_quantity,
+               COALESCE(m.moved, 0) AS moved,
+               COALESCE(i.quantity, 0) AS current_quantity,
+               COALESCE(s.counted_quantity, 0) - s.frozen_quantity - COALESCE(m.moved, 0) AS delta
+        FROM stocktake_items s
+        JOIN stocktakes st ON st.id = s.stocktake_id
+        JOIN products p ON p.id = s.product_id
+        LEFT JOIN inventory i ON i.product_id = s.product_id
+        LEFT JOIN LATERAL (SELECT SUM(l.quantity_change) AS moved
+                           FROM stock_log l
+                           WHERE l.product_id = s.product_id
+                             AND l.created_at > st.started_at
+                             AND l.created_at <= COALESCE(s.counted_at, CURRENT_TIMESTAMP)) m ON TRUE
+        WHERE s.stocktake_id = ?
+          AND (s.counted_quantity IS NOT NULL OR ?)
+        """;
+
+    @Override
+    protected String getTableName() {
+        return "stocktakes";
+    }
+
+    @Override
+    protected Stocktake mapRow(ResultSet rs) throws SQLException {
+        Stocktake stocktake = new Stocktake();
+        stocktake.setId(rs.getInt("id"));
+        stocktake.setStatus(StocktakeStatus.fromString(rs.getString("status")));
+        stocktake.setStartedBy(rs.getInt("started_by"));
+        stocktake.setStartedAt(rs.getTimestamp("started_at").toLocalDateTime());
+
+        int appliedBy = rs.getInt("applied_by");
+        if (!rs.wasNull()) {
+            stocktake.setAppliedBy(appliedBy);
+        }
+        Timestamp appliedAt = rs.getTimestamp("applied_at");
+        if (appliedAt != null) {
+            stocktake.setAppliedAt(appliedAt.toLocalDateTime());
+        }
+        stocktake.setNotes(rs.getString("notes"));
+        return stocktake;
+    }
+
+    @Override
+    public Stocktake save(Stocktake stocktake) throws SQLException {
+        throw new UnsupportedOperationException("Инвентаризация открывается методом open");
+    }
+
+    @Override
+    public void update(Stocktake stocktake) throws SQLException {
+        throw new UnsupportedOperationException("Статус меняется методами apply и cancel");
+    }
+
+    @Override
+    public void delete(Integer id) throws SQLException {
+        throw new UnsupportedOperationException("Удаление инвентаризаций запрещено");
+    }
+
+    
+    /**
+     * Открывает инвентаризацию и фиксирует текущие остатки всех товаров.
+     */
+    public Stocktake open(Connection conn, Integer userId, String notes) throws SQLException {
+        String insertStocktake = """
+            INSERT INTO stocktakes (status, started_by, started_at, notes)
+            VALUES ('OPEN', ?, CURRENT_TIMESTAMP, ?)
+            RETURNING *
+            """;
+        String freeze = """
+            INSERT INTO stocktake_items (stocktake_id, product_id, frozen_quantity)
+            SELECT ?, product_id, quantity
+            FROM inventory
+            """;
+
+        Stocktake stocktake;
+        try (PreparedStatement stmt = conn.prepareStatement(insertStocktake)) {
+            setParameters(stmt, userId, notes);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                stocktake = mapRow(rs);
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(freeze)) {
+            stmt.setInt(1, stocktake.getId());
+            stocktake.setItemCount(stmt.executeUpdate());
+        }
+        return stocktake;
+    }
+
+    
+    public Optional<Stocktake> findOpen() throws SQLException {
+        String sql = """
+            SELECT st.*,
+                   (SELECT COUNT(*) FROM stocktake_items s WHERE s.stocktake_id = st.id) AS item_count,
+                   (SELECT COUNT(counted_quantity) FROM stocktake_items s WHERE s.stocktake_id = st.id) AS counted_count
+            FROM stocktakes st
+            WHERE st.status = 'OPEN'
+            """;
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                Stocktake stocktake = mapRow(rs);
+                stocktake.setItemCount(rs.getInt("item_count"));
+                stocktake.setCountedCount(rs.getInt("counted_count"));
+                return Optional.of(stocktake);
+            }
+        }
+        return Optional.empty();
+    }
+
+    
+    /**
+     * Блокирует инвентаризацию до конца транзакции и возвращает ее статус.
+     */
+    public Optional<StocktakeStatus> lockStatus(Connection conn, Integer stocktakeId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT status FROM stocktakes WHERE id = ? FOR UPDATE")) {
+            stmt.setInt(1, stocktakeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Optional.of(StocktakeStatus.fromString(rs.getString(1))) : Optional.empty();
+            }
+        }
+    }
+
+    
+    /**
+     * Записывает пачку подсчетов по артикулам открытой инвентаризации. Повторы артикула
+     * в пачке суммируются; add = true прибавляет к ранее подсчитанному, иначе заменяет.
+     * Товары, которых не было при фиксации, добавляются с нулевым зафиксированным остатком.
+     * Возвращает число обновленных товаров.
+     */
+    public int recordCounts(Integer stocktakeId, String[] skus, Integer[] quantities, boolean add) throws SQLException {
+        String sql = """
+            INSERT INTO stocktake_items (stocktake_id, product_id, frozen_quantity, counted_quantity, counted_at)
+            SELECT st.id, p.id, 0, c.qty, CURRENT_TIMESTAMP
+            FROM (SELECT sku, SUM(qty) AS qty
+                  FROM unnest(?::text[], ?::int[]) AS c(sku, qty)
+                  GROUP BY sku) c
+            JOIN products p ON p.sku = c.sku
+            JOIN stocktakes st ON st.id = ? AND st.status = 'OPEN'
+            ON CONFLICT (stocktake_id, product_id) DO UPDATE
+            SET counted_quantity = CASE WHEN ? THEN COALESCE(stocktake_items.counted_quantity, 0) ELSE 0 END
+                                   + EXCLUDED.counted_quantity,
+                counted_at = EXCLUDED.counted_at
+            """;
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("text", skus));
+            stmt.setArray(2, conn.createArrayOf("integer", quantities));
+            stmt.setInt(3, stocktakeId);
+            stmt.setBoolean(4, add);
+            return stmt.executeUpdate();
+        }
+    }
+
+    
+    /**
+     * Артикулы из списка, которых нет в справочнике товаров.
+     */
+    public List<String> findUnknownSkus(String[] skus) throws SQLException {
+        String sql = """
+            SELECT DISTINCT c.sku
+            FROM unnest(?::text[]) AS c(sku)
+            WHERE NOT EXISTS (SELECT 1 FROM products p WHERE p.sku = c.sku)
+            ORDER BY c.sku
+            """;
+
+        List<String> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("text", skus));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString(1));
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    public List<StocktakeLine> findDiscrepancies(Integer stocktakeId, boolean uncountedAsZero) throws SQLException {
+        String sql = "SELECT * FROM (" + LINES + ") x WHERE x.delta <> 0 ORDER BY x.sku";
+
+        List<StocktakeLine> result = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, stocktakeId);
+            stmt.setBoolean(2, uncountedAsZero);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    StocktakeLine line = new StocktakeLine();
+                    line.setProductId(rs.getInt("product_id"));
+                    line.setProductSku(rs.getString("sku"));
+                    line.setProductName(rs.getString("name"));
+                    line.setFrozenQuantity(rs.getInt("frozen_quantity"));
+                    line.setCounted(rs.getBoolean("is_counted"));
+                    line.setCountedQuantity(rs.getInt("counted_quantity"));
+                    line.setMovedDuringCount(rs.getInt("moved"));
+                    line.setCurrentQuantity(rs.getInt("current_quantity"));
+                    line.setDelta(rs.getInt("delta"));
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+    
+    /**
+     * Проводит инвентаризацию одним набором запросов: блокирует строки остатков по порядку
+     * id, меняет остатки на расхождение и пишет по записи ADJUSTMENT или WRITE_OFF на товар
+     * (и событие в event_outbox, если writeEvents). Остаток не опускается ниже резерва.
+     * Возвращает id измененных товаров.
+     */
+    public List<Integer> apply(Connection conn, Integer stocktakeId, Integer userId, boolean uncountedAsZero,
+                               boolean writeEvents) throws SQLException {
+        String lock = """
+            SELECT i.product_id
+            FROM inventory i
+            JOIN stocktake_items s ON s.product_id = i.product_id AND s.stocktake_id = ?
+            ORDER BY i.product_id
+            FOR UPDATE OF i
+            """;
+        String apply = """
+            WITH d AS (
+                SELECT x.product_id, i.quantity AS before, GREATEST(i.quantity + x.delta, i.reserved) AS after
+                FROM (%s) x
+                JOIN inventory i ON i.product_id = x.product_id
+                WHERE x.delta <> 0
+            ), upd AS (
+                UPDATE inventory i
+                SET quantity = d.after, updated_at = CURRENT_TIMESTAMP
+                FROM d
+                WHERE i.product_id = d.product_id AND d.after <> d.before
+                RETURNING d.product_id, d.before, d.after
+            ), logged AS (
+                INSERT INTO stock_log (product_id, operation_type, quantity_change, quantity_before,
+                                       quantity_after, reference_id, reference_type, user_id, notes)
+                SELECT product_id,
+                       (CASE WHEN after > before THEN 'ADJUSTMENT' ELSE 'WRITE_OFF' END)::stock_operation_type,
+                       after - before, before, after, ?, 'STOCKTAKE', ?, ?
+                FROM upd
+                RETURNING *
+            ), events AS (
+                INSERT INTO event_outbox (event_type, aggregate_id, payload)
+                SELECT 'ADJUSTMENT', l.product_id,
+                       json_build_object('stockLogId', l.id, 'productId', l.product_id,
+                                         'operationType', l.operation_type,
+                                         'quantityBefore', l.quantity_before, 'quantityAfter', l.quantity_after,
+                                         'userId', l.user_id, 'notes', l.notes)::text
+                FROM logged l
+                WHERE ?
+            )
+            SELECT product_id FROM logged ORDER BY product_id
+            """.formatted(LINES);
+
+        try (PreparedStatement stmt = conn.prepareStatement(lock)) {
+            stmt.setInt(1, stocktakeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // Строки блокируются по мере чтения
+                }
+            }
+        }
+
+        List<Integer> changed = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(apply)) {
+            setParameters(stmt, stocktakeId, uncountedAsZero, stocktakeId, userId,
+                    "Инвентаризация №" + stocktakeId, writeEvents);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changed.add(rs.getInt(1));
+                }
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                UPDATE stocktakes
+                SET status = 'APPLIED', applied_by = ?, applied_at = CURRENT_TIMESTAMP
+                WHERE id = ?
+                """)) {
+            setParameters(stmt, userId, stocktakeId);
+            stmt.executeUpdate();
+        }
+        return changed;
+    }
+
+    
+    public void cancel(Connection conn, Integer stocktakeId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE stocktakes SET status = 'CANCELLED' WHERE id = ?")) {
+            stmt.setInt(1, stocktakeId);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -114,6 +114,12 @@ public class UserDao extends AbstractDao<User, Integer> {
     }
 
     
+    public boolean replacePasswordHash(Integer userId, String oldHash, String newHash) throws SQLException {
+        String sql = "UPDATE users SET password_hash = ? WHERE id = ? AND password_hash = ?";
+        return executeUpdate(sql, newHash, userId, oldHash) > 0;
+    }
+
+    
     public void updateStatus(Integer userId, UserStatus status) throws SQLException {
         String sql = "UPDATE users SET status = ?::user_status WHERE id = ?";
         executeUpdate(sql, status.name(), userId);
@@ -0,0 +1,175 @@
+package com.retail.db;
+
+import com.retail.util.AppConfig;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+
+/**
+ * Изменения товаров и остатков, зафиксированные любым узлом: одно соединение LISTEN
+ * catalog_changes на процесс. Триггеры products и inventory отправляют по уведомлению
+ * на оператор со списком id товаров через запятую; уведомления, пришедшие вместе,
+ * передаются подписчикам одной пачкой в потоке слушателя, поэтому подписчики не должны
+ * в нем блокироваться надолго.
+ * <p>
+ * Пока соединения не было, уведомления терялись: после каждого (пере)подключения
+ * вызывается onConnected подписчиков, и изменения нужно догнать запросом.
+ */
+public final class CatalogChangeFeed implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogChangeFeed.class);
+    private static final String CHANNEL = "catalog_changes";
+    private static volatile CatalogChangeFeed instance;
+
+    private final DatabaseManager dbManager = DatabaseManager.getInstance();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final long retryDelayMs;
+    private volatile boolean listening;
+    private volatile boolean stopped;
+    private Thread thread;
+
+    private CatalogChangeFeed() {
+        this.retryDelayMs = TimeUnit.SECONDS.toMillis(AppConfig.getLong("catalog.listen.retry.seconds", 10));
+    }
+
+    public static CatalogChangeFeed getInstance() {
+        CatalogChangeFeed feed = instance;
+        if (feed == null) {
+            synchronized (CatalogChangeFeed.class) {
+                feed = instance;
+                if (feed == null) {
+                    feed = new CatalogChangeFeed();
+                    instance = feed;
+                }
+            }
+        }
+        return feed;
+    }
+
+    
+    /**
+     * Подписывает на пачки id измененных товаров и на переподключения.
+     */
+    public void subscribe(Consumer<Set<Integer>> onChanges, Runnable onConnected) {
+        subscriptions.add(new Subscription(onChanges, onConnected));
+    }
+
+    public void unsubscribe(Consumer<Set<Integer>> onChanges) {
+        subscriptions.removeIf(s -> s.onChanges == onChanges);
+    }
+
+    public synchronized void start() {
+        if (thread != null || !AppConfig.getBoolean("catalog.listen.enabled", true)) {
+            return;
+        }
+        stopped = false;
+        thread = new Thread(this, "catalog-change-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static void shutdown() {
+        CatalogChangeFeed feed = instance;
+        if (feed == null) {
+            return;
+        }
+        synchronized (feed) {
+            feed.stopped = true;
+            if (feed.thread != null) {
+                feed.thread.interrupt();
+                feed.thread = null;
+            }
+        }
+    }
+
+    /**
+     * Соединение установлено и подписчики догнали изменения после подключения:
+     * пока это так, ни одно зафиксированное изменение не пропущено.
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            try (Connection conn = dbManager.openDedicatedConnection()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                for (Subscription subscription : subscriptions) {
+                    subscription.onConnected.run();
+                }
+                listening = true;
+                logger.info("Подписка на изменения каталога установлена");
+                listen(conn.unwrap(PGConnection.class));
+            } catch (SQLException e) {
+                if (listening) {
+                    logger.warn("Подписка на изменения каталога прервана: {}", e.getMessage());
+                } else {
+                    logger.debug("Нет подписки на изменения каталога: {}", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                logger.error("Ошибка обработки изменений каталога", e);
+            } finally {
+                listening = false;
+            }
+            if (!stopped) {
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void listen(PGConnection conn) throws SQLException {
+        while (!stopped) {
+            PGNotification[] notifications = conn.getNotifications(1000);
+            if (notifications == null || notifications.length == 0) {
+                continue;
+            }
+            Set<Integer> collected = new HashSet<>();
+            for (PGNotification notification : notifications) {
+                for (String id : notification.getParameter().split(",")) {
+                    try {
+                        collected.add(Integer.parseInt(id));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Неверное уведомление {}: {}", CHANNEL, notification.getParameter());
+                        break;
+                    }
+                }
+            }
+            Set<Integer> ids = Set.copyOf(collected);
+            for (Subscription subscription : subscriptions) {
+                try {
+                    subscription.onChanges.accept(ids);
+                } catch (RuntimeException e) {
+                    logger.error("Ошибка подписчика изменений каталога", e);
+                }
+            }
+        }
+    }
+
+    private static final class Subscription {
+        private final Consumer<Set<Integer>> onChanges;
+        private final Runnable onConnected;
+
+        private Subscription(Consumer<Set<Integer>> onChanges, Runnable onConnected) {
+            this.onChanges = onChanges;
+            this.onConnected = onConnected;
+        }
+    }
+}
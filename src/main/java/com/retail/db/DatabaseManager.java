@@ -1,21 +1,32 @@
 package com.retail.db;
 
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.util.AppConfig;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Properties;
 
 
 public class DatabaseManager {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
+    private static final String COMMIT_OUTCOME_UNKNOWN = "08007";
     private static DatabaseManager instance;
-    private HikariDataSource dataSource;
+    private final Map<Workload, HikariDataSource> dataSources = new EnumMap<>(Workload.class);
+    private boolean statementMetrics;
+    private final Counter rollbackCounter = MetricsRegistry.getInstance().counter("retail_transaction_rollbacks_total");
 
     private DatabaseManager() {
         initializeDataSource();
@@ -30,58 +41,126 @@ public class DatabaseManager {
 
     private void initializeDataSource() {
         try {
-            Properties props = loadProperties();
-            
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(props.getProperty("db.url"));
-            config.setUsername(props.getProperty("db.username"));
-            config.setPassword(props.getProperty("db.password"));
-            config.setDriverClassName(props.getProperty("db.driver"));
-            
-            
-            config.setMaximumPoolSize(Integer.parseInt(
-                    props.getProperty("db.pool.size", "10")));
-            config.setMinimumIdle(Integer.parseInt(
-                    props.getProperty("db.pool.min.idle", "2")));
-            config.setConnectionTimeout(Long.parseLong(
-                    props.getProperty("db.connection.timeout", "30000")));
-            
-            
-            config.setPoolName("RetailPool");
-            config.setAutoCommit(true);
-            config.addDataSourceProperty("cachePrepStmts", "true");
-            config.addDataSourceProperty("prepStmtCacheSize", "250");
-            config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-            
-            dataSource = new HikariDataSource(config);
-            logger.info("Пул соединений с базой данных инициализирован");
+            Properties props = AppConfig.getProperties();
+            statementMetrics = Boolean.parseBoolean(props.getProperty("metrics.jdbc.enabled", "true"));
+
+            for (Workload workload : Workload.values()) {
+                dataSources.put(workload, createPool(props, workload));
+            }
+            logger.info("Пулы соединений с базой данных инициализированы: {}", dataSources.keySet());
             
         } catch (Exception e) {
             logger.error("Ошибка инициализации пула соединений", e);
+            dataSources.values().forEach(HikariDataSource::close);
             throw new RuntimeException("Не удалось инициализировать соединение с БД", e);
         }
     }
 
-    private Properties loadProperties() throws IOException {
-        Properties props = new Properties();
-        try (InputStream input = getClass().getClassLoader()
-                .getResourceAsStream("application.properties")) {
-            if (input == null) {
-                throw new IOException("Файл application.properties не найден");
-            }
-            props.load(input);
+    private HikariDataSource createPool(Properties props, Workload workload) {
+        String prefix = "db.pool." + workload.getKey() + ".";
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(props.getProperty("db.url"));
+        config.setUsername(props.getProperty("db.username"));
+        config.setPassword(props.getProperty("db.password"));
+        config.setDriverClassName(props.getProperty("db.driver"));
+        
+        
+        config.setMaximumPoolSize(Integer.parseInt(props.getProperty(prefix + "size",
+                String.valueOf(workload.getDefaultPoolSize()))));
+        config.setMinimumIdle(Integer.parseInt(props.getProperty(prefix + "min.idle",
+                props.getProperty("db.pool.min.idle", "1"))));
+        config.setConnectionTimeout(Long.parseLong(props.getProperty(prefix + "connection.timeout",
+                String.valueOf(workload.getDefaultConnectionTimeout()))));
+        config.setReadOnly(workload.isReadOnly());
+        String sessionSql = SessionProfile.forWorkload(workload).sessionSql();
+        if (!sessionSql.isEmpty()) {
+            config.setConnectionInitSql(sessionSql);
+        }
+        
+        
+        config.setPoolName(workload.getPoolName());
+        config.setAutoCommit(true);
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.addDataSourceProperty("ApplicationName", "retail-" + workload.getKey());
+        config.setMetricsTrackerFactory(PoolMetricsTracker.factory(MetricsRegistry.getInstance()));
+        if (Boolean.parseBoolean(props.getProperty("journal.enabled", "false"))) {
+            // Касса должна запускаться без связи с БД: пул создается пустым и подключается позже
+            config.setInitializationFailTimeout(-1);
         }
-        return props;
+        return new HikariDataSource(config);
     }
 
-    
+    /**
+     * Соединение из пула класса нагрузки, определенного по аннотациям
+     * {@link DbWorkload} вызывающего сервиса (по умолчанию BACKOFFICE).
+     * Внутри открытого в потоке {@link ReportSession} возвращается соединение сеанса.
+     */
     public Connection getConnection() throws SQLException {
+        Connection bound = ReportSession.boundConnection();
+        if (bound != null) {
+            return bound;
+        }
+        return getConnection(WorkloadResolver.resolve(Workload.BACKOFFICE));
+    }
+
+    public Connection getConnection(Workload workload) throws SQLException {
+        Connection conn = getUninstrumentedConnection(workload);
+        return statementMetrics ? InstrumentedConnection.wrap(conn) : conn;
+    }
+
+    /**
+     * Сколько соединений пула класса нагрузки можно получить сейчас без ожидания:
+     * свободные и еще не созданные, если никто не ждет соединения.
+     */
+    public int getFreeConnections(Workload workload) {
+        HikariDataSource dataSource = dataSources.get(workload);
+        HikariPoolMXBean pool = dataSource != null ? dataSource.getHikariPoolMXBean() : null;
+        if (pool == null || pool.getThreadsAwaitingConnection() > 0) {
+            return 0;
+        }
+        return Math.max(0, dataSource.getMaximumPoolSize() - pool.getActiveConnections());
+    }
+
+    Connection getUninstrumentedConnection(Workload workload) throws SQLException {
+        HikariDataSource dataSource = dataSources.get(workload);
         if (dataSource == null) {
             throw new SQLException("Пул соединений не инициализирован");
         }
         return dataSource.getConnection();
     }
 
+    /**
+     * Отдельное соединение вне пулов для долгоживущих сеансов (LISTEN): не занимает
+     * место в пуле и закрывается вызывающим.
+     */
+    public Connection openDedicatedConnection() throws SQLException {
+        Properties props = AppConfig.getProperties();
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("user", props.getProperty("db.username"));
+        connectionProps.setProperty("password", props.getProperty("db.password"));
+        connectionProps.setProperty("ApplicationName", "retail-listener");
+        return DriverManager.getConnection(props.getProperty("db.url"), connectionProps);
+    }
+
+    /**
+     * Открывает сеанс отчета с единым снимком данных в пуле отчетов.
+     */
+    public ReportSession openReportSession() throws SQLException {
+        SessionProfile profile = SessionProfile.forWorkload(Workload.REPORTING);
+        return new ReportSession(this, profile.withReadOnly(true, profile.isDeferrable()));
+    }
+
+    /**
+     * Явно задает класс нагрузки для текущего потока до закрытия возвращенного объекта.
+     */
+    public WorkloadScope useWorkload(Workload workload) {
+        Workload previous = WorkloadResolver.setOverride(workload);
+        return () -> WorkloadResolver.restoreOverride(previous);
+    }
+
     
     public boolean testConnection() {
         try (Connection conn = getConnection()) {
@@ -94,49 +173,126 @@ public class DatabaseManager {
 
     
     public void shutdown() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            logger.info("Пул соединений закрыт");
+        for (HikariDataSource dataSource : dataSources.values()) {
+            if (!dataSource.isClosed()) {
+                dataSource.close();
+            }
         }
+        logger.info("Пулы соединений закрыты");
     }
 
     
     public <T> T executeInTransaction(TransactionCallback<T> callback) throws SQLException {
-        Connection conn = null;
+        return executeInTransaction(getConnection(), null, callback);
+    }
+
+    /**
+     * Транзакция в пуле класса нагрузки профиля; параметры профиля, отличающиеся
+     * от значений пула, действуют только до конца транзакции (SET LOCAL).
+     */
+    public <T> T executeInTransaction(SessionProfile profile, TransactionCallback<T> callback) throws SQLException {
+        return executeInTransaction(getConnection(profile.getWorkload()), profile, callback);
+    }
+
+    /**
+     * Чтение несколькими запросами в одной транзакции только для чтения.
+     */
+    public <T> T executeReadOnly(SessionProfile profile, TransactionCallback<T> callback) throws SQLException {
+        return executeInTransaction(profile.isReadOnly() ? profile : profile.withReadOnly(true, false), callback);
+    }
+
+    private <T> T executeInTransaction(Connection conn, SessionProfile profile, TransactionCallback<T> callback)
+            throws SQLException {
         try {
-            conn = getConnection();
             conn.setAutoCommit(false);
+            if (profile != null) {
+                applyProfile(conn, profile);
+            }
             
             T result = callback.execute(conn);
             
-            conn.commit();
+            try {
+                conn.commit();
+            } catch (SQLException e) {
+                if (isConnectionFailure(e)) {
+                    // COMMIT мог дойти до сервера и выполниться: повторять транзакцию нельзя
+                    throw new SQLException("Связь с БД потеряна при фиксации, результат транзакции неизвестен: "
+                            + e.getMessage(), COMMIT_OUTCOME_UNKNOWN, e);
+                }
+                throw e;
+            }
             return result;
             
         } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    logger.warn("Транзакция откачена из-за ошибки: {}", e.getMessage());
-                } catch (SQLException rollbackEx) {
-                    logger.error("Ошибка отката транзакции", rollbackEx);
-                }
+            try {
+                conn.rollback();
+                rollbackCounter.increment();
+                logger.warn("Транзакция откачена из-за ошибки: {}", e.getMessage());
+            } catch (SQLException rollbackEx) {
+                logger.error("Ошибка отката транзакции", rollbackEx);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            // Ошибки бизнес-логики (валидация, нехватка остатка) тоже откатывают транзакцию
+            try {
+                conn.rollback();
+                rollbackCounter.increment();
+                logger.debug("Транзакция откачена: {}", e.getMessage());
+            } catch (SQLException rollbackEx) {
+                logger.error("Ошибка отката транзакции", rollbackEx);
             }
             throw e;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    logger.error("Ошибка закрытия соединения", e);
-                }
+            try {
+                conn.setAutoCommit(true);
+                conn.close();
+            } catch (SQLException e) {
+                logger.error("Ошибка закрытия соединения", e);
             }
         }
     }
 
+    /**
+     * Ошибка связи с сервером (SQLSTATE класса 08 или таймаут получения соединения из пула),
+     * а не ошибка самого запроса.
+     */
+    public static boolean isConnectionFailure(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Связь оборвалась после отправки COMMIT (SQLSTATE 08007): транзакция могла быть зафиксирована.
+     */
+    public static boolean isCommitOutcomeUnknown(SQLException e) {
+        return COMMIT_OUTCOME_UNKNOWN.equals(e.getSQLState());
+    }
+
+    static void applyProfile(Connection conn, SessionProfile profile) throws SQLException {
+        String sql = profile.transactionSql();
+        if (sql.isEmpty()) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
     
     @FunctionalInterface
     public interface TransactionCallback<T> {
         T execute(Connection connection) throws SQLException;
     }
+
+    public interface WorkloadScope extends AutoCloseable {
+        @Override
+        void close();
+    }
 }
@@ -0,0 +1,17 @@
+package com.retail.db;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Класс нагрузки для методов сервиса. Аннотация метода важнее аннотации класса;
+ * при вложенных вызовах сервисов действует самый внешний аннотированный вызов.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface DbWorkload {
+    Workload value();
+}
@@ -0,0 +1,232 @@
+package com.retail.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Set;
+
+
+/**
+ * Обертка соединения, замеряющая выполнение подготовленных запросов.
+ * Статистика по тексту SQL ведется в {@link StatementProfiler}: время выполнения,
+ * число прочитанных строк и оценка объема полученных данных.
+ * <p>
+ * Замеряются только prepareStatement: все запросы DAO подготовленные. Через createStatement
+ * выполняются служебные команды (SET параметров сеанса, SET TRANSACTION SNAPSHOT,
+ * pg_export_snapshot, REFRESH MATERIALIZED VIEW со своим таймером, LISTEN, advisory-блокировки),
+ * prepareCall в приложении не используется; такие вызовы проходят без обертки.
+ */
+final class InstrumentedConnection implements InvocationHandler {
+
+    private static final Set<String> EXECUTE_METHODS = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+    // SQLSTATE отмены запроса, в том числе по statement_timeout
+    private static final String QUERY_CANCELED = "57014";
+
+    private final Connection delegate;
+
+    private InstrumentedConnection(Connection delegate) {
+        this.delegate = delegate;
+    }
+
+    static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new InstrumentedConnection(connection));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result = invokeDelegate(delegate, method, args);
+        if (result instanceof PreparedStatement stmt && method.getName().equals("prepareStatement")) {
+            return StatementHandler.wrap(stmt, StatementProfiler.getInstance().statsFor((String) args[0]));
+        }
+        return result;
+    }
+
+    static Object invokeDelegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    static void bindParameter(PreparedStatement stmt, int index, Object value) throws SQLException {
+        if (value == null || value instanceof NullParameter) {
+            stmt.setNull(index, value == null ? Types.NULL : ((NullParameter) value).sqlType);
+        } else {
+            stmt.setObject(index, value);
+        }
+    }
+
+    private static final class NullParameter {
+        private final int sqlType;
+
+        private NullParameter(int sqlType) {
+            this.sqlType = sqlType;
+        }
+    }
+
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final PreparedStatement delegate;
+        private final StatementProfiler.StatementStats stats;
+        private Object[] params = new Object[8];
+        private ResultSetHandler openResult;
+
+        private StatementHandler(PreparedStatement delegate, StatementProfiler.StatementStats stats) {
+            this.delegate = delegate;
+            this.stats = stats;
+        }
+
+        static PreparedStatement wrap(PreparedStatement stmt, StatementProfiler.StatementStats stats) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new StatementHandler(stmt, stats));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                capture(index, name.equals("setNull") ? new NullParameter((Integer) args[1]) : args[1]);
+                return invokeDelegate(delegate, method, args);
+            }
+            if (name.equals("clearParameters")) {
+                Arrays.fill(params, null);
+                return invokeDelegate(delegate, method, args);
+            }
+            if (name.equals("close")) {
+                finishResult();
+                return invokeDelegate(delegate, method, args);
+            }
+            if (!EXECUTE_METHODS.contains(name)) {
+                Object result = invokeDelegate(delegate, method, args);
+                if (result instanceof ResultSet rs && (name.equals("getResultSet") || name.equals("getGeneratedKeys"))) {
+                    return wrapResult(rs);
+                }
+                return result;
+            }
+
+            finishResult();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invokeDelegate(delegate, method, args);
+            } catch (SQLException e) {
+                if (QUERY_CANCELED.equals(e.getSQLState())) {
+                    StatementProfiler.getInstance().onCanceled(stats);
+                }
+                throw e;
+            } finally {
+                StatementProfiler.getInstance().onExecuted(stats, System.nanoTime() - start, params);
+            }
+            return result instanceof ResultSet rs ? wrapResult(rs) : result;
+        }
+
+        private void capture(int index, Object value) {
+            if (index > params.length) {
+                params = Arrays.copyOf(params, Math.max(index, params.length * 2));
+            }
+            params[index - 1] = value;
+        }
+
+        private ResultSet wrapResult(ResultSet rs) {
+            openResult = new ResultSetHandler(rs, this);
+            return (ResultSet) Proxy.newProxyInstance(
+                    ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class},
+                    openResult);
+        }
+
+        private void finishResult() {
+            if (openResult != null) {
+                openResult.finish();
+                openResult = null;
+            }
+        }
+    }
+
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet delegate;
+        private final StatementHandler owner;
+        private long rows;
+        private long bytes;
+        private boolean finished;
+
+        private ResultSetHandler(ResultSet delegate, StatementHandler owner) {
+            this.delegate = delegate;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = invokeDelegate(delegate, method, args);
+            String name = method.getName();
+            if (name.equals("next")) {
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                }
+            } else if (name.startsWith("get") && args != null && args.length >= 1) {
+                bytes += estimateSize(result);
+            } else if (name.equals("close")) {
+                finish();
+                if (owner.openResult == this) {
+                    owner.openResult = null;
+                }
+            }
+            return result;
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                StatementProfiler.getInstance().onFetched(owner.stats, rows, bytes);
+            }
+        }
+
+        // Оценка по размеру значения в бинарном представлении PostgreSQL
+        private static long estimateSize(Object value) {
+            if (value == null) {
+                return 0;
+            }
+            if (value instanceof String s) {
+                long size = s.length();
+                for (int i = 0; i < s.length(); i++) {
+                    if (s.charAt(i) >= 0x80) {
+                        size++;
+                    }
+                }
+                return size;
+            }
+            if (value instanceof Integer || value instanceof Float) {
+                return 4;
+            }
+            if (value instanceof Long || value instanceof Double || value instanceof java.util.Date) {
+                return 8;
+            }
+            if (value instanceof BigDecimal d) {
+                return 8 + (d.precision() + 3) / 4 * 2L;
+            }
+            if (value instanceof Boolean) {
+                return 1;
+            }
+            if (value instanceof byte[] b) {
+                return b.length;
+            }
+            return 8;
+        }
+    }
+}
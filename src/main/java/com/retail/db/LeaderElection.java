@@ -0,0 +1,141 @@
+package com.retail.db;
+
+import com.retail.metrics.MetricsRegistry;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Выбор узла для серверных фоновых задач (обновление витрины, снимки остатков, перенос
+ * событий, применение запланированных цен), которые должны работать в одном экземпляре на базу. Режим узла задает
+ * node.jobs: always - задачи выполняются всегда, never - никогда, auto (по умолчанию) -
+ * только пока узел держит сессионную advisory-блокировку на отдельном соединении.
+ * Блокировка освобождается сервером при обрыве соединения, и ее забирает другой узел.
+ */
+public final class LeaderElection {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderElection.class);
+    // Ключ pg_advisory_lock задач узла-лидера
+    private static final long LOCK_KEY = 0x7265_7461_696CL;
+    private static volatile LeaderElection instance;
+
+    private final DatabaseManager dbManager = DatabaseManager.getInstance();
+    private final String mode;
+    private final long checkSeconds;
+    private ScheduledExecutorService scheduler;
+    private Connection lockConnection;
+    private volatile boolean leader;
+
+    private LeaderElection() {
+        this.mode = AppConfig.get("node.jobs", "auto").trim().toLowerCase();
+        this.checkSeconds = Math.max(1, AppConfig.getLong("node.leader.check.seconds", 15));
+        MetricsRegistry.getInstance().gauge("retail_node_leader", () -> isLeader() ? 1 : 0);
+    }
+
+    public static LeaderElection getInstance() {
+        LeaderElection election = instance;
+        if (election == null) {
+            synchronized (LeaderElection.class) {
+                election = instance;
+                if (election == null) {
+                    election = new LeaderElection();
+                    instance = election;
+                }
+            }
+        }
+        return election;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || !"auto".equals(mode)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "leader-election");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, 0, checkSeconds, TimeUnit.SECONDS);
+    }
+
+    public static void shutdown() {
+        LeaderElection election = instance;
+        if (election != null) {
+            synchronized (election) {
+                if (election.scheduler != null) {
+                    election.scheduler.shutdownNow();
+                    election.scheduler = null;
+                }
+                election.release();
+            }
+        }
+    }
+
+
+    /**
+     * Узел должен выполнять серверные фоновые задачи. Задачи проверяют это перед каждым запуском:
+     * лидерство может перейти к другому узлу в любой момент.
+     */
+    public boolean isLeader() {
+        return switch (mode) {
+            case "always" -> true;
+            case "never" -> false;
+            default -> leader;
+        };
+    }
+
+    private synchronized void check() {
+        try {
+            if (lockConnection != null && lockConnection.isValid(5)) {
+                if (!leader) {
+                    leader = tryLock();
+                    logIfLeader();
+                }
+                return;
+            }
+            release();
+            lockConnection = dbManager.openDedicatedConnection();
+            leader = tryLock();
+            logIfLeader();
+        } catch (SQLException e) {
+            logger.warn("Не удалось проверить лидерство узла: {}", e.getMessage());
+            release();
+        }
+    }
+
+    private boolean tryLock() throws SQLException {
+        try (Statement stmt = lockConnection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private void logIfLeader() {
+        if (leader) {
+            logger.info("Узел выполняет серверные фоновые задачи");
+        }
+    }
+
+    private void release() {
+        if (leader) {
+            logger.info("Узел больше не выполняет серверные фоновые задачи");
+        }
+        leader = false;
+        if (lockConnection != null) {
+            try {
+                lockConnection.close();
+            } catch (SQLException e) {
+                logger.debug("Ошибка закрытия соединения блокировки лидера: {}", e.getMessage());
+            }
+            lockConnection = null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.retail.db;
+
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+
+
+class PoolMetricsTracker implements IMetricsTracker {
+
+    private final Timer acquireTimer;
+    private final Timer usageTimer;
+    private final Timer creationTimer;
+    private final Counter timeoutCounter;
+
+    private PoolMetricsTracker(String poolName, PoolStats stats, MetricsRegistry registry) {
+        this.acquireTimer = registry.timer("retail_pool_acquire_seconds", "pool", poolName);
+        this.usageTimer = registry.timer("retail_pool_usage_seconds", "pool", poolName);
+        this.creationTimer = registry.timer("retail_pool_connection_create_seconds", "pool", poolName);
+        this.timeoutCounter = registry.counter("retail_pool_timeouts_total", "pool", poolName);
+
+        registry.gauge("retail_pool_active_connections", stats::getActiveConnections, "pool", poolName);
+        registry.gauge("retail_pool_idle_connections", stats::getIdleConnections, "pool", poolName);
+        registry.gauge("retail_pool_total_connections", stats::getTotalConnections, "pool", poolName);
+        registry.gauge("retail_pool_pending_threads", stats::getPendingThreads, "pool", poolName);
+        registry.gauge("retail_pool_max_connections", stats::getMaxConnections, "pool", poolName);
+    }
+
+    static MetricsTrackerFactory factory(MetricsRegistry registry) {
+        return (poolName, poolStats) -> new PoolMetricsTracker(poolName, poolStats, registry);
+    }
+
+    @Override
+    public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+        creationTimer.record(connectionCreatedMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquireTimer.record(elapsedAcquiredNanos);
+    }
+
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        usageTimer.record(elapsedBorrowedMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeoutCounter.increment();
+    }
+}
@@ -0,0 +1,304 @@
+package com.retail.db;
+
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Сеанс отчета: все запросы выполняются в одной транзакции REPEATABLE READ READ ONLY
+ * (или SERIALIZABLE READ ONLY DEFERRABLE) и видят один и тот же снимок данных.
+ * Пока сеанс открыт, DAO в этом потоке получают соединение сеанса.
+ * Части отчета, переданные в {@link #fork}, выполняются параллельно на других
+ * соединениях пула отчетов с тем же снимком (pg_export_snapshot), если в пуле есть
+ * свободное соединение и свободен поток; иначе часть выполняется сразу на соединении
+ * сеанса. Ведущий поток уже держит соединение, и ожидание второго при занятом пуле
+ * (другими сеансами, сверкой, выборкой планов) могло бы растянуться до таймаута пула.
+ */
+public final class ReportSession implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ReportSession.class);
+
+    private static final ThreadLocal<Connection> BOUND = new ThreadLocal<>();
+    private static final Set<String> SESSION_CONTROL_METHODS = Set.of(
+            "close", "commit", "rollback", "setAutoCommit", "setReadOnly", "setTransactionIsolation");
+    private static final Timer SESSION_TIMER = MetricsRegistry.getInstance().timer("retail_report_session_seconds");
+
+    private static volatile ThreadPoolExecutor workers;
+
+    private final DatabaseManager dbManager;
+    private final SessionProfile profile;
+    private final int isolation;
+    private final Connection connection;
+    private final Connection previousBound;
+    private final List<Future<?>> pending = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private String snapshotId;
+    private boolean closed;
+
+    ReportSession(DatabaseManager dbManager, SessionProfile profile) throws SQLException {
+        this.dbManager = dbManager;
+        this.profile = profile;
+        // DEFERRABLE действует только в SERIALIZABLE: ждем безопасный снимок вместо риска отмены
+        this.isolation = profile.isDeferrable() ? Connection.TRANSACTION_SERIALIZABLE : Connection.TRANSACTION_REPEATABLE_READ;
+        this.connection = dbManager.getConnection(profile.getWorkload());
+        try {
+            begin(connection, null, profile);
+        } catch (SQLException e) {
+            release(connection);
+            throw e;
+        }
+        this.previousBound = BOUND.get();
+        BOUND.set(nonClosing(connection));
+    }
+
+    /**
+     * Соединение сеанса, открытого в текущем потоке, или null.
+     */
+    static Connection boundConnection() {
+        return BOUND.get();
+    }
+
+    /**
+     * Выполняется ли текущий поток внутри сеанса отчета (в том числе в его части).
+     */
+    public static boolean isActive() {
+        return BOUND.get() != null;
+    }
+
+    /**
+     * Выполняет часть отчета на отдельном соединении с тем же снимком.
+     * Если параллельные потоки отключены или заняты либо в пуле нет свободного соединения,
+     * часть выполняется сразу в текущем потоке на соединении сеанса.
+     */
+    public <T> Part<T> fork(ReportTask<T> task) throws SQLException {
+        if (closed) {
+            throw new IllegalStateException("Сеанс отчета закрыт");
+        }
+        ThreadPoolExecutor executor = workers();
+        if (executor == null || executor.getActiveCount() + executor.getQueue().size() >= executor.getMaximumPoolSize()
+                || dbManager.getFreeConnections(profile.getWorkload()) == 0) {
+            return Part.completed(task);
+        }
+        if (snapshotId == null) {
+            snapshotId = exportSnapshot();
+        }
+        String snapshot = snapshotId;
+        Connection conn;
+        try {
+            // Соединение берется в ведущем потоке: часть не встает в очередь пула за ним
+            conn = dbManager.getConnection(profile.getWorkload());
+        } catch (SQLException e) {
+            if (!DatabaseManager.isConnectionFailure(e)) {
+                throw e;
+            }
+            logger.debug("Нет свободного соединения для части отчета, выполняется в сеансе: {}", e.getMessage());
+            return Part.completed(task);
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(() -> runInSnapshot(task, snapshot, conn));
+        } catch (RuntimeException e) {
+            release(conn);
+            throw e;
+        }
+        pending.add(future);
+        return new Part<>(future);
+    }
+
+    /**
+     * Сколько частей отчета имеет смысл запускать одновременно, включая ведущий поток:
+     * не больше потоков сеансов и свободных сейчас соединений пула.
+     */
+    public int getParallelism() {
+        ThreadPoolExecutor executor = workers();
+        if (executor == null) {
+            return 1;
+        }
+        int freeThreads = Math.max(0, executor.getMaximumPoolSize() - executor.getActiveCount() - executor.getQueue().size());
+        return Math.min(freeThreads, dbManager.getFreeConnections(profile.getWorkload())) + 1;
+    }
+
+    private String exportSnapshot() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT pg_export_snapshot()")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private <T> T runInSnapshot(ReportTask<T> task, String snapshot, Connection conn) throws SQLException {
+        Connection previous = BOUND.get();
+        try {
+            // Импортирующая снимок транзакция не может быть DEFERRABLE
+            begin(conn, snapshot, profile.withReadOnly(true, false));
+            BOUND.set(nonClosing(conn));
+            return task.call();
+        } finally {
+            if (previous == null) {
+                BOUND.remove();
+            } else {
+                BOUND.set(previous);
+            }
+            release(conn);
+        }
+    }
+
+    private void begin(Connection conn, String snapshot, SessionProfile sessionProfile) throws SQLException {
+        conn.setTransactionIsolation(isolation);
+        conn.setAutoCommit(false);
+        if (snapshot != null) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SET TRANSACTION SNAPSHOT '" + snapshot.replace("'", "''") + "'");
+            }
+        }
+        DatabaseManager.applyProfile(conn, sessionProfile);
+    }
+
+    private void release(Connection conn) {
+        try {
+            conn.rollback();
+            conn.setAutoCommit(true);
+            conn.close();
+        } catch (SQLException e) {
+            logger.error("Ошибка закрытия соединения сеанса отчета", e);
+        }
+    }
+
+    /**
+     * Дожидается незавершенных частей (снимок действует, пока открыта транзакция сеанса)
+     * и возвращает соединение в пул.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // Ошибка уже передана через Part.join
+            }
+        }
+        if (previousBound == null) {
+            BOUND.remove();
+        } else {
+            BOUND.set(previousBound);
+        }
+        release(connection);
+        SESSION_TIMER.record(System.nanoTime() - startNanos);
+    }
+
+    private static ThreadPoolExecutor workers() {
+        ThreadPoolExecutor executor = workers;
+        if (executor == null) {
+            synchronized (ReportSession.class) {
+                executor = workers;
+                if (executor == null) {
+                    // Одно соединение пула отчетов остается у ведущего потока сеанса
+                    int poolSize = AppConfig.getInt("db.pool.reporting.size", Workload.REPORTING.getDefaultPoolSize());
+                    int threads = AppConfig.getInt("report.session.parallel.threads", poolSize - 1);
+                    if (threads <= 0) {
+                        return null;
+                    }
+                    AtomicInteger counter = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), r -> {
+                                Thread t = new Thread(r, "report-worker-" + counter.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    workers = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static Connection nonClosing(Connection conn) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            // Вложенный код не управляет транзакцией и соединением сеанса
+            if (SESSION_CONTROL_METHODS.contains(method.getName())) {
+                return null;
+            }
+            return InstrumentedConnection.invokeDelegate(conn, method, args);
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+
+    @FunctionalInterface
+    public interface ReportTask<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * Результат части отчета.
+     */
+    public static final class Part<T> {
+        private final Future<T> future;
+        private T value;
+        private Exception error;
+
+        private Part(Future<T> future) {
+            this.future = future;
+        }
+
+        private static <T> Part<T> completed(ReportTask<T> task) throws SQLException {
+            Part<T> part = new Part<>(null);
+            part.value = task.call();
+            return part;
+        }
+
+        public T join() throws SQLException {
+            if (future == null) {
+                return value;
+            }
+            if (error == null && value == null) {
+                try {
+                    value = future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    throw new SQLException("Выполнение отчета прервано", e);
+                } catch (ExecutionException e) {
+                    error = e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+            if (error instanceof SQLException sql) {
+                throw sql;
+            }
+            if (error instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (error != null) {
+                throw new SQLException("Ошибка выполнения части отчета", error);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.retail.db;
+
+import com.retail.util.AppConfig;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+
+/**
+ * Параметры сеанса PostgreSQL для класса нагрузки: таймаут запроса, work_mem,
+ * параллельные воркеры, synchronous_commit и режим транзакции.
+ * Значения класса по умолчанию задаются для всего пула при открытии соединения,
+ * а отличающиеся от них применяются на одну транзакцию через SET LOCAL.
+ */
+public final class SessionProfile {
+    private static final Pattern MEMORY_PATTERN = Pattern.compile("\\d+\\s*(kB|MB|GB|TB)?");
+    private static final Set<String> SYNC_COMMIT_VALUES = Set.of("on", "off", "local", "remote_write", "remote_apply");
+    private static final Map<Workload, SessionProfile> DEFAULTS = new EnumMap<>(Workload.class);
+
+    private final Workload workload;
+    private final int statementTimeoutMs;
+    private final String workMem;
+    private final int maxParallelWorkers;
+    private final String synchronousCommit;
+    private final boolean readOnly;
+    private final boolean deferrable;
+
+    private SessionProfile(Workload workload, int statementTimeoutMs, String workMem, int maxParallelWorkers,
+                           String synchronousCommit, boolean readOnly, boolean deferrable) {
+        if (statementTimeoutMs < 0) {
+            throw new IllegalArgumentException("Некорректный statement_timeout: " + statementTimeoutMs);
+        }
+        if (workMem != null && !MEMORY_PATTERN.matcher(workMem).matches()) {
+            throw new IllegalArgumentException("Некорректный work_mem: " + workMem);
+        }
+        if (synchronousCommit != null && !SYNC_COMMIT_VALUES.contains(synchronousCommit)) {
+            throw new IllegalArgumentException("Некорректный synchronous_commit: " + synchronousCommit);
+        }
+        this.workload = workload;
+        this.statementTimeoutMs = statementTimeoutMs;
+        this.workMem = workMem;
+        this.maxParallelWorkers = maxParallelWorkers;
+        this.synchronousCommit = synchronousCommit;
+        this.readOnly = readOnly;
+        this.deferrable = deferrable;
+    }
+
+    /**
+     * Профиль класса нагрузки из настроек db.profile.&lt;класс&gt;.*.
+     */
+    public static synchronized SessionProfile forWorkload(Workload workload) {
+        return DEFAULTS.computeIfAbsent(workload, SessionProfile::load);
+    }
+
+    private static SessionProfile load(Workload workload) {
+        String prefix = "db.profile." + workload.getKey() + ".";
+        return new SessionProfile(workload,
+                AppConfig.getInt(prefix + "statement.timeout.ms", 0),
+                blankToNull(AppConfig.get(prefix + "work.mem", null)),
+                AppConfig.getInt(prefix + "parallel.workers", -1),
+                blankToNull(AppConfig.get(prefix + "synchronous.commit", null)),
+                workload.isReadOnly(),
+                AppConfig.getBoolean(prefix + "deferrable", false));
+    }
+
+    public SessionProfile withStatementTimeout(int millis) {
+        return new SessionProfile(workload, millis, workMem, maxParallelWorkers, synchronousCommit, readOnly, deferrable);
+    }
+
+    public SessionProfile withWorkMem(String value) {
+        return new SessionProfile(workload, statementTimeoutMs, value, maxParallelWorkers, synchronousCommit, readOnly, deferrable);
+    }
+
+    public SessionProfile withMaxParallelWorkers(int workers) {
+        return new SessionProfile(workload, statementTimeoutMs, workMem, workers, synchronousCommit, readOnly, deferrable);
+    }
+
+    public SessionProfile withSynchronousCommit(String value) {
+        return new SessionProfile(workload, statementTimeoutMs, workMem, maxParallelWorkers, value, readOnly, deferrable);
+    }
+
+    public SessionProfile withReadOnly(boolean readOnly, boolean deferrable) {
+        return new SessionProfile(workload, statementTimeoutMs, workMem, maxParallelWorkers, synchronousCommit, readOnly, deferrable);
+    }
+
+    /**
+     * SQL для инициализации соединений пула (параметры уровня сеанса).
+     */
+    String sessionSql() {
+        StringBuilder sql = new StringBuilder();
+        appendSettings(sql, "SET ", null);
+        return sql.toString();
+    }
+
+    /**
+     * SQL начала транзакции: режим транзакции и SET LOCAL для параметров,
+     * отличающихся от значений пула. Пустая строка, если ничего менять не нужно.
+     */
+    String transactionSql() {
+        StringBuilder sql = new StringBuilder();
+        // Пул отчетов уже открывает транзакции как READ ONLY
+        if (readOnly && (deferrable || !workload.isReadOnly())) {
+            sql.append("SET TRANSACTION READ ONLY").append(deferrable ? " DEFERRABLE" : "").append(';');
+        }
+        appendSettings(sql, "SET LOCAL ", forWorkload(workload));
+        return sql.toString();
+    }
+
+    private void appendSettings(StringBuilder sql, String command, SessionProfile base) {
+        if (base == null || statementTimeoutMs != base.statementTimeoutMs) {
+            sql.append(command).append("statement_timeout = ").append(statementTimeoutMs).append(';');
+        }
+        if (workMem != null && (base == null || !workMem.equals(base.workMem))) {
+            sql.append(command).append("work_mem = '").append(workMem).append("';");
+        }
+        if (maxParallelWorkers >= 0 && (base == null || maxParallelWorkers != base.maxParallelWorkers)) {
+            sql.append(command).append("max_parallel_workers_per_gather = ").append(maxParallelWorkers).append(';');
+        }
+        if (synchronousCommit != null && (base == null || !synchronousCommit.equals(base.synchronousCommit))) {
+            sql.append(command).append("synchronous_commit = ").append(synchronousCommit).append(';');
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    public int getStatementTimeoutMs() {
+        return statementTimeoutMs;
+    }
+
+    public String getWorkMem() {
+        return workMem;
+    }
+
+    public int getMaxParallelWorkers() {
+        return maxParallelWorkers;
+    }
+
+    public String getSynchronousCommit() {
+        return synchronousCommit;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public boolean isDeferrable() {
+        return deferrable;
+    }
+
+    @Override
+    public String toString() {
+        return workload.getKey() + "{timeout=" + statementTimeoutMs + "ms, work_mem=" + Objects.toString(workMem, "default")
+                + ", parallel=" + maxParallelWorkers + ", synchronous_commit=" + Objects.toString(synchronousCommit, "default")
+                + (readOnly ? ", read only" : "") + (deferrable ? " deferrable" : "") + "}";
+    }
+}
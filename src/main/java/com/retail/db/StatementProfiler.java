@@ -0,0 +1,271 @@
+package com.retail.db;
+
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Статистика выполнения SQL по каждому тексту запроса: время, строки, объем данных,
+ * журнал медленных запросов и выборочные планы EXPLAIN (ANALYZE, BUFFERS).
+ * Учитывается не больше sql.profile.max.statements разных текстов; остальные
+ * (обычно SQL, собранный с литералами) попадают в одну общую запись без планов.
+ */
+public final class StatementProfiler {
+    private static final Logger logger = LoggerFactory.getLogger(StatementProfiler.class);
+    private static final Logger slowLogger = LoggerFactory.getLogger("com.retail.sql.slow");
+
+    private static final String DAO_PACKAGE = "com.retail.dao";
+    private static final String ABSTRACT_DAO = "AbstractDao";
+    private static final Set<String> DAO_HELPERS = Set.of(
+            "executeQuery", "executeQuerySingle", "executeUpdate", "executeInsertAndGetKey", "setParameters");
+    private static final Pattern TABLE_PATTERN = Pattern.compile("(?i)\\bfrom\\s+(\\w+)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private static final String OVERFLOW_SQL = "-- прочие запросы сверх sql.profile.max.statements";
+    private static final String OVERFLOW_LABEL = "other";
+
+    private static final StatementProfiler INSTANCE = new StatementProfiler();
+
+    private volatile ConcurrentHashMap<String, StatementStats> statements = new ConcurrentHashMap<>();
+    private final int maxStatements;
+    private final long slowThresholdNanos;
+    private final boolean explainEnabled;
+    private final long explainIntervalNanos;
+    private final ThreadPoolExecutor explainExecutor;
+
+    private StatementProfiler() {
+        this.maxStatements = AppConfig.getInt("sql.profile.max.statements", 2_000);
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("sql.slow.threshold.ms", 200));
+        this.explainEnabled = AppConfig.getBoolean("sql.explain.enabled", true);
+        this.explainIntervalNanos = TimeUnit.SECONDS.toNanos(AppConfig.getLong("sql.explain.interval.seconds", 300));
+        // Один поток и короткая очередь: EXPLAIN не должен создавать заметную нагрузку
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(8), r -> {
+                    Thread t = new Thread(r, "sql-explain");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public static StatementProfiler getInstance() {
+        return INSTANCE;
+    }
+
+
+    StatementStats statsFor(String sql) {
+        ConcurrentHashMap<String, StatementStats> map = statements;
+        StatementStats stats = map.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        if (map.size() >= maxStatements) {
+            // Без обхода стека и новых таймеров на каждый неучтенный текст
+            return map.computeIfAbsent(OVERFLOW_SQL, key -> new StatementStats(key, OVERFLOW_LABEL, OVERFLOW_LABEL));
+        }
+        String[] label = resolveCaller(sql);
+        stats = new StatementStats(sql, label[0], label[1]);
+        StatementStats existing = map.putIfAbsent(sql, stats);
+        return existing != null ? existing : stats;
+    }
+
+    void onExecuted(StatementStats stats, long nanos, Object[] params) {
+        stats.record(nanos);
+        if (nanos < slowThresholdNanos) {
+            return;
+        }
+        stats.slowCount.increment();
+        slowLogger.warn("{} мс {}.{}: {}", nanos / 1_000_000, stats.dao, stats.method, stats.getCompactSql());
+
+        if (explainEnabled && stats.isExplainable() && stats.tryClaimExplain(explainIntervalNanos)) {
+            Object[] captured = params != null ? params.clone() : new Object[0];
+            explainExecutor.execute(() -> explain(stats, captured));
+        }
+    }
+
+    void onCanceled(StatementStats stats) {
+        stats.canceledCount.increment();
+        stats.canceledCounter.increment();
+        slowLogger.warn("Запрос прерван по таймауту {}.{}: {}", stats.dao, stats.method, stats.getCompactSql());
+    }
+
+    void onFetched(StatementStats stats, long rows, long bytes) {
+        stats.rows.add(rows);
+        stats.bytes.add(bytes);
+    }
+
+    private void explain(StatementStats stats, Object[] params) {
+        try (Connection conn = DatabaseManager.getInstance().getUninstrumentedConnection(Workload.REPORTING)) {
+            // EXPLAIN ANALYZE выполняет запрос, поэтому только SELECT и только в read-only транзакции
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + stats.sql)) {
+                for (int i = 0; i < params.length; i++) {
+                    InstrumentedConnection.bindParameter(stmt, i + 1, params[i]);
+                }
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+                stats.lastPlan = plan.toString();
+                stats.lastPlanAt = LocalDateTime.now();
+                slowLogger.info("План для {}.{}:\n{}", stats.dao, stats.method, plan);
+            } finally {
+                conn.rollback();
+                conn.setReadOnly(false);
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.debug("Не удалось получить план запроса {}.{}: {}", stats.dao, stats.method, e.getMessage());
+        }
+    }
+
+
+    public List<StatementStats> getTopByTotalTime(int limit) {
+        List<StatementStats> result = new ArrayList<>(statements.values());
+        result.removeIf(s -> s.getCalls() == 0);
+        result.sort(Comparator.comparingLong(StatementStats::getTotalNanos).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+
+    public void reset() {
+        statements = new ConcurrentHashMap<>();
+    }
+
+    public long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    private static String[] resolveCaller(String sql) {
+        Optional<StackWalker.StackFrame> daoFrame = STACK_WALKER.walk(frames -> frames
+                .filter(f -> f.getDeclaringClass().getPackageName().equals(DAO_PACKAGE))
+                .filter(f -> !(f.getDeclaringClass().getSimpleName().equals(ABSTRACT_DAO)
+                        && DAO_HELPERS.contains(f.getMethodName())))
+                .findFirst());
+
+        if (daoFrame.isPresent()) {
+            StackWalker.StackFrame frame = daoFrame.get();
+            String dao = frame.getDeclaringClass().getSimpleName();
+            if (dao.equals(ABSTRACT_DAO)) {
+                // Общие методы (findById, findAll...) различаем по таблице
+                dao = ABSTRACT_DAO + ":" + tableOf(sql);
+            }
+            return new String[]{dao, frame.getMethodName()};
+        }
+
+        return STACK_WALKER.walk(frames -> frames
+                .filter(f -> !f.getDeclaringClass().getPackageName().equals("com.retail.db"))
+                .filter(f -> f.getDeclaringClass().getPackageName().startsWith("com.retail"))
+                .findFirst()
+                .map(f -> new String[]{f.getDeclaringClass().getSimpleName(), f.getMethodName()})
+                .orElse(new String[]{"unknown", "unknown"}));
+    }
+
+    private static String tableOf(String sql) {
+        Matcher m = TABLE_PATTERN.matcher(sql);
+        return m.find() ? m.group(1) : "unknown";
+    }
+
+
+    public static final class StatementStats {
+        private final String sql;
+        private final String dao;
+        private final String method;
+        private final Timer timer;
+        private final boolean explainable;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        private final LongAdder slowCount = new LongAdder();
+        private final LongAdder canceledCount = new LongAdder();
+        private final Counter canceledCounter;
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final AtomicLong lastExplainNanos = new AtomicLong(Long.MIN_VALUE);
+        private volatile String lastPlan;
+        private volatile LocalDateTime lastPlanAt;
+
+        StatementStats(String sql, String dao, String method) {
+            this.sql = sql;
+            this.dao = dao;
+            this.method = method;
+            this.timer = MetricsRegistry.getInstance().timer("retail_dao_seconds", "dao", dao, "method", method);
+            this.canceledCounter = MetricsRegistry.getInstance().counter("retail_statement_timeouts_total", "dao", dao);
+            String normalized = sql.stripLeading().toUpperCase();
+            this.explainable = (normalized.startsWith("SELECT") || normalized.startsWith("WITH"))
+                    && !normalized.contains("FOR UPDATE")
+                    && !normalized.contains("NEXTVAL")
+                    && !normalized.contains("GENERATE_");
+        }
+
+        private void record(long nanos) {
+            calls.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            timer.record(nanos);
+        }
+
+        private boolean tryClaimExplain(long intervalNanos) {
+            long now = System.nanoTime();
+            long last = lastExplainNanos.get();
+            if (last != Long.MIN_VALUE && now - last < intervalNanos) {
+                return false;
+            }
+            return lastExplainNanos.compareAndSet(last, now);
+        }
+
+        public String getSql() { return sql; }
+        public String getCompactSql() { return WHITESPACE.matcher(sql).replaceAll(" ").trim(); }
+        public String getDao() { return dao; }
+        public String getMethod() { return method; }
+        public boolean isExplainable() { return explainable; }
+        public long getCalls() { return calls.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+        public long getMaxNanos() { return maxNanos.get(); }
+        public long getSlowCount() { return slowCount.sum(); }
+        public long getCanceledCount() { return canceledCount.sum(); }
+        public long getRows() { return rows.sum(); }
+        public long getBytes() { return bytes.sum(); }
+        public String getLastPlan() { return lastPlan; }
+        public LocalDateTime getLastPlanAt() { return lastPlanAt; }
+
+        public double getTotalMillis() {
+            return getTotalNanos() / 1_000_000.0;
+        }
+
+        public double getMeanMillis() {
+            long n = getCalls();
+            return n == 0 ? 0.0 : getTotalMillis() / n;
+        }
+
+        public double getMaxMillis() {
+            return getMaxNanos() / 1_000_000.0;
+        }
+    }
+}
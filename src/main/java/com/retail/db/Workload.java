@@ -0,0 +1,48 @@
+package com.retail.db;
+
+
+/**
+ * Класс нагрузки на БД. У каждого класса свой пул соединений с отдельными
+ * размером и таймаутом, чтобы тяжелые отчеты не отнимали соединения у касс.
+ */
+public enum Workload {
+    CHECKOUT("checkout", "RetailCheckout", 6, 5_000, false),
+    BACKOFFICE("backoffice", "RetailBackOffice", 3, 10_000, false),
+    REPORTING("reporting", "RetailReporting", 3, 30_000, true),
+    // Фоновые выгрузки держат соединение минутами: отдельный пул не отнимает его у интерактивных отчетов
+    REPORT_JOBS("jobs", "RetailReportJobs", 1, 60_000, true);
+
+    private final String key;
+    private final String poolName;
+    private final int defaultPoolSize;
+    private final long defaultConnectionTimeout;
+    private final boolean readOnly;
+
+    Workload(String key, String poolName, int defaultPoolSize, long defaultConnectionTimeout, boolean readOnly) {
+        this.key = key;
+        this.poolName = poolName;
+        this.defaultPoolSize = defaultPoolSize;
+        this.defaultConnectionTimeout = defaultConnectionTimeout;
+        this.readOnly = readOnly;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public int getDefaultPoolSize() {
+        return defaultPoolSize;
+    }
+
+    public long getDefaultConnectionTimeout() {
+        return defaultConnectionTimeout;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+}
@@ -0,0 +1,125 @@
+package com.retail.db;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Определяет класс нагрузки по стеку вызовов: ищет самый внешний метод сервиса
+ * с аннотацией {@link DbWorkload}. Метод кадра определяется по имени и дескриптору,
+ * так что перегрузки с разными аннотациями не путаются; результат кэшируется
+ * для класса ({@link ClassValue}) и метода, и после первого вызова из места вызова
+ * остается только обход стека без рефлексии.
+ */
+final class WorkloadResolver {
+    private static final String SERVICE_PACKAGE = "com.retail.service";
+    private static final String LAMBDA_PREFIX = "lambda$";
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private static final ThreadLocal<Workload> OVERRIDE = new ThreadLocal<>();
+    private static final ServiceMethods NOT_SERVICE = new ServiceMethods(null);
+    private static final ClassValue<ServiceMethods> SERVICES = new ClassValue<>() {
+        @Override
+        protected ServiceMethods computeValue(Class<?> type) {
+            return type.getPackageName().equals(SERVICE_PACKAGE) ? new ServiceMethods(type) : NOT_SERVICE;
+        }
+    };
+
+    private WorkloadResolver() {
+    }
+
+    static Workload resolve(Workload fallback) {
+        Workload override = OVERRIDE.get();
+        if (override != null) {
+            return override;
+        }
+        return STACK_WALKER.walk(frames -> {
+            Workload outermost = null;
+            for (Iterator<StackWalker.StackFrame> it = frames.iterator(); it.hasNext(); ) {
+                StackWalker.StackFrame frame = it.next();
+                ServiceMethods methods = SERVICES.get(frame.getDeclaringClass());
+                if (methods != NOT_SERVICE) {
+                    Workload workload = methods.workloadOf(frame.getMethodName(), frame.getDescriptor());
+                    if (workload != null) {
+                        outermost = workload;
+                    }
+                }
+            }
+            return outermost != null ? outermost : fallback;
+        });
+    }
+
+    static Workload setOverride(Workload workload) {
+        Workload previous = OVERRIDE.get();
+        OVERRIDE.set(workload);
+        return previous;
+    }
+
+    static void restoreOverride(Workload previous) {
+        if (previous == null) {
+            OVERRIDE.remove();
+        } else {
+            OVERRIDE.set(previous);
+        }
+    }
+
+    
+    /**
+     * Аннотации методов одного класса сервиса по имени и дескриптору метода.
+     */
+    private static final class ServiceMethods {
+        private final Class<?> type;
+        private final Workload classWorkload;
+        private final Map<String, Optional<Workload>> byMethod = new ConcurrentHashMap<>();
+
+        private ServiceMethods(Class<?> type) {
+            this.type = type;
+            DbWorkload annotation = type != null ? type.getAnnotation(DbWorkload.class) : null;
+            this.classWorkload = annotation != null ? annotation.value() : null;
+        }
+
+        Workload workloadOf(String methodName, String descriptor) {
+            return byMethod.computeIfAbsent(methodName + descriptor, key -> Optional.ofNullable(lookup(methodName, descriptor)))
+                    .orElse(null);
+        }
+
+        private Workload lookup(String methodName, String descriptor) {
+            if (methodName.startsWith(LAMBDA_PREFIX)) {
+                // Лямбда (lambda$createSale$0) относится к объемлющему методу, но ее дескриптор
+                // свой: перегрузки различимы, только если у всех одинаковый класс нагрузки
+                int end = methodName.indexOf('$', LAMBDA_PREFIX.length());
+                return end > 0 ? byName(methodName.substring(LAMBDA_PREFIX.length(), end)) : classWorkload;
+            }
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.getName().equals(methodName) && descriptorOf(method).equals(descriptor)) {
+                    return workloadOf(method);
+                }
+            }
+            return classWorkload;
+        }
+
+        private Workload byName(String methodName) {
+            Set<Workload> workloads = new HashSet<>();
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.getName().equals(methodName)) {
+                    workloads.add(workloadOf(method));
+                }
+            }
+            return workloads.size() == 1 ? workloads.iterator().next() : classWorkload;
+        }
+
+        private Workload workloadOf(Method method) {
+            DbWorkload annotation = method.getAnnotation(DbWorkload.class);
+            return annotation != null ? annotation.value() : classWorkload;
+        }
+
+        private static String descriptorOf(Method method) {
+            return MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+        }
+    }
+}
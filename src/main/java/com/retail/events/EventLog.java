@@ -0,0 +1,424 @@
+package com.retail.events;
+
+import com.retail.model.DomainEvent;
+import com.retail.model.enums.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+
+/**
+ * Локальный журнал событий: сегменты, отображенные в память, с переходом на новый сегмент
+ * по размеру. Каждое событие получает смещение - сквозной номер в журнале.
+ * Запись: длина, CRC32, смещение, затем id в outbox, время, тип, id объекта и JSON события.
+ * Рядом с сегментом лежит разреженный индекс (.idx): смещение и позиция записи через каждые
+ * indexIntervalBytes байт, по нему чтение с произвольного смещения начинается с ближайшей записи.
+ * Пачка событий сбрасывается на диск одним вызовом и только после этого видна читателям.
+ */
+public final class EventLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+    private static final int HEADER_SIZE = 16;
+    private static final int BODY_FIXED_SIZE = Long.BYTES + Long.BYTES + 1 + Integer.BYTES;
+    private static final int INDEX_ENTRY_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final EventType[] TYPES = EventType.values();
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int indexInterval;
+    private final int indexCapacity;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition appended = writeLock.newCondition();
+
+    private Segment active;
+    private long nextOffset;
+    private volatile long endOffset;
+
+    public EventLog(Path dir, int segmentSize, int indexInterval) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+        this.indexCapacity = segmentSize / indexInterval + 2;
+        Files.createDirectories(dir);
+        recover();
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * Смещение первого события в журнале.
+     */
+    public long startOffset() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first != null ? first.getKey() : endOffset;
+    }
+
+    /**
+     * Смещение, которое получит следующее событие.
+     */
+    public long endOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Дописывает события, присваивает им смещения и возвращает после сброса на диск.
+     */
+    public void append(List<DomainEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            int flushFrom = active.buffer.position();
+            for (DomainEvent event : events) {
+                byte[] payload = event.getPayload().getBytes(StandardCharsets.UTF_8);
+                int length = BODY_FIXED_SIZE + payload.length;
+                if (active.buffer.remaining() < HEADER_SIZE + length + 4) {
+                    roll(flushFrom, HEADER_SIZE + length + 4);
+                    flushFrom = 0;
+                }
+                write(active, event, payload, length);
+            }
+            active.buffer.force(flushFrom, active.buffer.position() - flushFrom);
+            active.size = active.buffer.position();
+            endOffset = nextOffset;
+            appended.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * События начиная со смещения from, не больше max. Пустой список, если новых событий нет.
+     */
+    public List<DomainEvent> read(long from, int max) {
+        List<DomainEvent> result = new ArrayList<>();
+        long offset = Math.max(from, startOffset());
+        while (result.size() < max && offset < endOffset) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+            if (entry == null) {
+                break;
+            }
+            Segment segment = entry.getValue();
+            int limit = segment.size;
+            ByteBuffer buf = segment.buffer.duplicate();
+            buf.limit(limit).position(segment.lookup(offset, limit));
+            while (result.size() < max && buf.remaining() >= HEADER_SIZE) {
+                int length = buf.getInt();
+                buf.getInt();
+                long recordOffset = buf.getLong();
+                if (recordOffset < offset) {
+                    buf.position(buf.position() + length);
+                    continue;
+                }
+                result.add(decode(buf, recordOffset, length));
+                offset = recordOffset + 1;
+            }
+            if (buf.remaining() < HEADER_SIZE) {
+                // Сегмент дочитан: продолжаем со следующего
+                Long next = segments.higherKey(entry.getKey());
+                if (next == null) {
+                    break;
+                }
+                offset = Math.max(offset, next);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ждет, пока в журнале появится событие со смещением offset. Возвращает false по таймауту.
+     */
+    public boolean awaitAppend(long offset, long timeoutMs) throws InterruptedException {
+        if (endOffset > offset) {
+            return true;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        writeLock.lock();
+        try {
+            while (endOffset <= offset) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = appended.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Потребитель с сохраняемой под именем позицией; новый начинает с начала журнала.
+     */
+    public EventLogConsumer consumer(String name) throws IOException {
+        return EventLogConsumer.named(this, name);
+    }
+
+    /**
+     * Потребитель без сохранения позиции, начинающий со смещения from.
+     */
+    public EventLogConsumer consumer(long from) {
+        return new EventLogConsumer(this, null, from);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.index.force();
+                segment.channel.close();
+                segment.indexChannel.close();
+            }
+            segments.clear();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write(Segment segment, DomainEvent event, byte[] payload, int length) {
+        MappedByteBuffer buf = segment.buffer;
+        int start = buf.position();
+        long offset = nextOffset;
+        buf.position(start + 8);
+        buf.putLong(offset);
+        buf.putLong(event.getId() != null ? event.getId() : 0L);
+        buf.putLong(event.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        buf.put((byte) event.getEventType().ordinal());
+        buf.putInt(event.getAggregateId() != null ? event.getAggregateId() : 0);
+        buf.put(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.slice(start + 8, 8 + length));
+        buf.putInt(start + 4, (int) crc.getValue());
+        // Длина пишется последней: недописанная запись при восстановлении видна как конец сегмента
+        buf.putInt(start, length);
+
+        if (segment.indexCount == 0 || start - segment.lastIndexedPosition >= indexInterval) {
+            segment.addIndexEntry((int) (offset - segment.baseOffset), start);
+        }
+        event.setOffset(offset);
+        nextOffset = offset + 1;
+    }
+
+    private void roll(int flushFrom, int recordSize) {
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Событие больше сегмента журнала");
+        }
+        try {
+            active.buffer.force(flushFrom, active.buffer.position() - flushFrom);
+            active.index.force();
+            active.size = active.buffer.position();
+            active = openSegment(nextOffset);
+            segments.put(active.baseOffset, active);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать сегмент журнала событий", e);
+        }
+        endOffset = nextOffset;
+    }
+
+    private Segment openSegment(long baseOffset) throws IOException {
+        String name = String.format("%020d", baseOffset);
+        FileChannel channel = FileChannel.open(dir.resolve(name + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel indexChannel = FileChannel.open(dir.resolve(name + INDEX_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(baseOffset, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize),
+                indexChannel, indexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        (long) indexCapacity * INDEX_ENTRY_SIZE), indexCapacity);
+    }
+
+    private void recover() throws IOException {
+        List<Long> bases;
+        try (Stream<Path> list = Files.list(dir)) {
+            bases = list.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(SEGMENT_SUFFIX))
+                    .map(n -> Long.parseLong(n.substring(0, n.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        if (bases.isEmpty()) {
+            active = openSegment(0);
+            segments.put(0L, active);
+            return;
+        }
+        for (int i = 0; i < bases.size(); i++) {
+            Segment segment = openSegment(bases.get(i));
+            boolean last = i == bases.size() - 1;
+            if (last) {
+                // Последний сегмент мог быть дописан не полностью: проверяем записи и строим индекс заново
+                scanAndRebuild(segment);
+            } else {
+                segment.loadIndex();
+                segment.size = segmentEnd(segment);
+            }
+            segments.put(segment.baseOffset, segment);
+            active = segment;
+        }
+        endOffset = nextOffset;
+        logger.info("Журнал событий открыт: {} сегмент(ов), смещения {}..{}",
+                segments.size(), startOffset(), endOffset);
+    }
+
+    private int segmentEnd(Segment segment) {
+        ByteBuffer buf = segment.buffer.duplicate();
+        buf.position(segment.indexCount > 0 ? segment.indexPositions[segment.indexCount - 1] : 0);
+        while (buf.remaining() >= HEADER_SIZE) {
+            int length = buf.getInt(buf.position());
+            if (length <= 0) {
+                break;
+            }
+            buf.position(buf.position() + HEADER_SIZE + length);
+        }
+        return buf.position();
+    }
+
+    private void scanAndRebuild(Segment segment) {
+        MappedByteBuffer buf = segment.buffer;
+        for (int i = 0; i < segment.index.capacity(); i++) {
+            segment.index.put(i, (byte) 0);
+        }
+        nextOffset = segment.baseOffset;
+        buf.position(0);
+        while (buf.remaining() >= HEADER_SIZE) {
+            int start = buf.position();
+            int length = buf.getInt();
+            if (length <= 0 || length > buf.remaining() - HEADER_SIZE + 4) {
+                buf.position(start);
+                break;
+            }
+            int crcValue = buf.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(buf.slice(start + 8, 8 + length));
+            long offset = buf.getLong();
+            if ((int) crc.getValue() != crcValue || offset != nextOffset) {
+                logger.warn("Поврежденная запись журнала событий на позиции {} сегмента {}, хвост отброшен",
+                        start, segment.baseOffset);
+                for (int j = start; j < buf.limit(); j++) {
+                    buf.put(j, (byte) 0);
+                }
+                buf.position(start);
+                break;
+            }
+            if (segment.indexCount == 0 || start - segment.lastIndexedPosition >= indexInterval) {
+                segment.addIndexEntry((int) (offset - segment.baseOffset), start);
+            }
+            buf.position(buf.position() + length);
+            nextOffset = offset + 1;
+        }
+        segment.size = buf.position();
+    }
+
+    private static DomainEvent decode(ByteBuffer buf, long offset, int length) {
+        DomainEvent event = new DomainEvent();
+        event.setOffset(offset);
+        event.setId(buf.getLong());
+        event.setCreatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(buf.getLong()), ZoneId.systemDefault()));
+        event.setEventType(TYPES[buf.get()]);
+        event.setAggregateId(buf.getInt());
+        byte[] payload = new byte[length - BODY_FIXED_SIZE];
+        buf.get(payload);
+        event.setPayload(new String(payload, StandardCharsets.UTF_8));
+        return event;
+    }
+
+
+    private static final class Segment {
+        private final long baseOffset;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final FileChannel indexChannel;
+        private final MappedByteBuffer index;
+        private final int[] indexOffsets;
+        private final int[] indexPositions;
+        private volatile int indexCount;
+        private int lastIndexedPosition;
+        // Граница записей, сброшенных на диск и доступных читателям
+        private volatile int size;
+
+        private Segment(long baseOffset, FileChannel channel, MappedByteBuffer buffer,
+                        FileChannel indexChannel, MappedByteBuffer index, int capacity) {
+            this.baseOffset = baseOffset;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.indexChannel = indexChannel;
+            this.index = index;
+            this.indexOffsets = new int[capacity];
+            this.indexPositions = new int[capacity];
+        }
+
+        private void addIndexEntry(int relativeOffset, int position) {
+            int i = indexCount;
+            indexOffsets[i] = relativeOffset;
+            indexPositions[i] = position;
+            // Позиция хранится со сдвигом на единицу: нулевая запись - конец индекса
+            index.putInt(i * INDEX_ENTRY_SIZE, relativeOffset);
+            index.putInt(i * INDEX_ENTRY_SIZE + 4, position + 1);
+            lastIndexedPosition = position;
+            indexCount = i + 1;
+        }
+
+        private void loadIndex() {
+            int capacity = indexOffsets.length;
+            int count = 0;
+            while (count < capacity && index.getInt(count * INDEX_ENTRY_SIZE + 4) != 0) {
+                indexOffsets[count] = index.getInt(count * INDEX_ENTRY_SIZE);
+                indexPositions[count] = index.getInt(count * INDEX_ENTRY_SIZE + 4) - 1;
+                count++;
+            }
+            if (count > 0) {
+                lastIndexedPosition = indexPositions[count - 1];
+            }
+            indexCount = count;
+        }
+
+        /**
+         * Позиция ближайшей проиндексированной записи со смещением не больше offset
+         * среди доступных читателям (до limit).
+         */
+        private int lookup(long offset, int limit) {
+            int count = indexCount;
+            long target = offset - baseOffset;
+            int lo = 0;
+            int hi = count - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (indexOffsets[mid] <= target && indexPositions[mid] < limit) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found >= 0 ? indexPositions[found] : 0;
+        }
+    }
+}
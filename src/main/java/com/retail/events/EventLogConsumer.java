@@ -0,0 +1,90 @@
+package com.retail.events;
+
+import com.retail.model.DomainEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+
+/**
+ * Читатель журнала событий: забирает события пачками начиная со своей позиции и ждет новых,
+ * когда журнал дочитан. Позиция именованного потребителя сохраняется вызовом {@link #commit()}
+ * в файл consumers/&lt;имя&gt;.offset и восстанавливается при следующем создании.
+ * Экземпляр не потокобезопасен: у каждого потока свой потребитель.
+ */
+public final class EventLogConsumer {
+    private static final String CONSUMERS_DIR = "consumers";
+
+    private final EventLog log;
+    private final String name;
+    private long position;
+
+    EventLogConsumer(EventLog log, String name, long position) {
+        this.log = log;
+        this.name = name;
+        this.position = position;
+    }
+
+    static EventLogConsumer named(EventLog log, String name) throws IOException {
+        if (!name.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("Недопустимое имя потребителя: " + name);
+        }
+        Path file = log.getDir().resolve(CONSUMERS_DIR).resolve(name + ".offset");
+        long position = Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : log.startOffset();
+        return new EventLogConsumer(log, name, position);
+    }
+
+    /**
+     * Следующие события, не больше maxEvents. Если новых нет, ждет до timeoutMs
+     * и возвращает пустой список по таймауту.
+     */
+    public List<DomainEvent> poll(int maxEvents, long timeoutMs) throws InterruptedException {
+        if (log.endOffset() <= position && !log.awaitAppend(position, timeoutMs)) {
+            return List.of();
+        }
+        List<DomainEvent> batch = log.read(position, maxEvents);
+        if (!batch.isEmpty()) {
+            position = batch.get(batch.size() - 1).getOffset() + 1;
+        }
+        return batch;
+    }
+
+    /**
+     * Смещение следующего события, которое вернет poll.
+     */
+    public long position() {
+        return position;
+    }
+
+    public void seek(long offset) {
+        if (offset < 0 || offset > log.endOffset()) {
+            throw new IllegalArgumentException("Смещение вне журнала: " + offset);
+        }
+        position = offset;
+    }
+
+    /**
+     * Сохраняет текущую позицию именованного потребителя.
+     */
+    public void commit() throws IOException {
+        if (name == null) {
+            throw new IllegalStateException("Позиция сохраняется только у именованного потребителя");
+        }
+        Path dir = log.getDir().resolve(CONSUMERS_DIR);
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(name + ".offset.tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(position).getBytes()));
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(name + ".offset"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,109 @@
+package com.retail.events;
+
+import com.retail.api.JsonWriter;
+import com.retail.model.DomainEvent;
+import com.retail.model.Receipt;
+import com.retail.model.ReceiptItem;
+import com.retail.model.Sale;
+import com.retail.model.SaleItem;
+import com.retail.model.StockLog;
+import com.retail.model.enums.EventType;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+
+/**
+ * События для event_outbox: JSON с данными операции, достаточными потребителю
+ * без обращения к таблицам продаж и склада.
+ */
+public final class EventPayloads {
+
+    private EventPayloads() {
+    }
+
+    public static DomainEvent sale(Sale sale) {
+        return new DomainEvent(EventType.SALE, sale.getId(), write(json -> {
+            json.beginObject()
+                    .field("saleId", sale.getId())
+                    .field("saleNumber", sale.getSaleNumber())
+                    .field("employeeId", sale.getEmployeeId())
+                    .field("saleDate", sale.getSaleDate())
+                    .field("totalAmount", sale.getTotalAmount())
+                    .field("discount", sale.getDiscount())
+                    .field("finalAmount", sale.getFinalAmount());
+            json.name("items").beginArray();
+            for (SaleItem item : sale.getItems()) {
+                json.beginObject()
+                        .field("productId", item.getProductId())
+                        .field("quantity", item.getQuantity())
+                        .field("price", item.getPriceAtSale())
+                        .field("lineTotal", item.getLineTotal())
+                        .endObject();
+            }
+            json.endArray().endObject();
+        }));
+    }
+
+    public static DomainEvent saleReturn(Sale sale, SaleItem item, int quantity, Integer employeeId) {
+        return new DomainEvent(EventType.RETURN, sale.getId(), write(json -> json.beginObject()
+                .field("saleId", sale.getId())
+                .field("saleNumber", sale.getSaleNumber())
+                .field("itemId", item.getId())
+                .field("productId", item.getProductId())
+                .field("quantity", quantity)
+                .field("price", item.getPriceAtSale())
+                .field("employeeId", employeeId)
+                .endObject()));
+    }
+
+    public static DomainEvent receipt(Receipt receipt) {
+        return new DomainEvent(EventType.RECEIPT, receipt.getId(), write(json -> {
+            json.beginObject()
+                    .field("receiptId", receipt.getId())
+                    .field("receiptNumber", receipt.getReceiptNumber())
+                    .field("managerId", receipt.getManagerId())
+                    .field("receiptDate", receipt.getReceiptDate())
+                    .field("totalAmount", receipt.getTotalAmount());
+            json.name("items").beginArray();
+            for (ReceiptItem item : receipt.getItems()) {
+                json.beginObject()
+                        .field("productId", item.getProductId())
+                        .field("quantity", item.getQuantity())
+                        .field("purchasePrice", item.getPurchasePrice())
+                        .endObject();
+            }
+            json.endArray().endObject();
+        }));
+    }
+
+    public static DomainEvent adjustment(StockLog log) {
+        return new DomainEvent(EventType.ADJUSTMENT, log.getProductId(), write(json -> json.beginObject()
+                .field("stockLogId", log.getId())
+                .field("productId", log.getProductId())
+                .field("operationType", log.getOperationType().name())
+                .field("quantityBefore", log.getQuantityBefore())
+                .field("quantityAfter", log.getQuantityAfter())
+                .field("userId", log.getUserId())
+                .field("notes", log.getNotes())
+                .endObject()));
+    }
+
+    private static String write(JsonBody body) {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter json = new JsonWriter(out);
+            body.write(json);
+            json.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    @FunctionalInterface
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+}
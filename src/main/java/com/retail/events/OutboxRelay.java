@@ -0,0 +1,218 @@
+package com.retail.events;
+
+import com.retail.dao.EventOutboxDao;
+import com.retail.db.LeaderElection;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.model.DomainEvent;
+import com.retail.service.CommitEventBus;
+import com.retail.service.CommitEventBus.CommitEvent;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+
+/**
+ * Переносит события из таблицы event_outbox в локальный {@link EventLog}: читает пачку
+ * в порядке id, дописывает в журнал одним сбросом на диск и удаляет перенесенные строки.
+ * Если процесс упал между записью в журнал и удалением, при запуске id событий из хвоста
+ * журнала запоминаются и такие строки удаляются без повторной записи.
+ * Работает в одном экземпляре на базу: переносит события только узел-лидер
+ * ({@link LeaderElection}), остальные узлы ждут. Журнал ведется локально, поэтому
+ * события пишутся в журнал того узла, который был лидером в момент переноса.
+ */
+public final class OutboxRelay implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+    private static volatile OutboxRelay instance;
+
+    private final EventOutboxDao outboxDao = new EventOutboxDao();
+    private final boolean enabled;
+    private final int batchSize;
+    private final long intervalMs;
+    private final Counter relayed;
+    private final Object wakeUp = new Object();
+    private final Consumer<CommitEvent> commitListener = event -> wake();
+    private EventLog log;
+    /**
+     * События, которые уже есть в журнале, но еще не удалены из outbox: хвост журнала на момент
+     * старта и записанные пачки, удаление которых не прошло. Повторно в журнал не пишутся.
+     */
+    private Set<Long> appendedNotDeleted = new HashSet<>();
+    private boolean pending;
+    private volatile boolean stopped;
+    private Thread thread;
+
+    private OutboxRelay() {
+        this.batchSize = AppConfig.getInt("events.relay.batch.size", 5000);
+        this.intervalMs = AppConfig.getLong("events.relay.interval.ms", 1000);
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.relayed = registry.counter("retail_events_relayed_total");
+
+        boolean opened = false;
+        if (AppConfig.getBoolean("events.log.enabled", false)) {
+            try {
+                this.log = new EventLog(Path.of(AppConfig.get("events.log.dir", "events")),
+                        AppConfig.getInt("events.log.segment.size.mb", 64) * 1024 * 1024,
+                        AppConfig.getInt("events.log.index.interval.bytes", 4096));
+                this.appendedNotDeleted = tailOutboxIds();
+                registry.gauge("retail_events_log_end_offset", log::endOffset);
+                opened = true;
+            } catch (IOException e) {
+                logger.error("Не удалось открыть журнал событий, перенос событий отключен", e);
+            }
+        }
+        this.enabled = opened;
+    }
+
+    public static OutboxRelay getInstance() {
+        OutboxRelay relay = instance;
+        if (relay == null) {
+            synchronized (OutboxRelay.class) {
+                relay = instance;
+                if (relay == null) {
+                    relay = new OutboxRelay();
+                    instance = relay;
+                }
+            }
+        }
+        return relay;
+    }
+
+    /**
+     * Журнал событий для потребителей или null, если журнал отключен.
+     */
+    public EventLog getLog() {
+        return log;
+    }
+
+    public synchronized void start() {
+        if (!enabled || thread != null) {
+            return;
+        }
+        CommitEventBus.getInstance().subscribe(commitListener);
+        thread = new Thread(this, "outbox-relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static void shutdown() {
+        OutboxRelay relay = instance;
+        if (relay == null) {
+            return;
+        }
+        synchronized (relay) {
+            relay.stopped = true;
+            CommitEventBus.getInstance().unsubscribe(relay.commitListener);
+            if (relay.thread != null) {
+                relay.thread.interrupt();
+                try {
+                    relay.thread.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                relay.thread = null;
+            }
+            if (relay.log != null) {
+                try {
+                    relay.log.close();
+                } catch (IOException e) {
+                    logger.error("Ошибка закрытия журнала событий", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            try {
+                if (!LeaderElection.getInstance().isLeader()) {
+                    awaitWork();
+                    continue;
+                }
+                // Полная пачка - в таблице, скорее всего, есть еще события
+                if (relayBatch() < batchSize) {
+                    awaitWork();
+                }
+            } catch (SQLException e) {
+                logger.warn("Перенос событий из outbox не удался: {}", e.getMessage());
+                if (!sleep()) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Ошибка переноса событий", e);
+                if (!sleep()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int relayBatch() throws SQLException {
+        List<DomainEvent> batch = outboxDao.findBatch(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<DomainEvent> fresh = new ArrayList<>(batch.size());
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (DomainEvent event : batch) {
+            ids.add(event.getId());
+            if (!appendedNotDeleted.contains(event.getId())) {
+                fresh.add(event);
+            }
+        }
+        log.append(fresh);
+        for (DomainEvent event : fresh) {
+            appendedNotDeleted.add(event.getId());
+        }
+        relayed.increment(fresh.size());
+        // Если удаление упадет, при повторе эти события будут только удалены, без записи в журнал
+        outboxDao.deleteAll(ids);
+        appendedNotDeleted.removeAll(ids);
+        return batch.size();
+    }
+
+    private Set<Long> tailOutboxIds() {
+        Set<Long> ids = new HashSet<>();
+        for (DomainEvent event : log.read(Math.max(log.startOffset(), log.endOffset() - batchSize), batchSize)) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+
+    private void wake() {
+        synchronized (wakeUp) {
+            pending = true;
+            wakeUp.notifyAll();
+        }
+    }
+
+    private void awaitWork() throws InterruptedException {
+        synchronized (wakeUp) {
+            if (!pending) {
+                wakeUp.wait(intervalMs);
+            }
+            pending = false;
+        }
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(intervalMs);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
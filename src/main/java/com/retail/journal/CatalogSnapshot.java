@@ -0,0 +1,277 @@
+package com.retail.journal;
+
+import com.retail.model.Product;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Двоичный снимок каталога, открываемый через {@link FileChannel#map}: товары читаются
+ * прямо из отображенного файла, без загрузки всего каталога в кучу.
+ * <p>
+ * Формат: заголовок, записи фиксированной длины по возрастанию id (поиск по id - двоичный),
+ * хеш-индекс артикулов с открытой адресацией и таблица строк UTF-8.
+ */
+public final class CatalogSnapshot {
+    private static final int MAGIC = 0x52434154;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 48;
+
+    // Смещения полей записи
+    private static final int ID = 0;
+    private static final int SKU = 4;
+    private static final int NAME = 8;
+    private static final int UNIT = 12;
+    private static final int CATEGORY = 16;
+    private static final int SKU_LEN = 20;
+    private static final int NAME_LEN = 22;
+    private static final int UNIT_LEN = 24;
+    private static final int CATEGORY_LEN = 26;
+    private static final int PRICE = 28;
+    private static final int PRICE_SCALE = 36;
+    private static final int MIN_STOCK = 40;
+    private static final int STOCK = 44;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int slots;
+    private final int indexOffset;
+    private final int stringsOffset;
+    private final LocalDateTime createdAt;
+
+    private CatalogSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Неизвестный формат снимка каталога");
+        }
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.slots = buffer.getInt(12);
+        this.indexOffset = HEADER_SIZE + count * RECORD_SIZE;
+        this.stringsOffset = indexOffset + slots * Integer.BYTES;
+        this.createdAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong(16)), ZoneId.systemDefault());
+    }
+
+    /**
+     * Отображает снимок в память только для чтения. Файл можно заменить новым снимком,
+     * уже открытое отображение продолжает ссылаться на прежнее содержимое.
+     */
+    public static CatalogSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CatalogSnapshot(buffer);
+        }
+    }
+
+    /**
+     * Записывает снимок во временный файл и атомарно подменяет им file.
+     * createdAt - момент перед чтением товаров из БД, от него догоняются изменения.
+     */
+    public static void write(Path file, Collection<Product> products, LocalDateTime createdAt) throws IOException {
+        List<Product> sorted = new ArrayList<>(products);
+        sorted.sort(Comparator.comparing(Product::getId));
+        int count = sorted.size();
+        int slots = Integer.highestOneBit(Math.max(count, 1) * 2) << 1;
+
+        ByteBuffer records = ByteBuffer.allocate(count * RECORD_SIZE);
+        ByteBuffer index = ByteBuffer.allocate(slots * Integer.BYTES);
+        StringTable strings = new StringTable();
+
+        for (int i = 0; i < count; i++) {
+            Product product = sorted.get(i);
+            int base = i * RECORD_SIZE;
+            byte[] sku = product.getSku().getBytes(StandardCharsets.UTF_8);
+            records.putInt(base + ID, product.getId());
+            putString(records, base + SKU, base + SKU_LEN, strings.add(sku), sku.length);
+            byte[] name = product.getName().getBytes(StandardCharsets.UTF_8);
+            putString(records, base + NAME, base + NAME_LEN, strings.add(name), name.length);
+            byte[] unit = bytes(product.getUnitName());
+            putString(records, base + UNIT, base + UNIT_LEN, strings.add(unit), unit.length);
+            byte[] category = bytes(product.getCategoryName());
+            putString(records, base + CATEGORY, base + CATEGORY_LEN, strings.add(category), category.length);
+            records.putLong(base + PRICE, product.getSellingPrice().unscaledValue().longValueExact());
+            records.put(base + PRICE_SCALE, (byte) product.getSellingPrice().scale());
+            records.putInt(base + MIN_STOCK, product.getMinStockLevel() != null ? product.getMinStockLevel() : 0);
+            records.putInt(base + STOCK, product.getStockQuantity() != null ? product.getStockQuantity() : 0);
+
+            // В слоте хранится номер записи + 1, ноль - пустой слот
+            int slot = hash(sku) & (slots - 1);
+            while (index.getInt(slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            index.putInt(slot * Integer.BYTES, i + 1);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(slots)
+                .putLong(createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer part : new ByteBuffer[]{header, records, index, ByteBuffer.wrap(strings.toByteArray())}) {
+                part.rewind();
+                while (part.hasRemaining()) {
+                    channel.write(part);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public Product find(int productId) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = buffer.getInt(HEADER_SIZE + mid * RECORD_SIZE + ID);
+            if (id < productId) {
+                low = mid + 1;
+            } else if (id > productId) {
+                high = mid - 1;
+            } else {
+                return read(mid);
+            }
+        }
+        return null;
+    }
+
+    public Product findBySku(String sku) {
+        if (count == 0) {
+            return null;
+        }
+        byte[] key = sku.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(key) & (slots - 1);
+        while (true) {
+            int entry = buffer.getInt(indexOffset + slot * Integer.BYTES);
+            if (entry == 0) {
+                return null;
+            }
+            int base = HEADER_SIZE + (entry - 1) * RECORD_SIZE;
+            if (equalsString(base + SKU, base + SKU_LEN, key)) {
+                return read(entry - 1);
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+    }
+
+    /**
+     * Наименование товара без разбора остальных полей записи: для поиска перебором.
+     */
+    String nameAt(int recordIndex) {
+        int base = HEADER_SIZE + recordIndex * RECORD_SIZE;
+        return string(base + NAME, base + NAME_LEN);
+    }
+
+    Product productAt(int recordIndex) {
+        return read(recordIndex);
+    }
+
+    private Product read(int recordIndex) {
+        int base = HEADER_SIZE + recordIndex * RECORD_SIZE;
+        Product product = new Product();
+        product.setId(buffer.getInt(base + ID));
+        product.setSku(string(base + SKU, base + SKU_LEN));
+        product.setName(string(base + NAME, base + NAME_LEN));
+        String unit = string(base + UNIT, base + UNIT_LEN);
+        product.setUnitName(unit.isEmpty() ? null : unit);
+        String category = string(base + CATEGORY, base + CATEGORY_LEN);
+        product.setCategoryName(category.isEmpty() ? null : category);
+        product.setSellingPrice(new BigDecimal(BigInteger.valueOf(buffer.getLong(base + PRICE)), buffer.get(base + PRICE_SCALE)));
+        product.setMinStockLevel(buffer.getInt(base + MIN_STOCK));
+        product.setStockQuantity(buffer.getInt(base + STOCK));
+        product.setActive(true);
+        return product;
+    }
+
+    private String string(int offsetField, int lengthField) {
+        int offset = buffer.getInt(offsetField);
+        int length = Short.toUnsignedInt(buffer.getShort(lengthField));
+        byte[] bytes = new byte[length];
+        buffer.get(stringsOffset + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean equalsString(int offsetField, int lengthField, byte[] key) {
+        if (Short.toUnsignedInt(buffer.getShort(lengthField)) != key.length) {
+            return false;
+        }
+        int start = stringsOffset + buffer.getInt(offsetField);
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putString(ByteBuffer records, int offsetField, int lengthField, int offset, int length) {
+        records.putInt(offsetField, offset);
+        records.putShort(lengthField, (short) length);
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0x811C9DC5;
+        for (byte b : key) {
+            h = (h ^ b) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * Таблица строк: одинаковые наименования единиц и категорий хранятся один раз.
+     */
+    private static final class StringTable {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Map<String, Integer> offsets = new HashMap<>();
+
+        int add(byte[] value) {
+            String key = new String(value, StandardCharsets.ISO_8859_1);
+            Integer offset = offsets.get(key);
+            if (offset == null) {
+                offset = out.size();
+                out.writeBytes(value);
+                offsets.put(key, offset);
+            }
+            return offset;
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.retail.journal;
+
+import com.retail.model.Product;
+import com.retail.model.SaleItem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Локальный каталог кассы: отображенный в память {@link CatalogSnapshot} и поверх него
+ * изменения, пришедшие после выгрузки снимка (уведомления БД и офлайн-продажи).
+ * Снимок открывается при запуске до подключения к БД.
+ */
+public final class OfflineCatalog {
+
+    private final Path file;
+    private final Map<Integer, Change> changes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> changedSkus = new ConcurrentHashMap<>();
+    private volatile CatalogSnapshot snapshot;
+    private long changeSequence;
+
+    public OfflineCatalog(Path file) {
+        this.file = file;
+    }
+
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Время выгрузки текущего снимка из БД или null, если снимка нет.
+     */
+    public LocalDateTime getSnapshotTime() {
+        CatalogSnapshot current = snapshot;
+        return current != null ? current.getCreatedAt() : null;
+    }
+
+    /**
+     * Открывает сохраненный снимок и вычитает еще не выгруженные продажи журнала.
+     */
+    public void load(List<SaleJournal.Entry> pending) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        snapshot = CatalogSnapshot.open(file);
+        for (SaleJournal.Entry entry : pending) {
+            for (SaleItem item : entry.getSale().getItems()) {
+                reserve(item.getProductId(), item.getQuantity());
+            }
+        }
+    }
+
+    /**
+     * Номер последнего изменения: передается в {@link #replace}, чтобы не потерять
+     * изменения, пришедшие во время выгрузки нового снимка.
+     */
+    public synchronized long getChangeSequence() {
+        return changeSequence;
+    }
+
+    /**
+     * Записывает новый снимок из активных товаров и переключается на него.
+     * Вызывается, только когда в журнале нет невыгруженных продаж.
+     */
+    public synchronized void replace(Collection<Product> fresh, LocalDateTime readStartedAt,
+                                     long sequenceBeforeRead) throws IOException {
+        CatalogSnapshot.write(file, fresh, readStartedAt);
+        snapshot = CatalogSnapshot.open(file);
+        changes.values().removeIf(change -> change.sequence <= sequenceBeforeRead);
+        changedSkus.values().removeIf(id -> !changes.containsKey(id));
+    }
+
+    /**
+     * Применяет перечитанные из БД товары поверх снимка.
+     */
+    public synchronized void apply(Collection<Product> products) {
+        for (Product product : products) {
+            Change previous = changes.put(product.getId(), new Change(product, ++changeSequence));
+            if (previous != null && !previous.product.getSku().equals(product.getSku())) {
+                changedSkus.remove(previous.product.getSku());
+            }
+            changedSkus.put(product.getSku(), product.getId());
+        }
+    }
+
+    public Optional<Product> find(Integer productId) {
+        Change change = changes.get(productId);
+        if (change != null) {
+            return Optional.of(change.product);
+        }
+        CatalogSnapshot current = snapshot;
+        return current != null ? Optional.ofNullable(current.find(productId)) : Optional.empty();
+    }
+
+    public Optional<Product> findBySku(String sku) {
+        Integer changedId = changedSkus.get(sku);
+        if (changedId != null) {
+            return find(changedId);
+        }
+        CatalogSnapshot current = snapshot;
+        if (current == null) {
+            return Optional.empty();
+        }
+        Product product = current.findBySku(sku);
+        // Артикул мог перейти к другому товару или у товара смениться после снимка
+        if (product == null || changes.containsKey(product.getId())) {
+            return Optional.empty();
+        }
+        return Optional.of(product);
+    }
+
+    public int getStock(Integer productId) {
+        return find(productId)
+                .map(p -> p.getStockQuantity() != null ? p.getStockQuantity() : 0)
+                .orElse(0);
+    }
+
+    public List<Product> search(String namePattern) {
+        String pattern = namePattern.toLowerCase();
+        List<Product> result = new ArrayList<>();
+        CatalogSnapshot current = snapshot;
+        if (current != null) {
+            for (int i = 0; i < current.size(); i++) {
+                if (current.nameAt(i).toLowerCase().contains(pattern)) {
+                    Product product = current.productAt(i);
+                    if (!changes.containsKey(product.getId())) {
+                        result.add(product);
+                    }
+                }
+            }
+        }
+        for (Change change : changes.values()) {
+            if (change.product.isActive() && change.product.getName().toLowerCase().contains(pattern)) {
+                result.add(change.product);
+            }
+        }
+        result.sort(Comparator.comparing(Product::getName));
+        return result;
+    }
+
+    /**
+     * Уменьшает локальный остаток на проданное без связи с БД количество.
+     */
+    public synchronized void reserve(Integer productId, int quantity) {
+        find(productId).ifPresent(product -> {
+            Product copy = copyOf(product);
+            copy.setStockQuantity(product.getStockQuantity() - quantity);
+            changes.put(productId, new Change(copy, ++changeSequence));
+            changedSkus.put(copy.getSku(), productId);
+        });
+    }
+
+    private static Product copyOf(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setSku(product.getSku());
+        copy.setName(product.getName());
+        copy.setUnitName(product.getUnitName());
+        copy.setCategoryName(product.getCategoryName());
+        copy.setSellingPrice(product.getSellingPrice());
+        copy.setMinStockLevel(product.getMinStockLevel());
+        copy.setStockQuantity(product.getStockQuantity());
+        copy.setActive(product.isActive());
+        return copy;
+    }
+
+
+    private static final class Change {
+        private final Product product;
+        private final long sequence;
+
+        private Change(Product product, long sequence) {
+            this.product = product;
+            this.sequence = sequence;
+        }
+    }
+}
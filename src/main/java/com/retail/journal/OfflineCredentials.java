@@ -0,0 +1,87 @@
+package com.retail.journal;
+
+import com.retail.model.User;
+import com.retail.model.enums.UserRole;
+import com.retail.model.enums.UserStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Учетные данные кассиров, входивших на этой кассе при наличии связи с БД.
+ * Хранятся только хеши паролей; вход без связи доступен только сотрудникам.
+ */
+public final class OfflineCredentials {
+    private static final String SEPARATOR = "\t";
+
+    private final Path file;
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    public OfflineCredentials(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(SEPARATOR, -1);
+                if (parts.length != 4) {
+                    continue;
+                }
+                User user = new User(parts[1], parts[2], UserRole.EMPLOYEE, parts[3]);
+                user.setId(Integer.parseInt(parts[0]));
+                user.setStatus(UserStatus.ACTIVE);
+                users.put(user.getLogin(), user);
+            }
+        }
+    }
+
+    public Optional<User> find(String login) {
+        return Optional.ofNullable(users.get(login));
+    }
+
+    /**
+     * Запоминает сотрудника после успешного входа. Изменившиеся данные перезаписываются.
+     */
+    public synchronized void remember(User user) throws IOException {
+        if (user.getRole() != UserRole.EMPLOYEE) {
+            return;
+        }
+        User known = users.get(user.getLogin());
+        if (known != null && known.getPasswordHash().equals(user.getPasswordHash())
+                && known.getId().equals(user.getId())) {
+            return;
+        }
+        User copy = new User(user.getLogin(), user.getPasswordHash(), UserRole.EMPLOYEE, user.getFullName());
+        copy.setId(user.getId());
+        copy.setStatus(UserStatus.ACTIVE);
+        users.put(copy.getLogin(), copy);
+        save();
+    }
+
+    /**
+     * Забывает пользователя, который заблокирован или удален на сервере.
+     */
+    public synchronized void forget(String login) throws IOException {
+        if (users.remove(login) != null) {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (User user : users.values()) {
+            lines.add(String.join(SEPARATOR, user.getId().toString(), user.getLogin(),
+                    user.getPasswordHash(), user.getFullName()));
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
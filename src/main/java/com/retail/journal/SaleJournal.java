@@ -0,0 +1,295 @@
+package com.retail.journal;
+
+import com.retail.model.Sale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+
+/**
+ * Локальный журнал офлайн-продаж: сегменты фиксированного размера, отображенные в память.
+ * Запись: длина, CRC32, номер записи, данные продажи. Продажа считается проведенной после
+ * сброса сегмента на диск; одновременные кассы ждут общий сброс (групповая фиксация).
+ * Номер последней выгруженной на сервер записи хранится в отдельном файле.
+ */
+public final class SaleJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SaleJournal.class);
+    private static final int HEADER_SIZE = 16;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "synced.pos";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final String numberPrefix;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Set<Segment> unflushed = new LinkedHashSet<>();
+    private final Object writeLock = new Object();
+    private final Object flushLock = new Object();
+
+    private long lastSequence;
+    private long syncedSequence;
+    private volatile long writtenSequence;
+    private volatile long durableSequence;
+
+    /**
+     * numberPrefix - префикс локального номера чека, к нему добавляется номер записи.
+     */
+    public SaleJournal(Path dir, int segmentSize, String numberPrefix) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.numberPrefix = numberPrefix;
+        Files.createDirectories(dir);
+        this.syncedSequence = readCheckpoint();
+        recover();
+    }
+
+    /**
+     * Записывает продажу и возвращает после сброса на диск. Присваивает локальный номер чека.
+     */
+    public long append(Sale sale) {
+        long sequence;
+        synchronized (writeLock) {
+            sequence = lastSequence + 1;
+            sale.setSaleNumber(numberPrefix + sequence);
+            byte[] payload = SaleRecordCodec.encode(sale);
+            Segment segment = segmentFor(HEADER_SIZE + payload.length, sequence);
+
+            CRC32 crc = new CRC32();
+            ByteBuffer seqBytes = ByteBuffer.allocate(Long.BYTES).putLong(0, sequence);
+            crc.update(seqBytes);
+            crc.update(payload);
+
+            MappedByteBuffer buf = segment.buffer;
+            int start = buf.position();
+            buf.position(start + 4);
+            buf.putInt((int) crc.getValue());
+            buf.putLong(sequence);
+            buf.put(payload);
+            // Длина пишется последней: недописанная запись при восстановлении видна как конец журнала
+            buf.putInt(start, payload.length);
+
+            segment.lastSequence = sequence;
+            lastSequence = sequence;
+            writtenSequence = sequence;
+            unflushed.add(segment);
+        }
+        awaitDurable(sequence);
+        return sequence;
+    }
+
+    /**
+     * Не выгруженные на сервер записи по порядку, не больше max.
+     */
+    public List<Entry> readPending(int max) {
+        List<Entry> result = new ArrayList<>();
+        synchronized (writeLock) {
+            for (Segment segment : segments) {
+                if (segment.lastSequence <= syncedSequence) {
+                    continue;
+                }
+                ByteBuffer buf = segment.buffer.duplicate();
+                buf.position(0).limit(segment.buffer.position());
+                while (buf.remaining() >= HEADER_SIZE && result.size() < max) {
+                    int length = buf.getInt();
+                    buf.getInt();
+                    long sequence = buf.getLong();
+                    ByteBuffer payload = buf.slice(buf.position(), length);
+                    buf.position(buf.position() + length);
+                    if (sequence > syncedSequence) {
+                        result.add(new Entry(sequence, SaleRecordCodec.decode(payload)));
+                    }
+                }
+                if (result.size() >= max) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Отмечает записи до sequence включительно выгруженными и удаляет полностью выгруженные сегменты.
+     */
+    public void markSynced(long sequence) throws IOException {
+        synchronized (writeLock) {
+            if (sequence <= syncedSequence) {
+                return;
+            }
+            writeCheckpoint(sequence);
+            syncedSequence = sequence;
+
+            // Текущий сегмент остается: в него продолжается запись
+            while (segments.size() > 1 && segments.get(0).lastSequence <= sequence) {
+                Segment segment = segments.remove(0);
+                unflushed.remove(segment);
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            }
+        }
+    }
+
+    public long getPendingCount() {
+        synchronized (writeLock) {
+            return lastSequence - syncedSequence;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            segments.clear();
+            unflushed.clear();
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        synchronized (flushLock) {
+            if (durableSequence >= sequence) {
+                // Запись уже сброшена вместе с чужой
+                return;
+            }
+            long target;
+            List<Segment> toFlush;
+            synchronized (writeLock) {
+                target = writtenSequence;
+                toFlush = new ArrayList<>(unflushed);
+                unflushed.clear();
+            }
+            for (Segment segment : toFlush) {
+                segment.buffer.force();
+            }
+            durableSequence = target;
+        }
+    }
+
+    private Segment segmentFor(int recordSize, long sequence) {
+        if (recordSize + 4 > segmentSize) {
+            throw new IllegalArgumentException("Запись больше сегмента журнала");
+        }
+        Segment current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        // Четыре нулевых байта после записи - признак конца сегмента
+        if (current == null || current.buffer.remaining() < recordSize + 4) {
+            try {
+                current = openSegment(dir.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось создать сегмент журнала", e);
+            }
+            segments.add(current);
+        }
+        return current;
+    }
+
+    private Segment openSegment(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(path, channel, buffer);
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        lastSequence = syncedSequence;
+        for (Path path : files) {
+            Segment segment = openSegment(path);
+            MappedByteBuffer buf = segment.buffer;
+            while (buf.remaining() >= HEADER_SIZE) {
+                int start = buf.position();
+                int length = buf.getInt();
+                if (length <= 0 || length > buf.remaining() - HEADER_SIZE + 4) {
+                    buf.position(start);
+                    break;
+                }
+                int crcValue = buf.getInt();
+                long sequence = buf.getLong();
+                CRC32 crc = new CRC32();
+                crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+                crc.update(buf.slice(buf.position(), length));
+                if ((int) crc.getValue() != crcValue) {
+                    logger.warn("Поврежденная запись журнала в {} на позиции {}, хвост отброшен", path, start);
+                    buf.position(start);
+                    for (int i = start; i < buf.limit(); i++) {
+                        buf.put(i, (byte) 0);
+                    }
+                    break;
+                }
+                buf.position(buf.position() + length);
+                segment.lastSequence = sequence;
+                lastSequence = Math.max(lastSequence, sequence);
+            }
+            segments.add(segment);
+        }
+        writtenSequence = lastSequence;
+        durableSequence = lastSequence;
+        if (lastSequence > syncedSequence) {
+            logger.info("В журнале офлайн-продаж {} невыгруженных записей", lastSequence - syncedSequence);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = dir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(file).trim());
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(sequence).getBytes()));
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    public static final class Entry {
+        private final long sequence;
+        private final Sale sale;
+
+        Entry(long sequence, Sale sale) {
+            this.sequence = sequence;
+            this.sale = sale;
+        }
+
+        public long getSequence() { return sequence; }
+        public Sale getSale() { return sale; }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private long lastSequence;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.retail.journal;
+
+import com.retail.model.Sale;
+import com.retail.model.SaleItem;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Двоичная запись офлайн-продажи в журнале: номер, сотрудник, дата, суммы и позиции.
+ */
+final class SaleRecordCodec {
+
+    private SaleRecordCodec() {
+    }
+
+    static byte[] encode(Sale sale) {
+        byte[] number = sale.getSaleNumber().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(64 + number.length + sale.getItems().size() * 48);
+        buf.putShort((short) number.length).put(number);
+        buf.putInt(sale.getEmployeeId());
+        buf.putLong(sale.getSaleDate().toEpochSecond(ZoneOffset.UTC));
+        buf.putInt(sale.getSaleDate().getNano());
+        putMoney(buf, sale.getTotalAmount());
+        putMoney(buf, sale.getDiscount() != null ? sale.getDiscount() : BigDecimal.ZERO);
+        putMoney(buf, sale.getFinalAmount());
+        buf.putShort((short) sale.getItems().size());
+        for (SaleItem item : sale.getItems()) {
+            buf.putInt(item.getProductId());
+            buf.putInt(item.getQuantity());
+            putMoney(buf, item.getPriceAtSale());
+            putMoney(buf, item.getLineTotal());
+        }
+        byte[] result = new byte[buf.position()];
+        buf.flip().get(result);
+        return result;
+    }
+
+    static Sale decode(ByteBuffer buf) {
+        Sale sale = new Sale();
+        byte[] number = new byte[buf.getShort()];
+        buf.get(number);
+        sale.setSaleNumber(new String(number, StandardCharsets.UTF_8));
+        sale.setEmployeeId(buf.getInt());
+        long seconds = buf.getLong();
+        sale.setSaleDate(LocalDateTime.ofEpochSecond(seconds, buf.getInt(), ZoneOffset.UTC));
+        sale.setTotalAmount(getMoney(buf));
+        sale.setDiscount(getMoney(buf));
+        sale.setFinalAmount(getMoney(buf));
+        int count = buf.getShort();
+        List<SaleItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SaleItem item = new SaleItem();
+            item.setProductId(buf.getInt());
+            item.setQuantity(buf.getInt());
+            item.setPriceAtSale(getMoney(buf));
+            item.setLineTotal(getMoney(buf));
+            items.add(item);
+        }
+        sale.setItems(items);
+        return sale;
+    }
+
+    // Суммы чека хранятся как long без масштаба и байт масштаба
+    private static void putMoney(ByteBuffer buf, BigDecimal value) {
+        buf.putLong(value.unscaledValue().longValueExact());
+        buf.put((byte) value.scale());
+    }
+
+    private static BigDecimal getMoney(ByteBuffer buf) {
+        long unscaled = buf.getLong();
+        return new BigDecimal(BigInteger.valueOf(unscaled), buf.get());
+    }
+}
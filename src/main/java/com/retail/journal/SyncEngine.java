@@ -0,0 +1,494 @@
+package com.retail.journal;
+
+import com.retail.dao.EventOutboxDao;
+import com.retail.dao.InventoryDao;
+import com.retail.dao.ProductDao;
+import com.retail.dao.SaleDao;
+import com.retail.dao.SaleItemDao;
+import com.retail.dao.StockLogDao;
+import com.retail.db.CatalogChangeFeed;
+import com.retail.db.DatabaseManager;
+import com.retail.db.SessionProfile;
+import com.retail.db.Workload;
+import com.retail.events.EventPayloads;
+import com.retail.exception.InsufficientStockException;
+import com.retail.exception.ValidationException;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.model.Inventory;
+import com.retail.model.Product;
+import com.retail.model.Sale;
+import com.retail.model.SaleItem;
+import com.retail.model.StockLog;
+import com.retail.model.User;
+import com.retail.model.enums.StockOperationType;
+import com.retail.service.CommitEventBus;
+import com.retail.service.CommitEventBus.CommitEvent;
+import com.retail.util.AppConfig;
+import com.retail.util.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+
+/**
+ * Автономный режим кассы. При потере связи с БД продажи проводятся по локальной копии
+ * каталога и записываются в {@link SaleJournal}; после восстановления связи журнал
+ * выгружается пачками, по одной транзакции на пачку. Повторная выгрузка безопасна:
+ * каждая запись журнала несет уникальную ссылку sales.offline_ref.
+ * <p>
+ * Локальный каталог обновляется по уведомлениям БД об изменении товаров и остатков;
+ * пока подписка активна, поиск товаров на кассе обходится без запросов к БД.
+ */
+public final class SyncEngine {
+    private static final Logger logger = LoggerFactory.getLogger(SyncEngine.class);
+    private static volatile SyncEngine instance;
+
+    private final DatabaseManager dbManager = DatabaseManager.getInstance();
+    private final SaleDao saleDao = new SaleDao();
+    private final SaleItemDao saleItemDao = new SaleItemDao();
+    private final InventoryDao inventoryDao = new InventoryDao();
+    private final StockLogDao stockLogDao = new StockLogDao();
+    private final EventOutboxDao outboxDao = new EventOutboxDao();
+    private final ProductDao productDao = new ProductDao();
+    private final CommitEventBus commitEvents = CommitEventBus.getInstance();
+
+    private final boolean enabled;
+    private final String tillId;
+    private final int batchSize;
+    private final long catalogRefreshMinutes;
+    private final long catchUpMarginSeconds;
+    private final Counter offlineSales;
+    private final Counter syncedSales;
+    private final Counter stockConflicts;
+    private SaleJournal journal;
+    private OfflineCatalog catalog;
+    private OfflineCredentials credentials;
+    private ScheduledExecutorService scheduler;
+    private final Consumer<Set<Integer>> changeListener = this::onCatalogChanges;
+    private volatile boolean subscribed;
+    // Изменения, отложенные до выгрузки журнала: серверный остаток еще не учитывает офлайн-продажи
+    private final Set<Integer> deferredChanges = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean offline;
+
+    private SyncEngine() {
+        this.tillId = AppConfig.get("journal.till.id", "01");
+        this.batchSize = AppConfig.getInt("journal.sync.batch.size", 1000);
+        this.catalogRefreshMinutes = AppConfig.getLong("journal.catalog.refresh.minutes", 15);
+        this.catchUpMarginSeconds = AppConfig.getLong("journal.catalog.catchup.margin.seconds", 300);
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.offlineSales = registry.counter("retail_offline_sales_total");
+        this.syncedSales = registry.counter("retail_offline_sales_synced_total");
+        this.stockConflicts = registry.counter("retail_offline_stock_conflicts_total");
+        registry.gauge("retail_offline_mode", () -> offline ? 1 : 0);
+
+        boolean opened = false;
+        if (AppConfig.getBoolean("journal.enabled", false)) {
+            Path dir = Path.of(AppConfig.get("journal.dir", "journal"));
+            try {
+                this.journal = new SaleJournal(dir.resolve("sales"),
+                        AppConfig.getInt("journal.segment.size.mb", 16) * 1024 * 1024, "OFF-" + tillId + "-");
+                this.catalog = new OfflineCatalog(dir.resolve("catalog.snapshot"));
+                this.catalog.load(journal.readPending(Integer.MAX_VALUE));
+                this.credentials = new OfflineCredentials(dir.resolve("employees.tsv"));
+                registry.gauge("retail_offline_pending_sales", journal::getPendingCount);
+                opened = true;
+            } catch (IOException e) {
+                logger.error("Не удалось открыть журнал офлайн-продаж, автономный режим отключен", e);
+            }
+        }
+        this.enabled = opened;
+    }
+
+    public static SyncEngine getInstance() {
+        SyncEngine engine = instance;
+        if (engine == null) {
+            synchronized (SyncEngine.class) {
+                engine = instance;
+                if (engine == null) {
+                    engine = new SyncEngine();
+                    instance = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Запускает фоновую выгрузку журнала и обновление локального каталога.
+     */
+    public synchronized void start() {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "offline-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = AppConfig.getLong("journal.sync.interval.seconds", 10);
+        scheduler.scheduleWithFixedDelay(this::tick, 0, interval, TimeUnit.SECONDS);
+
+        if (AppConfig.getBoolean("journal.catalog.listen.enabled", true)) {
+            CatalogChangeFeed.getInstance().subscribe(changeListener, this::catchUpCatalog);
+            subscribed = true;
+        }
+    }
+
+    public static void shutdown() {
+        SyncEngine engine = instance;
+        if (engine == null) {
+            return;
+        }
+        synchronized (engine) {
+            if (engine.scheduler != null) {
+                engine.scheduler.shutdownNow();
+                engine.scheduler = null;
+            }
+            if (engine.subscribed) {
+                CatalogChangeFeed.getInstance().unsubscribe(engine.changeListener);
+                engine.subscribed = false;
+            }
+            if (engine.journal != null) {
+                try {
+                    engine.journal.close();
+                } catch (IOException e) {
+                    logger.error("Ошибка закрытия журнала офлайн-продаж", e);
+                }
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isOffline() {
+        return enabled && offline;
+    }
+
+    /**
+     * Переводит кассу в автономный режим, если ошибка вызвана потерей связи с БД.
+     * Возвращает true, если операцию можно повторить по локальным данным: связь
+     * оборвалась до отправки COMMIT, и сервер откатил транзакцию.
+     */
+    public boolean goOffline(SQLException e) {
+        if (!enabled || !catalog.isLoaded() || !DatabaseManager.isConnectionFailure(e)) {
+            return false;
+        }
+        if (!offline) {
+            offline = true;
+            logger.warn("Связь с БД потеряна, касса работает автономно: {}", e.getMessage());
+        }
+        return !DatabaseManager.isCommitOutcomeUnknown(e);
+    }
+
+    /**
+     * Запуск без связи с БД возможен, если каталог уже сохранялся на этой кассе.
+     */
+    public boolean canStartOffline() {
+        if (!enabled || !catalog.isLoaded()) {
+            return false;
+        }
+        offline = true;
+        return true;
+    }
+
+    /**
+     * Локальный каталог можно использовать вместо запросов к БД: касса автономна
+     * или подписана на изменения и уже догнала их после подключения.
+     */
+    public boolean isCatalogCurrent() {
+        if (!enabled || !catalog.isLoaded()) {
+            return false;
+        }
+        return offline || (subscribed && CatalogChangeFeed.getInstance().isListening());
+    }
+
+    public long getPendingCount() {
+        return enabled ? journal.getPendingCount() : 0;
+    }
+
+    /**
+     * Проводит продажу по локальному каталогу. Продажа получает локальный номер
+     * и не имеет id, пока не выгружена в БД.
+     */
+    public Sale recordOfflineSale(Sale sale, Integer employeeId) {
+        sale.setEmployeeId(employeeId);
+        sale.setSaleDate(LocalDateTime.now());
+
+        // Проверка остатка и списание из локального каталога - одна операция для всех касс процесса
+        synchronized (catalog) {
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            for (SaleItem item : sale.getItems()) {
+                Product product = catalog.find(item.getProductId())
+                        .filter(Product::isActive)
+                        .orElseThrow(() -> new ValidationException("Товар не найден: ID " + item.getProductId()));
+                int stock = catalog.getStock(item.getProductId());
+                if (stock < item.getQuantity()) {
+                    throw new InsufficientStockException(item.getProductId(), item.getQuantity(), stock);
+                }
+                item.setPriceAtSale(product.getSellingPrice());
+                item.setLineTotal(product.getSellingPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+                totalAmount = totalAmount.add(item.getLineTotal());
+            }
+            BigDecimal discount = sale.getDiscount() != null ? sale.getDiscount() : BigDecimal.ZERO;
+            Validator.validateDiscount(discount, totalAmount);
+            sale.setTotalAmount(totalAmount);
+            sale.setFinalAmount(totalAmount.subtract(discount));
+
+            journal.append(sale);
+            for (SaleItem item : sale.getItems()) {
+                catalog.reserve(item.getProductId(), item.getQuantity());
+            }
+        }
+        offlineSales.increment();
+        logger.info("Продажа {} на сумму {} записана в журнал офлайн-продаж",
+                sale.getSaleNumber(), sale.getFinalAmount());
+        return sale;
+    }
+
+    public Optional<Product> findProduct(Integer productId) {
+        return catalog.find(productId);
+    }
+
+    public Optional<Product> findProductBySku(String sku) {
+        return catalog.findBySku(sku);
+    }
+
+    public List<Product> searchProducts(String namePattern) {
+        return catalog.search(namePattern);
+    }
+
+    public int getStock(Integer productId) {
+        return catalog.getStock(productId);
+    }
+
+    public Optional<User> findOfflineUser(String login) {
+        return enabled ? credentials.find(login) : Optional.empty();
+    }
+
+    /**
+     * Запоминает сотрудника, вошедшего при наличии связи, для входа в автономном режиме.
+     */
+    public void rememberUser(User user) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            credentials.remember(user);
+        } catch (IOException e) {
+            logger.error("Не удалось сохранить учетные данные для автономного входа", e);
+        }
+    }
+
+    public void forgetUser(String login) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            credentials.forget(login);
+        } catch (IOException e) {
+            logger.error("Не удалось удалить учетные данные для автономного входа", e);
+        }
+    }
+
+    private void tick() {
+        try {
+            if (offline) {
+                if (!probe()) {
+                    return;
+                }
+                offline = false;
+                logger.info("Связь с БД восстановлена, невыгруженных продаж: {}", journal.getPendingCount());
+            }
+            syncPending();
+            applyDeferredChanges();
+            refreshCatalogIfDue();
+        } catch (SQLException e) {
+            if (!goOffline(e)) {
+                logger.error("Ошибка выгрузки журнала офлайн-продаж", e);
+            }
+        } catch (Exception e) {
+            logger.error("Ошибка выгрузки журнала офлайн-продаж", e);
+        }
+    }
+
+    private boolean probe() {
+        try (Connection conn = dbManager.getConnection(Workload.BACKOFFICE)) {
+            return conn.isValid(5);
+        } catch (SQLException e) {
+            logger.debug("БД недоступна: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void syncPending() throws SQLException, IOException {
+        while (true) {
+            List<SaleJournal.Entry> batch = journal.readPending(batchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Sale> inserted = dbManager.executeInTransaction(
+                    SessionProfile.forWorkload(Workload.BACKOFFICE), conn -> replay(conn, batch));
+            journal.markSynced(batch.get(batch.size() - 1).getSequence());
+            syncedSales.increment(inserted.size());
+            for (Sale sale : inserted) {
+                commitEvents.publish(CommitEvent.Type.SALE, sale.getSaleDate(),
+                        sale.getItems().stream().map(SaleItem::getProductId).toList());
+            }
+            logger.info("Выгружено офлайн-продаж: {} (повторных: {})", inserted.size(), batch.size() - inserted.size());
+        }
+    }
+
+    private List<Sale> replay(Connection conn, List<SaleJournal.Entry> batch) throws SQLException {
+        List<Sale> inserted = new ArrayList<>();
+        for (SaleJournal.Entry entry : batch) {
+            Sale sale = entry.getSale();
+            String localNumber = sale.getSaleNumber();
+            if (!saleDao.saveOffline(conn, sale, tillId + ":" + entry.getSequence())) {
+                // Пачка уже была зафиксирована, но отметка о выгрузке не успела записаться
+                continue;
+            }
+            for (SaleItem item : sale.getItems()) {
+                item.setSaleId(sale.getId());
+                saleItemDao.save(conn, item);
+
+                Inventory inventory = inventoryDao.findByProductIdForUpdate(conn, item.getProductId());
+                int stockBefore = inventory != null ? inventory.getQuantity() : 0;
+                if (stockBefore < item.getQuantity()) {
+                    // Товар уже отдан покупателю: недостачу на сервере оформляем корректировкой
+                    inventoryDao.setQuantity(conn, item.getProductId(), item.getQuantity());
+                    StockLog adjustment = new StockLog(
+                            item.getProductId(),
+                            StockOperationType.ADJUSTMENT,
+                            item.getQuantity() - stockBefore,
+                            stockBefore,
+                            item.getQuantity(),
+                            sale.getEmployeeId());
+                    adjustment.setReferenceId(sale.getId());
+                    adjustment.setReferenceType("OFFLINE_SALE");
+                    adjustment.setNotes("Расхождение остатка при выгрузке офлайн-чека " + localNumber);
+                    stockLogDao.save(conn, adjustment);
+                    if (EventOutboxDao.isEnabled()) {
+                        outboxDao.save(conn, EventPayloads.adjustment(adjustment));
+                    }
+                    stockConflicts.increment();
+                    logger.warn("Расхождение остатка товара ID {} при выгрузке чека {}: на складе {}, продано {}",
+                            item.getProductId(), localNumber, stockBefore, item.getQuantity());
+                    stockBefore = item.getQuantity();
+                }
+
+                inventoryDao.decreaseQuantity(conn, item.getProductId(), item.getQuantity());
+
+                StockLog stockLog = new StockLog(
+                        item.getProductId(),
+                        StockOperationType.SALE,
+                        -item.getQuantity(),
+                        stockBefore,
+                        stockBefore - item.getQuantity(),
+                        sale.getEmployeeId());
+                stockLog.setReferenceId(sale.getId());
+                stockLog.setReferenceType("SALE");
+                stockLog.setNotes("Офлайн-чек " + localNumber);
+                stockLogDao.save(conn, stockLog);
+            }
+            if (EventOutboxDao.isEnabled()) {
+                outboxDao.save(conn, EventPayloads.sale(sale));
+            }
+            inserted.add(sale);
+        }
+        return inserted;
+    }
+
+    private void onCatalogChanges(Set<Integer> productIds) {
+        try {
+            applyChanges(productIds);
+        } catch (SQLException e) {
+            logger.warn("Не удалось обновить локальный каталог: {}", e.getMessage());
+            deferredChanges.addAll(productIds);
+        }
+    }
+
+    /**
+     * Догоняет изменения, сделанные, пока подписки не было. Запас на случай транзакций,
+     * начатых до снимка и зафиксированных после него.
+     */
+    private void catchUpCatalog() {
+        LocalDateTime snapshotTime = catalog.getSnapshotTime();
+        if (snapshotTime == null) {
+            return;
+        }
+        try {
+            List<Product> changed = productDao.findChangedSince(snapshotTime.minusSeconds(catchUpMarginSeconds));
+            applyProducts(changed, changed.stream().map(Product::getId).toList());
+            logger.info("Локальный каталог догнан: {} измененных товаров с {}", changed.size(), snapshotTime);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось догнать изменения каталога", e);
+        }
+    }
+
+    private void applyDeferredChanges() throws SQLException {
+        if (deferredChanges.isEmpty() || journal.getPendingCount() > 0) {
+            return;
+        }
+        Set<Integer> ids = Set.copyOf(deferredChanges);
+        deferredChanges.removeAll(ids);
+        applyChanges(ids);
+    }
+
+    private void applyChanges(Set<Integer> productIds) throws SQLException {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        applyProducts(productDao.findWithStockByIds(productIds), productIds);
+    }
+
+    private void applyProducts(List<Product> products, Iterable<Integer> productIds) {
+        synchronized (catalog) {
+            // Пока в журнале есть продажи, локальные остатки точнее серверных
+            if (offline || journal.getPendingCount() > 0) {
+                productIds.forEach(deferredChanges::add);
+                return;
+            }
+            catalog.apply(products);
+        }
+    }
+
+    private void refreshCatalogIfDue() throws SQLException, IOException {
+        // Возраст снимка считается по времени выгрузки: после перезапуска свежий снимок не выгружается заново
+        LocalDateTime snapshotTime = catalog.getSnapshotTime();
+        if (snapshotTime != null && snapshotTime.plusMinutes(catalogRefreshMinutes).isAfter(LocalDateTime.now())) {
+            return;
+        }
+        if (journal.getPendingCount() > 0) {
+            return;
+        }
+        LocalDateTime readStartedAt = LocalDateTime.now();
+        long sequence = catalog.getChangeSequence();
+        List<Product> products = productDao.exportCatalog();
+        synchronized (catalog) {
+            if (journal.getPendingCount() == 0) {
+                catalog.replace(products, readStartedAt, sequence);
+            }
+        }
+        logger.debug("Снимок каталога выгружен: {} товаров", products.size());
+    }
+}
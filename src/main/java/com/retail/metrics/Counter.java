@@ -0,0 +1,35 @@
+package com.retail.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class Counter extends Meter {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, String labels) {
+        super(name, labels);
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void increment(long amount) {
+        value.add(amount);
+    }
+
+    public long getCount() {
+        return value.sum();
+    }
+
+    @Override
+    String type() {
+        return "counter";
+    }
+
+    @Override
+    void writeTo(StringBuilder out) {
+        sample(out, name, labels, getCount());
+    }
+}
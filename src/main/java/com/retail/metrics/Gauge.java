@@ -0,0 +1,28 @@
+package com.retail.metrics;
+
+import java.util.function.DoubleSupplier;
+
+
+public class Gauge extends Meter {
+
+    private final DoubleSupplier supplier;
+
+    Gauge(String name, String labels, DoubleSupplier supplier) {
+        super(name, labels);
+        this.supplier = supplier;
+    }
+
+    public double getValue() {
+        return supplier.getAsDouble();
+    }
+
+    @Override
+    String type() {
+        return "gauge";
+    }
+
+    @Override
+    void writeTo(StringBuilder out) {
+        sample(out, name, labels, getValue());
+    }
+}
@@ -0,0 +1,41 @@
+package com.retail.metrics;
+
+
+public abstract class Meter {
+
+    protected final String name;
+    protected final String labels;
+
+    protected Meter(String name, String labels) {
+        this.name = name;
+        this.labels = labels;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    
+    abstract String type();
+
+    
+    abstract void writeTo(StringBuilder out);
+
+    static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
@@ -0,0 +1,111 @@
+package com.retail.metrics;
+
+import com.retail.util.AppConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+public class MetricsExporter {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+
+    private final MetricsRegistry registry;
+    private HttpServer httpServer;
+    private ScheduledExecutorService dumpScheduler;
+    private Path dumpFile;
+
+    public MetricsExporter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    
+    public synchronized void start() {
+        int port = AppConfig.getInt("metrics.http.port", 0);
+        if (port > 0 && httpServer == null) {
+            startHttp(AppConfig.get("metrics.http.host", "127.0.0.1"), port);
+        }
+
+        String file = AppConfig.get("metrics.dump.file", "");
+        long interval = AppConfig.getLong("metrics.dump.interval.seconds", 60);
+        if (!file.isBlank() && interval > 0 && dumpScheduler == null) {
+            dumpFile = Paths.get(file);
+            dumpScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+            dumpScheduler.scheduleAtFixedRate(this::dumpQuietly, interval, interval, TimeUnit.SECONDS);
+            logger.info("Метрики сохраняются в {} каждые {} с", dumpFile, interval);
+        }
+    }
+
+    private void startHttp(String host, int port) {
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+            httpServer.createContext("/metrics", exchange -> {
+                byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+            httpServer.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metrics-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            httpServer.start();
+            logger.info("Метрики доступны по адресу http://{}:{}/metrics", host, port);
+        } catch (IOException e) {
+            logger.error("Не удалось запустить HTTP-сервер метрик на порту {}", port, e);
+            httpServer = null;
+        }
+    }
+
+    
+    public void dump() throws IOException {
+        if (dumpFile == null) {
+            return;
+        }
+        Path parent = dumpFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = dumpFile.resolveSibling(dumpFile.getFileName() + ".tmp");
+        Files.writeString(tmp, registry.scrape(), StandardCharsets.UTF_8);
+        Files.move(tmp, dumpFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void dumpQuietly() {
+        try {
+            dump();
+        } catch (IOException e) {
+            logger.warn("Ошибка записи файла метрик: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+        if (dumpScheduler != null) {
+            dumpScheduler.shutdownNow();
+            dumpScheduler = null;
+            dumpQuietly();
+        }
+    }
+}
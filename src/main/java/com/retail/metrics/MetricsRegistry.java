@@ -0,0 +1,105 @@
+package com.retail.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+
+public class MetricsRegistry {
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final ConcurrentHashMap<String, Meter> meters = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    
+    public Timer timer(String name, String... labelPairs) {
+        String labels = formatLabels(labelPairs);
+        return (Timer) meters.computeIfAbsent(key(name, labels), k -> new Timer(name, labels));
+    }
+
+    public Counter counter(String name, String... labelPairs) {
+        String labels = formatLabels(labelPairs);
+        return (Counter) meters.computeIfAbsent(key(name, labels), k -> new Counter(name, labels));
+    }
+
+    
+    public Gauge gauge(String name, DoubleSupplier supplier, String... labelPairs) {
+        String labels = formatLabels(labelPairs);
+        Gauge gauge = new Gauge(name, labels, supplier);
+        meters.put(key(name, labels), gauge);
+        return gauge;
+    }
+
+    public List<Meter> getMeters() {
+        List<Meter> result = new ArrayList<>(meters.values());
+        result.sort(Comparator.comparing(Meter::getName).thenComparing(Meter::getLabels));
+        return result;
+    }
+
+    
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        String currentName = null;
+        List<Timer> timers = new ArrayList<>();
+
+        for (Meter meter : getMeters()) {
+            if (!meter.getName().equals(currentName)) {
+                currentName = meter.getName();
+                out.append("# TYPE ").append(currentName).append(' ').append(meter.type()).append('\n');
+            }
+            meter.writeTo(out);
+            if (meter instanceof Timer timer) {
+                timers.add(timer);
+            }
+        }
+
+        currentName = null;
+        for (Timer timer : timers) {
+            if (!timer.getName().equals(currentName)) {
+                currentName = timer.getName();
+                out.append("# TYPE ").append(currentName).append("_max gauge\n");
+            }
+            timer.writeMaxTo(out);
+        }
+        return out.toString();
+    }
+
+    private static String key(String name, String labels) {
+        return labels.isEmpty() ? name : name + '{' + labels + '}';
+    }
+
+    private static String formatLabels(String... labelPairs) {
+        if (labelPairs.length == 0) {
+            return "";
+        }
+        if (labelPairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Метки задаются парами имя-значение");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labelPairs.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labelPairs[i]).append("=\"");
+            String value = labelPairs[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c == '\n' ? ' ' : c);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.retail.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class Timer extends Meter {
+
+    // Границы гистограммы в секундах
+    private static final double[] BUCKETS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0
+    };
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+    private static final String[] BUCKET_LABELS = new String[BUCKETS.length];
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * 1_000_000_000L);
+            BUCKET_LABELS[i] = "le=\"" + BigDecimal.valueOf(BUCKETS[i]).stripTrailingZeros().toPlainString() + "\"";
+        }
+    }
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+
+    Timer(String name, String labels) {
+        super(name, labels);
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        for (int i = 0; i < BUCKET_NANOS.length; i++) {
+            if (nanos <= BUCKET_NANOS[i]) {
+                buckets[i].increment();
+                break;
+            }
+        }
+    }
+
+    public void record(long amount, TimeUnit unit) {
+        record(unit.toNanos(amount));
+    }
+
+    
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanMillis() {
+        long n = getCount();
+        return n == 0 ? 0.0 : getTotalNanos() / (double) n / 1_000_000.0;
+    }
+
+    @Override
+    String type() {
+        return "histogram";
+    }
+
+    @Override
+    void writeTo(StringBuilder out) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            cumulative += buckets[i].sum();
+            sample(out, name + "_bucket", prefix + BUCKET_LABELS[i], cumulative);
+        }
+        long total = getCount();
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", total);
+        sample(out, name + "_sum", labels, getTotalNanos() / 1_000_000_000.0);
+        sample(out, name + "_count", labels, total);
+    }
+
+    void writeMaxTo(StringBuilder out) {
+        sample(out, name + "_max", labels, getMaxNanos() / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,72 @@
+package com.retail.model;
+
+import com.retail.model.enums.PriceChangeMode;
+import com.retail.model.enums.PriceRounding;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+
+/**
+ * Правило массового изменения цен. Товары выбираются по категории и/или списку
+ * артикулов; value - процент, сумма или целевая маржа в процентах в зависимости от mode.
+ */
+public class BulkPriceChange {
+    private PriceChangeMode mode = PriceChangeMode.PERCENT;
+    private BigDecimal value;
+    private PriceRounding rounding = PriceRounding.KOPECKS;
+    private Integer categoryId;
+    private List<String> skus;
+    private String reason;
+
+    public BulkPriceChange() {
+    }
+
+    public PriceChangeMode getMode() {
+        return mode;
+    }
+
+    public void setMode(PriceChangeMode mode) {
+        this.mode = mode;
+    }
+
+    public BigDecimal getValue() {
+        return value;
+    }
+
+    public void setValue(BigDecimal value) {
+        this.value = value;
+    }
+
+    public PriceRounding getRounding() {
+        return rounding;
+    }
+
+    public void setRounding(PriceRounding rounding) {
+        this.rounding = rounding;
+    }
+
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public List<String> getSkus() {
+        return skus;
+    }
+
+    public void setSkus(List<String> skus) {
+        this.skus = skus;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+}
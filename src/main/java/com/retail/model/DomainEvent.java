@@ -0,0 +1,83 @@
+package com.retail.model;
+
+import com.retail.model.enums.EventType;
+
+import java.time.LocalDateTime;
+
+
+/**
+ * Событие предметной области: записывается в event_outbox в транзакции операции,
+ * затем переносится в локальный журнал событий и получает в нем смещение.
+ */
+public class DomainEvent {
+    private Long id;
+    private long offset = -1;
+    private EventType eventType;
+    private Integer aggregateId;
+    private String payload;
+    private LocalDateTime createdAt;
+
+    public DomainEvent() {
+    }
+
+    public DomainEvent(EventType eventType, Integer aggregateId, String payload) {
+        this.eventType = eventType;
+        this.aggregateId = aggregateId;
+        this.payload = payload;
+        this.createdAt = LocalDateTime.now();
+    }
+
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(EventType eventType) {
+        this.eventType = eventType;
+    }
+
+    public Integer getAggregateId() {
+        return aggregateId;
+    }
+
+    public void setAggregateId(Integer aggregateId) {
+        this.aggregateId = aggregateId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DomainEvent{offset=%d, type=%s, aggregateId=%d}", offset, eventType, aggregateId);
+    }
+}
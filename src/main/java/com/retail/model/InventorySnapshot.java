@@ -0,0 +1,55 @@
+package com.retail.model;
+
+import java.time.LocalDateTime;
+
+
+/**
+ * Снимок остатков на момент takenAt: состояние после всех записей stock_log
+ * с created_at не позже этого момента.
+ */
+public class InventorySnapshot {
+    private Integer id;
+    private LocalDateTime takenAt;
+    private Integer productCount;
+    private LocalDateTime createdAt;
+
+    public InventorySnapshot() {
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getTakenAt() {
+        return takenAt;
+    }
+
+    public void setTakenAt(LocalDateTime takenAt) {
+        this.takenAt = takenAt;
+    }
+
+    public Integer getProductCount() {
+        return productCount;
+    }
+
+    public void setProductCount(Integer productCount) {
+        this.productCount = productCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InventorySnapshot{id=%d, takenAt=%s, products=%d}", id, takenAt, productCount);
+    }
+}
@@ -0,0 +1,143 @@
+package com.retail.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+
+/**
+ * Изменение цены товара: строка истории цен или строка предпросмотра массового изменения.
+ * Цена действует с effectiveFrom; будущие цены хранятся в истории заранее.
+ */
+public class PriceChange {
+    private Long id;
+    private Integer productId;
+    private String productSku;
+    private String productName;
+    private BigDecimal purchasePrice;
+    private BigDecimal oldPrice;
+    private BigDecimal newPrice;
+    private LocalDateTime effectiveFrom;
+    private LocalDateTime activatedAt;
+    private String reason;
+    private Integer changedBy;
+    private LocalDateTime changedAt;
+
+    public PriceChange() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    public String getProductSku() {
+        return productSku;
+    }
+
+    public void setProductSku(String productSku) {
+        this.productSku = productSku;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public BigDecimal getPurchasePrice() {
+        return purchasePrice;
+    }
+
+    public void setPurchasePrice(BigDecimal purchasePrice) {
+        this.purchasePrice = purchasePrice;
+    }
+
+    public BigDecimal getOldPrice() {
+        return oldPrice;
+    }
+
+    public void setOldPrice(BigDecimal oldPrice) {
+        this.oldPrice = oldPrice;
+    }
+
+    public BigDecimal getNewPrice() {
+        return newPrice;
+    }
+
+    public void setNewPrice(BigDecimal newPrice) {
+        this.newPrice = newPrice;
+    }
+
+    public LocalDateTime getEffectiveFrom() {
+        return effectiveFrom;
+    }
+
+    public void setEffectiveFrom(LocalDateTime effectiveFrom) {
+        this.effectiveFrom = effectiveFrom;
+    }
+
+    public LocalDateTime getActivatedAt() {
+        return activatedAt;
+    }
+
+    public void setActivatedAt(LocalDateTime activatedAt) {
+        this.activatedAt = activatedAt;
+    }
+
+    /**
+     * Запланированная цена, еще не записанная в карточку товара.
+     */
+    public boolean isPending() {
+        return activatedAt == null;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    public Integer getChangedBy() {
+        return changedBy;
+    }
+
+    public void setChangedBy(Integer changedBy) {
+        this.changedBy = changedBy;
+    }
+
+    public LocalDateTime getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(LocalDateTime changedAt) {
+        this.changedAt = changedAt;
+    }
+
+    /**
+     * Новая цена допустима: положительна. Остальные изменения массового правила пропускаются.
+     */
+    public boolean isValid() {
+        return newPrice != null && newPrice.signum() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PriceChange{product=%d, %s -> %s}", productId, oldPrice, newPrice);
+    }
+
+}
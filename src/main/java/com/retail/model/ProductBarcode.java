@@ -0,0 +1,88 @@
+package com.retail.model;
+
+import com.retail.model.enums.BarcodeKind;
+
+import java.time.LocalDateTime;
+
+
+/**
+ * Штрихкод товара. У товара может быть несколько кодов: штучный, упаковка из packQuantity
+ * единиц. Для весовых кодов и кодов с ценой хранится только префикс из 7 цифр
+ * (2, тип, код товара), остальная часть этикетки разбирается при сканировании.
+ */
+public class ProductBarcode {
+    private String code;
+    private Integer productId;
+    private String productName;
+    private BarcodeKind kind = BarcodeKind.UNIT;
+    private int packQuantity = 1;
+    private LocalDateTime createdAt;
+
+    public ProductBarcode() {
+    }
+
+    public ProductBarcode(String code, Integer productId, BarcodeKind kind, int packQuantity) {
+        this.code = code;
+        this.productId = productId;
+        this.kind = kind;
+        this.packQuantity = packQuantity;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public BarcodeKind getKind() {
+        return kind;
+    }
+
+    public void setKind(BarcodeKind kind) {
+        this.kind = kind;
+    }
+
+    public int getPackQuantity() {
+        return packQuantity;
+    }
+
+    public void setPackQuantity(int packQuantity) {
+        this.packQuantity = packQuantity;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductBarcode{" +
+                "code='" + code + '\'' +
+                ", productId=" + productId +
+                ", kind=" + kind +
+                ", packQuantity=" + packQuantity +
+                '}';
+    }
+}
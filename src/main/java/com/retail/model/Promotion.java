@@ -0,0 +1,151 @@
+package com.retail.model;
+
+import com.retail.model.enums.PromotionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Акция. MULTI_BUY: при покупке buyQuantity единиц productId оплачиваются payQuantity.
+ * CATEGORY_PERCENT: скидка discountPercent на товары categoryId. BUNDLE: набор
+ * bundleItems (товар - количество) продается за bundlePrice.
+ */
+public class Promotion {
+    private Integer id;
+    private String name;
+    private PromotionType type;
+    private Integer productId;
+    private Integer categoryId;
+    private int buyQuantity;
+    private int payQuantity;
+    private BigDecimal discountPercent;
+    private BigDecimal bundlePrice;
+    private Map<Integer, Integer> bundleItems = new LinkedHashMap<>();
+    private LocalDateTime validFrom;
+    private LocalDateTime validTo;
+    private boolean active = true;
+    private Integer createdBy;
+
+    public Promotion() {
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public PromotionType getType() {
+        return type;
+    }
+
+    public void setType(PromotionType type) {
+        this.type = type;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public int getBuyQuantity() {
+        return buyQuantity;
+    }
+
+    public void setBuyQuantity(int buyQuantity) {
+        this.buyQuantity = buyQuantity;
+    }
+
+    public int getPayQuantity() {
+        return payQuantity;
+    }
+
+    public void setPayQuantity(int payQuantity) {
+        this.payQuantity = payQuantity;
+    }
+
+    public BigDecimal getDiscountPercent() {
+        return discountPercent;
+    }
+
+    public void setDiscountPercent(BigDecimal discountPercent) {
+        this.discountPercent = discountPercent;
+    }
+
+    public BigDecimal getBundlePrice() {
+        return bundlePrice;
+    }
+
+    public void setBundlePrice(BigDecimal bundlePrice) {
+        this.bundlePrice = bundlePrice;
+    }
+
+    public Map<Integer, Integer> getBundleItems() {
+        return bundleItems;
+    }
+
+    public void setBundleItems(Map<Integer, Integer> bundleItems) {
+        this.bundleItems = bundleItems;
+    }
+
+    public LocalDateTime getValidFrom() {
+        return validFrom;
+    }
+
+    public void setValidFrom(LocalDateTime validFrom) {
+        this.validFrom = validFrom;
+    }
+
+    public LocalDateTime getValidTo() {
+        return validTo;
+    }
+
+    public void setValidTo(LocalDateTime validTo) {
+        this.validTo = validTo;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public Integer getCreatedBy() {
+        return createdBy;
+    }
+
+    public void setCreatedBy(Integer createdBy) {
+        this.createdBy = createdBy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Promotion{id=%d, type=%s, name='%s'}", id, type, name);
+    }
+}
@@ -13,6 +13,7 @@ public class Sale {
     private LocalDateTime saleDate;
     private BigDecimal totalAmount;
     private BigDecimal discount;
+    private BigDecimal promotionDiscount;
     private BigDecimal finalAmount;
     private boolean returned;
     private LocalDateTime createdAt;
@@ -24,6 +25,7 @@ public class Sale {
     public Sale() {
         this.totalAmount = BigDecimal.ZERO;
         this.discount = BigDecimal.ZERO;
+        this.promotionDiscount = BigDecimal.ZERO;
         this.finalAmount = BigDecimal.ZERO;
         this.returned = false;
         this.items = new ArrayList<>();
@@ -84,6 +86,17 @@ public class Sale {
         this.discount = discount;
     }
 
+    /**
+     * Часть скидки, начисленная акциями при продаже; уже входит в discount.
+     */
+    public BigDecimal getPromotionDiscount() {
+        return promotionDiscount;
+    }
+
+    public void setPromotionDiscount(BigDecimal promotionDiscount) {
+        this.promotionDiscount = promotionDiscount;
+    }
+
     public BigDecimal getFinalAmount() {
         return finalAmount;
     }
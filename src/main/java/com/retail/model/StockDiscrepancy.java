@@ -0,0 +1,104 @@
+package com.retail.model;
+
+import com.retail.model.enums.DiscrepancyType;
+
+import java.time.LocalDateTime;
+
+
+/**
+ * Расхождение остатка с журналом движений. Для расхождений цепочки указывается
+ * запись stock_log, на которой оно обнаружено.
+ */
+public class StockDiscrepancy {
+    private DiscrepancyType type;
+    private Integer productId;
+    private String productSku;
+    private String productName;
+    private Integer stockLogId;
+    private LocalDateTime logCreatedAt;
+    private long expected;
+    private long actual;
+
+    public StockDiscrepancy() {
+    }
+
+    public StockDiscrepancy(DiscrepancyType type, Integer productId, long expected, long actual) {
+        this.type = type;
+        this.productId = productId;
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    public DiscrepancyType getType() {
+        return type;
+    }
+
+    public void setType(DiscrepancyType type) {
+        this.type = type;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    public String getProductSku() {
+        return productSku;
+    }
+
+    public void setProductSku(String productSku) {
+        this.productSku = productSku;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public Integer getStockLogId() {
+        return stockLogId;
+    }
+
+    public void setStockLogId(Integer stockLogId) {
+        this.stockLogId = stockLogId;
+    }
+
+    public LocalDateTime getLogCreatedAt() {
+        return logCreatedAt;
+    }
+
+    public void setLogCreatedAt(LocalDateTime logCreatedAt) {
+        this.logCreatedAt = logCreatedAt;
+    }
+
+    /**
+     * Ожидаемое значение: для LEDGER_MISMATCH и LAST_AFTER_MISMATCH - остаток в inventory.
+     */
+    public long getExpected() {
+        return expected;
+    }
+
+    public void setExpected(long expected) {
+        this.expected = expected;
+    }
+
+    public long getActual() {
+        return actual;
+    }
+
+    public void setActual(long actual) {
+        this.actual = actual;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StockDiscrepancy{type=%s, productId=%d, logId=%s, expected=%d, actual=%d}",
+                type, productId, stockLogId, expected, actual);
+    }
+}
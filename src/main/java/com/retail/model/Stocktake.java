@@ -0,0 +1,110 @@
+package com.retail.model;
+
+import com.retail.model.enums.StocktakeStatus;
+
+import java.time.LocalDateTime;
+
+
+/**
+ * Инвентаризация: при открытии фиксируются остатки всех активных товаров,
+ * затем накапливаются подсчитанные количества, при проведении - корректировки.
+ */
+public class Stocktake {
+    private Integer id;
+    private StocktakeStatus status;
+    private Integer startedBy;
+    private LocalDateTime startedAt;
+    private Integer appliedBy;
+    private LocalDateTime appliedAt;
+    private String notes;
+
+    private int itemCount;
+    private int countedCount;
+
+    public Stocktake() {
+        this.status = StocktakeStatus.OPEN;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public StocktakeStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(StocktakeStatus status) {
+        this.status = status;
+    }
+
+    public Integer getStartedBy() {
+        return startedBy;
+    }
+
+    public void setStartedBy(Integer startedBy) {
+        this.startedBy = startedBy;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Integer getAppliedBy() {
+        return appliedBy;
+    }
+
+    public void setAppliedBy(Integer appliedBy) {
+        this.appliedBy = appliedBy;
+    }
+
+    public LocalDateTime getAppliedAt() {
+        return appliedAt;
+    }
+
+    public void setAppliedAt(LocalDateTime appliedAt) {
+        this.appliedAt = appliedAt;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+
+    public void setNotes(String notes) {
+        this.notes = notes;
+    }
+
+    /**
+     * Товаров в инвентаризации.
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    /**
+     * Товаров, для которых введен подсчет.
+     */
+    public int getCountedCount() {
+        return countedCount;
+    }
+
+    public void setCountedCount(int countedCount) {
+        this.countedCount = countedCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Stocktake{id=%d, status=%s, startedAt=%s}", id, status, startedAt);
+    }
+}
@@ -0,0 +1,94 @@
+package com.retail.model;
+
+
+/**
+ * Строка расхождений инвентаризации. Движения за время подсчета (продажи, возвраты,
+ * поставки между фиксацией и подсчетом товара) не считаются расхождением:
+ * delta = counted - frozen - movedDuringCount.
+ */
+public class StocktakeLine {
+    private Integer productId;
+    private String productSku;
+    private String productName;
+    private int frozenQuantity;
+    private int countedQuantity;
+    private boolean counted;
+    private int movedDuringCount;
+    private int currentQuantity;
+    private int delta;
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Integer productId) {
+        this.productId = productId;
+    }
+
+    public String getProductSku() {
+        return productSku;
+    }
+
+    public void setProductSku(String productSku) {
+        this.productSku = productSku;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public int getFrozenQuantity() {
+        return frozenQuantity;
+    }
+
+    public void setFrozenQuantity(int frozenQuantity) {
+        this.frozenQuantity = frozenQuantity;
+    }
+
+    public int getCountedQuantity() {
+        return countedQuantity;
+    }
+
+    public void setCountedQuantity(int countedQuantity) {
+        this.countedQuantity = countedQuantity;
+    }
+
+    /**
+     * false - товар не подсчитан и при проведении считается отсутствующим.
+     */
+    public boolean isCounted() {
+        return counted;
+    }
+
+    public void setCounted(boolean counted) {
+        this.counted = counted;
+    }
+
+    public int getMovedDuringCount() {
+        return movedDuringCount;
+    }
+
+    public void setMovedDuringCount(int movedDuringCount) {
+        this.movedDuringCount = movedDuringCount;
+    }
+
+    public int getCurrentQuantity() {
+        return currentQuantity;
+    }
+
+    public void setCurrentQuantity(int currentQuantity) {
+        this.currentQuantity = currentQuantity;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public void setDelta(int delta) {
+        this.delta = delta;
+    }
+}
@@ -0,0 +1,27 @@
+package com.retail.model.enums;
+
+
+public enum BarcodeKind {
+    UNIT("Штучный"),
+    WEIGHT("Весовой (вес в коде)"),
+    PRICE("Цена в коде");
+
+    private final String displayName;
+
+    BarcodeKind(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static BarcodeKind fromString(String value) {
+        for (BarcodeKind kind : values()) {
+            if (kind.name().equalsIgnoreCase(value)) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный вид штрихкода: " + value);
+    }
+}
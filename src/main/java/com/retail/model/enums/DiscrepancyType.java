@@ -0,0 +1,28 @@
+package com.retail.model.enums;
+
+
+public enum DiscrepancyType {
+    LEDGER_MISMATCH("Остаток не равен сумме движений"),
+    CHANGE_MISMATCH("Изменение не равно разнице было/стало"),
+    CHAIN_BREAK("Разрыв цепочки было/стало"),
+    LAST_AFTER_MISMATCH("Последнее \"стало\" не равно остатку");
+
+    private final String displayName;
+
+    DiscrepancyType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static DiscrepancyType fromString(String value) {
+        for (DiscrepancyType type : values()) {
+            if (type.name().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный тип расхождения: " + value);
+    }
+}
@@ -0,0 +1,28 @@
+package com.retail.model.enums;
+
+
+public enum EventType {
+    SALE("Продажа"),
+    RETURN("Возврат"),
+    RECEIPT("Поступление"),
+    ADJUSTMENT("Корректировка");
+
+    private final String displayName;
+
+    EventType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static EventType fromString(String value) {
+        for (EventType type : values()) {
+            if (type.name().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный тип события: " + value);
+    }
+}
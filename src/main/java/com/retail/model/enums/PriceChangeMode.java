@@ -0,0 +1,27 @@
+package com.retail.model.enums;
+
+
+public enum PriceChangeMode {
+    PERCENT("Изменение цены на процент"),
+    ABSOLUTE("Изменение цены на сумму"),
+    MARGIN("Целевая маржа от цены закупки");
+
+    private final String displayName;
+
+    PriceChangeMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static PriceChangeMode fromString(String value) {
+        for (PriceChangeMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный способ изменения цены: " + value);
+    }
+}
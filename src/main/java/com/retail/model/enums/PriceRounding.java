@@ -0,0 +1,28 @@
+package com.retail.model.enums;
+
+
+public enum PriceRounding {
+    KOPECKS("До копеек"),
+    RUBLES("До рублей"),
+    TENS("До десятков рублей"),
+    ENDING_99("Вверх до ,99");
+
+    private final String displayName;
+
+    PriceRounding(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static PriceRounding fromString(String value) {
+        for (PriceRounding rounding : values()) {
+            if (rounding.name().equalsIgnoreCase(value)) {
+                return rounding;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестное правило округления: " + value);
+    }
+}
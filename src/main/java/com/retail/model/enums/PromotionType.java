@@ -0,0 +1,27 @@
+package com.retail.model.enums;
+
+
+public enum PromotionType {
+    MULTI_BUY("N по цене M"),
+    CATEGORY_PERCENT("Скидка на категорию"),
+    BUNDLE("Комплект по цене");
+
+    private final String displayName;
+
+    PromotionType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static PromotionType fromString(String value) {
+        for (PromotionType type : values()) {
+            if (type.name().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный тип акции: " + value);
+    }
+}
@@ -0,0 +1,27 @@
+package com.retail.model.enums;
+
+
+public enum StocktakeStatus {
+    OPEN("Идет подсчет"),
+    APPLIED("Проведена"),
+    CANCELLED("Отменена");
+
+    private final String displayName;
+
+    StocktakeStatus(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public static StocktakeStatus fromString(String value) {
+        for (StocktakeStatus status : values()) {
+            if (status.name().equalsIgnoreCase(value)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный статус инвентаризации: " + value);
+    }
+}
@@ -0,0 +1,65 @@
+package com.retail.promo;
+
+import java.util.Arrays;
+
+
+/**
+ * Неизменяемое после заполнения отображение int -> int с открытой адресацией и линейным
+ * пробированием. Поиск не создает объектов. Ключ Integer.MIN_VALUE зарезервирован.
+ */
+final class IntHashIndex {
+    static final int MISSING = -1;
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    IntHashIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    void put(int key, int value) {
+        int i = slot(key);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            if (size + 1 > (keys.length >> 1)) {
+                throw new IllegalStateException("Индекс заполнен: " + size);
+            }
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    int get(int key) {
+        int i = slot(key);
+        while (true) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == EMPTY) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(int key) {
+        // Перемешивание битов: id идут подряд и иначе собираются в кластеры
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,335 @@
+package com.retail.promo;
+
+import com.retail.model.Promotion;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Скомпилированный набор акций. Правила хранятся массивами по полям, цены - в копейках;
+ * к правилам ведут индексы по товару (N по цене M и комплекты, в которые входит товар)
+ * и по категории (процентные скидки), поэтому корзина проверяет только применимые к ее
+ * строкам правила. Экземпляр неизменяем и используется кассами одновременно.
+ * <p>
+ * Единица товара участвует не более чем в одной акции. Порядок применения: комплекты
+ * (выгоднейший первым), затем лучшая акция N по цене M на строку, затем лучшая
+ * скидка категории на оставшиеся единицы.
+ */
+public final class PromotionEngine {
+    public static final PromotionEngine EMPTY = compile(List.of(), Map.of());
+
+    private static final byte MULTI_BUY = 0;
+    private static final byte CATEGORY_PERCENT = 1;
+    private static final byte BUNDLE = 2;
+    private static final int[] NO_RULES = new int[0];
+
+    private final int ruleCount;
+    private final byte[] type;
+    private final int[] promotionId;
+    private final long[] validFrom;
+    private final long[] validTo;
+    private final int[] buy;
+    private final int[] pay;
+    private final int[] percentBp;
+    private final long[] bundlePrice;
+    private final int[][] bundleProducts;
+    private final int[][] bundleQuantities;
+
+    private final IntHashIndex productSlots;
+    private final int[][] productRules;
+    private final IntHashIndex categorySlots;
+    private final int[][] categoryRules;
+    private final IntHashIndex productCategories;
+
+    private PromotionEngine(int ruleCount, IntHashIndex productSlots, int[][] productRules,
+                            IntHashIndex categorySlots, int[][] categoryRules, IntHashIndex productCategories) {
+        this.ruleCount = ruleCount;
+        this.type = new byte[ruleCount];
+        this.promotionId = new int[ruleCount];
+        this.validFrom = new long[ruleCount];
+        this.validTo = new long[ruleCount];
+        this.buy = new int[ruleCount];
+        this.pay = new int[ruleCount];
+        this.percentBp = new int[ruleCount];
+        this.bundlePrice = new long[ruleCount];
+        this.bundleProducts = new int[ruleCount][];
+        this.bundleQuantities = new int[ruleCount][];
+        this.productSlots = productSlots;
+        this.productRules = productRules;
+        this.categorySlots = categorySlots;
+        this.categoryRules = categoryRules;
+        this.productCategories = productCategories;
+    }
+
+    /**
+     * Компилирует активные акции. productCategories - категории товаров, на которые есть
+     * процентные акции; для остальных товаров категория не нужна.
+     */
+    public static PromotionEngine compile(List<Promotion> promotions, Map<Integer, Integer> productCategories) {
+        List<Promotion> rules = new ArrayList<>(promotions.size());
+        for (Promotion promotion : promotions) {
+            if (promotion.isActive() && isValid(promotion)) {
+                rules.add(promotion);
+            }
+        }
+
+        Map<Integer, List<Integer>> byProduct = new HashMap<>();
+        Map<Integer, List<Integer>> byCategory = new HashMap<>();
+        for (int r = 0; r < rules.size(); r++) {
+            Promotion promotion = rules.get(r);
+            switch (promotion.getType()) {
+                case MULTI_BUY -> byProduct.computeIfAbsent(promotion.getProductId(), k -> new ArrayList<>()).add(r);
+                case CATEGORY_PERCENT -> byCategory.computeIfAbsent(promotion.getCategoryId(), k -> new ArrayList<>()).add(r);
+                case BUNDLE -> {
+                    for (Integer productId : promotion.getBundleItems().keySet()) {
+                        byProduct.computeIfAbsent(productId, k -> new ArrayList<>()).add(r);
+                    }
+                }
+            }
+        }
+
+        IntHashIndex productSlots = new IntHashIndex(byProduct.size());
+        int[][] productRules = toSlots(byProduct, productSlots);
+        IntHashIndex categorySlots = new IntHashIndex(byCategory.size());
+        int[][] categoryRules = toSlots(byCategory, categorySlots);
+        IntHashIndex categories = new IntHashIndex(productCategories.size());
+        for (Map.Entry<Integer, Integer> entry : productCategories.entrySet()) {
+            if (byCategory.containsKey(entry.getValue())) {
+                categories.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        PromotionEngine engine = new PromotionEngine(rules.size(), productSlots, productRules,
+                categorySlots, categoryRules, categories);
+        for (int r = 0; r < rules.size(); r++) {
+            engine.set(r, rules.get(r));
+        }
+        return engine;
+    }
+
+    private static boolean isValid(Promotion p) {
+        if (p.getType() == null || p.getId() == null) {
+            return false;
+        }
+        return switch (p.getType()) {
+            case MULTI_BUY -> p.getProductId() != null && p.getBuyQuantity() > p.getPayQuantity() && p.getPayQuantity() >= 0;
+            case CATEGORY_PERCENT -> p.getCategoryId() != null && p.getDiscountPercent() != null
+                    && p.getDiscountPercent().signum() > 0 && p.getDiscountPercent().compareTo(BigDecimal.valueOf(100)) <= 0;
+            case BUNDLE -> p.getBundlePrice() != null && p.getBundlePrice().signum() >= 0 && !p.getBundleItems().isEmpty()
+                    && p.getBundleItems().values().stream().allMatch(q -> q != null && q > 0);
+        };
+    }
+
+    private static int[][] toSlots(Map<Integer, List<Integer>> lists, IntHashIndex slots) {
+        int[][] result = new int[lists.size()][];
+        int slot = 0;
+        for (Map.Entry<Integer, List<Integer>> entry : lists.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] rules = new int[list.size()];
+            for (int i = 0; i < rules.length; i++) {
+                rules[i] = list.get(i);
+            }
+            result[slot] = rules;
+            slots.put(entry.getKey(), slot++);
+        }
+        return result;
+    }
+
+    private void set(int r, Promotion p) {
+        promotionId[r] = p.getId();
+        validFrom[r] = p.getValidFrom() != null ? Timestamp.valueOf(p.getValidFrom()).getTime() : Long.MIN_VALUE;
+        validTo[r] = p.getValidTo() != null ? Timestamp.valueOf(p.getValidTo()).getTime() : Long.MAX_VALUE;
+        switch (p.getType()) {
+            case MULTI_BUY -> {
+                type[r] = MULTI_BUY;
+                buy[r] = p.getBuyQuantity();
+                pay[r] = p.getPayQuantity();
+            }
+            case CATEGORY_PERCENT -> {
+                type[r] = CATEGORY_PERCENT;
+                percentBp[r] = p.getDiscountPercent().movePointRight(2).setScale(0, RoundingMode.HALF_UP).intValueExact();
+            }
+            case BUNDLE -> {
+                type[r] = BUNDLE;
+                bundlePrice[r] = toCents(p.getBundlePrice());
+                int size = p.getBundleItems().size();
+                bundleProducts[r] = new int[size];
+                bundleQuantities[r] = new int[size];
+                int i = 0;
+                for (Map.Entry<Integer, Integer> item : p.getBundleItems().entrySet()) {
+                    bundleProducts[r][i] = item.getKey();
+                    bundleQuantities[r][i] = item.getValue();
+                    i++;
+                }
+            }
+        }
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * Считает скидки акций для корзины из n строк на момент at (мс эпохи).
+     * Массивы не изменяются; цены строк - в копейках за единицу.
+     */
+    public PromotionResult apply(int n, int[] productIds, int[] quantities, long[] unitPrices, long at) {
+        if (ruleCount == 0 || n == 0) {
+            return PromotionResult.EMPTY;
+        }
+        int[] available = new int[n];
+        System.arraycopy(quantities, 0, available, 0, n);
+        PromotionResult result = null;
+
+        result = applyBundles(n, productIds, unitPrices, available, at, result);
+
+        for (int line = 0; line < n; line++) {
+            if (available[line] == 0) {
+                continue;
+            }
+            int[] rules = rulesFor(productSlots, productRules, productIds[line]);
+            int best = -1;
+            long bestDiscount = 0;
+            for (int r : rules) {
+                if (type[r] != MULTI_BUY || !isActive(r, at)) {
+                    continue;
+                }
+                long discount = (long) (available[line] / buy[r]) * (buy[r] - pay[r]) * unitPrices[line];
+                if (discount > bestDiscount) {
+                    best = r;
+                    bestDiscount = discount;
+                }
+            }
+            if (best >= 0) {
+                available[line] -= available[line] / buy[best] * buy[best];
+                result = add(result, promotionId[best], bestDiscount);
+            }
+        }
+
+        if (categoryRules.length > 0) {
+            for (int line = 0; line < n; line++) {
+                if (available[line] == 0) {
+                    continue;
+                }
+                int category = productCategories.get(productIds[line]);
+                if (category == IntHashIndex.MISSING) {
+                    continue;
+                }
+                int best = -1;
+                for (int r : rulesFor(categorySlots, categoryRules, category)) {
+                    if (isActive(r, at) && (best < 0 || percentBp[r] > percentBp[best])) {
+                        best = r;
+                    }
+                }
+                if (best >= 0) {
+                    long discount = (available[line] * unitPrices[line] * percentBp[best] + 5_000) / 10_000;
+                    available[line] = 0;
+                    if (discount > 0) {
+                        result = add(result, promotionId[best], discount);
+                    }
+                }
+            }
+        }
+        return result != null ? result : PromotionResult.EMPTY;
+    }
+
+    private PromotionResult applyBundles(int n, int[] productIds, long[] unitPrices, int[] available,
+                                         long at, PromotionResult result) {
+        int[] candidates = null;
+        int candidateCount = 0;
+        for (int line = 0; line < n; line++) {
+            for (int r : rulesFor(productSlots, productRules, productIds[line])) {
+                if (type[r] != BUNDLE || !isActive(r, at) || contains(candidates, candidateCount, r)) {
+                    continue;
+                }
+                if (candidates == null) {
+                    candidates = new int[4];
+                } else if (candidateCount == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                }
+                candidates[candidateCount++] = r;
+            }
+        }
+
+        // Жадно: каждый раз применяем комплект с наибольшей суммарной скидкой на остатке корзины
+        while (candidateCount > 0) {
+            int best = -1;
+            int bestTimes = 0;
+            long bestDiscount = 0;
+            for (int c = 0; c < candidateCount; c++) {
+                int r = candidates[c];
+                int times = Integer.MAX_VALUE;
+                long regular = 0;
+                int[] products = bundleProducts[r];
+                for (int i = 0; i < products.length && times > 0; i++) {
+                    int line = lineOf(n, productIds, products[i]);
+                    times = line < 0 ? 0 : Math.min(times, available[line] / bundleQuantities[r][i]);
+                    regular += line < 0 ? 0 : unitPrices[line] * bundleQuantities[r][i];
+                }
+                long discount = times > 0 ? (regular - bundlePrice[r]) * times : 0;
+                if (discount > bestDiscount) {
+                    best = c;
+                    bestTimes = times;
+                    bestDiscount = discount;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            int r = candidates[best];
+            int[] products = bundleProducts[r];
+            for (int i = 0; i < products.length; i++) {
+                available[lineOf(n, productIds, products[i])] -= bundleQuantities[r][i] * bestTimes;
+            }
+            result = add(result, promotionId[r], bestDiscount);
+            candidates[best] = candidates[--candidateCount];
+        }
+        return result;
+    }
+
+    private boolean isActive(int r, long at) {
+        return at >= validFrom[r] && at < validTo[r];
+    }
+
+    private static int[] rulesFor(IntHashIndex slots, int[][] rules, int key) {
+        int slot = slots.get(key);
+        return slot == IntHashIndex.MISSING ? NO_RULES : rules[slot];
+    }
+
+    private static int lineOf(int n, int[] productIds, int productId) {
+        for (int i = 0; i < n; i++) {
+            if (productIds[i] == productId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PromotionResult add(PromotionResult result, int promotionId, long discount) {
+        if (result == null) {
+            result = new PromotionResult(4);
+        }
+        result.add(promotionId, discount);
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package com.retail.promo;
+
+import com.retail.dao.PromotionDao;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.service.CommitEventBus;
+import com.retail.service.CommitEventBus.CommitEvent;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Скомпилированные действующие акции. Касса берет {@link #current()} без обращения к БД;
+ * движок пересобирается целиком в фоне раз в promotions.refresh.seconds, после изменения
+ * акций и после изменения товаров (могла смениться категория).
+ */
+@DbWorkload(Workload.BACKOFFICE)
+public final class PromotionIndex {
+    private static final Logger logger = LoggerFactory.getLogger(PromotionIndex.class);
+    private static volatile PromotionIndex instance;
+
+    private final PromotionDao promotionDao = new PromotionDao();
+    private final long refreshSeconds;
+    private volatile PromotionEngine engine = PromotionEngine.EMPTY;
+    private ScheduledExecutorService scheduler;
+
+    private PromotionIndex() {
+        this.refreshSeconds = Math.max(1, AppConfig.getLong("promotions.refresh.seconds", 60));
+        MetricsRegistry.getInstance().gauge("retail_promotion_rules", () -> engine.getRuleCount());
+        CommitEventBus.getInstance().subscribe(this::onCommit);
+    }
+
+    public static PromotionIndex getInstance() {
+        PromotionIndex index = instance;
+        if (index == null) {
+            synchronized (PromotionIndex.class) {
+                index = instance;
+                if (index == null) {
+                    index = new PromotionIndex();
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || !AppConfig.getBoolean("promotions.enabled", true)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "promotion-index");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::reloadQuietly, 0, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    public static void shutdown() {
+        PromotionIndex index = instance;
+        if (index != null) {
+            synchronized (index) {
+                if (index.scheduler != null) {
+                    index.scheduler.shutdownNow();
+                    index.scheduler = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Текущий движок акций; до первой загрузки - пустой.
+     */
+    public PromotionEngine current() {
+        return engine;
+    }
+
+    
+    public void reload() throws SQLException {
+        PromotionEngine fresh = PromotionEngine.compile(promotionDao.findActive(),
+                promotionDao.findPromotedProductCategories());
+        engine = fresh;
+        logger.debug("Акции перекомпилированы: {} правил", fresh.getRuleCount());
+    }
+
+    /**
+     * Пересобирает движок в фоновом потоке, не задерживая вызывающего.
+     */
+    public synchronized void reloadAsync() {
+        if (scheduler != null) {
+            scheduler.execute(this::reloadQuietly);
+        }
+    }
+
+    private void onCommit(CommitEvent event) {
+        if (event.getType() == CommitEvent.Type.PRODUCT) {
+            reloadAsync();
+        }
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (SQLException e) {
+            logger.warn("Не удалось загрузить акции: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Ошибка компиляции акций", e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.retail.promo;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+
+/**
+ * Скидки акций по корзине: по одной записи на примененную акцию, суммы в копейках.
+ */
+public final class PromotionResult {
+    static final PromotionResult EMPTY = new PromotionResult(0);
+
+    private int[] promotionIds;
+    private long[] discounts;
+    private int count;
+    private long totalDiscount;
+
+    PromotionResult(int capacity) {
+        this.promotionIds = new int[capacity];
+        this.discounts = new long[capacity];
+    }
+
+    void add(int promotionId, long discount) {
+        totalDiscount += discount;
+        for (int i = 0; i < count; i++) {
+            if (promotionIds[i] == promotionId) {
+                discounts[i] += discount;
+                return;
+            }
+        }
+        if (count == promotionIds.length) {
+            int capacity = Math.max(4, count * 2);
+            promotionIds = Arrays.copyOf(promotionIds, capacity);
+            discounts = Arrays.copyOf(discounts, capacity);
+        }
+        promotionIds[count] = promotionId;
+        discounts[count] = discount;
+        count++;
+    }
+
+    public int getAppliedCount() {
+        return count;
+    }
+
+    public int getPromotionId(int i) {
+        return promotionIds[i];
+    }
+
+    public BigDecimal getDiscount(int i) {
+        return BigDecimal.valueOf(discounts[i], 2);
+    }
+
+    public long getTotalDiscountCents() {
+        return totalDiscount;
+    }
+
+    public BigDecimal getTotalDiscount() {
+        return BigDecimal.valueOf(totalDiscount, 2);
+    }
+}
@@ -0,0 +1,261 @@
+package com.retail.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+
+/**
+ * Подмена System.out, направляющая вывод потока сессии в ее сокет.
+ * Меню и ConsoleFormatter пишут в System.out, поэтому привязка к потоку
+ * позволяет использовать их без изменений; остальные потоки пишут в исходный stdout.
+ * У каждой сессии свой PrintStream: PrintStream синхронизирует запись на себе,
+ * и общий поток заставлял бы все сессии ждать сокет самого медленного клиента.
+ */
+final class SessionOutput extends PrintStream {
+    private static final ThreadLocal<PrintStream> CURRENT = new ThreadLocal<>();
+    private static PrintStream original;
+
+    private SessionOutput(PrintStream original) {
+        super(original, true, StandardCharsets.UTF_8);
+    }
+
+    static synchronized void install() {
+        if (original == null) {
+            original = System.out;
+            System.setOut(new SessionOutput(original));
+        }
+    }
+
+    static void bind(OutputStream out) {
+        CURRENT.set(new PrintStream(out, true, StandardCharsets.UTF_8));
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    private static PrintStream target() {
+        PrintStream out = CURRENT.get();
+        return out != null ? out : original;
+    }
+
+    @Override
+    public void write(int b) {
+        target().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        target().write(b, off, len);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        target().write(b);
+    }
+
+    @Override
+    public void flush() {
+        target().flush();
+    }
+
+    @Override
+    public boolean checkError() {
+        return target().checkError();
+    }
+
+    @Override
+    public void close() {
+        // System.out не закрывается: сокет сессии закрывает сервер
+        flush();
+    }
+
+    @Override
+    public void print(boolean b) {
+        target().print(b);
+    }
+
+    @Override
+    public void print(char c) {
+        target().print(c);
+    }
+
+    @Override
+    public void print(int i) {
+        target().print(i);
+    }
+
+    @Override
+    public void print(long l) {
+        target().print(l);
+    }
+
+    @Override
+    public void print(float f) {
+        target().print(f);
+    }
+
+    @Override
+    public void print(double d) {
+        target().print(d);
+    }
+
+    @Override
+    public void print(char[] s) {
+        target().print(s);
+    }
+
+    @Override
+    public void print(String s) {
+        target().print(s);
+    }
+
+    @Override
+    public void print(Object obj) {
+        target().print(obj);
+    }
+
+    @Override
+    public void println() {
+        target().println();
+    }
+
+    @Override
+    public void println(boolean x) {
+        target().println(x);
+    }
+
+    @Override
+    public void println(char x) {
+        target().println(x);
+    }
+
+    @Override
+    public void println(int x) {
+        target().println(x);
+    }
+
+    @Override
+    public void println(long x) {
+        target().println(x);
+    }
+
+    @Override
+    public void println(float x) {
+        target().println(x);
+    }
+
+    @Override
+    public void println(double x) {
+        target().println(x);
+    }
+
+    @Override
+    public void println(char[] x) {
+        target().println(x);
+    }
+
+    @Override
+    public void println(String x) {
+        target().println(x);
+    }
+
+    @Override
+    public void println(Object x) {
+        target().println(x);
+    }
+
+    @Override
+    public PrintStream printf(String format, Object... args) {
+        target().printf(format, args);
+        return this;
+    }
+
+    @Override
+    public PrintStream printf(Locale l, String format, Object... args) {
+        target().printf(l, format, args);
+        return this;
+    }
+
+    @Override
+    public PrintStream format(String format, Object... args) {
+        target().format(format, args);
+        return this;
+    }
+
+    @Override
+    public PrintStream format(Locale l, String format, Object... args) {
+        target().format(l, format, args);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(CharSequence csq) {
+        target().append(csq);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(CharSequence csq, int start, int end) {
+        target().append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(char c) {
+        target().append(c);
+        return this;
+    }
+
+    
+    /**
+     * Вывод в сокет с переводом строк в CRLF, как ожидают telnet-клиенты.
+     */
+    static final class TerminalStream extends OutputStream {
+        private final OutputStream out;
+        private int last = -1;
+
+        TerminalStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n' && last != '\r') {
+                out.write('\r');
+            }
+            out.write(b);
+            last = b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int start = off;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n' && (i > off ? b[i - 1] : last) != '\r') {
+                    out.write(b, start, i - start);
+                    out.write('\r');
+                    start = i;
+                }
+            }
+            out.write(b, start, end - start);
+            if (len > 0) {
+                last = b[end - 1];
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
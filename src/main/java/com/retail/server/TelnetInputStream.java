@@ -0,0 +1,95 @@
+package com.retail.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * Вход сессии: отбрасывает служебные команды telnet (IAC ...) и перед
+ * блокирующим чтением сбрасывает вывод, чтобы клиент увидел приглашение.
+ */
+final class TelnetInputStream extends InputStream {
+    private static final int IAC = 255;
+    private static final int SB = 250;
+    private static final int SE = 240;
+    private static final int WILL = 251;
+    private static final int DONT = 254;
+
+    private final InputStream in;
+    private final OutputStream echo;
+
+    TelnetInputStream(InputStream in, OutputStream echo) {
+        this.in = in;
+        this.echo = echo;
+    }
+
+    @Override
+    public int read() throws IOException {
+        echo.flush();
+        while (true) {
+            int b = in.read();
+            if (b != IAC) {
+                return b;
+            }
+            int command = in.read();
+            if (command == IAC || command < 0) {
+                return command;
+            }
+            if (command >= WILL && command <= DONT) {
+                in.read();
+            } else if (command == SB) {
+                skipSubnegotiation();
+            }
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int first = read();
+        if (first < 0) {
+            return -1;
+        }
+        b[off] = (byte) first;
+        int count = 1;
+        // Дочитываем только то, что уже пришло, не блокируясь
+        while (count < len && in.available() > 0) {
+            int next = in.read();
+            if (next < 0) {
+                break;
+            }
+            if (next == IAC) {
+                int command = in.read();
+                if (command == IAC) {
+                    b[off + count++] = (byte) IAC;
+                } else if (command >= WILL && command <= DONT) {
+                    in.read();
+                } else if (command == SB) {
+                    skipSubnegotiation();
+                }
+                continue;
+            }
+            b[off + count++] = (byte) next;
+        }
+        return count;
+    }
+
+    private void skipSubnegotiation() throws IOException {
+        int prev = -1;
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (prev == IAC && b == SE) {
+                return;
+            }
+            prev = b;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
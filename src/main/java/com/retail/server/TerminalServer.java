@@ -0,0 +1,155 @@
+package com.retail.server;
+
+import com.retail.cli.ConsoleInput;
+import com.retail.cli.SessionContext;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Терминальный сервер: одна JVM обслуживает много касс по TCP (telnet).
+ * Каждая сессия работает в своем потоке со своим SessionContext и ConsoleInput,
+ * сервисы и пул соединений общие.
+ */
+public class TerminalServer {
+    private static final Logger logger = LoggerFactory.getLogger(TerminalServer.class);
+
+
+    @FunctionalInterface
+    public interface SessionHandler {
+        void run(ConsoleInput input, SessionContext context);
+    }
+
+    private final SessionContext prototype;
+    private final SessionHandler handler;
+    private final int port;
+    private final int maxSessions;
+    private final int idleTimeoutMillis;
+    private final AtomicInteger sessionNumber = new AtomicInteger();
+    private final Counter rejectedCounter;
+
+    private ThreadPoolExecutor sessions;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public TerminalServer(SessionContext prototype, SessionHandler handler) {
+        this.prototype = prototype;
+        this.handler = handler;
+        this.port = AppConfig.getInt("server.port", 2323);
+        this.maxSessions = AppConfig.getInt("server.max.sessions", 100);
+        this.idleTimeoutMillis = (int) TimeUnit.MINUTES.toMillis(AppConfig.getLong("server.session.idle.minutes", 30));
+        this.rejectedCounter = MetricsRegistry.getInstance().counter("retail_terminal_rejected_total");
+    }
+
+
+    public void start() throws IOException {
+        SessionOutput.install();
+
+        // Java 17: поток платформы на сессию, число сессий ограничено пулом
+        sessions = new ThreadPoolExecutor(0, maxSessions, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "terminal-" + sessionNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        MetricsRegistry.getInstance().gauge("retail_terminal_sessions", () -> sessions.getActiveCount());
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(AppConfig.get("server.host", "0.0.0.0")));
+        running = true;
+        logger.info("Терминальный сервер запущен на порту {} (до {} сессий)", serverSocket.getLocalPort(), maxSessions);
+    }
+
+
+    public void serve() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Ошибка приема соединения", e);
+                }
+                continue;
+            }
+
+            try {
+                sessions.execute(() -> runSession(socket));
+            } catch (RejectedExecutionException e) {
+                rejectedCounter.increment();
+                logger.warn("Отклонено подключение {}: достигнут лимит сессий", socket.getRemoteSocketAddress());
+                rejectConnection(socket);
+            }
+        }
+    }
+
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Ошибка закрытия серверного сокета", e);
+        }
+        if (sessions != null) {
+            sessions.shutdownNow();
+        }
+    }
+
+    private void runSession(Socket socket) {
+        String remote = String.valueOf(socket.getRemoteSocketAddress());
+        logger.info("Сессия открыта: {}", remote);
+        SessionContext context = prototype.newSession();
+
+        try (socket) {
+            socket.setSoTimeout(idleTimeoutMillis);
+            socket.setTcpNoDelay(true);
+
+            OutputStream out = new SessionOutput.TerminalStream(
+                    new BufferedOutputStream(socket.getOutputStream(), 8192));
+            SessionOutput.bind(out);
+
+            Scanner scanner = new Scanner(new TelnetInputStream(socket.getInputStream(), out), StandardCharsets.UTF_8);
+            handler.run(new ConsoleInput(scanner), context);
+            out.flush();
+
+        } catch (SocketException | NoSuchElementException e) {
+            logger.debug("Сессия {} прервана: {}", remote, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Ошибка в сессии {}", remote, e);
+        } finally {
+            if (context.isAuthenticated()) {
+                context.logout();
+            }
+            SessionOutput.unbind();
+            logger.info("Сессия закрыта: {}", remote);
+        }
+    }
+
+    private void rejectConnection(Socket socket) {
+        try (socket) {
+            socket.getOutputStream().write("Сервер перегружен, попробуйте позже\r\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package com.retail.service;
 
 import com.retail.dao.SecurityLogDao;
+import com.retail.dao.SecurityLogWriter;
 import com.retail.dao.UserDao;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
 import com.retail.exception.AuthenticationException;
 import com.retail.exception.DatabaseException;
+import com.retail.journal.SyncEngine;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
 import com.retail.model.User;
 import com.retail.model.enums.UserStatus;
-import org.mindrot.jbcrypt.BCrypt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,27 +20,46 @@ import java.sql.SQLException;
 import java.util.Optional;
 
 
+@DbWorkload(Workload.CHECKOUT)
 public class AuthService {
     private static final Logger logger = LoggerFactory.getLogger(AuthService.class);
     private static final Logger securityLogger = LoggerFactory.getLogger("com.retail.security");
+    private static final Timer loginTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "login");
+    private static final Counter failedLoginCounter = MetricsRegistry.getInstance()
+            .counter("retail_failed_logins_total");
     
     private final UserDao userDao;
     private final SecurityLogDao securityLogDao;
-    
-    
-    private User currentUser;
+    private final PasswordHasher passwordHasher;
+    private final UnknownLoginCache unknownLogins;
+    private final SyncEngine syncEngine;
+
 
     public AuthService() {
         this.userDao = new UserDao();
         this.securityLogDao = new SecurityLogDao();
+        this.passwordHasher = PasswordHasher.getInstance();
+        this.unknownLogins = UnknownLoginCache.getInstance();
+        this.syncEngine = SyncEngine.getInstance();
     }
 
     
     public User login(String login, String password) {
+        long start = System.nanoTime();
         try {
+            if (syncEngine.isOffline()) {
+                return offlineLogin(login, password);
+            }
+            if (unknownLogins.contains(login)) {
+                logFailedLogin(null, login);
+                throw new AuthenticationException("Неверный логин или пароль");
+            }
+
             Optional<User> userOpt = userDao.findByLogin(login);
             
             if (userOpt.isEmpty()) {
+                unknownLogins.add(login);
                 logFailedLogin(null, login);
                 throw new AuthenticationException("Неверный логин или пароль");
             }
@@ -43,70 +68,104 @@ public class AuthService {
             
             
             if (user.getStatus() == UserStatus.BLOCKED) {
+                syncEngine.forgetUser(login);
                 logFailedLogin(user.getId(), login);
                 throw new AuthenticationException("Учетная запись заблокирована");
             }
             
             if (user.getStatus() == UserStatus.DELETED) {
+                syncEngine.forgetUser(login);
                 logFailedLogin(null, login);
                 throw new AuthenticationException("Неверный логин или пароль");
             }
             
             
-            if (!BCrypt.checkpw(password, user.getPasswordHash())) {
+            if (!passwordHasher.verify(password, user.getPasswordHash())) {
                 logFailedLogin(user.getId(), login);
                 throw new AuthenticationException("Неверный логин или пароль");
             }
+
+            if (passwordHasher.needsRehash(user.getPasswordHash())) {
+                rehashPassword(user, password);
+            }
             
             
-            userDao.updateLastLogin(user.getId());
+            if (SecurityLogWriter.isAsync()) {
+                SecurityLogWriter.getInstance().touchLastLogin(user.getId());
+            } else {
+                userDao.updateLastLogin(user.getId());
+            }
             logSuccessfulLogin(user.getId(), login);
+            syncEngine.rememberUser(user);
             
-            currentUser = user;
             logger.info("Пользователь {} вошел в систему", login);
             
             return user;
             
         } catch (SQLException e) {
+            if (syncEngine.goOffline(e)) {
+                return offlineLogin(login, password);
+            }
             logger.error("Ошибка БД при аутентификации", e);
             throw new DatabaseException("Ошибка при входе в систему", e);
+        } finally {
+            loginTimer.recordSince(start);
         }
     }
 
     
-    public void logout() {
-        if (currentUser != null) {
+    public void logout(User user) {
+        if (user != null && !syncEngine.isOffline()) {
             try {
-                securityLogDao.logLogout(currentUser.getId());
-                logger.info("Пользователь {} вышел из системы", currentUser.getLogin());
+                securityLogDao.logLogout(user.getId());
+                logger.info("Пользователь {} вышел из системы", user.getLogin());
             } catch (SQLException e) {
                 logger.error("Ошибка записи лога выхода", e);
             }
-            currentUser = null;
         }
     }
 
     
-    public User getCurrentUser() {
-        return currentUser;
+    public String hashPassword(String password) {
+        return passwordHasher.hash(password);
     }
 
     
-    public boolean isAuthenticated() {
-        return currentUser != null;
+    public boolean verifyPassword(String password, String hash) {
+        return passwordHasher.verify(password, hash);
     }
 
-    
-    public String hashPassword(String password) {
-        return BCrypt.hashpw(password, BCrypt.gensalt(10));
+    /**
+     * Вход без связи с БД: только сотрудники, ранее входившие на этой кассе.
+     */
+    private User offlineLogin(String login, String password) {
+        Optional<User> userOpt = syncEngine.findOfflineUser(login);
+        if (userOpt.isEmpty() || !passwordHasher.verify(password, userOpt.get().getPasswordHash())) {
+            failedLoginCounter.increment();
+            securityLogger.warn("Неудачная попытка входа в автономном режиме: {}", login);
+            throw new AuthenticationException("Неверный логин или пароль");
+        }
+        securityLogger.info("Успешный вход в автономном режиме: {}", login);
+        logger.info("Пользователь {} вошел в систему в автономном режиме", login);
+        return userOpt.get();
     }
 
-    
-    public boolean verifyPassword(String password, String hash) {
-        return BCrypt.checkpw(password, hash);
+    private void rehashPassword(User user, String password) {
+        String oldHash = user.getPasswordHash();
+        passwordHasher.rehashAsync(password, newHash -> {
+            try {
+                if (userDao.replacePasswordHash(user.getId(), oldHash, newHash)) {
+                    logger.info("Хеш пароля пользователя {} пересчитан со стоимостью {}",
+                            user.getLogin(), passwordHasher.getCost());
+                }
+            } catch (SQLException e) {
+                logger.error("Ошибка сохранения пересчитанного хеша пароля", e);
+            }
+        });
     }
 
     private void logFailedLogin(Integer userId, String login) {
+        failedLoginCounter.increment();
         try {
             securityLogDao.logLogin(userId, login, false);
             securityLogger.warn("Неудачная попытка входа: {}", login);
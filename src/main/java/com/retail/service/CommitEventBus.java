@@ -0,0 +1,74 @@
+package com.retail.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+
+/**
+ * События о зафиксированных изменениях (продажа, возврат, поставка, корректировка,
+ * изменение товара). Публикуются сервисами после успешного commit, обработчики
+ * вызываются синхронно в потоке публикации и должны быть быстрыми.
+ */
+public class CommitEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(CommitEventBus.class);
+    private static final CommitEventBus INSTANCE = new CommitEventBus();
+
+    private final List<Consumer<CommitEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    private CommitEventBus() {
+    }
+
+    public static CommitEventBus getInstance() {
+        return INSTANCE;
+    }
+
+    public void subscribe(Consumer<CommitEvent> listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(Consumer<CommitEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    public void publish(CommitEvent.Type type, LocalDateTime affectedDate, Collection<Integer> productIds) {
+        CommitEvent event = new CommitEvent(type, affectedDate, List.copyOf(productIds));
+        for (Consumer<CommitEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                // Данные уже зафиксированы: ошибка обработчика не должна отменять операцию
+                logger.error("Ошибка обработки события {}", type, e);
+            }
+        }
+    }
+
+
+    public static class CommitEvent {
+        public enum Type { SALE, RETURN, RECEIPT, ADJUSTMENT, PRODUCT }
+
+        private final Type type;
+        private final LocalDateTime affectedDate;
+        private final List<Integer> productIds;
+
+        CommitEvent(Type type, LocalDateTime affectedDate, List<Integer> productIds) {
+            this.type = type;
+            this.affectedDate = affectedDate;
+            this.productIds = productIds;
+        }
+
+        public Type getType() { return type; }
+
+        /**
+         * Дата, за которую изменились данные отчетов: для возврата - дата исходной продажи.
+         */
+        public LocalDateTime getAffectedDate() { return affectedDate; }
+
+        public List<Integer> getProductIds() { return productIds; }
+    }
+}
@@ -2,10 +2,17 @@ package com.retail.service;
 
 import com.retail.dao.*;
 import com.retail.db.DatabaseManager;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
+import com.retail.events.EventPayloads;
 import com.retail.exception.DatabaseException;
 import com.retail.exception.ValidationException;
+import com.retail.journal.SyncEngine;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
 import com.retail.model.*;
 import com.retail.model.enums.StockOperationType;
+import com.retail.service.CommitEventBus.CommitEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,11 +20,17 @@ import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 
+@DbWorkload(Workload.BACKOFFICE)
 public class InventoryService {
     private static final Logger logger = LoggerFactory.getLogger(InventoryService.class);
+    private static final Timer createReceiptTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "createReceipt");
+    private static final Timer adjustStockTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "adjustStock");
     
     private final DatabaseManager dbManager;
     private final ProductDao productDao;
@@ -25,6 +38,10 @@ public class InventoryService {
     private final ReceiptDao receiptDao;
     private final ReceiptItemDao receiptItemDao;
     private final StockLogDao stockLogDao;
+    private final EventOutboxDao outboxDao;
+    private final InventorySnapshotDao snapshotDao;
+    private final CommitEventBus commitEvents;
+    private final SyncEngine syncEngine;
 
     public InventoryService() {
         this.dbManager = DatabaseManager.getInstance();
@@ -33,12 +50,17 @@ public class InventoryService {
         this.receiptDao = new ReceiptDao();
         this.receiptItemDao = new ReceiptItemDao();
         this.stockLogDao = new StockLogDao();
+        this.outboxDao = new EventOutboxDao();
+        this.snapshotDao = new InventorySnapshotDao();
+        this.commitEvents = CommitEventBus.getInstance();
+        this.syncEngine = SyncEngine.getInstance();
     }
 
     
     public Receipt createReceipt(Receipt receipt, Integer managerId) {
+        long start = System.nanoTime();
         try {
-            return dbManager.executeInTransaction(conn -> {
+            Receipt created = dbManager.executeInTransaction(conn -> {
                 receipt.setManagerId(managerId);
                 receipt.setReceiptDate(LocalDateTime.now());
                 
@@ -88,23 +110,32 @@ public class InventoryService {
                     stockLog.setReferenceType("RECEIPT");
                     stockLogDao.save(conn, stockLog);
                 }
+                if (EventOutboxDao.isEnabled()) {
+                    outboxDao.save(conn, EventPayloads.receipt(savedReceipt));
+                }
                 
                 logger.info("Оформлена поставка: {} на сумму {}", 
                         savedReceipt.getReceiptNumber(), savedReceipt.getTotalAmount());
                 
                 return savedReceipt;
             });
+            commitEvents.publish(CommitEvent.Type.RECEIPT, created.getReceiptDate(),
+                    created.getItems().stream().map(ReceiptItem::getProductId).toList());
+            return created;
             
         } catch (SQLException e) {
             logger.error("Ошибка оформления поставки", e);
             throw new DatabaseException("Ошибка при оформлении поставки", e);
+        } finally {
+            createReceiptTimer.recordSince(start);
         }
     }
 
     
     public void adjustStock(Integer productId, int newQuantity, String reason, Integer managerId) {
+        long start = System.nanoTime();
         try {
-            dbManager.executeInTransaction(conn -> {
+            Boolean changed = dbManager.executeInTransaction(conn -> {
                 Optional<Product> productOpt = productDao.findById(productId);
                 if (productOpt.isEmpty()) {
                     throw new ValidationException("Товар не найден");
@@ -118,7 +149,7 @@ public class InventoryService {
                 int change = newQuantity - currentStock;
                 
                 if (change == 0) {
-                    return null; 
+                    return false; 
                 }
                 
                 
@@ -139,30 +170,46 @@ public class InventoryService {
                         managerId);
                 stockLog.setNotes(reason != null ? reason : "Корректировка по инвентаризации");
                 stockLogDao.save(conn, stockLog);
+                if (EventOutboxDao.isEnabled()) {
+                    outboxDao.save(conn, EventPayloads.adjustment(stockLog));
+                }
                 
                 logger.info("Корректировка остатка: товар ID {}, {} -> {} (изменение: {})", 
                         productId, currentStock, newQuantity, change);
                 
-                return null;
+                return true;
             });
+            if (changed) {
+                commitEvents.publish(CommitEvent.Type.ADJUSTMENT, LocalDateTime.now(), List.of(productId));
+            }
             
         } catch (SQLException e) {
             logger.error("Ошибка корректировки остатка", e);
             throw new DatabaseException("Ошибка при корректировке остатка", e);
+        } finally {
+            adjustStockTimer.recordSince(start);
         }
     }
 
     
+    @DbWorkload(Workload.CHECKOUT)
     public int getStock(Integer productId) {
+        if (syncEngine.isCatalogCurrent()) {
+            return syncEngine.getStock(productId);
+        }
         try {
             return inventoryDao.getQuantity(productId);
         } catch (SQLException e) {
+            if (syncEngine.goOffline(e)) {
+                return syncEngine.getStock(productId);
+            }
             logger.error("Ошибка получения остатка", e);
             throw new DatabaseException("Ошибка при получении остатка", e);
         }
     }
 
     
+    @DbWorkload(Workload.CHECKOUT)
     public boolean checkStock(Integer productId, int requiredQuantity) {
         try {
             return inventoryDao.hasEnoughStock(productId, requiredQuantity);
@@ -184,12 +231,54 @@ public class InventoryService {
 
     
     public List<Product> getLowStockProducts() {
+        return LowStockTracker.getInstance().getLowStockProducts();
+    }
+
+    public List<LowStockTracker.Alert> getLowStockAlertsAfter(long afterSequence) {
+        return LowStockTracker.getInstance().getAlertsAfter(afterSequence);
+    }
+
+    public long getLastLowStockAlertSequence() {
+        return LowStockTracker.getInstance().getLastAlertSequence();
+    }
+
+
+    /**
+     * Остаток товара на момент at: после всех движений, записанных не позже этого момента.
+     */
+    @DbWorkload(Workload.REPORTING)
+    public int getStockAt(Integer productId, LocalDateTime at) {
         try {
-            return productDao.findLowStock();
+            return stockAt(at, productId).getOrDefault(productId, 0);
         } catch (SQLException e) {
-            logger.error("Ошибка получения товаров с низким остатком", e);
-            throw new DatabaseException("Ошибка при получении товаров", e);
+            logger.error("Ошибка получения остатка на дату", e);
+            throw new DatabaseException("Ошибка при получении остатка на дату", e);
+        }
+    }
+
+    /**
+     * Ненулевые остатки всех товаров на момент at: id товара - количество.
+     */
+    @DbWorkload(Workload.REPORTING)
+    public Map<Integer, Integer> getStockAt(LocalDateTime at) {
+        try {
+            return stockAt(at, null);
+        } catch (SQLException e) {
+            logger.error("Ошибка получения остатков на дату", e);
+            throw new DatabaseException("Ошибка при получении остатков на дату", e);
+        }
+    }
+
+    private Map<Integer, Integer> stockAt(LocalDateTime at, Integer productId) throws SQLException {
+        // От ближайшего снимка не позже at - вперед, иначе от следующего снимка или текущих остатков - назад
+        Optional<InventorySnapshot> snapshot = snapshotDao.findLatestAtOrBefore(at);
+        if (snapshot.isEmpty()) {
+            snapshot = snapshotDao.findEarliestAfter(at);
+        }
+        if (snapshot.isPresent()) {
+            return snapshotDao.stockFromSnapshot(snapshot.get(), at, productId);
         }
+        return snapshotDao.stockFromInventory(at, productId);
     }
 
     
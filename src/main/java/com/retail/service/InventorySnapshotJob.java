@@ -0,0 +1,121 @@
+package com.retail.service;
+
+import com.retail.dao.InventorySnapshotDao;
+import com.retail.db.DatabaseManager;
+import com.retail.db.LeaderElection;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.retail.model.InventorySnapshot;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Ночные снимки остатков на полночь. Раз в час проверяет, есть ли снимок на начало
+ * текущих суток, и после inventory.snapshot.hour снимает его; к этому времени
+ * транзакции вчерашнего дня уже зафиксированы. Проверку выполняет только узел-лидер
+ * ({@link LeaderElection}); если лидерство перешло во время снятия, снимок на один
+ * момент все равно создается только один раз.
+ */
+public final class InventorySnapshotJob {
+    private static final Logger logger = LoggerFactory.getLogger(InventorySnapshotJob.class);
+    private static volatile InventorySnapshotJob instance;
+
+    private final DatabaseManager dbManager = DatabaseManager.getInstance();
+    private final InventorySnapshotDao snapshotDao = new InventorySnapshotDao();
+    private final int hour;
+    private final int retentionDays;
+    private final Timer snapshotTimer;
+    private ScheduledExecutorService scheduler;
+
+    private InventorySnapshotJob() {
+        this.hour = AppConfig.getInt("inventory.snapshot.hour", 2);
+        this.retentionDays = AppConfig.getInt("inventory.snapshot.retention.days", 400);
+        this.snapshotTimer = MetricsRegistry.getInstance().timer("retail_inventory_snapshot_seconds");
+    }
+
+    public static InventorySnapshotJob getInstance() {
+        InventorySnapshotJob job = instance;
+        if (job == null) {
+            synchronized (InventorySnapshotJob.class) {
+                job = instance;
+                if (job == null) {
+                    job = new InventorySnapshotJob();
+                    instance = job;
+                }
+            }
+        }
+        return job;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || !AppConfig.getBoolean("inventory.snapshot.enabled", true)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runIfDue, 1, 60, TimeUnit.MINUTES);
+    }
+
+    public static void shutdown() {
+        InventorySnapshotJob job = instance;
+        if (job != null) {
+            synchronized (job) {
+                if (job.scheduler != null) {
+                    job.scheduler.shutdownNow();
+                    job.scheduler = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Снимает остатки на момент takenAt, если такого снимка еще нет.
+     */
+    public Optional<InventorySnapshot> takeSnapshot(LocalDateTime takenAt) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Optional<InventorySnapshot> created = dbManager.executeInTransaction(conn -> snapshotDao.create(conn, takenAt));
+            created.ifPresent(s -> logger.info("Снимок остатков на {}: {} товаров", s.getTakenAt(), s.getProductCount()));
+            return created;
+        } finally {
+            snapshotTimer.recordSince(start);
+        }
+    }
+
+    private void runIfDue() {
+        if (!LeaderElection.getInstance().isLeader()) {
+            return;
+        }
+        LocalDateTime midnight = LocalDate.now().atStartOfDay();
+        if (LocalDateTime.now().isBefore(midnight.plusHours(hour))) {
+            return;
+        }
+        try {
+            if (snapshotDao.existsAt(midnight)) {
+                return;
+            }
+            takeSnapshot(midnight);
+            int removed = snapshotDao.deleteTakenBefore(midnight.minusDays(retentionDays));
+            if (removed > 0) {
+                logger.info("Удалено устаревших снимков остатков: {}", removed);
+            }
+        } catch (SQLException e) {
+            logger.warn("Не удалось снять остатки на {}: {}", midnight, e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Ошибка снимка остатков", e);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.retail.service;
+
+import com.retail.dao.ProductDao;
+import com.retail.db.CatalogChangeFeed;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
+import com.retail.exception.DatabaseException;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.model.Product;
+import com.retail.service.CommitEventBus.CommitEvent;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Список товаров с низким остатком, поддерживаемый по изменениям товаров и остатков:
+ * перечитываются только затронутые товары. Изменения других узлов и сделанные в обход
+ * приложения приходят уведомлениями catalog_changes ({@link CatalogChangeFeed}),
+ * изменения этого узла - еще и сразу после фиксации через {@link CommitEventBus}.
+ * Полная загрузка выполняется при первом обращении, после каждого переподключения
+ * подписки (уведомления за время разрыва потеряны) и периодически для сверки.
+ */
+@DbWorkload(Workload.BACKOFFICE)
+public class LowStockTracker {
+    private static final Logger logger = LoggerFactory.getLogger(LowStockTracker.class);
+    private static final LowStockTracker INSTANCE = new LowStockTracker();
+
+    private final ProductDao productDao;
+    private final Map<Integer, Product> lowStock = new ConcurrentHashMap<>();
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Deque<Alert> alerts = new ArrayDeque<>();
+    private final ScheduledExecutorService worker;
+    private final long batchDelayMs;
+    private final int maxAlerts;
+    private final Counter alertCounter;
+    private final Counter refreshCounter;
+    private volatile boolean loaded;
+    private volatile List<Product> sortedView = List.of();
+    private long alertSequence;
+
+    private LowStockTracker() {
+        this.productDao = new ProductDao();
+        this.batchDelayMs = AppConfig.getLong("lowstock.batch.delay.ms", 200);
+        this.maxAlerts = AppConfig.getInt("lowstock.alerts.max", 100);
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "low-stock-tracker");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long resyncMinutes = AppConfig.getLong("lowstock.resync.minutes", 30);
+        if (resyncMinutes > 0) {
+            worker.scheduleWithFixedDelay(this::resync, resyncMinutes, resyncMinutes, TimeUnit.MINUTES);
+        }
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.alertCounter = registry.counter("retail_low_stock_alerts_total");
+        this.refreshCounter = registry.counter("retail_low_stock_refreshed_products_total");
+        registry.gauge("retail_low_stock_products", lowStock::size);
+
+        CommitEventBus.getInstance().subscribe(this::onCommit);
+        CatalogChangeFeed.getInstance().subscribe(this::enqueue, () -> worker.execute(this::resync));
+    }
+
+    public static LowStockTracker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Товары с низким остатком по возрастанию остатка. Список готов заранее и не обращается к БД.
+     */
+    public List<Product> getLowStockProducts() {
+        ensureLoaded();
+        return sortedView;
+    }
+
+    public int getLowStockCount() {
+        ensureLoaded();
+        return lowStock.size();
+    }
+
+    public boolean isLowStock(Integer productId) {
+        ensureLoaded();
+        return lowStock.containsKey(productId);
+    }
+
+    /**
+     * Оповещения с номером больше afterSequence, от старых к новым.
+     */
+    public List<Alert> getAlertsAfter(long afterSequence) {
+        List<Alert> result = new ArrayList<>();
+        synchronized (alerts) {
+            for (Alert alert : alerts) {
+                if (alert.getSequence() > afterSequence) {
+                    result.add(alert);
+                }
+            }
+        }
+        return result;
+    }
+
+    public long getLastAlertSequence() {
+        synchronized (alerts) {
+            return alertSequence;
+        }
+    }
+
+    private void onCommit(CommitEvent event) {
+        enqueue(event.getProductIds());
+    }
+
+    private void enqueue(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        // Первое событие пачки планирует обработку, остальные только добавляют id
+        pending.addAll(productIds);
+        if (drainScheduled.compareAndSet(false, true)) {
+            worker.schedule(this::drain, batchDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        Set<Integer> ids = new HashSet<>(pending);
+        pending.removeAll(ids);
+        if (ids.isEmpty() || !loaded) {
+            // До первой загрузки события не нужны: она сама прочитает актуальное состояние
+            return;
+        }
+        try {
+            refresh(ids);
+        } catch (SQLException e) {
+            logger.error("Ошибка обновления списка товаров с низким остатком", e);
+            // Повторим вместе со следующим событием или при сверке
+            pending.addAll(ids);
+        }
+    }
+
+    private synchronized void refresh(Set<Integer> ids) throws SQLException {
+        List<Product> products = productDao.findWithStockByIds(ids);
+        Set<Integer> missing = new HashSet<>(ids);
+        for (Product product : products) {
+            missing.remove(product.getId());
+            if (product.isActive() && product.isLowStock()) {
+                if (lowStock.put(product.getId(), product) == null) {
+                    raiseAlert(product);
+                }
+            } else {
+                lowStock.remove(product.getId());
+            }
+        }
+        missing.forEach(lowStock::remove);
+        refreshCounter.increment(ids.size());
+        publishView();
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    try {
+                        reload();
+                    } catch (SQLException e) {
+                        logger.error("Ошибка загрузки товаров с низким остатком", e);
+                        throw new DatabaseException("Ошибка при получении товаров", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void resync() {
+        if (!loaded) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                reload();
+            }
+        } catch (SQLException e) {
+            logger.error("Ошибка сверки товаров с низким остатком", e);
+        }
+    }
+
+    private void reload() throws SQLException {
+        Map<Integer, Product> fresh = new ConcurrentHashMap<>();
+        for (Product product : productDao.findLowStock()) {
+            fresh.put(product.getId(), product);
+        }
+        if (loaded) {
+            // При сверке оповещаем о товарах, изменившихся в обход приложения
+            fresh.values().stream()
+                    .filter(p -> !lowStock.containsKey(p.getId()))
+                    .forEach(this::raiseAlert);
+        }
+        lowStock.keySet().retainAll(fresh.keySet());
+        lowStock.putAll(fresh);
+        publishView();
+        loaded = true;
+    }
+
+    private void publishView() {
+        List<Product> view = new ArrayList<>(lowStock.values());
+        view.sort(Comparator.comparing(Product::getStockQuantity).thenComparing(Product::getName));
+        sortedView = List.copyOf(view);
+    }
+
+    private void raiseAlert(Product product) {
+        // Оповещения под отдельной блокировкой: чтение меню не ждет запросов к БД
+        synchronized (alerts) {
+            alerts.addLast(new Alert(++alertSequence, product.getId(), product.getSku(), product.getName(),
+                    product.getStockQuantity(), product.getMinStockLevel(), LocalDateTime.now()));
+            if (alerts.size() > maxAlerts) {
+                alerts.removeFirst();
+            }
+        }
+        alertCounter.increment();
+        logger.warn("Низкий остаток: {} ({}) - {} при минимуме {}",
+                product.getName(), product.getSku(), product.getStockQuantity(), product.getMinStockLevel());
+    }
+
+
+    public static class Alert {
+        private final long sequence;
+        private final Integer productId;
+        private final String sku;
+        private final String productName;
+        private final int quantity;
+        private final int minStockLevel;
+        private final LocalDateTime raisedAt;
+
+        Alert(long sequence, Integer productId, String sku, String productName, int quantity,
+              int minStockLevel, LocalDateTime raisedAt) {
+            this.sequence = sequence;
+            this.productId = productId;
+            this.sku = sku;
+            this.productName = productName;
+            this.quantity = quantity;
+            this.minStockLevel = minStockLevel;
+            this.raisedAt = raisedAt;
+        }
+
+        public long getSequence() { return sequence; }
+        public Integer getProductId() { return productId; }
+        public String getSku() { return sku; }
+        public String getProductName() { return productName; }
+        public int getQuantity() { return quantity; }
+        public int getMinStockLevel() { return minStockLevel; }
+        public LocalDateTime getRaisedAt() { return raisedAt; }
+    }
+}
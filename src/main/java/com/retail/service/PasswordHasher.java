@@ -0,0 +1,152 @@
+package com.retail.service;
+
+import com.retail.exception.AuthenticationException;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.util.AppConfig;
+import org.mindrot.jbcrypt.BCrypt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+
+/**
+ * Хеширование и проверка паролей BCrypt.
+ * Проверка выполняется в отдельном ограниченном пуле, чтобы волна входов
+ * не занимала все ядра; при переполнении очереди вход отклоняется сразу.
+ */
+public final class PasswordHasher {
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+
+    private static final int MIN_COST = 10;
+    private static final int MAX_COST = 14;
+
+    private static final PasswordHasher INSTANCE = new PasswordHasher();
+
+    private final int cost;
+    private final long verifyTimeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejectedCounter;
+    private final Counter rehashCounter;
+
+    private PasswordHasher() {
+        String configured = AppConfig.get("auth.bcrypt.cost", "10").trim();
+        this.cost = configured.equalsIgnoreCase("auto")
+                ? benchmarkCost(AppConfig.getLong("auth.bcrypt.target.ms", 100))
+                : Math.max(4, Math.min(31, Integer.parseInt(configured)));
+        this.verifyTimeoutMillis = AppConfig.getLong("auth.verify.timeout.ms", 5_000);
+
+        int threads = AppConfig.getInt("auth.verify.threads", Runtime.getRuntime().availableProcessors());
+        int queueSize = AppConfig.getInt("auth.verify.queue.size", 64);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "bcrypt-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.rejectedCounter = registry.counter("retail_auth_rejected_total");
+        this.rehashCounter = registry.counter("retail_auth_rehash_total");
+        registry.gauge("retail_auth_verify_queue_size", () -> executor.getQueue().size());
+
+        logger.info("BCrypt: стоимость {}, потоков проверки {}, очередь {}", cost, threads, queueSize);
+    }
+
+    public static PasswordHasher getInstance() {
+        return INSTANCE;
+    }
+
+
+    public String hash(String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(cost));
+    }
+
+
+    public boolean verify(String password, String hash) {
+        Future<Boolean> future;
+        try {
+            future = executor.submit(() -> BCrypt.checkpw(password, hash));
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new AuthenticationException("Сервер перегружен, повторите вход позже");
+        }
+
+        try {
+            return future.get(verifyTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            throw new AuthenticationException("Сервер перегружен, повторите вход позже");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationException("Вход прерван");
+        } catch (ExecutionException e) {
+            // Поврежденный хеш в БД: считаем пароль неверным
+            logger.warn("Ошибка проверки хеша пароля: {}", e.getCause().getMessage());
+            return false;
+        }
+    }
+
+
+    public boolean needsRehash(String hash) {
+        return costOf(hash) != cost;
+    }
+
+    /**
+     * Пересчитывает хеш в фоне и передает его в {@code onRehashed}.
+     * Если пул занят, пересчет будет выполнен при одном из следующих входов.
+     */
+    public void rehashAsync(String password, Consumer<String> onRehashed) {
+        try {
+            executor.execute(() -> {
+                onRehashed.accept(hash(password));
+                rehashCounter.increment();
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Пересчет хеша отложен: пул проверки паролей занят");
+        }
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    static int costOf(String hash) {
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Подбирает наибольшую стоимость, при которой один хеш считается не дольше targetMillis.
+     */
+    static int benchmarkCost(long targetMillis) {
+        int chosen = MIN_COST;
+        String salt = BCrypt.gensalt(MIN_COST);
+        BCrypt.hashpw("warmup", salt);
+        for (int c = MIN_COST; c <= MAX_COST; c++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw("benchmark", BCrypt.gensalt(c));
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (millis > targetMillis) {
+                break;
+            }
+            chosen = c;
+        }
+        return chosen;
+    }
+}
@@ -0,0 +1,356 @@
+package com.retail.service;
+
+import com.retail.dao.PriceHistoryDao;
+import com.retail.db.CatalogChangeFeed;
+import com.retail.db.DatabaseManager;
+import com.retail.db.LeaderElection;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
+import com.retail.exception.DatabaseException;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.model.PriceChange;
+import com.retail.service.CommitEventBus.CommitEvent;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+
+/**
+ * Цены товаров во времени в памяти: для каждого товара отсортированные моменты смены цены,
+ * цена на момент находится двоичным поиском. Запланированные цены начинают действовать в
+ * индексе ровно в effective_from; фоновый поток узла-лидера ({@link LeaderElection}) затем
+ * записывает их в карточки товаров.
+ * <p>
+ * Изменения этого узла применяются сразу по событиям {@link CommitEventBus}, изменения
+ * других узлов - по уведомлениям catalog_changes ({@link CatalogChangeFeed}) в фоновом
+ * потоке, обычно за доли секунды. Опрос каждые price.index.refresh.seconds догоняет
+ * пропущенное (разрыв подписки), полная перезагрузка - раз в price.index.full.reload.minutes.
+ * Отставание ограничено: если индекс не сверялся с БД дольше price.index.max.staleness.seconds,
+ * {@link #currentPrice} возвращает null и цена читается из БД.
+ */
+@DbWorkload(Workload.BACKOFFICE)
+public final class PriceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(PriceIndex.class);
+    private static volatile PriceIndex instance;
+
+    private final DatabaseManager dbManager = DatabaseManager.getInstance();
+    private final PriceHistoryDao priceHistoryDao = new PriceHistoryDao();
+    private final Map<Integer, Timeline> timelines = new ConcurrentHashMap<>();
+    private final long refreshSeconds;
+    private final long fullReloadMinutes;
+    private final long maxStalenessNanos;
+    private final Set<Integer> pendingChanges = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Consumer<Set<Integer>> changeListener = this::onRemoteChanges;
+    private final Counter activatedCounter;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean loaded;
+    private long syncTime;
+    private long syncId;
+    // Время последней успешной сверки с БД (загрузки или опроса)
+    private volatile long lastSyncNanos;
+
+    private PriceIndex() {
+        this.refreshSeconds = Math.max(1, AppConfig.getLong("price.index.refresh.seconds", 5));
+        this.fullReloadMinutes = AppConfig.getLong("price.index.full.reload.minutes", 60);
+        this.maxStalenessNanos = TimeUnit.SECONDS.toNanos(
+                Math.max(refreshSeconds * 2, AppConfig.getLong("price.index.max.staleness.seconds", 30)));
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.activatedCounter = registry.counter("retail_scheduled_prices_activated_total");
+        registry.gauge("retail_price_index_products", timelines::size);
+        registry.gauge("retail_price_index_sync_age_seconds", () -> loaded ? (System.nanoTime() - lastSyncNanos) / 1e9 : 0);
+        CommitEventBus.getInstance().subscribe(this::onCommit);
+    }
+
+    public static PriceIndex getInstance() {
+        PriceIndex index = instance;
+        if (index == null) {
+            synchronized (PriceIndex.class) {
+                index = instance;
+                if (index == null) {
+                    index = new PriceIndex();
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || !AppConfig.getBoolean("price.index.enabled", true)) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "price-index");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.execute(this::loadQuietly);
+        scheduler.scheduleWithFixedDelay(this::poll, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        if (fullReloadMinutes > 0) {
+            scheduler.scheduleWithFixedDelay(this::loadQuietly, fullReloadMinutes, fullReloadMinutes, TimeUnit.MINUTES);
+        }
+        CatalogChangeFeed.getInstance().subscribe(changeListener, this::pollAsync);
+    }
+
+    public static void shutdown() {
+        PriceIndex index = instance;
+        if (index != null) {
+            synchronized (index) {
+                if (index.scheduler != null) {
+                    index.scheduler.shutdownNow();
+                    index.scheduler = null;
+                    CatalogChangeFeed.getInstance().unsubscribe(index.changeListener);
+                }
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Действующая цена товара или null, если индекс не загружен, товар ему неизвестен
+     * или индекс не сверялся с БД дольше price.index.max.staleness.seconds. Не обращается к БД.
+     */
+    public BigDecimal currentPrice(Integer productId) {
+        if (!loaded || System.nanoTime() - lastSyncNanos > maxStalenessNanos) {
+            return null;
+        }
+        return lookup(productId, LocalDateTime.now());
+    }
+
+    /**
+     * Цена товара на момент at или null, если товар неизвестен. При первом обращении загружает индекс.
+     */
+    public BigDecimal priceAt(Integer productId, LocalDateTime at) {
+        ensureLoaded();
+        return lookup(productId, at);
+    }
+
+    private BigDecimal lookup(Integer productId, LocalDateTime at) {
+        Timeline timeline = timelines.get(productId);
+        return timeline != null ? timeline.priceAt(Timestamp.valueOf(at).getTime()) : null;
+    }
+
+    private void onCommit(CommitEvent event) {
+        if (event.getType() != CommitEvent.Type.PRODUCT || event.getProductIds().isEmpty() || !loaded) {
+            return;
+        }
+        // Синхронно: следующая продажа на этом узле уже должна видеть новую цену
+        try {
+            refresh(event.getProductIds());
+        } catch (SQLException e) {
+            logger.warn("Не удалось обновить цены товаров {}: {}", event.getProductIds(), e.getMessage());
+        }
+    }
+
+    /**
+     * Товары, измененные на любом узле: перечитываются в потоке индекса одной пачкой.
+     */
+    private void onRemoteChanges(Set<Integer> productIds) {
+        if (!loaded || productIds.isEmpty()) {
+            return;
+        }
+        pendingChanges.addAll(productIds);
+        if (drainScheduled.compareAndSet(false, true)) {
+            submit(this::applyRemoteChanges);
+        }
+    }
+
+    private void applyRemoteChanges() {
+        drainScheduled.set(false);
+        Set<Integer> ids = Set.copyOf(pendingChanges);
+        pendingChanges.removeAll(ids);
+        try {
+            refresh(ids);
+        } catch (SQLException e) {
+            // Догонит ближайший опрос по истории цен
+            logger.warn("Не удалось обновить цены товаров {}: {}", ids, e.getMessage());
+        }
+    }
+
+    private void pollAsync() {
+        submit(this::poll);
+    }
+
+    private synchronized void submit(Runnable task) {
+        if (scheduler != null) {
+            scheduler.execute(task);
+        }
+    }
+
+    private void poll() {
+        try {
+            // Запланированные цены применяет узел-лидер, остальные узлы получат их через catalog_changes
+            if (LeaderElection.getInstance().isLeader()) {
+                List<Integer> activated = dbManager.executeInTransaction(priceHistoryDao::activateDue);
+                if (!activated.isEmpty()) {
+                    activatedCounter.increment(activated.size());
+                    logger.info("Применены запланированные цены товаров: {}", activated.size());
+                    CommitEventBus.getInstance().publish(CommitEvent.Type.PRODUCT, null, activated);
+                }
+            }
+            if (loaded) {
+                long since;
+                long afterId;
+                synchronized (this) {
+                    since = syncTime;
+                    afterId = syncId;
+                }
+                long[] point = priceHistoryDao.findSyncPoint();
+                refresh(priceHistoryDao.findChangedProductIds(since, afterId));
+                synchronized (this) {
+                    syncTime = Math.max(syncTime, point[0]);
+                    syncId = Math.max(syncId, point[1]);
+                }
+                lastSyncNanos = System.nanoTime();
+            }
+        } catch (SQLException e) {
+            logger.warn("Не удалось обновить индекс цен: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Ошибка обновления индекса цен", e);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            try {
+                load();
+            } catch (SQLException e) {
+                logger.error("Ошибка загрузки индекса цен", e);
+                throw new DatabaseException("Ошибка при загрузке цен товаров", e);
+            }
+        }
+    }
+
+    private void loadQuietly() {
+        try {
+            load();
+        } catch (SQLException e) {
+            logger.warn("Не удалось загрузить индекс цен: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void load() throws SQLException {
+        long[] point = priceHistoryDao.findSyncPoint();
+        Map<Integer, Timeline> fresh = build(priceHistoryDao.findCurrentPrices(null), priceHistoryDao.findTimelines(null));
+        timelines.keySet().retainAll(fresh.keySet());
+        timelines.putAll(fresh);
+        syncTime = point[0];
+        syncId = point[1];
+        lastSyncNanos = System.nanoTime();
+        loaded = true;
+        logger.info("Индекс цен загружен: {} товаров", fresh.size());
+    }
+
+    private synchronized void refresh(Collection<Integer> productIds) throws SQLException {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        Map<Integer, Timeline> fresh = build(priceHistoryDao.findCurrentPrices(productIds),
+                priceHistoryDao.findTimelines(productIds));
+        for (Integer productId : productIds) {
+            Timeline timeline = fresh.get(productId);
+            if (timeline != null) {
+                timelines.put(productId, timeline);
+            } else {
+                timelines.remove(productId);
+            }
+        }
+    }
+
+    private static Map<Integer, Timeline> build(Map<Integer, BigDecimal> currentPrices,
+                                                List<PriceChange> history) {
+        Map<Integer, List<PriceChange>> byProduct = new HashMap<>();
+        for (PriceChange change : history) {
+            byProduct.computeIfAbsent(change.getProductId(), id -> new ArrayList<>()).add(change);
+        }
+        Map<Integer, Timeline> result = new HashMap<>(currentPrices.size() * 2);
+        for (Map.Entry<Integer, BigDecimal> entry : currentPrices.entrySet()) {
+            result.put(entry.getKey(), Timeline.of(entry.getValue(),
+                    byProduct.getOrDefault(entry.getKey(), List.of())));
+        }
+        return result;
+    }
+
+
+    /**
+     * Цены товара по времени: price[i] действует с from[i] до from[i + 1]; from[0] - минус бесконечность.
+     */
+    private static final class Timeline {
+        private final long[] from;
+        private final BigDecimal[] price;
+
+        private Timeline(long[] from, BigDecimal[] price) {
+            this.from = from;
+            this.price = price;
+        }
+
+        /**
+         * Карточка товара - источник истины для цены после последнего примененного изменения;
+         * до первого изменения действует его старая цена. Запланированные цены идут своими точками.
+         */
+        static Timeline of(BigDecimal currentPrice, List<PriceChange> history) {
+            int lastActivated = -1;
+            for (int i = 0; i < history.size(); i++) {
+                if (!history.get(i).isPending()) {
+                    lastActivated = i;
+                }
+            }
+            BigDecimal base = currentPrice;
+            for (PriceChange change : history) {
+                if (!change.isPending()) {
+                    if (change.getOldPrice() != null) {
+                        base = change.getOldPrice();
+                    }
+                    break;
+                }
+            }
+
+            long[] from = new long[history.size() + 1];
+            BigDecimal[] price = new BigDecimal[history.size() + 1];
+            from[0] = Long.MIN_VALUE;
+            price[0] = base;
+            int size = 1;
+            for (int i = 0; i < history.size(); i++) {
+                PriceChange change = history.get(i);
+                long t = Timestamp.valueOf(change.getEffectiveFrom()).getTime();
+                BigDecimal p = i == lastActivated ? currentPrice : change.getNewPrice();
+                if (from[size - 1] == t) {
+                    price[size - 1] = p;
+                } else {
+                    from[size] = t;
+                    price[size] = p;
+                    size++;
+                }
+            }
+            return new Timeline(Arrays.copyOf(from, size), Arrays.copyOf(price, size));
+        }
+
+        BigDecimal priceAt(long t) {
+            int i = Arrays.binarySearch(from, t);
+            return price[i >= 0 ? i : -i - 2];
+        }
+    }
+}
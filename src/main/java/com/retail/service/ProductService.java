@@ -1,38 +1,76 @@
 package com.retail.service;
 
+import com.retail.barcode.BarcodeIndex;
+import com.retail.barcode.Barcodes;
+import com.retail.barcode.ScanResult;
 import com.retail.dao.*;
 import com.retail.db.DatabaseManager;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
 import com.retail.exception.DatabaseException;
 import com.retail.exception.ValidationException;
+import com.retail.journal.SyncEngine;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.retail.model.BulkPriceChange;
 import com.retail.model.Category;
+import com.retail.model.PriceChange;
 import com.retail.model.Product;
+import com.retail.model.ProductBarcode;
 import com.retail.model.Unit;
+import com.retail.model.enums.BarcodeKind;
+import com.retail.model.enums.PriceChangeMode;
+import com.retail.service.CommitEventBus.CommitEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import com.retail.util.Validator;
 
 
+@DbWorkload(Workload.BACKOFFICE)
 public class ProductService {
     private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
+    private static final Timer bulkPriceTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "applyBulkPriceChange");
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
     
     private final DatabaseManager dbManager;
     private final ProductDao productDao;
+    private final PriceHistoryDao priceHistoryDao;
+    private final PriceIndex priceIndex;
+    private final ProductBarcodeDao barcodeDao;
+    private final BarcodeIndex barcodeIndex;
     private final CategoryDao categoryDao;
     private final UnitDao unitDao;
     private final InventoryDao inventoryDao;
+    private final SyncEngine syncEngine;
 
     public ProductService() {
         this.dbManager = DatabaseManager.getInstance();
         this.productDao = new ProductDao();
+        this.priceHistoryDao = new PriceHistoryDao();
+        this.priceIndex = PriceIndex.getInstance();
+        this.barcodeDao = new ProductBarcodeDao();
+        this.barcodeIndex = BarcodeIndex.getInstance();
         this.categoryDao = new CategoryDao();
         this.unitDao = new UnitDao();
         this.inventoryDao = new InventoryDao();
+        this.syncEngine = SyncEngine.getInstance();
     }
 
     
@@ -40,7 +78,7 @@ public class ProductService {
     
     public Product createProduct(Product product) {
         try {
-            return dbManager.executeInTransaction(conn -> {
+            Product created = dbManager.executeInTransaction(conn -> {
                 
                 validateProduct(product);
                 
@@ -59,6 +97,8 @@ public class ProductService {
                 
                 return savedProduct;
             });
+            publishProductChange(created.getId());
+            return created;
             
         } catch (SQLException e) {
             logger.error("Ошибка создания товара", e);
@@ -71,6 +111,7 @@ public class ProductService {
         try {
             validateProduct(product);
             productDao.update(product);
+            publishProductChange(product.getId());
             logger.info("Обновлен товар: {} ({})", product.getName(), product.getSku());
         } catch (SQLException e) {
             logger.error("Ошибка обновления товара", e);
@@ -79,14 +120,16 @@ public class ProductService {
     }
 
     
-    public void updatePrice(Integer productId, BigDecimal newPrice) {
+    public void updatePrice(Integer productId, BigDecimal newPrice, Integer userId) {
         try {
             if (newPrice == null || newPrice.compareTo(BigDecimal.ZERO) <= 0) {
                 throw new ValidationException("Цена должна быть положительной");
             }
             
-            productDao.updateSellingPrice(productId, newPrice);
-            logger.info("Обновлена цена товара ID {}: {}", productId, newPrice);
+            if (priceHistoryDao.updatePrice(productId, newPrice, "Изменение цены товара", userId)) {
+                publishProductChanges(List.of(productId));
+                logger.info("Обновлена цена товара ID {}: {}", productId, newPrice);
+            }
         } catch (SQLException e) {
             logger.error("Ошибка обновления цены", e);
             throw new DatabaseException("Ошибка при обновлении цены", e);
@@ -94,9 +137,230 @@ public class ProductService {
     }
 
     
+    /**
+     * Изменения цен по правилу без записи: старая и новая цена каждого затронутого товара.
+     */
+    public List<PriceChange> previewBulkPriceChange(BulkPriceChange change) {
+        validateBulkPriceChange(change);
+        try {
+            return priceHistoryDao.preview(change);
+        } catch (SQLException e) {
+            logger.error("Ошибка расчета изменения цен", e);
+            throw new DatabaseException("Ошибка при расчете изменения цен", e);
+        }
+    }
+
+    
+    /**
+     * Меняет цены по правилу одной транзакцией с записью в историю цен.
+     * Возвращает число измененных товаров.
+     */
+    public int applyBulkPriceChange(BulkPriceChange change, Integer userId) {
+        validateBulkPriceChange(change);
+        long start = System.nanoTime();
+        try {
+            List<Integer> changed = dbManager.executeInTransaction(conn -> priceHistoryDao.apply(conn, change, userId));
+            if (!changed.isEmpty()) {
+                publishProductChanges(changed);
+            }
+            logger.info("Массовое изменение цен ({}, {}): изменено товаров {}",
+                    change.getMode(), change.getValue(), changed.size());
+            return changed.size();
+        } catch (SQLException e) {
+            logger.error("Ошибка массового изменения цен", e);
+            throw new DatabaseException("Ошибка при массовом изменении цен", e);
+        } finally {
+            bulkPriceTimer.recordSince(start);
+        }
+    }
+
+    
+    public List<PriceChange> getPriceHistory(Integer productId) {
+        try {
+            return priceHistoryDao.findByProduct(productId);
+        } catch (SQLException e) {
+            logger.error("Ошибка получения истории цен", e);
+            throw new DatabaseException("Ошибка при получении истории цен", e);
+        }
+    }
+
+    
+    /**
+     * Планирует цену товара: с effectiveFrom продажи идут по ней, затем она записывается в карточку.
+     */
+    public Long schedulePrice(Integer productId, BigDecimal price, LocalDateTime effectiveFrom,
+                              String reason, Integer userId) {
+        if (price == null || price.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new ValidationException("Цена должна быть положительной");
+        }
+        if (effectiveFrom == null || !effectiveFrom.isAfter(LocalDateTime.now())) {
+            throw new ValidationException("Дата начала действия должна быть в будущем");
+        }
+        try {
+            Long id = priceHistoryDao.schedule(productId, price, effectiveFrom, reason, userId);
+            publishProductChange(productId);
+            logger.info("Запланирована цена товара ID {}: {} с {}", productId, price, effectiveFrom);
+            return id;
+        } catch (SQLException e) {
+            logger.error("Ошибка планирования цены", e);
+            throw new DatabaseException("Ошибка при планировании цены", e);
+        }
+    }
+
+    
+    public List<PriceChange> getScheduledPrices() {
+        try {
+            return priceHistoryDao.findScheduled();
+        } catch (SQLException e) {
+            logger.error("Ошибка получения запланированных цен", e);
+            throw new DatabaseException("Ошибка при получении запланированных цен", e);
+        }
+    }
+
+    
+    public void cancelScheduledPrice(Long id) {
+        try {
+            Integer productId = priceHistoryDao.cancelScheduled(id)
+                    .orElseThrow(() -> new ValidationException("Запланированная цена не найдена или уже применена"));
+            publishProductChange(productId);
+            logger.info("Отменена запланированная цена {} товара ID {}", id, productId);
+        } catch (SQLException e) {
+            logger.error("Ошибка отмены запланированной цены", e);
+            throw new DatabaseException("Ошибка при отмене запланированной цены", e);
+        }
+    }
+
+    
+    /**
+     * Цена товара на момент at по индексу цен, без запроса к БД.
+     */
+    public Optional<BigDecimal> getPriceAt(Integer productId, LocalDateTime at) {
+        return Optional.ofNullable(priceIndex.priceAt(productId, at));
+    }
+
+    
+    /**
+     * Привязывает штрихкод к товару. Для UNIT code - полный код EAN-8/UPC-A/EAN-13/GTIN-14,
+     * packQuantity - единиц в упаковке; для WEIGHT и PRICE - префикс из 7 цифр внутреннего
+     * кода, для WEIGHT packQuantity - граммов в единице учета товара.
+     */
+    public ProductBarcode addBarcode(Integer productId, String code, BarcodeKind kind, int packQuantity) {
+        String normalized = kind == BarcodeKind.UNIT ? Barcodes.normalize(code) : Barcodes.normalizePrefix(code);
+        if (normalized == null) {
+            throw new ValidationException(kind == BarcodeKind.UNIT
+                    ? "Неверный штрихкод: ожидается 8, 12, 13 или 14 цифр с верной контрольной цифрой"
+                    : "Неверный префикс: ожидается 7 цифр, начиная с 2");
+        }
+        if (packQuantity <= 0) {
+            throw new ValidationException("Количество в упаковке должно быть положительным");
+        }
+        try {
+            if (productDao.findById(productId).isEmpty()) {
+                throw new ValidationException("Товар не найден: ID " + productId);
+            }
+            Optional<ProductBarcode> existing = barcodeDao.findById(normalized);
+            if (existing.isPresent()) {
+                throw new ValidationException("Штрихкод " + normalized + " уже привязан к товару ID "
+                        + existing.get().getProductId());
+            }
+            ProductBarcode barcode = barcodeDao.save(new ProductBarcode(normalized, productId, kind, packQuantity));
+            barcodeIndex.reload();
+            logger.info("Штрихкод {} ({}) привязан к товару ID {}", normalized, kind, productId);
+            return barcode;
+        } catch (SQLException e) {
+            logger.error("Ошибка добавления штрихкода", e);
+            throw new DatabaseException("Ошибка при добавлении штрихкода", e);
+        }
+    }
+
+    
+    public List<ProductBarcode> getBarcodes(Integer productId) {
+        try {
+            return barcodeDao.findByProductId(productId);
+        } catch (SQLException e) {
+            logger.error("Ошибка получения штрихкодов", e);
+            throw new DatabaseException("Ошибка при получении штрихкодов", e);
+        }
+    }
+
+    
+    public void removeBarcode(String code) {
+        String normalized = Barcodes.normalize(code);
+        if (normalized == null) {
+            normalized = code.strip();
+        }
+        try {
+            barcodeDao.delete(normalized);
+            barcodeIndex.reload();
+            logger.info("Удален штрихкод {}", normalized);
+        } catch (SQLException e) {
+            logger.error("Ошибка удаления штрихкода", e);
+            throw new DatabaseException("Ошибка при удалении штрихкода", e);
+        }
+    }
+
+    
+    /**
+     * Товар по отсканированному штрихкоду из индекса в памяти. К БД обращается только
+     * один раз, если индекс еще не загружен.
+     */
+    @DbWorkload(Workload.CHECKOUT)
+    public Optional<ScanResult> scanBarcode(String scanned) {
+        if (!barcodeIndex.isLoaded() && !syncEngine.isOffline()) {
+            try {
+                barcodeIndex.reload();
+            } catch (SQLException e) {
+                logger.warn("Не удалось загрузить индекс штрихкодов: {}", e.getMessage());
+            }
+        }
+        return Optional.ofNullable(barcodeIndex.lookup(scanned.strip()));
+    }
+
+    
+    /**
+     * Читает список артикулов: по одному в строке, после артикула через ';', ',' или
+     * табуляцию может идти что угодно. Повторы и пустые строки отбрасываются.
+     */
+    public List<String> readSkuFile(Path file) {
+        Set<String> skus = new LinkedHashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String sku = line.split("[;,\\t]", 2)[0].strip();
+                if (!sku.isEmpty()) {
+                    skus.add(sku);
+                }
+            }
+        } catch (IOException e) {
+            throw new ValidationException("Не удалось прочитать файл: " + e.getMessage());
+        }
+        return new ArrayList<>(skus);
+    }
+
+    private void validateBulkPriceChange(BulkPriceChange change) {
+        if (change.getMode() == null || change.getRounding() == null || change.getValue() == null) {
+            throw new ValidationException("Не задано правило изменения цен");
+        }
+        if (change.getCategoryId() == null && change.getSkus() == null) {
+            throw new ValidationException("Укажите категорию или список артикулов");
+        }
+        if (change.getSkus() != null && change.getSkus().isEmpty()) {
+            throw new ValidationException("Список артикулов пуст");
+        }
+        if (change.getMode() == PriceChangeMode.PERCENT && change.getValue().compareTo(HUNDRED.negate()) <= 0) {
+            throw new ValidationException("Снижение цены должно быть меньше 100%");
+        }
+        if (change.getMode() == PriceChangeMode.MARGIN
+                && (change.getValue().signum() < 0 || change.getValue().compareTo(HUNDRED) >= 0)) {
+            throw new ValidationException("Маржа должна быть от 0 до 100%");
+        }
+    }
+
+    
     public void deactivateProduct(Integer productId) {
         try {
             productDao.delete(productId);
+            publishProductChange(productId);
             logger.info("Деактивирован товар ID {}", productId);
         } catch (SQLException e) {
             logger.error("Ошибка деактивации товара", e);
@@ -104,18 +368,51 @@ public class ProductService {
         }
     }
 
+    private void publishProductChange(Integer productId) {
+        publishProductChanges(List.of(productId));
+    }
+
+    private void publishProductChanges(Collection<Integer> productIds) {
+        // Изменение товара не относится к периоду: устаревают отчеты по остаткам целиком
+        CommitEventBus.getInstance().publish(CommitEvent.Type.PRODUCT, null, productIds);
+    }
+
     
+    @DbWorkload(Workload.CHECKOUT)
     public Optional<Product> findById(Integer id) {
+        if (syncEngine.isOffline()) {
+            return syncEngine.findProduct(id);
+        }
         try {
             return productDao.findByIdWithStock(id);
         } catch (SQLException e) {
+            if (syncEngine.goOffline(e)) {
+                return syncEngine.findProduct(id);
+            }
             logger.error("Ошибка поиска товара", e);
             throw new DatabaseException("Ошибка при поиске товара", e);
         }
     }
 
     
+    /**
+     * Товар для продажи: из локального каталога кассы, пока он актуален, иначе из БД.
+     * Карточка из каталога неполная, для редактирования используется {@link #findById}.
+     */
+    @DbWorkload(Workload.CHECKOUT)
+    public Optional<Product> findForSale(Integer id) {
+        if (syncEngine.isCatalogCurrent()) {
+            return syncEngine.findProduct(id);
+        }
+        return findById(id);
+    }
+
+    
+    @DbWorkload(Workload.CHECKOUT)
     public Optional<Product> findBySku(String sku) {
+        if (syncEngine.isCatalogCurrent()) {
+            return syncEngine.findProductBySku(sku);
+        }
         try {
             return productDao.findBySku(sku);
         } catch (SQLException e) {
@@ -125,10 +422,17 @@ public class ProductService {
     }
 
     
+    @DbWorkload(Workload.CHECKOUT)
     public List<Product> searchByName(String namePattern) {
+        if (syncEngine.isCatalogCurrent()) {
+            return syncEngine.searchProducts(namePattern);
+        }
         try {
             return productDao.searchByName(namePattern);
         } catch (SQLException e) {
+            if (syncEngine.goOffline(e)) {
+                return syncEngine.searchProducts(namePattern);
+            }
             logger.error("Ошибка поиска товаров", e);
             throw new DatabaseException("Ошибка при поиске товаров", e);
         }
@@ -169,7 +473,7 @@ public class ProductService {
         }
     }
 
-
+    
     public List<Product> filterProducts(BigDecimal minPrice, BigDecimal maxPrice, Integer categoryId) {
         List<Product> products = findAllActive();
 
@@ -180,17 +484,14 @@ public class ProductService {
                 .toList();
     }
 
-
+    
     public List<Product> findLowStockProducts() {
-        return findAllActive().stream()
-                .filter(p -> p.getStockQuantity() != null && p.getMinStockLevel() != null)
-                .filter(p -> p.getStockQuantity() <= p.getMinStockLevel())
-                .toList();
+        return LowStockTracker.getInstance().getLowStockProducts();
     }
 
 
 
-
+    
     public Category createCategory(String name, String description) {
         try {
             if (name == null || name.trim().isEmpty()) {
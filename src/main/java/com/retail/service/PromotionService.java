@@ -0,0 +1,118 @@
+package com.retail.service;
+
+import com.retail.dao.PromotionDao;
+import com.retail.db.DatabaseManager;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
+import com.retail.exception.DatabaseException;
+import com.retail.exception.ValidationException;
+import com.retail.model.Promotion;
+import com.retail.promo.PromotionIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+
+/**
+ * Управление акциями. После каждого изменения движок акций кассы перекомпилируется.
+ */
+@DbWorkload(Workload.BACKOFFICE)
+public class PromotionService {
+    private static final Logger logger = LoggerFactory.getLogger(PromotionService.class);
+
+    private final DatabaseManager dbManager;
+    private final PromotionDao promotionDao;
+    private final PromotionIndex promotionIndex;
+
+    public PromotionService() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.promotionDao = new PromotionDao();
+        this.promotionIndex = PromotionIndex.getInstance();
+    }
+
+    
+    public Promotion create(Promotion promotion, Integer userId) {
+        validate(promotion);
+        if (promotion.getValidFrom() == null) {
+            promotion.setValidFrom(LocalDateTime.now());
+        }
+        promotion.setCreatedBy(userId);
+        try {
+            Promotion created = dbManager.executeInTransaction(conn -> promotionDao.save(conn, promotion));
+            logger.info("Создана акция №{} \"{}\" ({})", created.getId(), created.getName(),
+                    created.getType().getDisplayName());
+            promotionIndex.reload();
+            return created;
+        } catch (SQLException e) {
+            logger.error("Ошибка создания акции", e);
+            throw new DatabaseException("Ошибка при создании акции", e);
+        }
+    }
+
+    
+    public List<Promotion> getActive() {
+        try {
+            return promotionDao.findActive();
+        } catch (SQLException e) {
+            logger.error("Ошибка получения акций", e);
+            throw new DatabaseException("Ошибка при получении акций", e);
+        }
+    }
+
+    
+    public void deactivate(Integer promotionId) {
+        try {
+            promotionDao.delete(promotionId);
+            logger.info("Отключена акция №{}", promotionId);
+            promotionIndex.reload();
+        } catch (SQLException e) {
+            logger.error("Ошибка отключения акции", e);
+            throw new DatabaseException("Ошибка при отключении акции", e);
+        }
+    }
+
+    private void validate(Promotion promotion) {
+        if (promotion.getName() == null || promotion.getName().isBlank()) {
+            throw new ValidationException("Укажите название акции");
+        }
+        if (promotion.getType() == null) {
+            throw new ValidationException("Укажите тип акции");
+        }
+        if (promotion.getValidTo() != null && promotion.getValidFrom() != null
+                && !promotion.getValidTo().isAfter(promotion.getValidFrom())) {
+            throw new ValidationException("Окончание акции должно быть позже начала");
+        }
+        switch (promotion.getType()) {
+            case MULTI_BUY -> {
+                if (promotion.getProductId() == null) {
+                    throw new ValidationException("Укажите товар акции");
+                }
+                if (promotion.getPayQuantity() < 1 || promotion.getBuyQuantity() <= promotion.getPayQuantity()) {
+                    throw new ValidationException("Количество к покупке должно быть больше оплачиваемого");
+                }
+            }
+            case CATEGORY_PERCENT -> {
+                if (promotion.getCategoryId() == null) {
+                    throw new ValidationException("Укажите категорию акции");
+                }
+                BigDecimal percent = promotion.getDiscountPercent();
+                if (percent == null || percent.signum() <= 0 || percent.compareTo(BigDecimal.valueOf(100)) >= 0) {
+                    throw new ValidationException("Скидка должна быть больше 0% и меньше 100%");
+                }
+            }
+            case BUNDLE -> {
+                int units = promotion.getBundleItems().values().stream().mapToInt(Integer::intValue).sum();
+                if (units < 2) {
+                    throw new ValidationException("В комплекте должно быть не меньше двух единиц товара");
+                }
+                if (promotion.getBundlePrice() == null || promotion.getBundlePrice().signum() <= 0) {
+                    throw new ValidationException("Цена комплекта должна быть больше нуля");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.retail.service;
+
+import com.retail.db.ReportSession;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.service.CommitEventBus.CommitEvent;
+import com.retail.util.AppConfig;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+
+/**
+ * Кэш результатов отчетов по типу отчета и параметрам.
+ * Отчеты за периоды, включающие сегодня, хранятся не дольше report.cache.ttl.seconds,
+ * за закрытые периоды - не дольше report.cache.closed.ttl.seconds. Записи сбрасываются
+ * событиями {@link CommitEventBus}, попадающими в период отчета; изменения других узлов
+ * (возврат старой продажи, выгрузка офлайн-журнала кассы) этих событий не дают, и отчет
+ * за закрытый период отстает от них не дольше своего TTL.
+ */
+public class ReportCache {
+    private static final ReportCache INSTANCE = new ReportCache();
+
+    private final Map<List<Object>, Entry> entries;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long closedTtlNanos;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter invalidations;
+    private long generation;
+
+    private ReportCache() {
+        this.maxEntries = AppConfig.getInt("report.cache.max.entries", 256);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(AppConfig.getLong("report.cache.ttl.seconds", 300));
+        this.closedTtlNanos = TimeUnit.SECONDS.toNanos(AppConfig.getLong("report.cache.closed.ttl.seconds", 3600));
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.hits = registry.counter("retail_report_cache_hits_total");
+        this.misses = registry.counter("retail_report_cache_misses_total");
+        this.evictions = registry.counter("retail_report_cache_evictions_total");
+        this.invalidations = registry.counter("retail_report_cache_invalidations_total");
+        registry.gauge("retail_report_cache_size", this::size);
+
+        CommitEventBus.getInstance().subscribe(this::onCommit);
+    }
+
+    public static ReportCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Результат отчета из кэша или вычисленный loader.
+     * periodStart/periodEnd - период данных отчета (null - весь период),
+     * dependsOn - события, после которых результат устаревает.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String report, Object[] params, LocalDateTime periodStart, LocalDateTime periodEnd,
+                     Set<CommitEvent.Type> dependsOn, Supplier<T> loader) {
+        // Внутри сеанса отчета все данные должны быть из одного снимка
+        if (ReportSession.isActive()) {
+            return loader.get();
+        }
+
+        List<Object> key = key(report, params);
+        long now = System.nanoTime();
+        long startGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt - now > 0) {
+                hits.increment();
+                return (T) entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+            startGeneration = generation;
+        }
+        misses.increment();
+
+        T value = loader.get();
+
+        boolean closed = periodEnd != null && periodEnd.isBefore(LocalDate.now().atStartOfDay());
+        Entry entry = new Entry(value, periodStart, periodEnd, EnumSet.copyOf(dependsOn),
+                System.nanoTime() + (closed ? closedTtlNanos : ttlNanos), closed);
+        synchronized (this) {
+            // Пока отчет считался, могло прийти событие: такой результат уже может быть устаревшим
+            if (generation == startGeneration) {
+                entries.put(key, entry);
+            }
+        }
+        return value;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Stats getStats() {
+        Stats stats = new Stats();
+        synchronized (this) {
+            stats.size = entries.size();
+            stats.closedPeriods = (int) entries.values().stream().filter(e -> e.closed).count();
+        }
+        stats.maxEntries = maxEntries;
+        stats.hits = hits.getCount();
+        stats.misses = misses.getCount();
+        stats.evictions = evictions.getCount();
+        stats.invalidations = invalidations.getCount();
+        return stats;
+    }
+
+    private void onCommit(CommitEvent event) {
+        synchronized (this) {
+            generation++;
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.dependsOn.contains(event.getType()) && entry.covers(event.getAffectedDate())) {
+                    it.remove();
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    private static List<Object> key(String report, Object[] params) {
+        List<Object> key = new ArrayList<>(params.length + 1);
+        key.add(report);
+        Collections.addAll(key, params);
+        return key;
+    }
+
+
+    private static final class Entry {
+        private final Object value;
+        private final LocalDateTime periodStart;
+        private final LocalDateTime periodEnd;
+        private final Set<CommitEvent.Type> dependsOn;
+        private final long expiresAt;
+        private final boolean closed;
+
+        private Entry(Object value, LocalDateTime periodStart, LocalDateTime periodEnd,
+                      Set<CommitEvent.Type> dependsOn, long expiresAt, boolean closed) {
+            this.value = value;
+            this.periodStart = periodStart;
+            this.periodEnd = periodEnd;
+            this.dependsOn = dependsOn;
+            this.expiresAt = expiresAt;
+            this.closed = closed;
+        }
+
+        private boolean covers(LocalDateTime date) {
+            if (date == null) {
+                return true;
+            }
+            return (periodStart == null || !date.isBefore(periodStart))
+                    && (periodEnd == null || !date.isAfter(periodEnd));
+        }
+    }
+
+    public static class Stats {
+        private int size;
+        private int closedPeriods;
+        private int maxEntries;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long invalidations;
+
+        public int getSize() { return size; }
+        public int getClosedPeriods() { return closedPeriods; }
+        public int getMaxEntries() { return maxEntries; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getInvalidations() { return invalidations; }
+
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
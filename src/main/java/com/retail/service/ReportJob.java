@@ -0,0 +1,172 @@
+package com.retail.service;
+
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Фоновое задание отчета. Результат построчно записывается во временный файл,
+ * в памяти хранятся только смещения начала страниц.
+ */
+public class ReportJob implements Runnable, Comparable<ReportJob> {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    public enum Status {
+        QUEUED("В очереди"),
+        RUNNING("Выполняется"),
+        DONE("Готов"),
+        FAILED("Ошибка"),
+        CANCELLED("Отменен");
+
+        private final String displayName;
+
+        Status(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    public enum Priority { HIGH, NORMAL, LOW }
+
+    private final long id;
+    private final long sequence = SEQUENCE.incrementAndGet();
+    private final String title;
+    private final Integer ownerId;
+    private final Priority priority;
+    private final String[] headers;
+    private final ReportJobManager.JobQuery query;
+    private final int pageSize;
+    private final LocalDateTime submittedAt = LocalDateTime.now();
+    private final List<Long> pageOffsets = new ArrayList<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile long rowCount;
+    private volatile String error;
+    private volatile boolean cancelRequested;
+    private volatile Statement statement;
+    private volatile Path spoolFile;
+    private ReportJobManager manager;
+
+    ReportJob(long id, String title, Integer ownerId, Priority priority, String[] headers,
+              ReportJobManager.JobQuery query, int pageSize) {
+        this.id = id;
+        this.title = title;
+        this.ownerId = ownerId;
+        this.priority = priority;
+        this.headers = headers;
+        this.query = query;
+        this.pageSize = pageSize;
+    }
+
+    void attach(ReportJobManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public void run() {
+        manager.execute(this);
+    }
+
+    @Override
+    public int compareTo(ReportJob other) {
+        int byPriority = priority.compareTo(other.priority);
+        return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+    }
+
+    ReportJobManager.JobQuery getQuery() { return query; }
+
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = LocalDateTime.now();
+        return true;
+    }
+
+    synchronized void finish(Status finalStatus, String errorMessage) {
+        status = finalStatus;
+        error = errorMessage;
+        finishedAt = LocalDateTime.now();
+        statement = null;
+    }
+
+    /**
+     * Отмена: задание в очереди снимается сразу, у выполняющегося прерывается запрос.
+     * Возвращает выполняющийся запрос, который нужно отменить, или null.
+     */
+    synchronized Statement requestCancel() {
+        if (status.isFinished()) {
+            return null;
+        }
+        cancelRequested = true;
+        if (status == Status.QUEUED) {
+            finish(Status.CANCELLED, null);
+            return null;
+        }
+        return statement;
+    }
+
+    synchronized boolean setStatement(Statement statement) {
+        this.statement = statement;
+        return !cancelRequested;
+    }
+
+    void rowWritten(long offset) {
+        if (rowCount % pageSize == 0) {
+            synchronized (pageOffsets) {
+                pageOffsets.add(offset);
+            }
+        }
+        rowCount++;
+    }
+
+    long pageOffset(int page) {
+        synchronized (pageOffsets) {
+            return page < pageOffsets.size() ? pageOffsets.get(page) : -1;
+        }
+    }
+
+    boolean isCancelRequested() { return cancelRequested; }
+    void setSpoolFile(Path spoolFile) { this.spoolFile = spoolFile; }
+    Path getSpoolFile() { return spoolFile; }
+
+    public long getId() { return id; }
+    public String getTitle() { return title; }
+    public Integer getOwnerId() { return ownerId; }
+    public Priority getPriority() { return priority; }
+    public String[] getHeaders() { return headers.clone(); }
+    public Status getStatus() { return status; }
+    public LocalDateTime getSubmittedAt() { return submittedAt; }
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public long getRowCount() { return rowCount; }
+    public String getError() { return error; }
+
+    public int getPageSize() { return pageSize; }
+
+    public int getPageCount() {
+        return (int) ((rowCount + pageSize - 1) / pageSize);
+    }
+
+    public Duration getElapsed() {
+        if (startedAt == null) {
+            return Duration.ZERO;
+        }
+        return Duration.between(startedAt, finishedAt != null ? finishedAt : LocalDateTime.now());
+    }
+}
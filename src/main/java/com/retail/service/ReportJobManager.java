@@ -0,0 +1,374 @@
+package com.retail.service;
+
+import com.retail.db.DatabaseManager;
+import com.retail.db.SessionProfile;
+import com.retail.db.Workload;
+import com.retail.exception.DatabaseException;
+import com.retail.exception.ValidationException;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Очередь фоновых отчетов. Задания выполняются ограниченным числом потоков
+ * с пониженным приоритетом на соединениях собственного пула (db.pool.jobs.*),
+ * результат читается курсором и сохраняется во временный файл, откуда
+ * просматривается постранично.
+ */
+public class ReportJobManager {
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobManager.class);
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
+    // SQLSTATE отмены запроса (таймаут, если отмену не запрашивали)
+    private static final String QUERY_CANCELED = "57014";
+
+    private static volatile ReportJobManager instance;
+
+    private final DatabaseManager dbManager;
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final SessionProfile profile;
+    private final Path spoolDir;
+    private final int maxQueued;
+    private final int fetchSize;
+    private final int pageSize;
+    private final long retentionMinutes;
+    private final Counter completedCounter;
+    private final Counter cancelledCounter;
+    private final Counter failedCounter;
+
+    @FunctionalInterface
+    public interface JobQuery {
+        /**
+         * Подготовленный запрос отчета с заполненными параметрами.
+         */
+        PreparedStatement prepare(Connection conn) throws SQLException;
+    }
+
+    private ReportJobManager() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.maxQueued = AppConfig.getInt("report.jobs.max.queued", 20);
+        this.fetchSize = AppConfig.getInt("report.jobs.fetch.size", 500);
+        this.pageSize = AppConfig.getInt("report.jobs.page.size", 20);
+        this.retentionMinutes = AppConfig.getLong("report.jobs.retention.minutes", 60);
+        String dir = AppConfig.get("report.jobs.spool.dir", "");
+        this.spoolDir = dir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "retail-reports")
+                : Paths.get(dir.trim());
+        // Длинные выгрузки не ограничены таймаутом интерактивных отчетов: их останавливает отмена
+        this.profile = SessionProfile.forWorkload(Workload.REPORT_JOBS)
+                .withStatementTimeout(AppConfig.getInt("report.jobs.statement.timeout.ms", 1_800_000));
+
+        // Поток без соединения ждал бы его до таймаута пула: потоков не больше размера пула
+        int poolSize = AppConfig.getInt("db.pool.jobs.size", Workload.REPORT_JOBS.getDefaultPoolSize());
+        int threads = Math.max(1, Math.min(AppConfig.getInt("report.jobs.threads", 1), poolSize));
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "report-job-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        this.completedCounter = registry.counter("retail_report_jobs_total", "status", "done");
+        this.cancelledCounter = registry.counter("retail_report_jobs_total", "status", "cancelled");
+        this.failedCounter = registry.counter("retail_report_jobs_total", "status", "failed");
+        registry.gauge("retail_report_jobs_queued", () -> executor.getQueue().size());
+    }
+
+    public static ReportJobManager getInstance() {
+        ReportJobManager manager = instance;
+        if (manager == null) {
+            synchronized (ReportJobManager.class) {
+                manager = instance;
+                if (manager == null) {
+                    manager = new ReportJobManager();
+                    instance = manager;
+                }
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Отменяет задания и удаляет файлы результатов, если менеджер создавался.
+     */
+    public static void shutdown() {
+        ReportJobManager manager = instance;
+        if (manager != null) {
+            manager.jobs.values().forEach(job -> manager.cancel(job.getId()));
+            manager.executor.shutdownNow();
+            manager.jobs.values().forEach(manager::deleteSpool);
+        }
+    }
+
+    public ReportJob submit(String title, Integer ownerId, ReportJob.Priority priority, String[] headers,
+                            JobQuery query) {
+        purgeExpired();
+        if (executor.getQueue().size() >= maxQueued) {
+            throw new ValidationException("Очередь отчетов переполнена, повторите позже");
+        }
+        ReportJob job = new ReportJob(ids.incrementAndGet(), title, ownerId, priority, headers, query, pageSize);
+        job.attach(this);
+        jobs.put(job.getId(), job);
+        executor.execute(job);
+        logger.info("Отчет #{} \"{}\" поставлен в очередь", job.getId(), title);
+        return job;
+    }
+
+    public List<ReportJob> getJobs(Integer ownerId) {
+        purgeExpired();
+        return jobs.values().stream()
+                .filter(job -> ownerId == null || ownerId.equals(job.getOwnerId()))
+                .sorted(Comparator.comparingLong(ReportJob::getId).reversed())
+                .toList();
+    }
+
+    public Optional<ReportJob> getJob(long id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public boolean cancel(long id) {
+        ReportJob job = jobs.get(id);
+        if (job == null || job.getStatus().isFinished()) {
+            return false;
+        }
+        Statement running = job.requestCancel();
+        if (job.getStatus() == ReportJob.Status.CANCELLED) {
+            executor.remove(job);
+            cancelledCounter.increment();
+        }
+        if (running != null) {
+            try {
+                running.cancel();
+            } catch (SQLException e) {
+                logger.warn("Не удалось отменить запрос отчета #{}: {}", id, e.getMessage());
+            }
+        }
+        logger.info("Отчет #{} отменен", id);
+        return true;
+    }
+
+    /**
+     * Страница результата (с нуля). Доступна и во время выполнения для уже записанных строк.
+     */
+    public List<String[]> readPage(long id, int page) {
+        ReportJob job = jobs.get(id);
+        if (job == null) {
+            throw new ValidationException("Задание не найдено");
+        }
+        long offset = job.pageOffset(page);
+        if (offset < 0) {
+            return List.of();
+        }
+
+        List<String[]> rows = new ArrayList<>(pageSize);
+        try (FileChannel channel = FileChannel.open(job.getSpoolFile(), StandardOpenOption.READ)) {
+            channel.position(offset);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            String line;
+            while (rows.size() < pageSize && (line = reader.readLine()) != null) {
+                rows.add(parseLine(line));
+            }
+        } catch (IOException e) {
+            logger.error("Ошибка чтения результата отчета #{}", id, e);
+            throw new DatabaseException("Ошибка чтения результата отчета", e);
+        }
+        return rows;
+    }
+
+    void execute(ReportJob job) {
+        if (!job.start()) {
+            return;
+        }
+        try {
+            Files.createDirectories(spoolDir);
+            Path file = Files.createTempFile(spoolDir, "report-" + job.getId() + "-", ".tsv");
+            job.setSpoolFile(file);
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+                dbManager.executeReadOnly(profile, conn -> {
+                    spool(job, conn, out);
+                    return null;
+                });
+            }
+
+            if (job.isCancelRequested()) {
+                job.finish(ReportJob.Status.CANCELLED, null);
+                cancelledCounter.increment();
+            } else {
+                job.finish(ReportJob.Status.DONE, null);
+                completedCounter.increment();
+                logger.info("Отчет #{} готов: {} строк за {} мс",
+                        job.getId(), job.getRowCount(), job.getElapsed().toMillis());
+            }
+        } catch (SQLException e) {
+            if (job.isCancelRequested()) {
+                job.finish(ReportJob.Status.CANCELLED, null);
+                cancelledCounter.increment();
+            } else if (QUERY_CANCELED.equals(e.getSQLState())) {
+                logger.warn("Отчет #{} прерван по таймауту", job.getId());
+                job.finish(ReportJob.Status.FAILED, "Превышено время выполнения отчета");
+                failedCounter.increment();
+            } else {
+                logger.error("Ошибка выполнения отчета #{}", job.getId(), e);
+                job.finish(ReportJob.Status.FAILED, e.getMessage());
+                failedCounter.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Ошибка выполнения отчета #{}", job.getId(), e);
+            job.finish(ReportJob.Status.FAILED, e.getMessage());
+            failedCounter.increment();
+        }
+    }
+
+    private void spool(ReportJob job, Connection conn, OutputStream out) throws SQLException {
+        try (PreparedStatement stmt = job.getQuery().prepare(conn)) {
+            // Курсор: строки приходят порциями и сразу уходят в файл
+            stmt.setFetchSize(fetchSize);
+            if (!job.setStatement(stmt)) {
+                return;
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                long offset = 0;
+                StringBuilder line = new StringBuilder(256);
+                while (rs.next() && !job.isCancelRequested()) {
+                    line.setLength(0);
+                    for (int i = 1; i <= columns; i++) {
+                        if (i > 1) {
+                            line.append('\t');
+                        }
+                        appendEscaped(line, format(rs.getObject(i)));
+                    }
+                    line.append('\n');
+                    byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                    out.write(bytes);
+                    job.rowWritten(offset);
+                    offset += bytes.length;
+                    if (job.getRowCount() % job.getPageSize() == 0) {
+                        // Готовые страницы можно смотреть, не дожидаясь конца отчета
+                        out.flush();
+                    }
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Ошибка записи результата отчета", e);
+        }
+    }
+
+    private void purgeExpired() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> {
+            boolean expired = job.getStatus().isFinished() && job.getFinishedAt().isBefore(threshold);
+            if (expired) {
+                deleteSpool(job);
+            }
+            return expired;
+        });
+    }
+
+    private void deleteSpool(ReportJob job) {
+        Path file = job.getSpoolFile();
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Не удалось удалить файл отчета {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private static String format(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Timestamp ts) {
+            return ts.toLocalDateTime().format(DATE_TIME);
+        }
+        if (value instanceof BigDecimal d) {
+            return d.toPlainString();
+        }
+        if (value instanceof Boolean b) {
+            return b ? "Да" : "Нет";
+        }
+        return value.toString();
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\\' -> sb.append("\\\\");
+                default -> sb.append(c);
+            }
+        }
+    }
+
+    private static String[] parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char e = line.charAt(++i);
+                current.append(switch (e) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> e;
+                });
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields.toArray(new String[0]);
+    }
+}
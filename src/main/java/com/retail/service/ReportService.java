@@ -4,10 +4,18 @@ import com.retail.dao.SaleDao;
 import com.retail.dao.SaleItemDao;
 import com.retail.dao.SecurityLogDao;
 import com.retail.dao.StockLogDao;
+import com.retail.db.DatabaseManager;
+import com.retail.db.DbWorkload;
+import com.retail.db.ReportSession;
+import com.retail.db.StatementProfiler;
+import com.retail.db.Workload;
 import com.retail.exception.DatabaseException;
+import com.retail.exception.ValidationException;
 import com.retail.model.Product;
 import com.retail.model.SecurityLog;
 import com.retail.model.StockLog;
+import com.retail.model.enums.StockOperationType;
+import com.retail.service.CommitEventBus.CommitEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,73 +23,161 @@ import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
+@DbWorkload(Workload.REPORTING)
 public class ReportService {
     private static final Logger logger = LoggerFactory.getLogger(ReportService.class);
+    private static final Set<CommitEvent.Type> SALES_EVENTS = EnumSet.of(CommitEvent.Type.SALE, CommitEvent.Type.RETURN);
+    private static final Set<CommitEvent.Type> STOCK_EVENTS = EnumSet.allOf(CommitEvent.Type.class);
     
+    private final DatabaseManager dbManager;
     private final SaleDao saleDao;
     private final SaleItemDao saleItemDao;
     private final StockLogDao stockLogDao;
     private final SecurityLogDao securityLogDao;
     private final InventoryService inventoryService;
+    private final SlicedReportExecutor slicedExecutor;
+    private final ReportCache reportCache;
+    private final ReportJobManager jobManager;
 
     public ReportService() {
+        this.dbManager = DatabaseManager.getInstance();
         this.saleDao = new SaleDao();
         this.saleItemDao = new SaleItemDao();
         this.stockLogDao = new StockLogDao();
         this.securityLogDao = new SecurityLogDao();
         this.inventoryService = new InventoryService();
+        this.slicedExecutor = new SlicedReportExecutor();
+        this.reportCache = ReportCache.getInstance();
+        this.jobManager = ReportJobManager.getInstance();
     }
 
     
 
     
     public BigDecimal getTodayRevenue() {
-        try {
-            LocalDate today = LocalDate.now();
-            return saleDao.getTotalRevenue(
-                    today.atStartOfDay(),
-                    today.plusDays(1).atStartOfDay());
-        } catch (SQLException e) {
-            logger.error("Ошибка получения выручки за сегодня", e);
-            throw new DatabaseException("Ошибка при получении отчета", e);
-        }
+        LocalDate today = LocalDate.now();
+        LocalDateTime start = today.atStartOfDay();
+        LocalDateTime end = today.plusDays(1).atStartOfDay();
+        return reportCache.get("todayRevenue", new Object[]{today}, start, end, SALES_EVENTS, () -> {
+            try {
+                return saleDao.getTotalRevenue(start, end);
+            } catch (SQLException e) {
+                logger.error("Ошибка получения выручки за сегодня", e);
+                throw new DatabaseException("Ошибка при получении отчета", e);
+            }
+        });
     }
 
     
     public BigDecimal getMonthRevenue() {
-        try {
-            LocalDate today = LocalDate.now();
-            LocalDate firstDayOfMonth = today.withDayOfMonth(1);
-            return saleDao.getTotalRevenue(
-                    firstDayOfMonth.atStartOfDay(),
-                    today.plusDays(1).atStartOfDay());
-        } catch (SQLException e) {
-            logger.error("Ошибка получения выручки за месяц", e);
-            throw new DatabaseException("Ошибка при получении отчета", e);
-        }
+        LocalDate today = LocalDate.now();
+        LocalDateTime start = today.withDayOfMonth(1).atStartOfDay();
+        LocalDateTime end = today.plusDays(1).atStartOfDay();
+        return reportCache.get("monthRevenue", new Object[]{today}, start, end, SALES_EVENTS, () -> {
+            try {
+                return slicedExecutor.execute(start, end, saleDao::getTotalRevenue, BigDecimal::add);
+            } catch (SQLException e) {
+                logger.error("Ошибка получения выручки за месяц", e);
+                throw new DatabaseException("Ошибка при получении отчета", e);
+            }
+        });
     }
 
     
     public BigDecimal getRevenueByPeriod(LocalDateTime start, LocalDateTime end) {
-        try {
-            return saleDao.getTotalRevenue(start, end);
-        } catch (SQLException e) {
-            logger.error("Ошибка получения выручки за период", e);
-            throw new DatabaseException("Ошибка при получении отчета", e);
-        }
+        return reportCache.get("revenueByPeriod", new Object[]{start, end}, start, end, SALES_EVENTS, () -> {
+            try {
+                return slicedExecutor.execute(start, end, saleDao::getTotalRevenue, BigDecimal::add);
+            } catch (SQLException e) {
+                logger.error("Ошибка получения выручки за период", e);
+                throw new DatabaseException("Ошибка при получении отчета", e);
+            }
+        });
     }
 
     
     public List<Object[]> getTopSellingProducts(int limit) {
-        try {
-            return saleItemDao.getTopSellingProducts(limit);
-        } catch (SQLException e) {
-            logger.error("Ошибка получения топ товаров", e);
-            throw new DatabaseException("Ошибка при получении отчета", e);
+        return reportCache.get("topSelling", new Object[]{limit}, null, null, SALES_EVENTS, () -> {
+            try {
+                return List.copyOf(saleItemDao.getTopSellingProducts(limit));
+            } catch (SQLException e) {
+                logger.error("Ошибка получения топ товаров", e);
+                throw new DatabaseException("Ошибка при получении отчета", e);
+            }
+        });
+    }
+
+
+    /**
+     * Топ товаров за период: частичные суммы по дням/неделям складываются,
+     * и только потом отбираются первые limit позиций.
+     */
+    public List<Object[]> getTopSellingProducts(LocalDateTime start, LocalDateTime end, int limit) {
+        Object[] params = {start, end, limit};
+        return reportCache.get("topSellingByPeriod", params, start, end, SALES_EVENTS, () -> {
+            try {
+                List<Object[]> totals = slicedExecutor.execute(start, end,
+                        saleItemDao::getProductSalesByPeriod, (a, b) -> mergeTotals(a, b, 0));
+                return totals.stream()
+                        .filter(row -> (Long) row[3] > 0)
+                        .sorted(Comparator.comparing((Object[] row) -> (Long) row[3]).reversed())
+                        .limit(limit)
+                        .toList();
+            } catch (SQLException e) {
+                logger.error("Ошибка получения топ товаров за период", e);
+                throw new DatabaseException("Ошибка при получении отчета", e);
+            }
+        });
+    }
+
+    
+    public List<Object[]> getRevenueByCategory(LocalDateTime start, LocalDateTime end) {
+        return reportCache.get("revenueByCategory", new Object[]{start, end}, start, end, SALES_EVENTS, () -> {
+            try {
+                List<Object[]> totals = slicedExecutor.execute(start, end,
+                        saleItemDao::getRevenueByCategory, (a, b) -> mergeTotals(a, b, 0));
+                return totals.stream()
+                        .sorted(Comparator.comparing((Object[] row) -> (BigDecimal) row[2]).reversed())
+                        .toList();
+            } catch (SQLException e) {
+                logger.error("Ошибка получения выручки по категориям", e);
+                throw new DatabaseException("Ошибка при получении отчета", e);
+            }
+        });
+    }
+
+    /**
+     * Складывает строки с одинаковым ключом: Long и BigDecimal суммируются,
+     * остальные поля берутся из первой строки.
+     */
+    private static List<Object[]> mergeTotals(List<Object[]> left, List<Object[]> right, int keyIndex) {
+        Map<Object, Object[]> byKey = new LinkedHashMap<>();
+        for (Object[] row : left) {
+            byKey.put(row[keyIndex], row.clone());
+        }
+        for (Object[] row : right) {
+            byKey.merge(row[keyIndex], row.clone(), (a, b) -> {
+                for (int i = 0; i < a.length; i++) {
+                    if (a[i] instanceof Long x && b[i] instanceof Long y) {
+                        a[i] = x + y;
+                    } else if (a[i] instanceof BigDecimal x && b[i] instanceof BigDecimal y) {
+                        a[i] = x.add(y);
+                    }
+                }
+                return a;
+            });
         }
+        return new ArrayList<>(byKey.values());
     }
 
     
@@ -93,6 +189,7 @@ public class ReportService {
 
     
     public List<Product> getLowStockReport() {
+        // Список уже поддерживается по событиям, кэш отчетов не нужен
         return inventoryService.getLowStockProducts();
     }
 
@@ -109,6 +206,18 @@ public class ReportService {
     }
 
     
+    public List<StockLog> getStockMovements(StockOperationType type, LocalDateTime start, LocalDateTime end) {
+        try {
+            return slicedExecutor.execute(start, end,
+                    (from, to) -> stockLogDao.findByTypeAndPeriod(type, from, to),
+                    SlicedReportExecutor.newestFirst());
+        } catch (SQLException e) {
+            logger.error("Ошибка получения движения товаров за период", e);
+            throw new DatabaseException("Ошибка при получении отчета", e);
+        }
+    }
+
+    
     public List<SecurityLog> getSecurityLog(int limit) {
         try {
             return securityLogDao.findRecent(limit);
@@ -141,6 +250,67 @@ public class ReportService {
     
 
     
+    public ReportCache.Stats getReportCacheStats() {
+        return reportCache.getStats();
+    }
+
+    public void clearReportCache() {
+        reportCache.clear();
+        logger.info("Кэш отчетов очищен");
+    }
+
+    
+    public ReportJob submitSalesJournal(LocalDateTime start, LocalDateTime end, Integer ownerId) {
+        return jobManager.submit("Журнал продаж " + period(start, end), ownerId, ReportJob.Priority.NORMAL,
+                new String[]{"Номер", "Дата", "Сотрудник", "Сумма", "Скидка", "Итого", "Возврат"},
+                conn -> saleDao.prepareJournal(conn, start, end));
+    }
+
+    public ReportJob submitSaleLinesReport(LocalDateTime start, LocalDateTime end, Integer ownerId) {
+        return jobManager.submit("Позиции продаж " + period(start, end), ownerId, ReportJob.Priority.LOW,
+                new String[]{"Номер", "Дата", "Артикул", "Товар", "Кол-во", "Возвр.", "Цена", "Сумма"},
+                conn -> saleItemDao.prepareLineReport(conn, start, end));
+    }
+
+    public ReportJob submitStockMovementReport(LocalDateTime start, LocalDateTime end, Integer ownerId) {
+        return jobManager.submit("Движение товаров " + period(start, end), ownerId, ReportJob.Priority.LOW,
+                new String[]{"Дата", "Операция", "Артикул", "Товар", "Изм.", "Было", "Стало", "Сотрудник", "Примечание"},
+                conn -> stockLogDao.prepareMovementReport(conn, start, end));
+    }
+
+    public List<ReportJob> getReportJobs(Integer ownerId) {
+        return jobManager.getJobs(ownerId);
+    }
+
+    public ReportJob getReportJob(long id) {
+        return jobManager.getJob(id)
+                .orElseThrow(() -> new ValidationException("Задание не найдено"));
+    }
+
+    public List<String[]> getReportJobPage(long id, int page) {
+        return jobManager.readPage(id, page);
+    }
+
+    public boolean cancelReportJob(long id) {
+        return jobManager.cancel(id);
+    }
+
+    private static String period(LocalDateTime start, LocalDateTime end) {
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+        return start.format(format) + " - " + end.format(format);
+    }
+
+    
+    public List<StatementProfiler.StatementStats> getTopStatements(int limit) {
+        return StatementProfiler.getInstance().getTopByTotalTime(limit);
+    }
+
+    public void resetStatementStats() {
+        StatementProfiler.getInstance().reset();
+        logger.info("Статистика SQL-запросов сброшена");
+    }
+
+    
     public static class DashboardStats {
         private BigDecimal todayRevenue;
         private BigDecimal monthRevenue;
@@ -167,18 +337,29 @@ public class ReportService {
 
     
     public DashboardStats getDashboardStats() {
+        LocalDate today = LocalDate.now();
+        return reportCache.get("dashboard", new Object[]{today}, today.withDayOfMonth(1).atStartOfDay(),
+                today.plusDays(1).atStartOfDay(), STOCK_EVENTS, this::loadDashboardStats);
+    }
+
+    private DashboardStats loadDashboardStats() {
         DashboardStats stats = new DashboardStats();
         
-        stats.setTodayRevenue(getTodayRevenue());
-        stats.setMonthRevenue(getMonthRevenue());
-        stats.setTotalProducts(getStockReport().size());
-        stats.setLowStockProducts(getLowStockReport().size());
-        
-        try {
+        // Все показатели считаются по одному снимку, чтобы выручка и число продаж сходились
+        try (ReportSession session = dbManager.openReportSession()) {
+            ReportSession.Part<BigDecimal> todayRevenue = session.fork(this::getTodayRevenue);
+            ReportSession.Part<BigDecimal> monthRevenue = session.fork(this::getMonthRevenue);
+            ReportSession.Part<Integer> totalProducts = session.fork(() -> getStockReport().size());
+
             stats.setTodaySales(saleDao.findToday().size());
+            stats.setTodayRevenue(todayRevenue.join());
+            stats.setMonthRevenue(monthRevenue.join());
+            stats.setTotalProducts(totalProducts.join());
+            // Список низких остатков поддерживается по событиям и не требует запроса
+            stats.setLowStockProducts(LowStockTracker.getInstance().getLowStockCount());
         } catch (SQLException e) {
-            logger.error("Ошибка получения количества продаж за сегодня", e);
-            stats.setTodaySales(0);
+            logger.error("Ошибка получения сводки", e);
+            throw new DatabaseException("Ошибка при получении отчета", e);
         }
         
         return stats;
@@ -2,24 +2,44 @@ package com.retail.service;
 
 import com.retail.dao.*;
 import com.retail.db.DatabaseManager;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
+import com.retail.events.EventPayloads;
 import com.retail.exception.DatabaseException;
 import com.retail.exception.InsufficientStockException;
 import com.retail.exception.ValidationException;
+import com.retail.journal.SyncEngine;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
 import com.retail.model.*;
 import com.retail.model.enums.StockOperationType;
+import com.retail.promo.PromotionEngine;
+import com.retail.promo.PromotionIndex;
+import com.retail.promo.PromotionResult;
+import com.retail.service.CommitEventBus.CommitEvent;
+import com.retail.util.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 
+@DbWorkload(Workload.CHECKOUT)
 public class SaleService {
     private static final Logger logger = LoggerFactory.getLogger(SaleService.class);
+    private static final Timer createSaleTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "createSale");
+    private static final Timer processReturnTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "processReturn");
+    private static final Counter insufficientStockCounter = MetricsRegistry.getInstance()
+            .counter("retail_insufficient_stock_total");
     
     private final DatabaseManager dbManager;
     private final SaleDao saleDao;
@@ -27,6 +47,13 @@ public class SaleService {
     private final ProductDao productDao;
     private final InventoryDao inventoryDao;
     private final StockLogDao stockLogDao;
+    private final EventOutboxDao outboxDao;
+    private final PromotionDao promotionDao;
+    private final SlicedReportExecutor slicedExecutor;
+    private final CommitEventBus commitEvents;
+    private final SyncEngine syncEngine;
+    private final PriceIndex priceIndex;
+    private final PromotionIndex promotionIndex;
 
     public SaleService() {
         this.dbManager = DatabaseManager.getInstance();
@@ -35,12 +62,25 @@ public class SaleService {
         this.productDao = new ProductDao();
         this.inventoryDao = new InventoryDao();
         this.stockLogDao = new StockLogDao();
+        this.outboxDao = new EventOutboxDao();
+        this.promotionDao = new PromotionDao();
+        this.slicedExecutor = new SlicedReportExecutor();
+        this.commitEvents = CommitEventBus.getInstance();
+        this.syncEngine = SyncEngine.getInstance();
+        this.priceIndex = PriceIndex.getInstance();
+        this.promotionIndex = PromotionIndex.getInstance();
     }
 
     
     public Sale createSale(Sale sale, Integer employeeId) {
+        long start = System.nanoTime();
+        BigDecimal manualDiscount = (sale.getDiscount() != null ? sale.getDiscount() : BigDecimal.ZERO)
+                .subtract(sale.getPromotionDiscount());
         try {
-            return dbManager.executeInTransaction(conn -> {
+            if (syncEngine.isOffline()) {
+                return syncEngine.recordOfflineSale(sale, employeeId);
+            }
+            Sale created = dbManager.executeInTransaction(conn -> {
                 
                 sale.setEmployeeId(employeeId);
                 sale.setSaleDate(LocalDateTime.now());
@@ -50,13 +90,16 @@ public class SaleService {
                 
                 for (SaleItem item : sale.getItems()) {
                     
-                    Optional<Product> productOpt = productDao.findById(item.getProductId());
-                    if (productOpt.isEmpty()) {
-                        throw new ValidationException("Товар не найден: ID " + item.getProductId());
+                    BigDecimal price = priceIndex.currentPrice(item.getProductId());
+                    if (price == null) {
+                        // Индекс цен еще не загружен или товар только что создан на другом узле
+                        Optional<Product> productOpt = productDao.findById(item.getProductId());
+                        if (productOpt.isEmpty()) {
+                            throw new ValidationException("Товар не найден: ID " + item.getProductId());
+                        }
+                        price = productOpt.get().getSellingPrice();
                     }
                     
-                    Product product = productOpt.get();
-                    
                     
                     Inventory inventory = inventoryDao.findByProductIdForUpdate(conn, item.getProductId());
                     
@@ -71,19 +114,25 @@ public class SaleService {
                     }
                     
                     
-                    item.setPriceAtSale(product.getSellingPrice());
-                    item.setLineTotal(product.getSellingPrice().multiply(
-                            BigDecimal.valueOf(item.getQuantity())));
+                    item.setPriceAtSale(price);
+                    item.setLineTotal(price.multiply(BigDecimal.valueOf(item.getQuantity())));
                     
                     totalAmount = totalAmount.add(item.getLineTotal());
                 }
                 
                 
+                Validator.validateDiscount(manualDiscount, totalAmount);
+                PromotionResult promotions = applyPromotions(sale);
+                sale.setPromotionDiscount(promotions.getTotalDiscount());
+                sale.setDiscount(manualDiscount.add(promotions.getTotalDiscount()));
+                Validator.validateDiscount(sale.getDiscount(), totalAmount);
                 sale.setTotalAmount(totalAmount);
-                sale.setFinalAmount(totalAmount.subtract(
-                        sale.getDiscount() != null ? sale.getDiscount() : BigDecimal.ZERO));
+                sale.setFinalAmount(totalAmount.subtract(sale.getDiscount()));
                 
                 Sale savedSale = saleDao.save(conn, sale);
+                if (promotions.getAppliedCount() > 0) {
+                    promotionDao.saveApplied(conn, savedSale.getId(), promotions);
+                }
                 
                 
                 for (SaleItem item : sale.getItems()) {
@@ -109,27 +158,75 @@ public class SaleService {
                     stockLog.setReferenceType("SALE");
                     stockLogDao.save(conn, stockLog);
                 }
+                if (EventOutboxDao.isEnabled()) {
+                    outboxDao.save(conn, EventPayloads.sale(savedSale));
+                }
                 
                 logger.info("Создана продажа: {} на сумму {}", 
                         savedSale.getSaleNumber(), savedSale.getFinalAmount());
                 
                 return savedSale;
             });
+            commitEvents.publish(CommitEvent.Type.SALE, created.getSaleDate(),
+                    created.getItems().stream().map(SaleItem::getProductId).toList());
+            return created;
             
+        } catch (InsufficientStockException e) {
+            insufficientStockCounter.increment();
+            throw e;
         } catch (SQLException e) {
             
             if (e.getMessage() != null && e.getMessage().contains("chk_quantity_non_negative")) {
+                insufficientStockCounter.increment();
                 throw new InsufficientStockException(0, 0, 0);
             }
+            if (DatabaseManager.isCommitOutcomeUnknown(e)) {
+                // Продажа могла быть зафиксирована: повторная проводка в журнале задвоила бы ее
+                syncEngine.goOffline(e);
+                logger.error("Связь с БД потеряна при фиксации продажи, результат неизвестен", e);
+                throw new DatabaseException("Связь с БД потеряна при фиксации продажи: "
+                        + "после восстановления связи проверьте, проведена ли она", e);
+            }
+            if (syncEngine.goOffline(e)) {
+                // Связь оборвалась до COMMIT, сервер откатил транзакцию: продажа проводится
+                // заново по локальному каталогу, без акций
+                sale.setDiscount(manualDiscount);
+                sale.setPromotionDiscount(BigDecimal.ZERO);
+                return syncEngine.recordOfflineSale(sale, employeeId);
+            }
             logger.error("Ошибка создания продажи", e);
             throw new DatabaseException("Ошибка при создании продажи", e);
+        } finally {
+            createSaleTimer.recordSince(start);
         }
     }
 
     
+    /**
+     * Скидки действующих акций по позициям с уже проставленными ценами. Движок берется
+     * из памяти, поэтому расчет не удерживает блокировки остатков дольше обычного.
+     */
+    private PromotionResult applyPromotions(Sale sale) {
+        List<SaleItem> items = sale.getItems();
+        int n = items.size();
+        int[] productIds = new int[n];
+        int[] quantities = new int[n];
+        long[] unitPrices = new long[n];
+        for (int i = 0; i < n; i++) {
+            SaleItem item = items.get(i);
+            productIds[i] = item.getProductId();
+            quantities[i] = item.getQuantity();
+            unitPrices[i] = PromotionEngine.toCents(item.getPriceAtSale());
+        }
+        return promotionIndex.current().apply(n, productIds, quantities, unitPrices,
+                Timestamp.valueOf(sale.getSaleDate()).getTime());
+    }
+
+    
     public void processReturn(Integer saleId, Integer itemId, int returnQuantity, Integer employeeId) {
+        long start = System.nanoTime();
         try {
-            dbManager.executeInTransaction(conn -> {
+            Sale returnedSale = dbManager.executeInTransaction(conn -> {
                 
                 Optional<Sale> saleOpt = saleDao.findById(saleId);
                 if (saleOpt.isEmpty()) {
@@ -182,16 +279,26 @@ public class SaleService {
                 if (fullyReturned) {
                     saleDao.markAsReturned(conn, saleId);
                 }
+                if (EventOutboxDao.isEnabled()) {
+                    outboxDao.save(conn, EventPayloads.saleReturn(saleOpt.get(), item, returnQuantity, employeeId));
+                }
                 
                 logger.info("Выполнен возврат: товар ID {}, кол-во {}, чек ID {}", 
                         item.getProductId(), returnQuantity, saleId);
                 
-                return null;
+                Sale original = saleOpt.get();
+                original.setItems(List.of(item));
+                return original;
             });
+            // Возврат меняет выручку за день исходной продажи
+            commitEvents.publish(CommitEvent.Type.RETURN, returnedSale.getSaleDate(),
+                    List.of(returnedSale.getItems().get(0).getProductId()));
             
         } catch (SQLException e) {
             logger.error("Ошибка возврата товара", e);
             throw new DatabaseException("Ошибка при возврате товара", e);
+        } finally {
+            processReturnTimer.recordSince(start);
         }
     }
 
@@ -226,6 +333,7 @@ public class SaleService {
     }
 
     
+    @DbWorkload(Workload.REPORTING)
     public List<Sale> findTodaySales() {
         try {
             return saleDao.findToday();
@@ -236,9 +344,10 @@ public class SaleService {
     }
 
     
+    @DbWorkload(Workload.REPORTING)
     public List<Sale> findSalesByPeriod(LocalDateTime start, LocalDateTime end) {
         try {
-            return saleDao.findByPeriod(start, end);
+            return slicedExecutor.execute(start, end, saleDao::findByPeriod, SlicedReportExecutor.newestFirst());
         } catch (SQLException e) {
             logger.error("Ошибка получения продаж за период", e);
             throw new DatabaseException("Ошибка при получении продаж", e);
@@ -0,0 +1,133 @@
+package com.retail.service;
+
+import com.retail.db.DatabaseManager;
+import com.retail.db.ReportSession;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.util.AppConfig;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+
+/**
+ * Выполнение отчета за длинный период по частям: период делится на дни или недели,
+ * части считаются параллельно на нескольких соединениях одного снимка
+ * ({@link ReportSession}) и объединяются по порядку частей.
+ */
+class SlicedReportExecutor {
+    // Точность timestamp в PostgreSQL - микросекунда: конец части на 1 мкс раньше начала следующей
+    private static final long BOUNDARY_NANOS = 1_000;
+
+    private final DatabaseManager dbManager;
+    private final long minSlicedDays;
+    private final long weeklySliceDays;
+    private final Counter slicesCounter;
+
+    SlicedReportExecutor() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.minSlicedDays = AppConfig.getLong("report.slice.min.days", 3);
+        this.weeklySliceDays = AppConfig.getLong("report.slice.weekly.after.days", 62);
+        this.slicesCounter = MetricsRegistry.getInstance().counter("retail_report_slices_total");
+    }
+
+    @FunctionalInterface
+    interface SliceQuery<A> {
+        /**
+         * Частичный результат за интервал; обе границы включаются, как в BETWEEN.
+         */
+        A run(LocalDateTime from, LocalDateTime to) throws SQLException;
+    }
+
+    /**
+     * Результат за [start, end]. merge должен быть ассоциативным: части объединяются
+     * слева направо в хронологическом порядке.
+     */
+    <A> A execute(LocalDateTime start, LocalDateTime end, SliceQuery<A> query, BinaryOperator<A> merge)
+            throws SQLException {
+        List<LocalDateTime[]> slices = slice(start, end);
+        // Внутри уже открытого сеанса остаемся в его снимке и не занимаем общие потоки отчетов
+        if (slices.size() == 1 || ReportSession.isActive()) {
+            return query.run(start, end);
+        }
+
+        int count = slices.size();
+        List<A> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(null);
+        }
+
+        try (ReportSession session = dbManager.openReportSession()) {
+            // Каждый поток держит одно соединение и сам забирает следующие части:
+            // короткие и длинные дни выравниваются без лишних соединений
+            AtomicInteger next = new AtomicInteger();
+            ReportSession.ReportTask<Void> worker = () -> {
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    LocalDateTime[] slice = slices.get(i);
+                    A partial = query.run(slice[0], slice[1]);
+                    synchronized (results) {
+                        results.set(i, partial);
+                    }
+                }
+                return null;
+            };
+
+            int helpers = Math.min(session.getParallelism(), count) - 1;
+            List<ReportSession.Part<Void>> parts = new ArrayList<>(helpers);
+            for (int i = 0; i < helpers; i++) {
+                parts.add(session.fork(worker));
+            }
+            worker.call();
+            for (ReportSession.Part<Void> part : parts) {
+                part.join();
+            }
+        }
+        slicesCounter.increment(count);
+
+        A total = results.get(0);
+        for (int i = 1; i < count; i++) {
+            total = merge.apply(total, results.get(i));
+        }
+        return total;
+    }
+
+    /**
+     * Объединение списков, отсортированных по убыванию даты: более поздняя часть идет первой.
+     */
+    static <T> BinaryOperator<List<T>> newestFirst() {
+        return (older, newer) -> {
+            List<T> merged = new ArrayList<>(older.size() + newer.size());
+            merged.addAll(newer);
+            merged.addAll(older);
+            return merged;
+        };
+    }
+
+    private List<LocalDateTime[]> slice(LocalDateTime start, LocalDateTime end) {
+        List<LocalDateTime[]> slices = new ArrayList<>();
+        long days = Duration.between(start, end).toDays();
+        if (days < minSlicedDays) {
+            slices.add(new LocalDateTime[]{start, end});
+            return slices;
+        }
+
+        long step = days > weeklySliceDays ? 7 : 1;
+        LocalDateTime from = start;
+        while (from.isBefore(end)) {
+            LocalDateTime next = from.truncatedTo(ChronoUnit.DAYS).plusDays(step);
+            if (!next.isBefore(end)) {
+                slices.add(new LocalDateTime[]{from, end});
+                break;
+            }
+            slices.add(new LocalDateTime[]{from, next.minusNanos(BOUNDARY_NANOS)});
+            from = next;
+        }
+        return slices;
+    }
+}
@@ -0,0 +1,170 @@
+package com.retail.service;
+
+import com.retail.dao.ProductDao;
+import com.retail.dao.StockLogDao;
+import com.retail.db.DatabaseManager;
+import com.retail.db.DbWorkload;
+import com.retail.db.ReportSession;
+import com.retail.db.Workload;
+import com.retail.exception.DatabaseException;
+import com.retail.metrics.Counter;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.retail.model.StockDiscrepancy;
+import com.retail.model.enums.DiscrepancyType;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Сверка остатков с журналом движений. Товары делятся на диапазоны id, диапазоны
+ * проверяются параллельно в одном {@link ReportSession}: все части видят один снимок
+ * данных, поэтому продажи во время сверки не дают ложных расхождений. Нагрузка
+ * ограничена пулом отчетов, reconcile.parallelism и паузой между диапазонами.
+ */
+@DbWorkload(Workload.REPORTING)
+public class StockReconciliationService {
+    private static final Logger logger = LoggerFactory.getLogger(StockReconciliationService.class);
+    private static final Timer reconcileTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "reconcileStock");
+    private static final Counter discrepanciesCounter = MetricsRegistry.getInstance()
+            .counter("retail_stock_discrepancies_total");
+
+    private final DatabaseManager dbManager;
+    private final ProductDao productDao;
+    private final StockLogDao stockLogDao;
+    private final int rangeSize;
+    private final int maxParallelism;
+    private final long pauseMs;
+
+    public StockReconciliationService() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.productDao = new ProductDao();
+        this.stockLogDao = new StockLogDao();
+        this.rangeSize = Math.max(1, AppConfig.getInt("reconcile.range.size", 5000));
+        this.maxParallelism = Math.max(1, AppConfig.getInt("reconcile.parallelism", 2));
+        this.pauseMs = AppConfig.getLong("reconcile.range.pause.ms", 0);
+    }
+
+    public ReconciliationReport reconcile() {
+        long start = System.nanoTime();
+        ReconciliationReport report = new ReconciliationReport(LocalDateTime.now());
+        try (ReportSession session = dbManager.openReportSession()) {
+            int[] idRange = productDao.findIdRange();
+            if (idRange == null) {
+                return report;
+            }
+            List<int[]> ranges = new ArrayList<>();
+            for (long from = idRange[0]; from <= idRange[1]; from += rangeSize) {
+                ranges.add(new int[]{(int) from, (int) Math.min(from + rangeSize - 1, idRange[1])});
+            }
+
+            int count = ranges.size();
+            List<List<StockDiscrepancy>> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(null);
+            }
+            AtomicInteger next = new AtomicInteger();
+            ReportSession.ReportTask<Void> worker = () -> {
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    int[] range = ranges.get(i);
+                    List<StockDiscrepancy> found = new ArrayList<>(stockLogDao.findLedgerMismatches(range[0], range[1]));
+                    found.addAll(stockLogDao.findChainBreaks(range[0], range[1]));
+                    synchronized (results) {
+                        results.set(i, found);
+                    }
+                    pause();
+                }
+                return null;
+            };
+
+            int helpers = Math.min(Math.min(session.getParallelism(), maxParallelism), count) - 1;
+            List<ReportSession.Part<Void>> parts = new ArrayList<>(helpers);
+            for (int i = 0; i < helpers; i++) {
+                parts.add(session.fork(worker));
+            }
+            worker.call();
+            for (ReportSession.Part<Void> part : parts) {
+                part.join();
+            }
+
+            for (List<StockDiscrepancy> found : results) {
+                report.discrepancies.addAll(found);
+            }
+            report.rangeCount = count;
+            report.firstProductId = idRange[0];
+            report.lastProductId = idRange[1];
+        } catch (SQLException e) {
+            logger.error("Ошибка сверки остатков с журналом", e);
+            throw new DatabaseException("Ошибка при сверке остатков с журналом", e);
+        } finally {
+            report.durationMs = (System.nanoTime() - start) / 1_000_000;
+            reconcileTimer.recordSince(start);
+        }
+
+        discrepanciesCounter.increment(report.discrepancies.size());
+        if (report.isClean()) {
+            logger.info("Сверка остатков: расхождений нет ({} диапазонов, {} мс)", report.rangeCount, report.durationMs);
+        } else {
+            logger.warn("Сверка остатков: найдено расхождений {}: {}", report.discrepancies.size(), report.getCountsByType());
+            for (StockDiscrepancy d : report.discrepancies) {
+                logger.warn("Расхождение остатка: {}", d);
+            }
+        }
+        return report;
+    }
+
+    private void pause() throws SQLException {
+        if (pauseMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(pauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Сверка остатков прервана", e);
+        }
+    }
+
+
+    public static class ReconciliationReport {
+        private final LocalDateTime startedAt;
+        private final List<StockDiscrepancy> discrepancies = new ArrayList<>();
+        private int rangeCount;
+        private int firstProductId;
+        private int lastProductId;
+        private long durationMs;
+
+        ReconciliationReport(LocalDateTime startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public List<StockDiscrepancy> getDiscrepancies() { return discrepancies; }
+        public int getRangeCount() { return rangeCount; }
+        public int getFirstProductId() { return firstProductId; }
+        public int getLastProductId() { return lastProductId; }
+        public long getDurationMs() { return durationMs; }
+
+        public boolean isClean() {
+            return discrepancies.isEmpty();
+        }
+
+        public Map<DiscrepancyType, Long> getCountsByType() {
+            Map<DiscrepancyType, Long> counts = new EnumMap<>(DiscrepancyType.class);
+            for (StockDiscrepancy d : discrepancies) {
+                counts.merge(d.getType(), 1L, Long::sum);
+            }
+            return counts;
+        }
+    }
+}
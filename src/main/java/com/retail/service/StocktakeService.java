@@ -0,0 +1,271 @@
+package com.retail.service;
+
+import com.retail.dao.EventOutboxDao;
+import com.retail.dao.StocktakeDao;
+import com.retail.db.DatabaseManager;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
+import com.retail.exception.DatabaseException;
+import com.retail.exception.ValidationException;
+import com.retail.metrics.MetricsRegistry;
+import com.retail.metrics.Timer;
+import com.retail.model.Stocktake;
+import com.retail.model.StocktakeLine;
+import com.retail.model.enums.StocktakeStatus;
+import com.retail.service.CommitEventBus.CommitEvent;
+import com.retail.util.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+
+/**
+ * Инвентаризация: при открытии фиксируются остатки всех товаров, подсчеты принимаются
+ * пачками (файл сканера или ручной ввод), при проведении все расхождения списываются
+ * или оприходуются одной транзакцией. Продажи и поступления во время подсчета не
+ * искажают результат: для каждого товара учитываются движения между фиксацией и его подсчетом.
+ */
+@DbWorkload(Workload.BACKOFFICE)
+public class StocktakeService {
+    private static final Logger logger = LoggerFactory.getLogger(StocktakeService.class);
+    private static final Timer recordCountsTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "recordStocktakeCounts");
+    private static final Timer applyTimer = MetricsRegistry.getInstance()
+            .timer("retail_service_seconds", "operation", "applyStocktake");
+
+    private final DatabaseManager dbManager;
+    private final StocktakeDao stocktakeDao;
+    private final CommitEventBus commitEvents;
+    private final int batchSize;
+
+    public StocktakeService() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.stocktakeDao = new StocktakeDao();
+        this.commitEvents = CommitEventBus.getInstance();
+        this.batchSize = Math.max(1, AppConfig.getInt("stocktake.batch.size", 5000));
+    }
+
+    
+    public Stocktake start(Integer userId, String notes) {
+        try {
+            if (stocktakeDao.findOpen().isPresent()) {
+                throw new ValidationException("Уже есть незавершенная инвентаризация");
+            }
+            Stocktake stocktake = dbManager.executeInTransaction(conn -> stocktakeDao.open(conn, userId, notes));
+            logger.info("Открыта инвентаризация №{}: зафиксировано остатков {}", stocktake.getId(), stocktake.getItemCount());
+            return stocktake;
+        } catch (SQLException e) {
+            logger.error("Ошибка открытия инвентаризации", e);
+            throw new DatabaseException("Ошибка при открытии инвентаризации", e);
+        }
+    }
+
+    
+    public Optional<Stocktake> getOpen() {
+        try {
+            return stocktakeDao.findOpen();
+        } catch (SQLException e) {
+            logger.error("Ошибка получения инвентаризации", e);
+            throw new DatabaseException("Ошибка при получении инвентаризации", e);
+        }
+    }
+
+    
+    /**
+     * Записывает подсчеты по артикулам. add = true прибавляет к ранее подсчитанному
+     * (несколько зон или сканеров), иначе заменяет подсчет товара.
+     */
+    public CountResult recordCounts(Integer stocktakeId, Map<String, Integer> counts, boolean add) {
+        CountResult result = new CountResult();
+        try {
+            flush(stocktakeId, counts, add, result);
+        } catch (SQLException e) {
+            logger.error("Ошибка записи подсчетов инвентаризации", e);
+            throw new DatabaseException("Ошибка при записи подсчетов инвентаризации", e);
+        }
+        return result;
+    }
+
+    
+    /**
+     * Загружает файл сканера: строка "SKU" - одна единица товара, "SKU;кол-во"
+     * (разделитель ';', ',' или табуляция) - указанное количество. Подсчеты
+     * прибавляются к уже записанным и отправляются пачками по stocktake.batch.size артикулов.
+     */
+    public CountResult importScannerFile(Integer stocktakeId, Path file) {
+        CountResult result = new CountResult();
+        Map<String, Integer> batch = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                result.lines++;
+
+                int sep = indexOfSeparator(line);
+                String sku = sep < 0 ? line : line.substring(0, sep).strip();
+                int quantity = 1;
+                if (sep >= 0) {
+                    try {
+                        quantity = Integer.parseInt(line.substring(sep + 1).strip());
+                    } catch (NumberFormatException e) {
+                        quantity = -1;
+                    }
+                }
+                if (sku.isEmpty() || quantity < 0) {
+                    result.invalidLines++;
+                    logger.warn("Файл {}: строка {} пропущена: {}", file.getFileName(), lineNumber, line);
+                    continue;
+                }
+
+                batch.merge(sku, quantity, Integer::sum);
+                if (batch.size() >= batchSize) {
+                    flush(stocktakeId, batch, true, result);
+                    batch.clear();
+                }
+            }
+            flush(stocktakeId, batch, true, result);
+        } catch (IOException e) {
+            throw new ValidationException("Не удалось прочитать файл: " + e.getMessage());
+        } catch (SQLException e) {
+            logger.error("Ошибка загрузки файла сканера", e);
+            throw new DatabaseException("Ошибка при загрузке файла сканера", e);
+        }
+        logger.info("Инвентаризация №{}: файл {} загружен, строк {}, товаров {}, неизвестных артикулов {}",
+                stocktakeId, file.getFileName(), result.lines, result.recorded, result.unknownSkus.size());
+        return result;
+    }
+
+    private void flush(Integer stocktakeId, Map<String, Integer> counts, boolean add,
+                       CountResult result) throws SQLException {
+        if (counts.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            String[] skus = new String[counts.size()];
+            Integer[] quantities = new Integer[counts.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                if (entry.getValue() < 0) {
+                    throw new ValidationException("Количество не может быть отрицательным: " + entry.getKey());
+                }
+                skus[i] = entry.getKey();
+                quantities[i] = entry.getValue();
+                i++;
+            }
+
+            int recorded = stocktakeDao.recordCounts(stocktakeId, skus, quantities, add);
+            if (recorded == 0 && stocktakeDao.findOpen().filter(s -> s.getId().equals(stocktakeId)).isEmpty()) {
+                throw new ValidationException("Инвентаризация уже завершена");
+            }
+            result.recorded += recorded;
+            if (recorded < skus.length) {
+                result.unknownSkus.addAll(stocktakeDao.findUnknownSkus(skus));
+            }
+        } finally {
+            recordCountsTimer.recordSince(start);
+        }
+    }
+
+    private static int indexOfSeparator(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ';' || c == ',' || c == '\t') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    
+    /**
+     * Расхождения с учетным остатком. uncountedAsZero = true считает неподсчитанные
+     * товары отсутствующими, иначе они не попадают в результат.
+     */
+    public List<StocktakeLine> getDiscrepancies(Integer stocktakeId, boolean uncountedAsZero) {
+        try {
+            return stocktakeDao.findDiscrepancies(stocktakeId, uncountedAsZero);
+        } catch (SQLException e) {
+            logger.error("Ошибка расчета расхождений инвентаризации", e);
+            throw new DatabaseException("Ошибка при расчете расхождений инвентаризации", e);
+        }
+    }
+
+    
+    /**
+     * Проводит инвентаризацию: корректирует остатки по всем расхождениям одной транзакцией.
+     * Возвращает число измененных товаров.
+     */
+    public int apply(Integer stocktakeId, Integer userId, boolean uncountedAsZero) {
+        long start = System.nanoTime();
+        try {
+            List<Integer> changed = dbManager.executeInTransaction(conn -> {
+                StocktakeStatus status = stocktakeDao.lockStatus(conn, stocktakeId)
+                        .orElseThrow(() -> new ValidationException("Инвентаризация не найдена"));
+                if (status != StocktakeStatus.OPEN) {
+                    throw new ValidationException("Инвентаризация уже " + status.getDisplayName().toLowerCase());
+                }
+                return stocktakeDao.apply(conn, stocktakeId, userId, uncountedAsZero, EventOutboxDao.isEnabled());
+            });
+            if (!changed.isEmpty()) {
+                commitEvents.publish(CommitEvent.Type.ADJUSTMENT, LocalDateTime.now(), changed);
+            }
+            logger.info("Проведена инвентаризация №{}: скорректировано остатков {}", stocktakeId, changed.size());
+            return changed.size();
+        } catch (SQLException e) {
+            logger.error("Ошибка проведения инвентаризации", e);
+            throw new DatabaseException("Ошибка при проведении инвентаризации", e);
+        } finally {
+            applyTimer.recordSince(start);
+        }
+    }
+
+    
+    public void cancel(Integer stocktakeId) {
+        try {
+            dbManager.executeInTransaction(conn -> {
+                StocktakeStatus status = stocktakeDao.lockStatus(conn, stocktakeId)
+                        .orElseThrow(() -> new ValidationException("Инвентаризация не найдена"));
+                if (status != StocktakeStatus.OPEN) {
+                    throw new ValidationException("Инвентаризация уже " + status.getDisplayName().toLowerCase());
+                }
+                stocktakeDao.cancel(conn, stocktakeId);
+                return null;
+            });
+            logger.info("Инвентаризация №{} отменена", stocktakeId);
+        } catch (SQLException e) {
+            logger.error("Ошибка отмены инвентаризации", e);
+            throw new DatabaseException("Ошибка при отмене инвентаризации", e);
+        }
+    }
+
+    
+    public static class CountResult {
+        private int lines;
+        private int invalidLines;
+        private int recorded;
+        private final List<String> unknownSkus = new ArrayList<>();
+
+        public int getLines() { return lines; }
+        public int getInvalidLines() { return invalidLines; }
+        public int getRecorded() { return recorded; }
+        public List<String> getUnknownSkus() { return unknownSkus; }
+    }
+}
@@ -0,0 +1,59 @@
+package com.retail.service;
+
+import com.retail.util.AppConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Короткоживущий кэш логинов, которых нет в БД.
+ * Повторные попытки входа под несуществующим логином отклоняются без запроса к БД.
+ */
+final class UnknownLoginCache {
+    private static final UnknownLoginCache INSTANCE = new UnknownLoginCache();
+
+    private final ConcurrentHashMap<String, Long> expiries = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final int maxSize;
+
+    private UnknownLoginCache() {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(AppConfig.getLong("auth.negative.cache.ttl.seconds", 30));
+        this.maxSize = AppConfig.getInt("auth.negative.cache.max.size", 10_000);
+    }
+
+    static UnknownLoginCache getInstance() {
+        return INSTANCE;
+    }
+
+    boolean contains(String login) {
+        Long expiry = expiries.get(login);
+        if (expiry == null) {
+            return false;
+        }
+        if (System.nanoTime() - expiry >= 0) {
+            expiries.remove(login, expiry);
+            return false;
+        }
+        return true;
+    }
+
+    void add(String login) {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        if (expiries.size() >= maxSize) {
+            long now = System.nanoTime();
+            expiries.values().removeIf(expiry -> now - expiry >= 0);
+            if (expiries.size() >= maxSize) {
+                // Перебор логинов: проще начать заново, чем вытеснять по одному
+                expiries.clear();
+            }
+        }
+        expiries.put(login, System.nanoTime() + ttlNanos);
+    }
+
+    void clear() {
+        expiries.clear();
+    }
+}
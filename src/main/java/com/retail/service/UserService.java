@@ -2,12 +2,13 @@ package com.retail.service;
 
 import com.retail.dao.SecurityLogDao;
 import com.retail.dao.UserDao;
+import com.retail.db.DbWorkload;
+import com.retail.db.Workload;
 import com.retail.exception.DatabaseException;
 import com.retail.exception.ValidationException;
 import com.retail.model.User;
 import com.retail.model.enums.UserRole;
 import com.retail.model.enums.UserStatus;
-import org.mindrot.jbcrypt.BCrypt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,15 +17,18 @@ import java.util.List;
 import java.util.Optional;
 
 
+@DbWorkload(Workload.BACKOFFICE)
 public class UserService {
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
     
     private final UserDao userDao;
     private final SecurityLogDao securityLogDao;
+    private final PasswordHasher passwordHasher;
 
     public UserService() {
         this.userDao = new UserDao();
         this.securityLogDao = new SecurityLogDao();
+        this.passwordHasher = PasswordHasher.getInstance();
     }
 
     
@@ -52,13 +56,14 @@ public class UserService {
             
             User user = new User();
             user.setLogin(login.trim().toLowerCase());
-            user.setPasswordHash(BCrypt.hashpw(password, BCrypt.gensalt(10)));
+            user.setPasswordHash(passwordHasher.hash(password));
             user.setRole(role);
             user.setStatus(UserStatus.ACTIVE);
             user.setFullName(fullName.trim());
             user.setEmail(email != null ? email.trim() : null);
             
             user = userDao.save(user);
+            UnknownLoginCache.getInstance().clear();
             
             
             securityLogDao.logUserChange(adminId, "USER_CREATE", 
@@ -178,7 +183,7 @@ public class UserService {
                 throw new ValidationException("Пользователь не найден");
             }
             
-            String passwordHash = BCrypt.hashpw(newPassword, BCrypt.gensalt(10));
+            String passwordHash = passwordHasher.hash(newPassword);
             userDao.updatePassword(userId, passwordHash);
             
             securityLogDao.logUserChange(adminId, "PASSWORD_RESET",
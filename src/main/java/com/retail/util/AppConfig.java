@@ -0,0 +1,67 @@
+package com.retail.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+
+public final class AppConfig {
+
+    private static volatile Properties properties;
+
+    private AppConfig() {
+    }
+
+    
+    public static Properties getProperties() {
+        Properties props = properties;
+        if (props == null) {
+            synchronized (AppConfig.class) {
+                props = properties;
+                if (props == null) {
+                    props = load();
+                    properties = props;
+                }
+            }
+        }
+        return props;
+    }
+
+    private static Properties load() {
+        Properties props = new Properties();
+        try (InputStream input = AppConfig.class.getClassLoader()
+                .getResourceAsStream("application.properties")) {
+            if (input == null) {
+                throw new IOException("Файл application.properties не найден");
+            }
+            props.load(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Системные свойства (-Dkey=value) имеют приоритет над файлом
+        for (String name : System.getProperties().stringPropertyNames()) {
+            props.setProperty(name, System.getProperty(name));
+        }
+        return props;
+    }
+
+    public static String get(String key, String defaultValue) {
+        return getProperties().getProperty(key, defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getProperties().getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getProperties().getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getProperties().getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
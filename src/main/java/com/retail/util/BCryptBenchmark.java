@@ -0,0 +1,64 @@
+package com.retail.util;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Замер пропускной способности проверки паролей: входов в секунду на ядро
+ * для разных стоимостей BCrypt и числа потоков.
+ * Аргументы: [секунд на замер] [стоимость от] [стоимость до] [макс. потоков].
+ */
+public class BCryptBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int minCost = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxCost = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : cores;
+
+        System.out.printf("Ядер: %d, замер: %d с%n", cores, seconds);
+        System.out.printf("%-10s %-8s %-12s %-12s %-10s%n", "Стоимость", "Потоки", "Входов/с", "На поток", "Мс/вход");
+
+        for (int cost = minCost; cost <= maxCost; cost++) {
+            String hash = BCrypt.hashpw("password123", BCrypt.gensalt(cost));
+            // Прогрев JIT
+            for (int i = 0; i < 3; i++) {
+                BCrypt.checkpw("password123", hash);
+            }
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double rate = measure(hash, threads, seconds);
+                System.out.printf("%-10d %-8d %-12.1f %-12.1f %-10.1f%n",
+                        cost, threads, rate, rate / threads, 1000.0 * threads / rate);
+                if (threads < maxThreads && threads * 2 > maxThreads) {
+                    threads = maxThreads / 2;
+                }
+            }
+        }
+    }
+
+    private static double measure(String hash, int threads, int seconds) throws InterruptedException {
+        LongAdder completed = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    BCrypt.checkpw("password123", hash);
+                    completed.increment();
+                }
+                done.countDown();
+            });
+            t.start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        return completed.sum() / elapsed;
+    }
+}
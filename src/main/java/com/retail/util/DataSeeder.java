@@ -0,0 +1,839 @@
+package com.retail.util;
+
+import com.retail.db.DatabaseManager;
+import com.retail.db.Workload;
+import org.mindrot.jbcrypt.BCrypt;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Генератор синтетических данных для нагрузочного тестирования.
+ *
+ * Данные детерминированы: при одинаковых параметрах и seed результат совпадает
+ * независимо от числа потоков, т.к. каждый товар и каждый день получают
+ * собственный поток случайных чисел.
+ *
+ * Запуск: java -cp retail.jar com.retail.util.DataSeeder --products=1000000 --days=730 --sales-per-day=40000 --truncate
+ */
+public class DataSeeder {
+    private static final Logger logger = LoggerFactory.getLogger(DataSeeder.class);
+
+    private static final DateTimeFormatter TS_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter NUMBER_DATE_FORMAT = DateTimeFormatter.ofPattern("yyMMdd");
+
+    // Веса часов работы магазина (8:00-21:59): пики в обед и вечером
+    private static final double[] HOUR_WEIGHTS = {
+            0.4, 0.6, 0.8, 0.9, 1.3, 1.4, 1.0, 0.9, 1.0, 1.4, 1.6, 1.5, 1.0, 0.6
+    };
+    private static final int FIRST_HOUR = 8;
+
+    // Пн..Вс
+    private static final double[] DAY_OF_WEEK_FACTORS = {0.85, 0.88, 0.92, 0.95, 1.12, 1.30, 1.10};
+
+    // Янв..Дек
+    private static final double[] MONTH_FACTORS = {
+            0.82, 0.86, 0.97, 0.98, 1.02, 0.97, 0.95, 0.98, 1.00, 1.02, 1.08, 1.38
+    };
+
+    private static final String[] NAME_ADJECTIVES = {
+            "Классический", "Премиум", "Эконом", "Компактный", "Большой", "Мягкий",
+            "Свежий", "Домашний", "Профессиональный", "Детский", "Летний", "Зимний"
+    };
+    private static final String[] NAME_NOUNS = {
+            "набор", "пакет", "комплект", "блок", "модуль", "продукт", "товар", "кейс"
+    };
+
+    private static final String SEED_PASSWORD = "seed123";
+    private static final long PERMUTATION_MULTIPLIER = 2_654_435_761L;
+
+    private long seed = 42L;
+    private int products = 10_000;
+    private int employees = 60;
+    private int managers = 6;
+    private int days = 365;
+    private int salesPerDay = 2_000;
+    private double meanBasketSize = 3.5;
+    private double returnRate = 0.02;
+    private double discountRate = 0.05;
+    private int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+    private boolean truncate;
+    private LocalDate endDate = LocalDate.now().minusDays(1);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private DatabaseManager dbManager;
+    private final AtomicLong salesWritten = new AtomicLong();
+    private final AtomicLong itemsWritten = new AtomicLong();
+
+    private int[] categoryIds;
+    private int[] unitIds;
+    private int firstUserId;
+    private long[] priceCents;
+    private long popularityMultiplier;
+
+    public DataSeeder() {
+    }
+
+    public static void main(String[] args) {
+        DataSeeder seeder = new DataSeeder();
+        int status = 0;
+        try {
+            if (!seeder.parseArgs(args)) {
+                return;
+            }
+            seeder.run();
+        } catch (Exception e) {
+            logger.error("Ошибка генерации данных", e);
+            status = 1;
+        } finally {
+            DatabaseManager.getInstance().shutdown();
+        }
+        // Код ошибки - только после закрытия пула: System.exit не выполняет finally
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    private boolean parseArgs(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--help") || arg.equals("-h")) {
+                printUsage();
+                return false;
+            }
+            if (arg.equals("--truncate")) {
+                truncate = true;
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Неизвестный аргумент: " + arg);
+            }
+            String key = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "seed" -> seed = Long.parseLong(value);
+                case "products" -> products = Integer.parseInt(value);
+                case "employees" -> employees = Integer.parseInt(value);
+                case "managers" -> managers = Integer.parseInt(value);
+                case "days" -> days = Integer.parseInt(value);
+                case "sales-per-day" -> salesPerDay = Integer.parseInt(value);
+                case "basket" -> meanBasketSize = Double.parseDouble(value);
+                case "return-rate" -> returnRate = Double.parseDouble(value);
+                case "discount-rate" -> discountRate = Double.parseDouble(value);
+                case "threads" -> threads = Integer.parseInt(value);
+                case "end-date" -> endDate = LocalDate.parse(value);
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + key);
+            }
+        }
+        if (products <= 0 || employees <= 0 || managers <= 0 || days <= 0 || salesPerDay <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Параметры масштаба должны быть положительными");
+        }
+        if (meanBasketSize < 1.0) {
+            throw new IllegalArgumentException("Средний размер корзины должен быть не меньше 1");
+        }
+        return true;
+    }
+
+    private void printUsage() {
+        System.out.println("Использование: DataSeeder [параметры]");
+        System.out.println("  --products=N        количество товаров (по умолчанию 10000)");
+        System.out.println("  --employees=N       количество кассиров (60)");
+        System.out.println("  --managers=N        количество менеджеров (6)");
+        System.out.println("  --days=N           глубина истории в днях (365)");
+        System.out.println("  --sales-per-day=N   среднее количество чеков в день (2000)");
+        System.out.println("  --basket=X          средний размер корзины (3.5)");
+        System.out.println("  --return-rate=X     доля возвращаемых позиций (0.02)");
+        System.out.println("  --discount-rate=X   доля чеков со скидкой (0.05)");
+        System.out.println("  --threads=N         количество потоков записи");
+        System.out.println("  --seed=N            начальное значение генератора (42)");
+        System.out.println("  --end-date=ГГГГ-ММ-ДД последний день истории (вчера)");
+        System.out.println("  --truncate          очистить таблицы перед генерацией");
+    }
+
+    public void run() throws Exception {
+        long started = System.nanoTime();
+
+        logger.info("Генерация данных: товаров {}, дней {}, чеков в день {}, потоков {}, seed {}",
+                products, days, salesPerDay, threads, seed);
+
+        // Каждому потоку записи нужно свое соединение из пула BACKOFFICE
+        AppConfig.getProperties().setProperty("db.pool.backoffice.size", String.valueOf(threads + 1));
+        // Массовая загрузка и пересчет индексов не укладываются в таймаут интерактивных операций
+        AppConfig.getProperties().setProperty("db.profile.backoffice.statement.timeout.ms", "0");
+        dbManager = DatabaseManager.getInstance();
+
+        prepareDatabase();
+
+        popularityMultiplier = choosePermutationMultiplier(products);
+        priceCents = new long[products];
+        for (int i = 0; i < products; i++) {
+            priceCents[i] = generateSellingPriceCents(i + 1);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "seeder-" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            seedUsers();
+            seedProducts(executor);
+            int[] sold = seedSales(executor);
+            seedReceiptsAndInventory(sold);
+            seedStockLog(executor);
+            finishSequences();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        logger.info("Генерация завершена за {} с: чеков {}, позиций {}",
+                elapsedMs / 1000, salesWritten.get(), itemsWritten.get());
+    }
+
+
+    private void prepareDatabase() throws SQLException {
+        try (Connection conn = dbManager.getConnection(Workload.BACKOFFICE);
+             Statement stmt = conn.createStatement()) {
+
+            if (truncate) {
+                stmt.execute("""
+                    TRUNCATE security_log, stock_log, receipt_items, receipts,
+                             sale_items, sales, inventory, products RESTART IDENTITY CASCADE
+                    """);
+                stmt.execute("DELETE FROM users WHERE login LIKE 'seed\\_%'");
+                logger.info("Таблицы очищены");
+            } else {
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT EXISTS (SELECT 1 FROM products) OR EXISTS (SELECT 1 FROM sales)")) {
+                    rs.next();
+                    if (rs.getBoolean(1)) {
+                        throw new IllegalStateException(
+                                "В базе уже есть товары или продажи. Используйте --truncate");
+                    }
+                }
+            }
+
+            categoryIds = loadIds(stmt, "SELECT id FROM categories ORDER BY id");
+            unitIds = loadIds(stmt, "SELECT id FROM units ORDER BY id");
+            if (categoryIds.length == 0 || unitIds.length == 0) {
+                throw new IllegalStateException("Справочники категорий и единиц измерения пусты");
+            }
+
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM users")) {
+                rs.next();
+                firstUserId = rs.getInt(1) + 1;
+            }
+        }
+    }
+
+    private int[] loadIds(Statement stmt, String sql) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+
+    private int employeeId(int index) {
+        return firstUserId + index;
+    }
+
+    private int managerId(int index) {
+        return firstUserId + employees + index;
+    }
+
+    private void seedUsers() throws SQLException {
+        // BCrypt дорогой, поэтому у всех сгенерированных пользователей один хеш
+        String hash = BCrypt.hashpw(SEED_PASSWORD, BCrypt.gensalt(10));
+        String created = TS_FORMAT.format(startDate().minusDays(30).atTime(9, 0));
+
+        CopyBuffer buf = new CopyBuffer();
+        for (int i = 0; i < employees + managers; i++) {
+            boolean manager = i >= employees;
+            int id = firstUserId + i;
+            String login = manager
+                    ? String.format("seed_mgr_%04d", i - employees + 1)
+                    : String.format("seed_emp_%04d", i + 1);
+            buf.col(id).col(login).col(hash)
+                    .col(manager ? "MANAGER" : "EMPLOYEE").col("ACTIVE")
+                    .col((manager ? "Менеджер " : "Кассир ") + (i + 1))
+                    .col(login + "@retail.local").col(created).end();
+        }
+
+        try (Connection conn = dbManager.getConnection(Workload.BACKOFFICE)) {
+            copy(conn, "COPY users (id, login, password_hash, role, status, full_name, email, created_at) FROM STDIN", buf);
+        }
+        logger.info("Пользователи: {} (пароль: {})", employees + managers, SEED_PASSWORD);
+    }
+
+
+    private long generateSellingPriceCents(int productId) {
+        SplittableRandom rnd = new SplittableRandom(mix(seed, 1, productId));
+        // Логнормальное распределение цен: медиана ~250 ₽, длинный хвост дорогих товаров
+        double price = Math.exp(5.5 + 1.1 * gaussian(rnd));
+        price = Math.max(9.0, Math.min(price, 250_000.0));
+        long cents = Math.round(price) * 100 - (rnd.nextDouble() < 0.6 ? 1 : 0);
+        return Math.max(cents, 100);
+    }
+
+    private void seedProducts(ExecutorService executor) throws Exception {
+        String created = TS_FORMAT.format(startDate().minusDays(7).atTime(8, 0));
+        int chunk = Math.max(1_000, products / (threads * 4));
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int from = 0; from < products; from += chunk) {
+            int start = from;
+            int end = Math.min(products, from + chunk);
+            futures.add(executor.submit(() -> {
+                CopyBuffer buf = new CopyBuffer();
+                for (int i = start; i < end; i++) {
+                    int id = i + 1;
+                    SplittableRandom rnd = new SplittableRandom(mix(seed, 2, id));
+                    long selling = priceCents[i];
+                    long purchase = Math.round(selling * (0.55 + rnd.nextDouble() * 0.25));
+                    int minStock = rnd.nextDouble() < 0.2 ? 0 : 2 + rnd.nextInt(30);
+                    buf.col(id)
+                            .col(String.format("SKU-%08d", id))
+                            .col(NAME_ADJECTIVES[rnd.nextInt(NAME_ADJECTIVES.length)] + " "
+                                    + NAME_NOUNS[rnd.nextInt(NAME_NOUNS.length)] + " " + id)
+                            .colNull()
+                            .col(categoryIds[rnd.nextInt(categoryIds.length)])
+                            .col(unitIds[rnd.nextDouble() < 0.8 ? 0 : rnd.nextInt(unitIds.length)])
+                            .money(purchase)
+                            .money(selling)
+                            .col(minStock)
+                            .col(rnd.nextDouble() < 0.98 ? "t" : "f")
+                            .col(created)
+                            .end();
+                }
+                try (Connection conn = openSeederConnection()) {
+                    copy(conn, """
+                        COPY products (id, sku, name, description, category_id, unit_id,
+                                       purchase_price, selling_price, min_stock_level, is_active, created_at)
+                        FROM STDIN
+                        """, buf);
+                }
+                return null;
+            }));
+        }
+        await(futures);
+        logger.info("Товары: {}", products);
+    }
+
+
+    private LocalDate startDate() {
+        return endDate.minusDays(days - 1L);
+    }
+
+    private int salesForDay(int dayIndex) {
+        LocalDate date = startDate().plusDays(dayIndex);
+        SplittableRandom rnd = new SplittableRandom(mix(seed, 3, dayIndex));
+        double factor = DAY_OF_WEEK_FACTORS[date.getDayOfWeek().getValue() - 1]
+                * MONTH_FACTORS[date.getMonthValue() - 1]
+                * (0.9 + rnd.nextDouble() * 0.2);
+        // Предпраздничные дни
+        if (date.getMonthValue() == 12 && date.getDayOfMonth() >= 24) {
+            factor *= 1.6;
+        }
+        return Math.max(1, (int) Math.round(salesPerDay * factor));
+    }
+
+    private int[] seedSales(ExecutorService executor) throws Exception {
+        // Идентификаторы чеков определяются заранее, чтобы не зависеть от порядка потоков
+        long[] firstSaleId = new long[days + 1];
+        firstSaleId[0] = 1;
+        for (int d = 0; d < days; d++) {
+            firstSaleId[d + 1] = firstSaleId[d] + salesForDay(d);
+        }
+        if (firstSaleId[days] > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком много чеков для столбца sales.id");
+        }
+
+        AtomicInteger nextDay = new AtomicInteger();
+        List<Future<int[]>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                int[] sold = new int[products];
+                try (Connection conn = openSeederConnection()) {
+                    int day;
+                    while ((day = nextDay.getAndIncrement()) < days) {
+                        writeDay(conn, day, (int) firstSaleId[day], salesForDay(day), sold);
+                    }
+                }
+                return sold;
+            }));
+        }
+
+        int[] total = new int[products];
+        for (Future<int[]> f : futures) {
+            int[] sold = f.get();
+            for (int i = 0; i < products; i++) {
+                total[i] += sold[i];
+            }
+        }
+        logger.info("Продажи: чеков {}, позиций {}", salesWritten.get(), itemsWritten.get());
+        return total;
+    }
+
+    private void writeDay(Connection conn, int dayIndex, int firstId, int count, int[] sold) throws SQLException {
+        LocalDate date = startDate().plusDays(dayIndex);
+        SplittableRandom rnd = new SplittableRandom(mix(seed, 4, dayIndex));
+        String datePrefix = "S" + NUMBER_DATE_FORMAT.format(date) + "-";
+
+        // Смена: примерно треть кассиров работает в конкретный день
+        int shiftSize = Math.max(1, employees / 3);
+        int shiftStart = rnd.nextInt(employees);
+
+        CopyBuffer salesBuf = new CopyBuffer();
+        CopyBuffer itemsBuf = new CopyBuffer();
+        CopyBuffer securityBuf = new CopyBuffer();
+
+        for (int k = 0; k < shiftSize; k++) {
+            int employee = employeeId((shiftStart + k) % employees);
+            LocalDateTime login = date.atTime(FIRST_HOUR - 1, 30 + rnd.nextInt(30));
+            if (rnd.nextDouble() < 0.05) {
+                securityBuf.col(employee).col("LOGIN").col("Попытка входа: seed").colNull().col("f")
+                        .col(TS_FORMAT.format(login.minusMinutes(1))).end();
+            }
+            securityBuf.col(employee).col("LOGIN").col("Попытка входа: seed").colNull().col("t")
+                    .col(TS_FORMAT.format(login)).end();
+            securityBuf.col(employee).col("LOGOUT").col("Выход из системы").colNull().col("t")
+                    .col(TS_FORMAT.format(date.atTime(22, rnd.nextInt(30)))).end();
+        }
+
+        int[] basket = new int[64];
+        int[] quantities = new int[64];
+        for (int n = 0; n < count; n++) {
+            int saleId = firstId + n;
+            LocalDateTime saleDate = date.atTime(pickHour(rnd), rnd.nextInt(60), rnd.nextInt(60));
+            int employee = employeeId((shiftStart + rnd.nextInt(shiftSize)) % employees);
+
+            int size = basketSize(rnd);
+            boolean wholeReturn = rnd.nextDouble() < returnRate / 4;
+            long total = 0;
+            boolean allReturned = true;
+
+            for (int line = 0; line < size; line++) {
+                int product = pickProduct(rnd, basket, line);
+                basket[line] = product;
+                int qty = lineQuantity(rnd);
+                quantities[line] = qty;
+
+                long price = priceCents[product];
+                long lineTotal = price * qty;
+                total += lineTotal;
+
+                int returned = 0;
+                if (wholeReturn) {
+                    returned = qty;
+                } else if (rnd.nextDouble() < returnRate) {
+                    returned = 1 + rnd.nextInt(qty);
+                }
+                if (returned < qty) {
+                    allReturned = false;
+                }
+
+                sold[product] += qty;
+                itemsBuf.col(saleId).col(product + 1).col(qty).money(price).money(lineTotal).col(returned).end();
+            }
+
+            long discount = rnd.nextDouble() < discountRate ? total * 5 / 100 : 0;
+            String ts = TS_FORMAT.format(saleDate);
+            salesBuf.col(saleId)
+                    .col(datePrefix + String.format("%05d", n + 1))
+                    .col(employee)
+                    .col(ts)
+                    .money(total)
+                    .money(discount)
+                    .money(total - discount)
+                    .col(allReturned ? "t" : "f")
+                    .col(ts)
+                    .end();
+            itemsWritten.addAndGet(size);
+        }
+
+        copy(conn, """
+            COPY sales (id, sale_number, employee_id, sale_date, total_amount, discount,
+                        final_amount, is_returned, created_at)
+            FROM STDIN
+            """, salesBuf);
+        copy(conn, "COPY sale_items (sale_id, product_id, quantity, price_at_sale, line_total, returned_qty) FROM STDIN",
+                itemsBuf);
+        copy(conn, "COPY security_log (user_id, action, details, ip_address, success, created_at) FROM STDIN",
+                securityBuf);
+
+        long done = salesWritten.addAndGet(count);
+        if (dayIndex % 30 == 0) {
+            logger.info("День {} из {}: записано чеков {}", dayIndex + 1, days, done);
+        }
+    }
+
+    private int pickHour(SplittableRandom rnd) {
+        double total = 0;
+        for (double w : HOUR_WEIGHTS) {
+            total += w;
+        }
+        double x = rnd.nextDouble() * total;
+        for (int i = 0; i < HOUR_WEIGHTS.length; i++) {
+            x -= HOUR_WEIGHTS[i];
+            if (x <= 0) {
+                return FIRST_HOUR + i;
+            }
+        }
+        return FIRST_HOUR + HOUR_WEIGHTS.length - 1;
+    }
+
+    private int basketSize(SplittableRandom rnd) {
+        // Геометрическое распределение со сдвигом: много маленьких корзин, редкие большие
+        double p = 1.0 / meanBasketSize;
+        int size = 1 + (int) Math.floor(Math.log(1.0 - rnd.nextDouble()) / Math.log(1.0 - p + 1e-12));
+        return Math.min(Math.max(size, 1), Math.min(40, products));
+    }
+
+    private int lineQuantity(SplittableRandom rnd) {
+        double x = rnd.nextDouble();
+        if (x < 0.80) {
+            return 1;
+        }
+        if (x < 0.93) {
+            return 2;
+        }
+        return 3 + rnd.nextInt(4);
+    }
+
+    private int pickProduct(SplittableRandom rnd, int[] basket, int filled) {
+        for (int attempt = 0; ; attempt++) {
+            // Степенное распределение популярности: ранг = N * u^3
+            int rank = (int) (products * Math.pow(rnd.nextDouble(), 3.0));
+            int product = (int) ((rank * popularityMultiplier) % products);
+            if (attempt >= 5 || !contains(basket, filled, product)) {
+                return product;
+            }
+        }
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void seedReceiptsAndInventory(int[] sold) throws SQLException {
+        LocalDateTime receiptDate = startDate().minusDays(1).atTime(7, 0);
+        String ts = TS_FORMAT.format(receiptDate);
+        String numberPrefix = "R" + NUMBER_DATE_FORMAT.format(receiptDate) + "-";
+        int productsPerReceipt = 500;
+        int receiptCount = (products + productsPerReceipt - 1) / productsPerReceipt;
+
+        CopyBuffer receiptsBuf = new CopyBuffer();
+        CopyBuffer itemsBuf = new CopyBuffer();
+        CopyBuffer inventoryBuf = new CopyBuffer();
+
+        for (int r = 0; r < receiptCount; r++) {
+            int receiptId = r + 1;
+            long total = 0;
+            for (int i = r * productsPerReceipt; i < Math.min(products, (r + 1) * productsPerReceipt); i++) {
+                SplittableRandom rnd = new SplittableRandom(mix(seed, 5, i + 1));
+                // Начальный приход покрывает все продажи, поэтому остаток никогда не уходит в минус
+                int leftover = rnd.nextInt(60);
+                int quantity = sold[i] + leftover;
+                if (quantity == 0) {
+                    quantity = 1;
+                    leftover = 1;
+                }
+                long purchase = Math.round(priceCents[i] * 0.65);
+                itemsBuf.col(receiptId).col(i + 1).col(quantity).money(purchase).money(purchase * quantity).end();
+                inventoryBuf.col(i + 1).col(leftover).col(0).end();
+                total += purchase * quantity;
+            }
+            receiptsBuf.col(receiptId).col(numberPrefix + String.format("%05d", receiptId))
+                    .col("Начальное заполнение").col(managerId(r % managers)).col(ts).money(total)
+                    .col("Сгенерировано DataSeeder").col(ts).end();
+        }
+
+        try (Connection conn = openSeederConnection()) {
+            copy(conn, """
+                COPY receipts (id, receipt_number, supplier_info, manager_id, receipt_date,
+                               total_amount, notes, created_at)
+                FROM STDIN
+                """, receiptsBuf);
+            copy(conn, "COPY receipt_items (receipt_id, product_id, quantity, purchase_price, line_total) FROM STDIN",
+                    itemsBuf);
+            copy(conn, "COPY inventory (product_id, quantity, reserved) FROM STDIN", inventoryBuf);
+
+            // Возвращенные товары снова на складе
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("""
+                    UPDATE inventory i SET quantity = i.quantity + r.returned
+                    FROM (SELECT product_id, SUM(returned_qty) AS returned
+                          FROM sale_items WHERE returned_qty > 0 GROUP BY product_id) r
+                    WHERE i.product_id = r.product_id
+                    """);
+            }
+        }
+        logger.info("Поставки: {}, остатки: {}", receiptCount, products);
+    }
+
+
+    private void seedStockLog(ExecutorService executor) throws Exception {
+        // Журнал строится на стороне БД: оконная сумма дает непрерывную цепочку before/after
+        String sql = """
+            INSERT INTO stock_log (product_id, operation_type, quantity_change, quantity_before,
+                                   quantity_after, reference_id, reference_type, user_id, notes, created_at)
+            SELECT product_id, op::stock_operation_type, change, running - change, running,
+                   ref_id, ref_type, user_id, notes, ts
+            FROM (
+                SELECT e.*, SUM(change) OVER (PARTITION BY product_id ORDER BY ts, ord, ref_id
+                                              ROWS UNBOUNDED PRECEDING) AS running
+                FROM (
+                    SELECT ri.product_id, 'RECEIPT' AS op, ri.quantity AS change, r.id AS ref_id,
+                           'RECEIPT' AS ref_type, r.manager_id AS user_id, NULL::text AS notes,
+                           r.receipt_date AS ts, 0 AS ord
+                    FROM receipt_items ri JOIN receipts r ON r.id = ri.receipt_id
+                    WHERE ri.product_id BETWEEN ? AND ?
+                    UNION ALL
+                    SELECT si.product_id, 'SALE', -si.quantity, s.id, 'SALE', s.employee_id, NULL,
+                           s.sale_date, 1
+                    FROM sale_items si JOIN sales s ON s.id = si.sale_id
+                    WHERE si.product_id BETWEEN ? AND ?
+                    UNION ALL
+                    SELECT si.product_id, 'RETURN', si.returned_qty, s.id, 'SALE_RETURN', s.employee_id,
+                           'Возврат по чеку ' || s.sale_number, s.sale_date + INTERVAL '1 day', 2
+                    FROM sale_items si JOIN sales s ON s.id = si.sale_id
+                    WHERE si.returned_qty > 0 AND si.product_id BETWEEN ? AND ?
+                ) e
+            ) x
+            """;
+
+        int chunk = Math.max(1_000, products / (threads * 4));
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 1; from <= products; from += chunk) {
+            int start = from;
+            int end = Math.min(products, from + chunk - 1);
+            futures.add(executor.submit(() -> {
+                try (Connection conn = openSeederConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int p = 0; p < 3; p++) {
+                        stmt.setInt(p * 2 + 1, start);
+                        stmt.setInt(p * 2 + 2, end);
+                    }
+                    stmt.executeUpdate();
+                }
+                return null;
+            }));
+        }
+        await(futures);
+        logger.info("Журнал движения товаров построен");
+    }
+
+    private void finishSequences() throws SQLException {
+        try (Connection conn = dbManager.getConnection(Workload.BACKOFFICE);
+             Statement stmt = conn.createStatement()) {
+            for (String table : new String[]{"users", "products", "sales", "receipts", "inventory",
+                    "sale_items", "receipt_items", "stock_log", "security_log"}) {
+                stmt.execute("SELECT setval(pg_get_serial_sequence('" + table + "', 'id'), "
+                        + "(SELECT COALESCE(MAX(id), 0) + 1 FROM " + table + "), false)");
+            }
+            // Номера чеков и приходов загружены COPY мимо generate_sale_number/generate_receipt_number
+            stmt.execute("SELECT setval('sale_number_seq', "
+                    + "(SELECT COALESCE(MAX(substring(sale_number FROM '-(\\d+)$')::BIGINT), 0) + 1 FROM sales), false)");
+            stmt.execute("SELECT setval('receipt_number_seq', "
+                    + "(SELECT COALESCE(MAX(substring(receipt_number FROM '-(\\d+)$')::BIGINT), 0) + 1 FROM receipts), false)");
+            stmt.execute("ANALYZE");
+        }
+        logger.info("Последовательности обновлены, статистика собрана");
+    }
+
+
+    private Connection openSeederConnection() throws SQLException {
+        Connection conn = dbManager.getConnection(Workload.BACKOFFICE);
+        try (Statement stmt = conn.createStatement()) {
+            // Сгенерированные данные легко воспроизвести, ждать сброса WAL не нужно
+            stmt.execute("SET synchronous_commit = off");
+        }
+        return conn;
+    }
+
+    private static void copy(Connection conn, String sql, CopyBuffer buf) throws SQLException {
+        if (buf.isEmpty()) {
+            return;
+        }
+        try {
+            CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+            copyManager.copyIn(sql, new ByteArrayInputStream(buf.bytes(), 0, buf.size()));
+        } catch (java.io.IOException e) {
+            throw new SQLException("Ошибка передачи данных COPY", e);
+        } finally {
+            buf.reset();
+        }
+    }
+
+    private static void await(List<? extends Future<?>> futures) throws Exception {
+        for (Future<?> f : futures) {
+            f.get();
+        }
+    }
+
+    private static long choosePermutationMultiplier(int n) {
+        long a = PERMUTATION_MULTIPLIER % n;
+        while (a <= 1 || gcd(a, n) != 1) {
+            a++;
+            if (a >= n) {
+                return 1;
+            }
+        }
+        return a;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static long mix(long seed, int stream, long index) {
+        long z = seed * 0x9E3779B97F4A7C15L + stream * 0xBF58476D1CE4E5B9L + index * 0x94D049BB133111EBL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double gaussian(SplittableRandom rnd) {
+        double u1 = Math.max(rnd.nextDouble(), 1e-12);
+        double u2 = rnd.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+    }
+
+    /**
+     * Буфер строк в текстовом формате COPY (разделитель - табуляция).
+     */
+    private static final class CopyBuffer {
+        private final Output out = new Output();
+        private boolean lineStart = true;
+
+        CopyBuffer col(String value) {
+            separator();
+            // Кодируется вся строка целиком: суррогатные пары не разрываются, а многобайтовые
+            // последовательности UTF-8 не содержат байтов ASCII, поэтому экранирование по байтам корректно
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                switch (b) {
+                    case '\\' -> out.writeAscii("\\\\");
+                    case '\t' -> out.writeAscii("\\t");
+                    case '\n' -> out.writeAscii("\\n");
+                    case '\r' -> out.writeAscii("\\r");
+                    default -> out.write(b);
+                }
+            }
+            return this;
+        }
+
+        CopyBuffer col(long value) {
+            separator();
+            out.writeAscii(Long.toString(value));
+            return this;
+        }
+
+        CopyBuffer money(long cents) {
+            separator();
+            if (cents < 0) {
+                out.write('-');
+                cents = -cents;
+            }
+            out.writeAscii(Long.toString(cents / 100));
+            out.write('.');
+            long rest = cents % 100;
+            if (rest < 10) {
+                out.write('0');
+            }
+            out.writeAscii(Long.toString(rest));
+            return this;
+        }
+
+        CopyBuffer colNull() {
+            separator();
+            out.writeAscii("\\N");
+            return this;
+        }
+
+        void end() {
+            out.write('\n');
+            lineStart = true;
+        }
+
+        private void separator() {
+            if (!lineStart) {
+                out.write('\t');
+            }
+            lineStart = false;
+        }
+
+        boolean isEmpty() {
+            return out.size() == 0;
+        }
+
+        byte[] bytes() {
+            return out.buffer();
+        }
+
+        int size() {
+            return out.size();
+        }
+
+        void reset() {
+            out.reset();
+            lineStart = true;
+        }
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(1 << 16);
+        }
+
+        void writeAscii(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                write(s.charAt(i));
+            }
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
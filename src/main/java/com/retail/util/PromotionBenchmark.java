@@ -0,0 +1,113 @@
+package com.retail.util;
+
+import com.retail.model.Promotion;
+import com.retail.model.enums.PromotionType;
+import com.retail.promo.PromotionEngine;
+import com.retail.promo.PromotionResult;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Замер расчета акций по корзине на синтетическом каталоге без БД: время на корзину
+ * и байт выделено на корзину. Акции поровну трех типов, корзины из случайных товаров.
+ * Аргументы: [акций] [строк в корзине] [товаров в каталоге] [корзин на замер].
+ */
+public class PromotionBenchmark {
+    private static final int CATEGORIES = 500;
+    private static final int BASKETS = 1024;
+
+    public static void main(String[] args) {
+        int promotionCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int lines = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int products = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 2_000_000;
+
+        Random random = new Random(42);
+        Map<Integer, Integer> categories = new HashMap<>();
+        for (int id = 1; id <= products; id++) {
+            categories.put(id, 1 + random.nextInt(CATEGORIES));
+        }
+
+        long compileStart = System.nanoTime();
+        PromotionEngine engine = PromotionEngine.compile(promotions(promotionCount, products, random), categories);
+        System.out.printf("Акций: %d, правил: %d, компиляция: %.1f мс%n",
+                promotionCount, engine.getRuleCount(), (System.nanoTime() - compileStart) / 1e6);
+
+        int[][] productIds = new int[BASKETS][lines];
+        int[][] quantities = new int[BASKETS][lines];
+        long[][] prices = new long[BASKETS][lines];
+        for (int b = 0; b < BASKETS; b++) {
+            for (int i = 0; i < lines; i++) {
+                productIds[b][i] = 1 + random.nextInt(products);
+                quantities[b][i] = 1 + random.nextInt(6);
+                prices[b][i] = 1_000 + random.nextInt(500_000);
+            }
+        }
+        long at = System.currentTimeMillis();
+
+        // Прогрев JIT
+        long sink = 0;
+        for (int i = 0; i < 200_000; i++) {
+            int b = i & (BASKETS - 1);
+            sink += engine.apply(lines, productIds[b], quantities[b], prices[b], at).getTotalDiscountCents();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long applied = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            int b = i & (BASKETS - 1);
+            PromotionResult result = engine.apply(lines, productIds[b], quantities[b], prices[b], at);
+            sink += result.getTotalDiscountCents();
+            applied += result.getAppliedCount();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-12s %-14s %-14s %-16s%n", "Строк", "Нс/корзина", "Байт/корзина", "Акций/корзина");
+        System.out.printf("%-12d %-14.0f %-14.0f %-16.2f%n", lines, (double) elapsed / iterations,
+                (double) allocated / iterations, (double) applied / iterations);
+        System.out.println("Контрольная сумма: " + sink);
+    }
+
+    private static List<Promotion> promotions(int count, int products, Random random) {
+        List<Promotion> result = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            Promotion promotion = new Promotion();
+            promotion.setId(id);
+            promotion.setName("Акция " + id);
+            promotion.setValidFrom(LocalDateTime.now().minusDays(1));
+            switch (id % 3) {
+                case 0 -> {
+                    promotion.setType(PromotionType.MULTI_BUY);
+                    promotion.setProductId(1 + random.nextInt(products));
+                    promotion.setBuyQuantity(3);
+                    promotion.setPayQuantity(2);
+                }
+                case 1 -> {
+                    promotion.setType(PromotionType.CATEGORY_PERCENT);
+                    promotion.setCategoryId(1 + random.nextInt(CATEGORIES));
+                    promotion.setDiscountPercent(BigDecimal.valueOf(5 + random.nextInt(25)));
+                }
+                default -> {
+                    promotion.setType(PromotionType.BUNDLE);
+                    promotion.getBundleItems().put(1 + random.nextInt(products), 1);
+                    promotion.getBundleItems().put(1 + random.nextInt(products), 1);
+                    promotion.setBundlePrice(BigDecimal.valueOf(100 + random.nextInt(2_000)));
+                }
+            }
+            result.add(promotion);
+        }
+        return result;
+    }
+}
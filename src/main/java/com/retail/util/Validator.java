@@ -75,6 +75,11 @@ public class Validator {
         validate(price, POSITIVE_AMOUNT, fieldName + " должна быть положительной");
     }
 
+    public static void validateDiscount(BigDecimal discount, BigDecimal total) {
+        validate(discount, NON_NEGATIVE_AMOUNT, "Скидка не может быть отрицательной");
+        validate(discount, d -> d.compareTo(total) <= 0, "Скидка не может превышать сумму чека");
+    }
+
     public static void validateQuantity(Integer quantity, String fieldName) {
         validate(quantity, POSITIVE_INTEGER, fieldName + " должно быть положительным числом");
     }
@@ -55,6 +55,38 @@ CREATE INDEX idx_products_name ON products(name);
 CREATE INDEX idx_products_category ON products(category_id);
 CREATE INDEX idx_products_active ON products(is_active);
 
+CREATE TABLE product_barcodes (
+    code            VARCHAR(14) PRIMARY KEY,
+    product_id      INTEGER NOT NULL REFERENCES products(id) ON DELETE CASCADE,
+    kind            VARCHAR(10) NOT NULL DEFAULT 'UNIT',
+    pack_quantity   INTEGER NOT NULL DEFAULT 1,
+    created_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT chk_barcode_digits CHECK (code ~ '^[0-9]+$'),
+    CONSTRAINT chk_barcode_kind CHECK (kind IN ('UNIT', 'WEIGHT', 'PRICE')),
+    CONSTRAINT chk_barcode_pack CHECK (pack_quantity > 0),
+    CONSTRAINT chk_barcode_embedded CHECK (kind = 'UNIT' OR (length(code) = 7 AND code LIKE '2%'))
+);
+
+CREATE INDEX idx_product_barcodes_product ON product_barcodes(product_id);
+
+CREATE TABLE price_history (
+    id              BIGSERIAL PRIMARY KEY,
+    product_id      INTEGER NOT NULL REFERENCES products(id) ON DELETE CASCADE,
+    old_price       DECIMAL(12, 2),
+    new_price       DECIMAL(12, 2) NOT NULL,
+    effective_from  TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    activated_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    reason          TEXT,
+    changed_by      INTEGER REFERENCES users(id),
+    changed_at      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT chk_price_history_positive CHECK (new_price > 0)
+);
+
+CREATE INDEX idx_price_history_product ON price_history(product_id, effective_from);
+CREATE INDEX idx_price_history_pending ON price_history(effective_from) WHERE activated_at IS NULL;
+
 CREATE TABLE inventory (
     id              SERIAL PRIMARY KEY,
     product_id      INTEGER NOT NULL UNIQUE REFERENCES products(id) ON DELETE CASCADE,
@@ -78,6 +110,7 @@ CREATE TABLE sales (
     discount        DECIMAL(12, 2) DEFAULT 0,
     final_amount    DECIMAL(12, 2) NOT NULL DEFAULT 0,
     is_returned     BOOLEAN DEFAULT FALSE,             
+    offline_ref     VARCHAR(40) UNIQUE,
     created_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
@@ -101,6 +134,48 @@ CREATE TABLE sale_items (
 CREATE INDEX idx_sale_items_sale ON sale_items(sale_id);
 CREATE INDEX idx_sale_items_product ON sale_items(product_id);
 
+CREATE TABLE promotions (
+    id               SERIAL PRIMARY KEY,
+    name             VARCHAR(200) NOT NULL,
+    type             VARCHAR(20) NOT NULL,
+    product_id       INTEGER REFERENCES products(id) ON DELETE CASCADE,
+    category_id      INTEGER REFERENCES categories(id) ON DELETE CASCADE,
+    buy_quantity     INTEGER,
+    pay_quantity     INTEGER,
+    discount_percent DECIMAL(5, 2),
+    bundle_price     DECIMAL(12, 2),
+    valid_from       TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    valid_to         TIMESTAMP,
+    is_active        BOOLEAN NOT NULL DEFAULT TRUE,
+    created_by       INTEGER REFERENCES users(id),
+    created_at       TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT chk_promotion_type CHECK (type IN ('MULTI_BUY', 'CATEGORY_PERCENT', 'BUNDLE')),
+    CONSTRAINT chk_promotion_multi_buy CHECK (type <> 'MULTI_BUY'
+        OR (product_id IS NOT NULL AND pay_quantity >= 0 AND buy_quantity > pay_quantity)),
+    CONSTRAINT chk_promotion_category CHECK (type <> 'CATEGORY_PERCENT'
+        OR (category_id IS NOT NULL AND discount_percent > 0 AND discount_percent <= 100)),
+    CONSTRAINT chk_promotion_bundle CHECK (type <> 'BUNDLE' OR bundle_price >= 0)
+);
+
+CREATE INDEX idx_promotions_active ON promotions(valid_to) WHERE is_active;
+
+CREATE TABLE promotion_items (
+    promotion_id    INTEGER NOT NULL REFERENCES promotions(id) ON DELETE CASCADE,
+    product_id      INTEGER NOT NULL REFERENCES products(id) ON DELETE CASCADE,
+    quantity        INTEGER NOT NULL CHECK (quantity > 0),
+    PRIMARY KEY (promotion_id, product_id)
+);
+
+CREATE TABLE sale_promotions (
+    sale_id         INTEGER NOT NULL REFERENCES sales(id) ON DELETE CASCADE,
+    promotion_id    INTEGER NOT NULL REFERENCES promotions(id),
+    discount        DECIMAL(12, 2) NOT NULL,
+    PRIMARY KEY (sale_id, promotion_id)
+);
+
+CREATE INDEX idx_sale_promotions_promotion ON sale_promotions(promotion_id);
+
 CREATE TABLE receipts (
     id              SERIAL PRIMARY KEY,
     receipt_number  VARCHAR(20) NOT NULL UNIQUE,
@@ -145,6 +220,54 @@ CREATE INDEX idx_stock_log_product ON stock_log(product_id);
 CREATE INDEX idx_stock_log_date ON stock_log(created_at);
 CREATE INDEX idx_stock_log_type ON stock_log(operation_type);
 CREATE INDEX idx_stock_log_user ON stock_log(user_id);
+CREATE INDEX idx_stock_log_product_date ON stock_log(product_id, created_at);
+
+CREATE TABLE inventory_snapshots (
+    id              SERIAL PRIMARY KEY,
+    taken_at        TIMESTAMP NOT NULL UNIQUE,
+    product_count   INTEGER NOT NULL DEFAULT 0,
+    created_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE inventory_snapshot_items (
+    snapshot_id     INTEGER NOT NULL REFERENCES inventory_snapshots(id) ON DELETE CASCADE,
+    product_id      INTEGER NOT NULL,
+    quantity        INTEGER NOT NULL,
+    PRIMARY KEY (snapshot_id, product_id)
+);
+
+CREATE TABLE stocktakes (
+    id              SERIAL PRIMARY KEY,
+    status          VARCHAR(20) NOT NULL DEFAULT 'OPEN',
+    started_by      INTEGER NOT NULL REFERENCES users(id),
+    started_at      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    applied_by      INTEGER REFERENCES users(id),
+    applied_at      TIMESTAMP,
+    notes           TEXT,
+
+    CONSTRAINT chk_stocktake_status CHECK (status IN ('OPEN', 'APPLIED', 'CANCELLED'))
+);
+
+CREATE UNIQUE INDEX idx_stocktakes_one_open ON stocktakes((TRUE)) WHERE status = 'OPEN';
+
+CREATE TABLE stocktake_items (
+    stocktake_id     INTEGER NOT NULL REFERENCES stocktakes(id) ON DELETE CASCADE,
+    product_id       INTEGER NOT NULL REFERENCES products(id),
+    frozen_quantity  INTEGER NOT NULL,
+    counted_quantity INTEGER,
+    counted_at       TIMESTAMP,
+    PRIMARY KEY (stocktake_id, product_id),
+
+    CONSTRAINT chk_counted_non_negative CHECK (counted_quantity >= 0)
+);
+
+CREATE TABLE event_outbox (
+    id              BIGSERIAL PRIMARY KEY,
+    event_type      VARCHAR(20) NOT NULL,
+    aggregate_id    INTEGER NOT NULL,
+    payload         TEXT NOT NULL,
+    created_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
 
 CREATE TABLE security_log (
     id              SERIAL PRIMARY KEY,
@@ -160,6 +283,12 @@ CREATE INDEX idx_security_log_date ON security_log(created_at);
 CREATE INDEX idx_security_log_user ON security_log(user_id);
 CREATE INDEX idx_security_log_action ON security_log(action);
 
+CREATE TABLE security_log_replay (
+    file_name       VARCHAR(255) PRIMARY KEY,
+    replayed_bytes  BIGINT NOT NULL,
+    updated_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
 CREATE OR REPLACE FUNCTION update_updated_at()
 RETURNS TRIGGER AS $$
 BEGIN
@@ -184,6 +313,65 @@ CREATE TRIGGER trg_categories_updated_at
     BEFORE UPDATE ON categories
     FOR EACH ROW EXECUTE FUNCTION update_updated_at();
 
+CREATE OR REPLACE FUNCTION notify_catalog_ids(ids INTEGER[])
+RETURNS VOID AS $$
+DECLARE
+    i INTEGER;
+BEGIN
+    IF current_setting('retail.catalog_notify', true) = 'off' THEN
+        RETURN;
+    END IF;
+    FOR i IN 1 .. COALESCE(array_length(ids, 1), 0) BY 500 LOOP
+        PERFORM pg_notify('catalog_changes', array_to_string(ids[i:i + 499], ','));
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION notify_product_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM notify_catalog_ids(ARRAY(SELECT DISTINCT id FROM changed_rows ORDER BY id));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION notify_inventory_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' THEN
+        PERFORM notify_catalog_ids(ARRAY(
+            SELECT DISTINCT n.product_id
+            FROM changed_rows n
+            JOIN old_rows o ON o.id = n.id
+            WHERE n.quantity IS DISTINCT FROM o.quantity OR n.product_id IS DISTINCT FROM o.product_id
+            ORDER BY n.product_id));
+    ELSE
+        PERFORM notify_catalog_ids(ARRAY(SELECT DISTINCT product_id FROM changed_rows ORDER BY product_id));
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_products_catalog_notify_insert
+    AFTER INSERT ON products
+    REFERENCING NEW TABLE AS changed_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_product_change();
+
+CREATE TRIGGER trg_products_catalog_notify_update
+    AFTER UPDATE ON products
+    REFERENCING NEW TABLE AS changed_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_product_change();
+
+CREATE TRIGGER trg_inventory_catalog_notify_insert
+    AFTER INSERT ON inventory
+    REFERENCING NEW TABLE AS changed_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_inventory_change();
+
+CREATE TRIGGER trg_inventory_catalog_notify_update
+    AFTER UPDATE ON inventory
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS changed_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_inventory_change();
+
 CREATE OR REPLACE FUNCTION generate_sale_number()
 RETURNS VARCHAR(20) AS $$
 DECLARE
@@ -245,6 +433,28 @@ LEFT JOIN categories c ON p.category_id = c.id
 LEFT JOIN units u ON p.unit_id = u.id
 LEFT JOIN inventory i ON p.id = i.product_id;
 
+CREATE MATERIALIZED VIEW mv_products_with_stock AS
+SELECT
+    p.*,
+    c.name AS category_name,
+    u.short_name AS unit_name,
+    COALESCE(i.quantity, 0) AS stock_quantity,
+    COALESCE(i.quantity, 0) <= p.min_stock_level AS is_low_stock
+FROM products p
+LEFT JOIN categories c ON p.category_id = c.id
+LEFT JOIN units u ON p.unit_id = u.id
+LEFT JOIN inventory i ON p.id = i.product_id;
+
+CREATE UNIQUE INDEX idx_mv_products_stock_id ON mv_products_with_stock(id);
+CREATE INDEX idx_mv_products_stock_name ON mv_products_with_stock(name) WHERE is_active;
+CREATE INDEX idx_mv_products_stock_category ON mv_products_with_stock(category_id, name) WHERE is_active;
+CREATE INDEX idx_mv_products_stock_low ON mv_products_with_stock(stock_quantity) WHERE is_active AND is_low_stock;
+
+CREATE TABLE matview_refreshes (
+    view_name       VARCHAR(63) PRIMARY KEY,
+    refreshed_at    TIMESTAMP NOT NULL
+);
+
 CREATE OR REPLACE VIEW v_sales_summary AS
 SELECT 
     s.id,
@@ -274,10 +484,31 @@ ORDER BY total_sold DESC;
 
 COMMENT ON TABLE users IS 'Пользователи системы (сотрудники, менеджеры, администраторы)';
 COMMENT ON TABLE products IS 'Справочник товаров (номенклатура)';
+COMMENT ON TABLE product_barcodes IS 'Штрихкоды товаров: несколько кодов на товар, упаковки и весовые префиксы';
+COMMENT ON COLUMN product_barcodes.pack_quantity IS 'UNIT - единиц в упаковке; WEIGHT - граммов в единице учета';
+COMMENT ON TABLE price_history IS 'История цен продажи товаров с датой начала действия, включая запланированные цены';
+COMMENT ON COLUMN price_history.activated_at IS 'Когда цена записана в products.selling_price; NULL - запланированная цена еще не применена';
+COMMENT ON COLUMN price_history.old_price IS 'Цена до изменения; для запланированной цены заполняется при применении';
 COMMENT ON TABLE inventory IS 'Складские остатки товаров';
 COMMENT ON TABLE sales IS 'Заголовки чеков (продажи)';
+COMMENT ON COLUMN sales.offline_ref IS 'Касса и номер записи локального журнала для продаж, проведенных без связи с БД';
 COMMENT ON TABLE sale_items IS 'Позиции чеков';
+COMMENT ON TABLE promotions IS 'Акции: N по цене M, скидка на категорию, комплект по цене';
+COMMENT ON TABLE promotion_items IS 'Состав комплекта акции BUNDLE';
+COMMENT ON TABLE sale_promotions IS 'Скидки акций по чеку; их сумма входит в sales.discount';
 COMMENT ON TABLE receipts IS 'Документы поступления товаров';
 COMMENT ON TABLE stock_log IS 'История всех движений товаров на складе';
+COMMENT ON MATERIALIZED VIEW mv_products_with_stock IS 'Витрина товаров с остатками, обновляется REFRESH CONCURRENTLY';
+COMMENT ON TABLE matview_refreshes IS 'Время начала последнего обновления витрин: узлы, которые сами не обновляют витрину, судят по нему об ее актуальности';
+COMMENT ON TABLE inventory_snapshots IS 'Снимки остатков на момент taken_at для восстановления остатков на дату';
+COMMENT ON TABLE inventory_snapshot_items IS 'Ненулевые остатки товаров в снимке';
+COMMENT ON TABLE stocktakes IS 'Инвентаризации: открыта может быть только одна';
+COMMENT ON TABLE stocktake_items IS 'Зафиксированные при открытии и подсчитанные остатки товаров инвентаризации';
+COMMENT ON COLUMN stocktake_items.counted_at IS 'Время последнего подсчета: движения до него учитываются при расчете расхождения';
+COMMENT ON TABLE event_outbox IS 'События продаж, возвратов, поступлений и корректировок до переноса в журнал событий';
 COMMENT ON TABLE security_log IS 'Журнал безопасности и аудита действий';
+COMMENT ON TABLE security_log_replay IS 'Сколько байт файла отложенных событий журнала безопасности уже загружено: обновляется в одной транзакции с вставкой пачки';
+COMMENT ON FUNCTION notify_catalog_ids(INTEGER[]) IS 'Уведомления catalog_changes со списком id товаров через запятую, до 500 id в уведомлении; отключаются параметром retail.catalog_notify = off';
+COMMENT ON FUNCTION notify_product_change() IS 'Одно уведомление catalog_changes на оператор изменения products';
+COMMENT ON FUNCTION notify_inventory_change() IS 'Одно уведомление catalog_changes на оператор изменения inventory, только при изменении количества';
 COMMENT ON CONSTRAINT chk_quantity_non_negative ON inventory IS 'Запрет отрицательного остатка на складе';